@@ -6,6 +6,7 @@ import renderengine.engine.MouseInput;
 import renderengine.engine.Window;
 import renderengine.entities.Light;
 import renderengine.gui.Gui;
+import massspringcloth.cloth.ESimulationBackend;
 import massspringcloth.simulation.SimulationController;
 import renderengine.mesh.Texture;
 import org.joml.Vector2f;
@@ -75,7 +76,9 @@ public class MassSpringClothRenderLogic implements IRenderLogic {
             terrains.add(terrain11);
         }
 
-        simulationController = new SimulationController(camera);
+        simulationController = new SimulationController(camera, ESimulationBackend.valueOf(System.getProperty("backend", "GPU")));
+        simulationController.setFrameBudget(Float.parseFloat(System.getProperty("frameBudget", "0")) / 1000); // milliseconds, 0 => no governor
+        simulationController.setAdaptive(Boolean.getBoolean("adaptive")); // false => the scenes keep the iterations they are tuned for
         userInterface = new UserInterface(window, simulationController);
     }
 
@@ -148,7 +151,7 @@ public class MassSpringClothRenderLogic implements IRenderLogic {
             mouseInput.resetScrollVec();
         }
 
-        simulationController.simulate();
+        simulationController.simulate(increment);
     }
 
     /**
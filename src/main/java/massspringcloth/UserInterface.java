@@ -151,6 +151,22 @@ public class UserInterface {
             }
         };
         guis.add(sceneFlagButton);
+
+        Button sceneMeshButton = new Button(window, new Vector2f(197, 50), new Vector2f(48, 48),
+                new TextureMesh2D(new float[]{-1, 1, -1, -1, 1, 1, 1, -1},
+                        Texture.loadTexture("textures/gui/scene_mesh.png"))) {
+            @Override
+            public void onClick() {
+                pause();
+                try {
+                    simulationController.switchScene(ESceneType.MESH);
+                    setHangingWindEnabled(false);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        guis.add(sceneMeshButton);
     }
 
     /**
@@ -0,0 +1,123 @@
+package massspringcloth.cloth;
+
+import org.lwjgl.BufferUtils;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import static org.lwjgl.stb.STBImage.stbi_failure_reason;
+import static org.lwjgl.stb.STBImage.stbi_image_free;
+import static org.lwjgl.stb.STBImage.stbi_load_from_memory;
+
+/**
+ * Points of the rectangular grid of a cloth that exist. Removed points and their springs are neither simulated nor rendered,
+ * thus a mask cuts holes, cut-outs or an irregular outline out of the cloth (see {@link MassSpringModel#MassSpringModel(int, int, Point[][], ClothMask)}).
+ *
+ * @author Mirco Werner
+ */
+public final class ClothMask {
+    private final int width;
+    private final int height;
+    private final boolean[] active;
+
+    /**
+     * Creates a mask that keeps all points.
+     *
+     * @param width  amount of horizontal points of the cloth
+     * @param height amount of vertical points of the cloth
+     */
+    public ClothMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        active = new boolean[width * height];
+        Arrays.fill(active, true);
+    }
+
+    /**
+     * Creates a mask that keeps the points that fulfill the predicate, e.g. all points within a distance to the center.
+     *
+     * @param width     amount of horizontal points of the cloth
+     * @param height    amount of vertical points of the cloth
+     * @param points    initial values of the points
+     * @param predicate true if the point is kept
+     * @return mask
+     */
+    public static ClothMask fromPredicate(int width, int height, Point[][] points, Predicate<Point> predicate) {
+        ClothMask mask = new ClothMask(width, height);
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                mask.setActive(w, h, predicate.test(points[w][h]));
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Creates a mask from the alpha channel of an image, e.g. a PNG of a garment panel. The image is stretched over the cloth,
+     * a point is kept if the nearest pixel has an alpha value of at least 128. The top row of the image belongs to the last row
+     * of points (h = height - 1) like the texture coordinates of the cloth.
+     *
+     * @param resourceName resource name of the image
+     * @param width        amount of horizontal points of the cloth
+     * @param height       amount of vertical points of the cloth
+     * @return mask
+     * @throws Exception if the image cannot be loaded
+     */
+    public static ClothMask fromImageAlpha(String resourceName, int width, int height) throws Exception {
+        byte[] imageData;
+        try (InputStream imageStream = Objects.requireNonNull(ClothMask.class.getClassLoader().getResourceAsStream(resourceName), resourceName)) {
+            imageData = imageStream.readAllBytes();
+        }
+        ByteBuffer imageBuffer = BufferUtils.createByteBuffer(imageData.length);
+        imageBuffer.put(imageData).flip();
+        IntBuffer imageWidth = BufferUtils.createIntBuffer(1);
+        IntBuffer imageHeight = BufferUtils.createIntBuffer(1);
+        IntBuffer channels = BufferUtils.createIntBuffer(1);
+        ByteBuffer pixels = stbi_load_from_memory(imageBuffer, imageWidth, imageHeight, channels, 4);
+        if (pixels == null) {
+            throw new Exception("Image not loaded: " + stbi_failure_reason());
+        }
+
+        ClothMask mask = new ClothMask(width, height);
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                int pixelX = Math.min(imageWidth.get(0) - 1, (int) ((w + 0.5f) * imageWidth.get(0) / width));
+                int pixelY = Math.min(imageHeight.get(0) - 1, (int) ((height - h - 0.5f) * imageHeight.get(0) / height));
+                int alpha = pixels.get((pixelY * imageWidth.get(0) + pixelX) * 4 + 3) & 0xFF;
+                mask.setActive(w, h, alpha >= 128);
+            }
+        }
+        stbi_image_free(pixels);
+        return mask;
+    }
+
+    /**
+     * @param w      horizontal index of the point
+     * @param h      vertical index of the point
+     * @param active true to keep the point, false to remove it
+     */
+    public void setActive(int w, int h, boolean active) {
+        this.active[h * width + w] = active;
+    }
+
+    /**
+     * @param w horizontal index of the point
+     * @param h vertical index of the point
+     * @return true if the point is kept
+     */
+    public boolean isActive(int w, int h) {
+        return active[h * width + w];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,12 @@
+package massspringcloth.cloth;
+
+/**
+ * Defines how the stages of the simulation are dispatched on the GPU.
+ *
+ * @author Mirco Werner
+ */
+public enum EExecutionMode {
+    SEPARATE, // one dispatch per stage (apply forces, relaxation) and iteration
+    TILED, // like SEPARATE, but each workgroup reads the positions of its tile (plus halo) into shared memory once
+    FUSED; // all iterations of one simulate call in one dispatch of a single workgroup, only for small cloths (see MassSpringCloth.MAX_FUSED_POINTS)
+}
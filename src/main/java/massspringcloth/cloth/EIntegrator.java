@@ -0,0 +1,13 @@
+package massspringcloth.cloth;
+
+/**
+ * Defines how the forces are integrated in the "apply forces" stage of the simulation.
+ *
+ * @author Mirco Werner
+ */
+public enum EIntegrator {
+    EXPLICIT_EULER, // velocity += acceleration * time, stable only for small time steps (see TimeStepEstimator)
+    IMPLICIT_EULER, // backward Euler, linearized spring forces solved with preconditioned conjugate gradient (CPU backend only, see ImplicitSpringSystem)
+    XPBD, // extended position based dynamics, the springs are compliant distance constraints that replace the relaxation
+    PROJECTIVE_DYNAMICS; // local spring projections and a global solve with a cached Cholesky factorization (CPU backend only, see ProjectiveDynamicsSystem)
+}
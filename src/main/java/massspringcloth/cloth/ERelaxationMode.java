@@ -0,0 +1,12 @@
+package massspringcloth.cloth;
+
+/**
+ * Defines how the relaxation stage updates the points.
+ *
+ * @author Mirco Werner
+ */
+public enum ERelaxationMode {
+    JACOBI, // all points in one pass, every point only sees the positions of the last pass (corrections spread one point per iteration)
+    GAUSS_SEIDEL, // one pass per color of a 4-coloring of the grid, every pass sees the corrections of the previous passes
+    CONVERGENT; // Gauss-Seidel rounds until the over-extension is within a tolerance, at most a given amount (see MassSpringCloth.setRelaxationTolerance)
+}
@@ -0,0 +1,11 @@
+package massspringcloth.cloth;
+
+/**
+ * Defines where the simulation of a {@link MassSpringCloth} is executed.
+ *
+ * @author Mirco Werner
+ */
+public enum ESimulationBackend {
+    GPU, // compute shader, simulate and render are called on the OpenGL thread
+    CPU; // CpuClothSolver, simulate may be called on another thread (see SimulationThread), render uploads the last published state
+}
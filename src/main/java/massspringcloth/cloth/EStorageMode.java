@@ -0,0 +1,11 @@
+package massspringcloth.cloth;
+
+/**
+ * Defines how the state of the points and the render data are stored on the GPU.
+ *
+ * @author Mirco Werner
+ */
+public enum EStorageMode {
+    FULL, // 32 bit floats for all values
+    COMPACT; // positions as 21 bit fixed point relative to a cloth-local origin, velocities as half floats, normals/tangents as 10 bit snorm (see MassSpringCloth.getPositionQuantum)
+}
@@ -0,0 +1,118 @@
+package massspringcloth.cloth;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Long-range attachments (Kim et al., "Long Range Attachments - A Method to Simulate Inextensible Clothing in Computer Games", 2012).
+ * <p>
+ * Every free point is attached to its nearest locked point (anchor). The allowed distance is the geodesic distance along the springs
+ * of the cloth, where each spring may be as long as the relaxation allows (10% longer than its rest length). A point that is
+ * further away from its anchor than that can not be reached by any valid configuration of the springs, thus it is moved back onto
+ * the sphere around the anchor. This takes one distance check per point and step, whereas the relaxation needs one iteration
+ * per point between the anchor and the over-stretched point to propagate the correction.
+ * <p>
+ * The geodesic distances are calculated once from all locked points at the same time (Dijkstra's algorithm on the grid of points).
+ *
+ * @author Mirco Werner
+ */
+public final class LongRangeAttachments {
+    /**
+     * Anchor of locked points and of points that are not connected to any locked point.
+     */
+    public static final int NO_ANCHOR = -1;
+
+    // springs to the 8 neighbors, they may be stretched by MassSpringModel.MAX_STRETCH
+    private static final int[] NEIGHBOR_X = {1, -1, 0, 0, 1, -1, 1, -1};
+    private static final int[] NEIGHBOR_Y = {0, 0, 1, -1, 1, 1, -1, -1};
+
+    private final int[] anchor;
+    private final float[] distance;
+
+    /**
+     * Calculates the anchor and the allowed distance of every point of the model.
+     *
+     * @param massSpringModel model containing the locked points
+     */
+    public LongRangeAttachments(MassSpringModel massSpringModel) {
+        int width = massSpringModel.getWidth();
+        int height = massSpringModel.getHeight();
+        float[] pointData = massSpringModel.getPointData();
+        float[] restLengths = massSpringModel.getRestLengths();
+        int count = width * height;
+        anchor = new int[count];
+        distance = new float[count];
+        Arrays.fill(anchor, NO_ANCHOR);
+        Arrays.fill(distance, Float.POSITIVE_INFINITY);
+
+        // queue entries: distance (float bits keep the order of positive floats) in the upper, point in the lower 32 bits
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        for (int i = 0; i < count; i++) {
+            if (pointData[i * 4] != 0) {
+                anchor[i] = i;
+                distance[i] = 0;
+                queue.add((long) i);
+            }
+        }
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int i = (int) entry;
+            if (Float.intBitsToFloat((int) (entry >>> 32)) > distance[i]) {
+                continue; // outdated entry
+            }
+            int x = i % width;
+            int y = i / width;
+            for (int n = 0; n < NEIGHBOR_X.length; n++) {
+                int neighborX = x + NEIGHBOR_X[n];
+                int neighborY = y + NEIGHBOR_Y[n];
+                if (neighborX < 0 || neighborX >= width || neighborY < 0 || neighborY >= height) {
+                    continue;
+                }
+                float restLength = restLengths[MassSpringModel.getRestLengthIndex(width, count, i, NEIGHBOR_X[n], NEIGHBOR_Y[n])];
+                if (!MassSpringModel.hasSpring(restLength)) {
+                    continue; // no spring, the neighbor has been removed by the mask
+                }
+                int j = neighborY * width + neighborX;
+                float neighborDistance = distance[i] + MassSpringModel.MAX_STRETCH * restLength;
+                if (neighborDistance < distance[j]) {
+                    distance[j] = neighborDistance;
+                    anchor[j] = anchor[i];
+                    queue.add(((long) Float.floatToIntBits(neighborDistance) << 32) | j);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (pointData[i * 4] != 0) {
+                anchor[i] = NO_ANCHOR; // locked points do not move
+            }
+        }
+    }
+
+    /**
+     * @param i point
+     * @return nearest locked point or {@link #NO_ANCHOR}
+     */
+    public int getAnchor(int i) {
+        return anchor[i];
+    }
+
+    /**
+     * @param i point
+     * @return largest distance to the anchor that the springs allow
+     */
+    public float getDistance(int i) {
+        return distance[i];
+    }
+
+    /**
+     * @return anchor and distance (float bits) of each point, the layout of the attachment buffer of the compute shader
+     */
+    public int[] toBufferData() {
+        int[] data = new int[anchor.length * 2];
+        for (int i = 0; i < anchor.length; i++) {
+            data[i * 2] = anchor[i];
+            data[i * 2 + 1] = Float.floatToIntBits(anchor[i] == NO_ANCHOR ? 0 : distance[i]);
+        }
+        return data;
+    }
+}
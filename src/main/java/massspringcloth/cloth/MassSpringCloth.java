@@ -1,5 +1,8 @@
 package massspringcloth.cloth;
 
+import massspringcloth.solver.ClothRenderState;
+import massspringcloth.solver.CpuClothSolver;
+import massspringcloth.solver.TripleBuffer;
 import org.joml.Vector3f;
 import org.lwjgl.BufferUtils;
 import renderengine.camera.ACamera;
@@ -13,14 +16,26 @@ import renderengine.utils.Transformation;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.opengl.GL32.glGetInteger64;
+import static org.lwjgl.opengl.GL33.GL_INT_2_10_10_10_REV;
+import static org.lwjgl.opengl.GL42.GL_BUFFER_UPDATE_BARRIER_BIT;
+import static org.lwjgl.opengl.GL42.GL_COMMAND_BARRIER_BIT;
 import static org.lwjgl.opengl.GL42.GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT;
 import static org.lwjgl.opengl.GL42.glMemoryBarrier;
+import static org.lwjgl.opengl.GL43.GL_DISPATCH_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.glClearBufferData;
+import static org.lwjgl.opengl.GL43.glClearBufferSubData;
 import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BARRIER_BIT;
+import static org.lwjgl.opengl.GL43.GL_MAX_SHADER_STORAGE_BLOCK_SIZE;
 import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER;
 
 /**
@@ -31,20 +46,91 @@ import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER;
  * @author Mirco Werner
  */
 public class MassSpringCloth {
+    /**
+     * Maximum amount of points for the execution mode {@link EExecutionMode#FUSED}. All points are processed by one workgroup of 1024 invocations.
+     */
+    public static final int MAX_FUSED_POINTS = 4096;
+
+    /**
+     * Amount of colors of the grid for {@link ERelaxationMode#GAUSS_SEIDEL}, the color of a point is (x % 2) + 2 * (y % 2).
+     * The relaxation only connects direct neighbors (including diagonals), which never have the same color.
+     */
+    public static final int RELAXATION_COLORS = 4;
+
+    // uniforms of the control shaders of the convergent relaxation and the sleeping tiles
+    static final String[] RELAXATION_CONTROL_UNIFORMS = {"tolerance"};
+    static final String[] SLEEP_CONTROL_UNIFORMS = {"tileCountX", "tileCountY", "stepParity", "sleepSteps", "wakeAll", "renderTiles"};
+
+    private static final int POSITION_MAX = (1 << 20) - 1; // maximum value of a 21 bit signed fixed point position component
+
     private ShaderProgram shaderProgram;
     private ComputeShaderProgram computeProgram;
+    private ComputeShaderProgram fusedComputeProgram;
+    private ComputeShaderProgram tiledComputeProgram;
+    private EExecutionMode executionMode = EExecutionMode.SEPARATE;
+    private ERelaxationMode relaxationMode = ERelaxationMode.JACOBI;
+    private float relaxationTolerance = 0.01f;
+    private int minIterations;
+    private int maxRelaxationRounds = 8;
+
+    // convergent relaxation: decides on the GPU if another round is dispatched (see relaxation_control.glsl)
+    private ComputeShaderProgram relaxationControlProgram;
+    private int relaxationControlBufferId;
+    private int dispatchIndirectBufferId;
+
+    // sleeping tiles: the tiles (workgroups) at rest are not dispatched (see sleep_control.glsl)
+    private ComputeShaderProgram sleepControlProgram;
+    private int tileBufferId;
+    private int activeTileBufferId;
+    private int restPositionBufferId;
+    private boolean sleepingEnabled;
+    private boolean wakeRequested;
+    private float sleepDistance = 0.02f;
+    private int sleepSteps = 100;
+    private int stepParity;
+    private final Vector3f lastVelocityFluid = new Vector3f();
+
+    private final EStorageMode storageMode;
+    private final ESimulationBackend backend;
+    private final EIntegrator integrator;
+    private final int xpbdSubSteps;
+    private final int xpbdIterations;
+    private int constraintIteration; // XPBD: constraint iteration of the next dispatch within the sub-step
+
+    // CPU backend: the solver runs on the simulation thread and publishes its render data, render uploads the latest state
+    private CpuClothSolver cpuSolver;
+    private TripleBuffer<ClothRenderState> renderStates;
+    private long renderStateTime; // publish time of the uploaded state
+    private long renderStateDuration; // time between the publication of the last two uploaded states
+    private long renderStateUploadTime;
 
     private int vaoId;
     private int vertexVboId;
     private int textureVboId;
     private int normalsVboId;
     private int tangentsVboId;
+    private int previousPositionVboId;
+    private long previousPositionBufferLength;
     private int indicesVboId;
     private Texture texture;
     private Texture textureNormalMap;
 
-    private int inputBufferId;
-    private int outputBufferId;
+    private int positionInBufferId;
+    private int positionOutBufferId;
+    private int velocityInBufferId;
+    private int velocityOutBufferId;
+    private int pointDataBufferId;
+    private int attachmentBufferId;
+    private int restLengthBufferId;
+    private int springCountBufferId; // XPBD
+    private int lambdaBufferId; // XPBD: Lagrange multipliers of the springs, two halves that are read and written alternately
+
+    // masked cloth: the points that are not removed are dispatched as a dense list (see ClothMask)
+    private int activePointBufferId;
+    private int activePointCount; // 0 => not masked, the grid of points is dispatched
+
+    private LongRangeAttachments attachments;
+    private boolean attachmentsEnabled;
 
     private final boolean sphereEnabled;
     private final int normalSign;
@@ -54,6 +140,8 @@ public class MassSpringCloth {
     private final float springConstant;
     private final int width;
     private final int height;
+    private final Vector3f positionOrigin = new Vector3f();
+    private float positionQuantum;
 
     private int count;
 
@@ -72,6 +160,86 @@ public class MassSpringCloth {
      * @throws Exception if the creation of the object fails
      */
     public MassSpringCloth(MassSpringModel massSpringModel, int normalSign, boolean sphereEnabled, float mass, float viscousDamping, Vector3f velocityFluid, float springConstant) throws Exception {
+        this(massSpringModel, normalSign, sphereEnabled, mass, viscousDamping, velocityFluid, springConstant, EStorageMode.FULL);
+    }
+
+    /**
+     * Creates and initializes the cloth object with the given parameters.
+     *
+     * @param massSpringModel model containing the initial positions etc.
+     * @param normalSign      normal orientation \in {-1,1}
+     * @param sphereEnabled   true if sphere collisions are enabled, false otherwise
+     * @param mass            mass of one point
+     * @param viscousDamping  damping constant >= 0, higher damping constant causes more friction
+     * @param velocityFluid   velocity of a viscous fluid like wind or water (used for viscous interaction force)
+     * @param springConstant  spring constant >= 0, higher spring constant makes cloth more stiff
+     * @param storageMode     how the points and the render data are stored on the GPU
+     * @throws Exception if the creation of the object fails
+     */
+    public MassSpringCloth(MassSpringModel massSpringModel, int normalSign, boolean sphereEnabled, float mass, float viscousDamping, Vector3f velocityFluid, float springConstant, EStorageMode storageMode) throws Exception {
+        this(massSpringModel, normalSign, sphereEnabled, mass, viscousDamping, velocityFluid, springConstant, storageMode, ESimulationBackend.GPU);
+    }
+
+    /**
+     * Creates and initializes the cloth object with the given parameters.
+     * With {@link ESimulationBackend#CPU}, the simulate methods only access the {@link CpuClothSolver} and may therefore be called
+     * from another thread than the OpenGL thread (but always from the same thread). Each simulate call publishes the new render data,
+     * render uploads the latest published render data.
+     *
+     * @param massSpringModel model containing the initial positions etc.
+     * @param normalSign      normal orientation \in {-1,1}
+     * @param sphereEnabled   true if sphere collisions are enabled, false otherwise
+     * @param mass            mass of one point
+     * @param viscousDamping  damping constant >= 0, higher damping constant causes more friction
+     * @param velocityFluid   velocity of a viscous fluid like wind or water (used for viscous interaction force)
+     * @param springConstant  spring constant >= 0, higher spring constant makes cloth more stiff
+     * @param storageMode     how the points and the render data are stored on the GPU
+     * @param backend         where the simulation is executed
+     * @throws Exception if the creation of the object fails or the CPU backend is combined with {@link EStorageMode#COMPACT}
+     */
+    public MassSpringCloth(MassSpringModel massSpringModel, int normalSign, boolean sphereEnabled, float mass, float viscousDamping, Vector3f velocityFluid, float springConstant, EStorageMode storageMode, ESimulationBackend backend) throws Exception {
+        this(massSpringModel, normalSign, sphereEnabled, mass, viscousDamping, velocityFluid, springConstant, storageMode, backend, EIntegrator.EXPLICIT_EULER, 1, 1);
+    }
+
+    /**
+     * Creates and initializes the cloth object with the given parameters.
+     * With {@link EIntegrator#XPBD}, the springs are solved as compliant distance constraints (compliance = 1 / springConstant) instead of
+     * the spring forces and the relaxation. {@link #simulateAdaptive(float)} then splits the time into xpbdSubSteps sub-steps with xpbdIterations
+     * Jacobi iterations each. The Lagrange multipliers of the springs are kept across the iterations of a sub-step, i.e. the amount of sub-steps
+     * and iterations trades quality for performance without changing the stiffness.
+     *
+     * @param massSpringModel model containing the initial positions etc.
+     * @param normalSign      normal orientation \in {-1,1}
+     * @param sphereEnabled   true if sphere collisions are enabled, false otherwise
+     * @param mass            mass of one point
+     * @param viscousDamping  damping constant >= 0, higher damping constant causes more friction
+     * @param velocityFluid   velocity of a viscous fluid like wind or water (used for viscous interaction force)
+     * @param springConstant  spring constant >= 0, higher spring constant makes cloth more stiff
+     * @param storageMode     how the points and the render data are stored on the GPU
+     * @param backend         where the simulation is executed
+     * @param integrator      how the forces are integrated ({@link EIntegrator#IMPLICIT_EULER} and {@link EIntegrator#PROJECTIVE_DYNAMICS} only for the CPU backend)
+     * @param xpbdSubSteps    amount of XPBD sub-steps per {@link #simulateAdaptive(float)} call >= 1, only used with {@link EIntegrator#XPBD}
+     * @param xpbdIterations  amount of XPBD constraint iterations per sub-step >= 1, only used with {@link EIntegrator#XPBD}
+     * @throws Exception if the creation of the object fails or the combination of backend, storage mode and integrator is not supported
+     */
+    public MassSpringCloth(MassSpringModel massSpringModel, int normalSign, boolean sphereEnabled, float mass, float viscousDamping, Vector3f velocityFluid, float springConstant, EStorageMode storageMode, ESimulationBackend backend, EIntegrator integrator, int xpbdSubSteps, int xpbdIterations) throws Exception {
+        if (backend == ESimulationBackend.CPU && storageMode == EStorageMode.COMPACT) {
+            throw new Exception("The CPU backend uploads full precision render data, it does not support the compact storage mode");
+        }
+        if (backend == ESimulationBackend.GPU && (integrator == EIntegrator.IMPLICIT_EULER || integrator == EIntegrator.PROJECTIVE_DYNAMICS)) {
+            throw new Exception("Integrator " + integrator + " is only available for the CPU backend");
+        }
+        if (xpbdSubSteps < 1) {
+            throw new Exception("At least one XPBD sub-step is required: " + xpbdSubSteps);
+        }
+        if (xpbdIterations < 1) {
+            throw new Exception("At least one XPBD iteration is required: " + xpbdIterations);
+        }
+        this.storageMode = storageMode;
+        this.backend = backend;
+        this.integrator = integrator;
+        this.xpbdSubSteps = xpbdSubSteps;
+        this.xpbdIterations = xpbdIterations;
         this.normalSign = normalSign;
         this.sphereEnabled = sphereEnabled;
         this.mass = mass;
@@ -91,7 +259,7 @@ public class MassSpringCloth {
      */
     private void init(MassSpringModel massSpringModel) throws Exception {
         shaderProgram = new ShaderProgram();
-        shaderProgram.createVertexShader("shaders/cloth_vert.glsl");
+        shaderProgram.createVertexShader("shaders/cloth_vert.glsl", getStorageDefines());
         shaderProgram.createFragmentShader("shaders/cloth_frag.glsl");
         shaderProgram.link();
         shaderProgram.createUniform("texture_sampler");
@@ -102,43 +270,94 @@ public class MassSpringCloth {
         shaderProgram.createUniform("skyColor");
         shaderProgram.createUniform("lightPosition");
         shaderProgram.createUniform("lightColor");
+        shaderProgram.createUniform("interpolation");
+        if (storageMode == EStorageMode.COMPACT) {
+            shaderProgram.createUniform("positionOrigin");
+            shaderProgram.createUniform("positionQuantum");
+        }
         shaderProgram.unbind();
 
-        createComputeShaderBuffers(massSpringModel);
+        attachments = new LongRangeAttachments(massSpringModel);
+        if (backend == ESimulationBackend.CPU) {
+            cpuSolver = new CpuClothSolver(massSpringModel, normalSign, sphereEnabled, mass, viscousDamping, velocityFluid, springConstant);
+            cpuSolver.setIntegrator(integrator);
+            cpuSolver.setXpbdSubSteps(xpbdSubSteps);
+            cpuSolver.setXpbdIterations(xpbdIterations);
+            int points = width * height;
+            renderStates = new TripleBuffer<>(new ClothRenderState(points), new ClothRenderState(points), new ClothRenderState(points));
+        } else {
+            createComputeShaderBuffers(massSpringModel);
+        }
 
         // VAO
         vaoId = glGenVertexArrays();
         glBindVertexArray(vaoId);
 
-        // vertex position vbo
-        vertexVboId = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
-        glBufferData(GL_ARRAY_BUFFER, massSpringModel.getVertexBufferLengthInBytes(), GL_STATIC_DRAW);
-        glEnableVertexAttribArray(0);
-        glVertexAttribPointer(0, 4, GL_FLOAT, false, 0, 0);
-
-        // texture vbo
-        textureVboId = glGenBuffers();
-        FloatBuffer textureBuffer = BufferUtils.createFloatBuffer(massSpringModel.getTex().length);
-        textureBuffer.put(massSpringModel.getTex()).flip();
-        glBindBuffer(GL_ARRAY_BUFFER, textureVboId);
-        glBufferData(GL_ARRAY_BUFFER, textureBuffer, GL_STATIC_DRAW);
-        glEnableVertexAttribArray(1);
-        glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
+        if (storageMode == EStorageMode.COMPACT) {
+            // the vertex shader decodes the positions of the compute shader input buffer, it is attached in render
+            glEnableVertexAttribArray(0);
 
-        // normal vbo
-        normalsVboId = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, normalsVboId);
-        glBufferData(GL_ARRAY_BUFFER, massSpringModel.getVertexBufferLengthInBytes(), GL_STATIC_DRAW); // vertex buffer length same as normal buffer length
-        glEnableVertexAttribArray(2);
-        glVertexAttribPointer(2, 4, GL_FLOAT, false, 0, 0);
+            // texture coordinates are the static point data of the compute shader
+            glBindBuffer(GL_ARRAY_BUFFER, pointDataBufferId);
+            glEnableVertexAttribArray(1);
+            glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
 
-        // tangent vbo
-        tangentsVboId = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, tangentsVboId);
-        glBufferData(GL_ARRAY_BUFFER, massSpringModel.getVertexBufferLengthInBytes(), GL_STATIC_DRAW); // vertex buffer length same as tangent buffer length
-        glEnableVertexAttribArray(3);
-        glVertexAttribPointer(3, 4, GL_FLOAT, false, 0, 0);
+            // normal and tangent vbo, 10 bit snorm per component
+            long directionBufferLength = width * height * 4L;
+            normalsVboId = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, normalsVboId);
+            glBufferData(GL_ARRAY_BUFFER, directionBufferLength, GL_STATIC_DRAW);
+            glEnableVertexAttribArray(2);
+            glVertexAttribPointer(2, 4, GL_INT_2_10_10_10_REV, true, 0, 0);
+
+            tangentsVboId = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, tangentsVboId);
+            glBufferData(GL_ARRAY_BUFFER, directionBufferLength, GL_STATIC_DRAW);
+            glEnableVertexAttribArray(3);
+            glVertexAttribPointer(3, 4, GL_INT_2_10_10_10_REV, true, 0, 0);
+        } else {
+            // vertex position vbo
+            vertexVboId = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
+            glBufferData(GL_ARRAY_BUFFER, massSpringModel.getVertexBufferLengthInBytes(), GL_STATIC_DRAW);
+            glEnableVertexAttribArray(0);
+            glVertexAttribPointer(0, 4, GL_FLOAT, false, 0, 0);
+
+            // texture vbo
+            textureVboId = glGenBuffers();
+            FloatBuffer textureBuffer = BufferUtils.createFloatBuffer(massSpringModel.getTex().length);
+            textureBuffer.put(massSpringModel.getTex()).flip();
+            glBindBuffer(GL_ARRAY_BUFFER, textureVboId);
+            glBufferData(GL_ARRAY_BUFFER, textureBuffer, GL_STATIC_DRAW);
+            glEnableVertexAttribArray(1);
+            glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
+
+            // normal vbo
+            normalsVboId = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, normalsVboId);
+            glBufferData(GL_ARRAY_BUFFER, massSpringModel.getVertexBufferLengthInBytes(), GL_STATIC_DRAW); // vertex buffer length same as normal buffer length
+            glEnableVertexAttribArray(2);
+            glVertexAttribPointer(2, 4, GL_FLOAT, false, 0, 0);
+
+            // tangent vbo
+            tangentsVboId = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, tangentsVboId);
+            glBufferData(GL_ARRAY_BUFFER, massSpringModel.getVertexBufferLengthInBytes(), GL_STATIC_DRAW); // vertex buffer length same as tangent buffer length
+            glEnableVertexAttribArray(3);
+            glVertexAttribPointer(3, 4, GL_FLOAT, false, 0, 0);
+        }
+
+        // previous position vbo, copy of the positions before the last simulation step (for interpolation between two steps)
+        previousPositionVboId = glGenBuffers();
+        previousPositionBufferLength = storageMode == EStorageMode.COMPACT ? width * height * 8L : massSpringModel.getVertexBufferLengthInBytes();
+        glBindBuffer(GL_ARRAY_BUFFER, previousPositionVboId);
+        glBufferData(GL_ARRAY_BUFFER, previousPositionBufferLength, GL_DYNAMIC_COPY);
+        glEnableVertexAttribArray(4);
+        if (storageMode == EStorageMode.COMPACT) {
+            glVertexAttribIPointer(4, 2, GL_UNSIGNED_INT, 0, 0);
+        } else {
+            glVertexAttribPointer(4, 4, GL_FLOAT, false, 0, 0);
+        }
 
         // index vbo
         indicesVboId = glGenBuffers();
@@ -156,73 +375,504 @@ public class MassSpringCloth {
         texture = Texture.loadTexture("textures/cloth.png");
         textureNormalMap = Texture.loadTexture("textures/cloth_normal.png");
 
-        computeProgram = new ComputeShaderProgram();
-        computeProgram.createComputeShader("shaders/cloth_compute.glsl");
-        computeProgram.link();
-        computeProgram.initProgram();
-        computeProgram.createUniform("time");
-        computeProgram.createUniform("normalSign");
-        computeProgram.createUniform("sphereEnabled");
-        computeProgram.createUniform("width");
-        computeProgram.createUniform("height");
-        computeProgram.createUniform("mass");
-        computeProgram.createUniform("viscousDamping");
-        computeProgram.createUniform("velocityFluid");
-        computeProgram.createUniform("springConstant");
-        computeProgram.createUniform("state");
-        computeProgram.unbind();
+        if (backend == ESimulationBackend.CPU) {
+            uploadRenderData(cpuSolver.getRenderDataPosition(), cpuSolver.getRenderDataNormal(), cpuSolver.getRenderDataTangent());
+            savePreviousPositions();
+            return;
+        }
+
+        computeProgram = createComputeProgram();
+
+        useComputeShaderProgram(0, 2); // execute one time that the vbos contain valid data that can be rendered
+        savePreviousPositions();
+    }
+
+    /**
+     * Creates a variant of the compute shader and its uniforms (see {@link #getComputeUniforms(EStorageMode, EIntegrator, String...)}).
+     *
+     * @param defines macros that select the variant
+     * @return compute shader program
+     * @throws Exception if the creation of the program fails
+     */
+    private ComputeShaderProgram createComputeProgram(String... defines) throws Exception {
+        ComputeShaderProgram program = new ComputeShaderProgram();
+        program.createComputeShader("shaders/cloth_compute.glsl", getComputeDefines(storageMode, integrator, defines));
+        program.link();
+        program.initProgram();
+        for (String uniform : getComputeUniforms(storageMode, integrator, defines)) {
+            program.createUniform(uniform);
+        }
+        return program;
+    }
+
+    /**
+     * @param storageMode storage mode of the cloth
+     * @param integrator  integrator of the cloth
+     * @param defines     macros that select the execution mode (none, FUSED or TILED)
+     * @return all macros of the variant of the compute shader
+     */
+    static String[] getComputeDefines(EStorageMode storageMode, EIntegrator integrator, String... defines) {
+        List<String> allDefines = new ArrayList<>(Arrays.asList(defines));
+        allDefines.add(MassSpringModel.getMaxStretchDefine());
+        if (storageMode == EStorageMode.COMPACT) {
+            allDefines.add("COMPACT");
+        }
+        if (integrator == EIntegrator.XPBD) {
+            allDefines.add("XPBD");
+        }
+        return allDefines.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the uniforms of a variant of the compute shader. Every uniform must be read by the variant, the compiler removes
+     * unused uniforms and their creation would fail.
+     *
+     * @param storageMode storage mode of the cloth
+     * @param integrator  integrator of the cloth
+     * @param defines     macros that select the execution mode (none, FUSED or TILED)
+     * @return names of the uniforms
+     */
+    static List<String> getComputeUniforms(EStorageMode storageMode, EIntegrator integrator, String... defines) {
+        List<String> uniforms = new ArrayList<>(Arrays.asList("time", "normalSign", "sphereEnabled", "width", "height", "mass",
+                "viscousDamping", "velocityFluid", "springConstant", "attachmentsEnabled", "masked"));
+        if (!Arrays.asList(defines).contains("TILED")) {
+            uniforms.add("activePointCount");
+        }
+        if (storageMode == EStorageMode.COMPACT) {
+            uniforms.add("positionOrigin");
+            uniforms.add("positionQuantum");
+        }
+        if (Arrays.asList(defines).contains("FUSED")) {
+            uniforms.add("iterations");
+            // the fused shader reads the amount of passes of the relaxation or the constraint iterations
+            uniforms.add(integrator == EIntegrator.XPBD ? "constraintIterations" : "relaxationColors");
+            return uniforms;
+        }
+        uniforms.addAll(Arrays.asList("state", "relaxationColor", "sleepingEnabled", "tileCountX", "sleepDistance", "stepParity"));
+        if (integrator == EIntegrator.XPBD) {
+            uniforms.add("constraintIteration");
+        } else {
+            uniforms.add("recordExcess"); // only read by the relaxation, XPBD solves constraints instead
+        }
+        return uniforms;
+    }
+
+    /**
+     * @return macros of the compute and vertex shader that select the storage mode
+     */
+    private String[] getStorageDefines() {
+        return storageMode == EStorageMode.COMPACT ? new String[]{"COMPACT"} : new String[0];
+    }
+
+    /**
+     * Sets how the stages of the simulation are dispatched.
+     * {@link EExecutionMode#FUSED} executes all iterations of one {@link #simulate(int)} call in one dispatch.
+     * It avoids the overhead of 2 * iterations + 1 dispatches and memory barriers, but all points are processed by a single workgroup.
+     * Therefore, it is only available for cloths with at most {@link #MAX_FUSED_POINTS} points (active points of a masked cloth).
+     * {@link EExecutionMode#TILED} loads the positions of each workgroup tile (and a halo of two points) into shared memory once per dispatch
+     * instead of reading about 20 positions per point from the input buffer.
+     *
+     * @param executionMode execution mode
+     * @throws Exception if the cloth is too large for the execution mode or the creation of the compute shader fails
+     */
+    public void setExecutionMode(EExecutionMode executionMode) throws Exception {
+        if (backend == ESimulationBackend.CPU) {
+            throw new Exception("Execution modes are only available for the GPU backend");
+        }
+        if (executionMode == EExecutionMode.FUSED) {
+            int points = activePointCount > 0 ? activePointCount : width * height;
+            if (points > MAX_FUSED_POINTS) {
+                throw new Exception("Cloth is too large for the fused execution mode: " + points + " > " + MAX_FUSED_POINTS + " points");
+            }
+            if (fusedComputeProgram == null) {
+                fusedComputeProgram = createComputeProgram("FUSED");
+            }
+        } else if (executionMode == EExecutionMode.TILED && tiledComputeProgram == null) {
+            tiledComputeProgram = createComputeProgram("TILED");
+        }
+        if (sleepingEnabled && executionMode != this.executionMode) {
+            resetSleepingTiles(); // the tiled shader has larger workgroups, i.e. other tiles
+        }
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Sets how the relaxation stage updates the points. {@link ERelaxationMode#GAUSS_SEIDEL} executes one relaxation pass per color
+     * (see {@link #RELAXATION_COLORS}), thus a correction reaches more than one point per iteration and tall cloths need fewer
+     * iterations to limit the strain. The pass of a color updates only its points in the input buffer in place, the four passes together
+     * write every point once like a Jacobi pass and the buffers are not swapped.
+     * {@link ERelaxationMode#CONVERGENT} repeats rounds of Gauss-Seidel passes until the largest over-extension is within the tolerance
+     * (see {@link #setRelaxationTolerance(float, int)}). On the GPU, these passes are dispatched indirectly, the workgroup count is set to zero by a control shader after the round that converged. Therefore, the
+     * over-extension is never read back, the remaining rounds are still submitted but do not execute any invocation.
+     * {@link EExecutionMode#FUSED} executes one round of Gauss-Seidel passes instead.
+     * {@link EIntegrator#XPBD} and {@link EIntegrator#PROJECTIVE_DYNAMICS} do not use the relaxation and ignore the mode.
+     *
+     * @param relaxationMode relaxation mode
+     * @throws Exception if the cloth needs split dispatches (too large for indirect dispatches) or the creation of the control shader fails
+     */
+    public void setRelaxationMode(ERelaxationMode relaxationMode) throws Exception {
+        if (backend == ESimulationBackend.CPU) {
+            cpuSolver.setRelaxationMode(relaxationMode);
+        } else if (relaxationMode == ERelaxationMode.CONVERGENT && relaxationControlProgram == null) {
+            boolean singleListDispatch = computeProgram.isSingleDispatch(computeProgram.getNumGroupsLinear(activePointCount) * computeProgram.getWorkGroupSizeX(), 1);
+            if (!computeProgram.isSingleDispatch(width, height) || !singleListDispatch) {
+                throw new Exception("Cloth is too large for the convergent relaxation: " + width + "x" + height + " points need split dispatches");
+            }
+            relaxationControlProgram = new ComputeShaderProgram();
+            relaxationControlProgram.createComputeShader("shaders/relaxation_control.glsl");
+            relaxationControlProgram.link();
+            relaxationControlProgram.initProgram();
+            for (String uniform : RELAXATION_CONTROL_UNIFORMS) {
+                relaxationControlProgram.createUniform(uniform);
+            }
+            relaxationControlBufferId = createComputeShaderBuffer(new int[]{0});
+            dispatchIndirectBufferId = createComputeShaderBuffer(new int[3]);
+        }
+        this.relaxationMode = relaxationMode;
+    }
+
+    /**
+     * Enables or disables the long-range attachments (see {@link LongRangeAttachments}). The attachments are calculated from the locked
+     * points of the model when the cloth is created. After the integration of the forces, every point is moved back towards its nearest
+     * locked point if it is further away than the springs allow. Thus, the relaxation only has to correct the local over-extension
+     * and a single relaxation pass is enough for tall cloths that are pinned at the top.
+     * {@link EIntegrator#PROJECTIVE_DYNAMICS} ignores the attachments.
+     *
+     * @param attachmentsEnabled true to apply the attachments
+     */
+    public void setLongRangeAttachmentsEnabled(boolean attachmentsEnabled) {
+        this.attachmentsEnabled = attachmentsEnabled;
+        if (backend == ESimulationBackend.CPU) {
+            cpuSolver.setLongRangeAttachments(attachmentsEnabled ? attachments : null);
+        }
+    }
+
+    /**
+     * Enables sleeping tiles. A tile is the block of points of one workgroup of the compute shader. A tile falls asleep if none of its points
+     * has moved further than the sleep distance from its rest position for the given amount of steps (see {@link #setSleepThresholds(float, int)}),
+     * it wakes up if a neighbor tile moves, the wind changes or {@link #wake()} is called. On the GPU, a control shader decides before every
+     * iteration which tiles are executed and writes them into the workgroup list of the indirect dispatches of the iteration, thus the state
+     * of the tiles is never read back and a cloth at rest only costs one small dispatch per iteration. The CPU backend only executes the rows
+     * of the tiles that are awake. {@link EExecutionMode#FUSED}, {@link EIntegrator#IMPLICIT_EULER} and {@link EIntegrator#PROJECTIVE_DYNAMICS}
+     * always execute all points.
+     *
+     * @param sleepingEnabled true to let tiles at rest sleep
+     * @throws Exception if the cloth has too many tiles for an indirect dispatch or the creation of the control shader fails
+     */
+    public void setSleepingEnabled(boolean sleepingEnabled) throws Exception {
+        if (backend == ESimulationBackend.CPU) {
+            cpuSolver.setSleepingEnabled(sleepingEnabled);
+            return;
+        }
+        if (sleepingEnabled && sleepControlProgram == null) {
+            // the default shader has the smallest workgroups, i.e. the most tiles
+            int tileCount = computeProgram.getNumGroupsX(width) * computeProgram.getNumGroupsY(height);
+            if (!computeProgram.isSingleDispatch(tileCount * computeProgram.getWorkGroupSizeX(), 1)) {
+                throw new Exception("Cloth is too large for sleeping tiles: " + tileCount + " tiles exceed the workgroup count of an indirect dispatch");
+            }
+            sleepControlProgram = new ComputeShaderProgram();
+            sleepControlProgram.createComputeShader("shaders/sleep_control.glsl");
+            sleepControlProgram.link();
+            sleepControlProgram.initProgram();
+            for (String uniform : SLEEP_CONTROL_UNIFORMS) {
+                sleepControlProgram.createUniform(uniform);
+            }
+            tileBufferId = createComputeShaderBuffer(tileCount * 16L);
+            int[] activeTiles = new int[3 + tileCount];
+            activeTiles[1] = 1; // numGroupsY and numGroupsZ of the indirect dispatches, the control shader only writes numGroupsX
+            activeTiles[2] = 1;
+            activeTileBufferId = createComputeShaderBuffer(activeTiles);
+            restPositionBufferId = createComputeShaderBuffer(width * height * 16L);
+        }
+        if (sleepingEnabled && !this.sleepingEnabled) {
+            resetSleepingTiles();
+        }
+        this.sleepingEnabled = sleepingEnabled;
+    }
+
+    /**
+     * Wakes up all tiles and clears the rest positions, e.g. because the tiles have changed or the points were executed without sleeping tiles.
+     */
+    private void resetSleepingTiles() {
+        int[] zero = {0};
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, tileBufferId);
+        glClearBufferData(GL_SHADER_STORAGE_BUFFER, GL_R32UI, GL_RED_INTEGER, GL_UNSIGNED_INT, zero); // all tiles awake, nothing moved
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, restPositionBufferId);
+        glClearBufferData(GL_SHADER_STORAGE_BUFFER, GL_R32UI, GL_RED_INTEGER, GL_UNSIGNED_INT, zero); // w = 0 => rest position not set
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        stepParity = 0;
+    }
+
+    /**
+     * Sets when a tile falls asleep. The velocities are not suitable for this test, because the relaxation clears them for over-extended springs
+     * while gravity accelerates the points again in every step. Thus, a tile sleeps if it moves slower than distance per steps.
+     *
+     * @param distance distance a point may move away from its rest position without counting as movement
+     * @param steps    amount of steps a tile must not move until it falls asleep >= 1
+     */
+    public void setSleepThresholds(float distance, int steps) {
+        this.sleepDistance = distance;
+        this.sleepSteps = steps;
+        if (backend == ESimulationBackend.CPU) {
+            cpuSolver.setSleepThresholds(distance, steps);
+        }
+    }
+
+    /**
+     * Wakes up all sleeping tiles, e.g. if the cloth has been disturbed from outside (a moving collider).
+     */
+    public void wake() {
+        wakeRequested = true;
+        if (backend == ESimulationBackend.CPU) {
+            cpuSolver.wake();
+        }
+    }
 
-        useComputeShaderProgram(0, -1); // execute one time that the vbos contain valid data that can be rendered
-        // switch input and output buffer for next iteration
-        int store = outputBufferId;
-        outputBufferId = inputBufferId;
-        inputBufferId = store;
+    /**
+     * Sets the amount of iterations {@link #simulateAdaptive(float)} executes at least (at most {@link TimeStepEstimator#MAX_SUB_STEPS}).
+     * Additional iterations shorten the time step, thus they only improve the accuracy, the stable time step is never exceeded.
+     *
+     * @param minIterations amount of iterations (0 => as few as the stable time step allows)
+     */
+    public void setMinIterations(int minIterations) {
+        this.minIterations = minIterations;
+        if (backend == ESimulationBackend.CPU) {
+            cpuSolver.setMinIterations(minIterations);
+        }
     }
 
     /**
-     * Creates the input and output buffer of the compute shader.
+     * Sets when the {@link ERelaxationMode#CONVERGENT} relaxation stops.
+     *
+     * @param tolerance largest over-extension relative to the maximum resting length (10% longer than the resting length) that is accepted
+     * @param maxRounds maximum amount of rounds (one pass per color) per iteration >= 1
+     */
+    public void setRelaxationTolerance(float tolerance, int maxRounds) {
+        this.relaxationTolerance = tolerance;
+        this.maxRelaxationRounds = maxRounds;
+        if (backend == ESimulationBackend.CPU) {
+            cpuSolver.setRelaxationTolerance(tolerance, maxRounds);
+        }
+    }
+
+    /**
+     * @return amount of relaxation passes per iteration, 1 for Jacobi and {@link #RELAXATION_COLORS} for Gauss-Seidel
+     */
+    private int getRelaxationPasses() {
+        return relaxationMode != ERelaxationMode.JACOBI && integrator != EIntegrator.XPBD ? RELAXATION_COLORS : 1;
+    }
+
+    /**
+     * Creates the input and output buffers of the compute shader. Positions and velocities are stored in separate buffers,
+     * each with an input and an output buffer that are switched after every stage. The static point data (locked, uv) and the
+     * rest lengths of the springs are only read by the compute shader and uploaded once.
+     * {@link EStorageMode#COMPACT} encodes the positions as fixed point numbers (the locked flag is stored in the highest bit)
+     * and the velocities as half floats in a single buffer that is updated in place.
      *
      * @param model model containing the initial positions etc.
+     * @throws Exception if the cloth is too large for the shader storage buffers of the GPU
      */
-    private void createComputeShaderBuffers(MassSpringModel model) {
-        // input buffer
-        {
-            FloatBuffer verticesBuffer = BufferUtils.createFloatBuffer(model.getPoints().length); // put initial data in the input buffer
-            verticesBuffer.put(model.getPoints()).flip();
-            inputBufferId = glGenBuffers();
-            glBindBuffer(GL_ARRAY_BUFFER, inputBufferId);
-            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, inputBufferId);
-            glBufferData(GL_ARRAY_BUFFER, verticesBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(0);
-            glEnableVertexAttribArray(1);
-            glEnableVertexAttribArray(2);
-            glVertexAttribPointer(0, 4, GL_FLOAT, false, 0, 0);
-            glVertexAttribPointer(1, 4, GL_FLOAT, false, 0, 0);
-            glVertexAttribPointer(2, 4, GL_FLOAT, false, 0, 0);
-            glDisableVertexAttribArray(0);
-            glDisableVertexAttribArray(1);
-            glDisableVertexAttribArray(2);
-            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, 0);
-            glBindBuffer(GL_ARRAY_BUFFER, 0);
+    private void createComputeShaderBuffers(MassSpringModel model) throws Exception {
+        long maxBlockSize = glGetInteger64(GL_MAX_SHADER_STORAGE_BLOCK_SIZE);
+        long bufferLength = Math.max(storageMode == EStorageMode.COMPACT ? width * height * 8L : model.getPointBufferLengthInBytes(), model.getRestLengths().length * 4L);
+        if (bufferLength > maxBlockSize) {
+            throw new Exception("Cloth is too large: " + bufferLength + " bytes per buffer, but the GPU supports at most " + maxBlockSize + " bytes per shader storage block");
         }
-        // output buffer
-        {
-            outputBufferId = glGenBuffers();
-            glBindBuffer(GL_ARRAY_BUFFER, outputBufferId);
-            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, outputBufferId);
-            glBufferData(GL_ARRAY_BUFFER, model.getPointsBufferLengthInBytes(), GL_STATIC_DRAW); // 4 times 4 byte floats per vertex
-            glEnableVertexAttribArray(0);
-            glEnableVertexAttribArray(1);
-            glEnableVertexAttribArray(2);
-            glVertexAttribPointer(0, 4, GL_FLOAT, false, 0, 0);
-            glVertexAttribPointer(1, 4, GL_FLOAT, false, 0, 0);
-            glVertexAttribPointer(2, 4, GL_FLOAT, false, 0, 0);
-            glDisableVertexAttribArray(0);
-            glDisableVertexAttribArray(1);
-            glDisableVertexAttribArray(2);
-            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, 0);
-            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        if (storageMode == EStorageMode.COMPACT) {
+            initPositionEncoding(model.getPositions());
+            int[] positions = encodePositions(model.getPositions(), model.getPointData());
+            positionInBufferId = createComputeShaderBuffer(positions); // put initial data in the input buffers
+            // the removed points of a masked cloth are never written, both buffers keep their initial values
+            positionOutBufferId = model.isMasked() ? createComputeShaderBuffer(positions) : createComputeShaderBuffer(positions.length * 4L);
+            velocityInBufferId = createComputeShaderBuffer(encodeVelocities(model.getVelocities()));
+
+            float[] pointData = model.getPointData();
+            float[] textureCoordinates = new float[width * height * 2];
+            for (int i = 0; i < width * height; i++) {
+                textureCoordinates[i * 2] = pointData[i * 4 + 1];
+                textureCoordinates[i * 2 + 1] = pointData[i * 4 + 2];
+            }
+            pointDataBufferId = createComputeShaderBuffer(textureCoordinates, GL_STATIC_DRAW);
+            attachmentBufferId = createComputeShaderBuffer(attachments.toBufferData());
+            restLengthBufferId = createComputeShaderBuffer(model.getRestLengths(), GL_STATIC_DRAW);
+            createConstraintBuffers(model);
+            createActivePointBuffer(model);
+            return;
+        }
+        attachmentBufferId = createComputeShaderBuffer(attachments.toBufferData());
+        restLengthBufferId = createComputeShaderBuffer(model.getRestLengths(), GL_STATIC_DRAW);
+        positionInBufferId = createComputeShaderBuffer(model.getPositions(), GL_DYNAMIC_COPY); // put initial data in the input buffers
+        velocityInBufferId = createComputeShaderBuffer(model.getVelocities(), GL_DYNAMIC_COPY);
+        if (model.isMasked()) {
+            // the removed points are never written, both buffers keep their initial values
+            positionOutBufferId = createComputeShaderBuffer(model.getPositions(), GL_DYNAMIC_COPY);
+            velocityOutBufferId = createComputeShaderBuffer(model.getVelocities(), GL_DYNAMIC_COPY);
+        } else {
+            positionOutBufferId = createComputeShaderBuffer(model.getPointBufferLengthInBytes());
+            velocityOutBufferId = createComputeShaderBuffer(model.getPointBufferLengthInBytes());
+        }
+        pointDataBufferId = createComputeShaderBuffer(model.getPointData(), GL_STATIC_DRAW);
+        createConstraintBuffers(model);
+        createActivePointBuffer(model);
+    }
+
+    /**
+     * Uploads the amount of springs of each point and allocates the Lagrange multipliers of the springs, only for {@link EIntegrator#XPBD}.
+     *
+     * @param model model containing the springs
+     */
+    private void createConstraintBuffers(MassSpringModel model) {
+        if (integrator != EIntegrator.XPBD) {
+            return;
+        }
+        springCountBufferId = createComputeShaderBuffer(model.getSpringCounts());
+        lambdaBufferId = createComputeShaderBuffer(model.getRestLengths().length * 2 * 4L);
+    }
+
+    /**
+     * Uploads the list of the active points of a masked cloth. The compute shader executes one invocation per active point
+     * instead of one per point of the grid, the points stay at their grid index, i.e. the neighbors are still addressed by the index.
+     *
+     * @param model model containing the active points
+     */
+    private void createActivePointBuffer(MassSpringModel model) {
+        if (!model.isMasked()) {
+            return;
+        }
+        activePointCount = model.getActivePoints().length;
+        activePointBufferId = createComputeShaderBuffer(model.getActivePoints());
+    }
+
+    /**
+     * Chooses the origin and the quantum of the fixed point positions of {@link EStorageMode#COMPACT}.
+     * The origin is the center of the initial bounding box. The representable range around the origin is large enough
+     * for the cloth to swing around its initial bounding box and to fall down to the ground, it is rounded up to a power of two.
+     *
+     * @param positions initial positions, 4 floats per point
+     */
+    private void initPositionEncoding(float[] positions) {
+        Vector3f min = new Vector3f(Float.MAX_VALUE);
+        Vector3f max = new Vector3f(-Float.MAX_VALUE);
+        for (int i = 0; i < width * height; i++) {
+            min.min(new Vector3f(positions[i * 4], positions[i * 4 + 1], positions[i * 4 + 2]));
+            max.max(new Vector3f(positions[i * 4], positions[i * 4 + 1], positions[i * 4 + 2]));
+        }
+        max.add(min, positionOrigin).mul(0.5f);
+        Vector3f halfExtent = max.sub(min).mul(0.5f);
+        float range = Math.max(halfExtent.x, Math.max(halfExtent.y, halfExtent.z)) + MassSpringModel.MAX_STRETCH * (width + height);
+        range = Math.max(range, Math.abs(positionOrigin.y)); // the cloth can fall down to the ground (y = 0)
+        positionQuantum = (float) Math.pow(2, Math.getExponent(range) + 1) / (POSITION_MAX + 1);
+    }
+
+    private int quantizePosition(float offset) {
+        return (int) Math.max(-POSITION_MAX - 1, Math.min(POSITION_MAX, Math.rint(offset / positionQuantum))) & 0x1FFFFF;
+    }
+
+    /**
+     * Encodes the positions like the compute shader: 21 bit fixed point per component relative to the origin,
+     * x = bits 0-20 of the first int, y = bits 21-31 of the first and 0-9 of the second int, z = bits 10-30 of the second int, locked = bit 31 of the second int.
+     *
+     * @param positions positions, 4 floats per point
+     * @param pointData static point data, 4 floats per point (locked, uv, padding)
+     * @return encoded positions, 2 ints per point
+     */
+    private int[] encodePositions(float[] positions, float[] pointData) {
+        int[] encoded = new int[width * height * 2];
+        for (int i = 0; i < width * height; i++) {
+            int x = quantizePosition(positions[i * 4] - positionOrigin.x);
+            int y = quantizePosition(positions[i * 4 + 1] - positionOrigin.y);
+            int z = quantizePosition(positions[i * 4 + 2] - positionOrigin.z);
+            encoded[i * 2] = x | (y << 21);
+            encoded[i * 2 + 1] = (y >>> 11) | (z << 10) | (pointData[i * 4] != 0 ? 0x80000000 : 0);
+        }
+        return encoded;
+    }
+
+    /**
+     * Encodes the velocities like the compute shader: half floats, xy in the first int, z in the second int.
+     *
+     * @param velocities velocities, 4 floats per point
+     * @return encoded velocities, 2 ints per point
+     */
+    private int[] encodeVelocities(float[] velocities) {
+        int[] encoded = new int[width * height * 2];
+        for (int i = 0; i < width * height; i++) {
+            encoded[i * 2] = toHalfFloat(velocities[i * 4]) | (toHalfFloat(velocities[i * 4 + 1]) << 16);
+            encoded[i * 2 + 1] = toHalfFloat(velocities[i * 4 + 2]);
+        }
+        return encoded;
+    }
+
+    /**
+     * Converts a float to a half float (round to nearest, values out of range become infinity).
+     *
+     * @param value float value
+     * @return bits of the half float
+     */
+    private static int toHalfFloat(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent >= 31) {
+            return sign | 0x7C00;
+        }
+        if (exponent <= 0) { // subnormal
+            if (exponent < -10) {
+                return sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            return sign | ((mantissa >> shift) + ((mantissa >> (shift - 1)) & 1));
         }
+        return (sign | (exponent << 10) | (mantissa >> 13)) + ((mantissa >> 12) & 1); // a carry into the exponent is correct rounding
+    }
+
+    /**
+     * Creates a shader storage buffer with the given content.
+     *
+     * @param data initial content
+     * @return buffer id
+     */
+    static int createComputeShaderBuffer(int[] data) {
+        IntBuffer dataBuffer = BufferUtils.createIntBuffer(data.length);
+        dataBuffer.put(data).flip();
+        int bufferId = glGenBuffers();
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferId);
+        glBufferData(GL_SHADER_STORAGE_BUFFER, dataBuffer, GL_DYNAMIC_COPY);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        return bufferId;
+    }
+
+    /**
+     * Creates a shader storage buffer with the given content.
+     *
+     * @param data  initial content
+     * @param usage expected usage pattern of the buffer
+     * @return buffer id
+     */
+    static int createComputeShaderBuffer(float[] data, int usage) {
+        FloatBuffer dataBuffer = BufferUtils.createFloatBuffer(data.length);
+        dataBuffer.put(data).flip();
+        int bufferId = glGenBuffers();
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferId);
+        glBufferData(GL_SHADER_STORAGE_BUFFER, dataBuffer, usage);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        return bufferId;
+    }
+
+    /**
+     * Creates an uninitialized shader storage buffer that is written by the compute shader.
+     *
+     * @param size size in bytes
+     * @return buffer id
+     */
+    static int createComputeShaderBuffer(long size) {
+        int bufferId = glGenBuffers();
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferId);
+        glBufferData(GL_SHADER_STORAGE_BUFFER, size, GL_DYNAMIC_COPY);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        return bufferId;
     }
 
     private static final float FOV = (float) Math.toRadians(60.0f);
@@ -230,13 +880,29 @@ public class MassSpringCloth {
     private static final float Z_FAR = 1000.0f;
 
     /**
-     * Renders the cloth.
+     * Renders the cloth with the positions after the last simulation step.
      *
      * @param window window of the application
      * @param camera camera of the scene
      * @param light  light in the scene
      */
     public void render(Window window, ACamera camera, Light light) {
+        render(window, camera, light, 1);
+    }
+
+    /**
+     * Renders the cloth. The positions are interpolated between the positions before and after the last simulation step,
+     * which allows to render at a different rate than the simulation runs.
+     *
+     * @param window        window of the application
+     * @param camera        camera of the scene
+     * @param light         light in the scene
+     * @param interpolation 0 => positions before the last simulation step, 1 => positions after the last simulation step
+     */
+    public void render(Window window, ACamera camera, Light light, float interpolation) {
+        if (backend == ESimulationBackend.CPU) {
+            interpolation = uploadPublishedRenderState(); // the simulation thread runs at its own rate
+        }
         shaderProgram.bind();
 
         shaderProgram.setUniform("texture_sampler", 0);
@@ -247,6 +913,7 @@ public class MassSpringCloth {
         shaderProgram.setUniform("skyColor", new Vector3f(Window.RED, Window.GREEN, Window.BLUE));
         shaderProgram.setUniform("lightPosition", light.getPosition());
         shaderProgram.setUniform("lightColor", light.getColor());
+        shaderProgram.setUniform("interpolation", interpolation);
 
         glActiveTexture(GL_TEXTURE0); // cloth texture
         texture.bind();
@@ -254,10 +921,18 @@ public class MassSpringCloth {
         textureNormalMap.bind();
 
         glBindVertexArray(vaoId);
+        if (storageMode == EStorageMode.COMPACT) {
+            shaderProgram.setUniform("positionOrigin", positionOrigin);
+            shaderProgram.setUniform("positionQuantum", positionQuantum);
+            glBindBuffer(GL_ARRAY_BUFFER, positionInBufferId); // the current input buffer contains the positions after the last iteration
+            glVertexAttribIPointer(0, 2, GL_UNSIGNED_INT, 0, 0);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
         glEnableVertexAttribArray(0);
         glEnableVertexAttribArray(1);
         glEnableVertexAttribArray(2);
         glEnableVertexAttribArray(3);
+        glEnableVertexAttribArray(4);
 
         glDrawElements(GL_TRIANGLES, count, GL_UNSIGNED_INT, 0);
 
@@ -265,6 +940,7 @@ public class MassSpringCloth {
         glDisableVertexAttribArray(1);
         glDisableVertexAttribArray(2);
         glDisableVertexAttribArray(3);
+        glDisableVertexAttribArray(4);
         glBindVertexArray(0);
         texture.unbind();
         textureNormalMap.unbind();
@@ -273,81 +949,559 @@ public class MassSpringCloth {
     }
 
     /**
-     * Executes the simulation (the compute shader).
+     * Executes the simulation (the compute shader) with a time step of 0.01.
      *
      * @param iterations how often the simulation is executed
      */
     public void simulate(int iterations) {
-        float timeStep = 0.01f; // maybe make this depend on the timeSinceLastFrame
+        simulate(iterations, 0.01f);
+    }
+
+    /**
+     * Executes the simulation for the given (simulated) time with as few iterations as possible.
+     * The time is split into equally long time steps that do not exceed the stable time step (see {@link TimeStepEstimator}).
+     * If more than {@link TimeStepEstimator#MAX_SUB_STEPS} iterations would be needed, only that many stable steps are executed.
+     * With {@link EIntegrator#XPBD}, the time is always split into the xpbdSubSteps of the constructor.
+     * In both cases, at least {@link #setMinIterations(int) minIterations} iterations are executed.
+     *
+     * @param elapsedTime time that should be simulated
+     * @return amount of executed iterations
+     */
+    public int simulateAdaptive(float elapsedTime) {
+        if (backend == ESimulationBackend.CPU) {
+            int iterations = cpuSolver.simulateAdaptive(elapsedTime);
+            if (iterations > 0) {
+                publishRenderState();
+            }
+            return iterations;
+        }
+        if (integrator == EIntegrator.XPBD) {
+            if (elapsedTime <= 0) {
+                return 0;
+            }
+            int iterations = Math.max(xpbdSubSteps, minIterations);
+            simulate(iterations, elapsedTime / iterations);
+            return iterations;
+        }
+        float stableTimeStep = TimeStepEstimator.getStableTimeStep(mass, springConstant, viscousDamping);
+        int iterations = TimeStepEstimator.getSubSteps(elapsedTime, stableTimeStep, minIterations);
+        if (iterations > 0) {
+            simulate(iterations, Math.min(elapsedTime / iterations, stableTimeStep));
+        }
+        return iterations;
+    }
+
+    /**
+     * Executes the simulation (the compute shader).
+     *
+     * @param iterations how often the simulation is executed
+     * @param timeStep   simulation time step of one iteration
+     */
+    public void simulate(int iterations, float timeStep) {
+        if (backend == ESimulationBackend.CPU) {
+            if (iterations > 0) {
+                cpuSolver.simulate(iterations, timeStep);
+                publishRenderState();
+            }
+            return;
+        }
+        if (iterations > 0) {
+            savePreviousPositions();
+        }
+        if (executionMode == EExecutionMode.FUSED) {
+            if (iterations > 0) {
+                useFusedComputeShaderProgram(timeStep, iterations);
+            }
+            return;
+        }
+        if (!velocityFluid.equals(lastVelocityFluid)) {
+            wakeRequested = true; // the wind reaches all tiles
+            lastVelocityFluid.set(velocityFluid);
+        }
         for (int i = 0; i < iterations; i++) {
+            if (sleepingEnabled) {
+                stepParity ^= 1; // the movement of the last iteration is kept for the control shader
+                updateActiveTiles(false);
+            }
             useComputeShaderProgram(timeStep, 0); // apply forces
-            // switch input and output buffer for next iteration
-            int store = outputBufferId;
-            outputBufferId = inputBufferId;
-            inputBufferId = store;
+            swapComputeBuffers(); // switch input and output buffers for next iteration
+
+            if (integrator == EIntegrator.XPBD) {
+                for (int k = 0; k < xpbdIterations; k++) {
+                    constraintIteration = k;
+                    useComputeShaderProgram(timeStep, 1); // solve the constraints, one Jacobi iteration per pass
+                    swapComputeBuffers();
+                }
+                continue;
+            }
+            if (relaxationMode == ERelaxationMode.CONVERGENT) {
+                useConvergentRelaxation(timeStep); // in place, no swap
+                continue;
+            }
+            if (getRelaxationPasses() == 1) {
+                useComputeShaderProgram(timeStep, 1); // relaxation, adjust too long joints, make the model more stable
+                swapComputeBuffers();
+                continue;
+            }
+            for (int color = 0; color < RELAXATION_COLORS; color++) {
+                useComputeShaderProgram(timeStep, 1, color); // Gauss-Seidel: one color per pass in place, no swap
+            }
+        }
+        if (iterations > 0) {
+            if (sleepingEnabled) {
+                updateActiveTiles(true); // tiles that were asleep in all iterations keep their render data
+            }
+            useComputeShaderProgram(0, 2); // write the vbos only once after the last relaxation
+        }
+    }
+
+    /**
+     * Executes the control shader of the sleeping tiles. Afterwards, the active tile buffer contains the arguments of the indirect dispatches
+     * and the tiles of the workgroups.
+     *
+     * @param renderTiles true => the tiles that were executed since the last render pass, false => the tiles of the next iteration
+     */
+    private void updateActiveTiles(boolean renderTiles) {
+        ComputeShaderProgram program = executionMode == EExecutionMode.TILED ? tiledComputeProgram : computeProgram;
+        int tileCountX = program.getNumGroupsX(width);
+        int tileCountY = program.getNumGroupsY(height);
+
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, activeTileBufferId);
+        // numGroupsX = 0, the control shader appends the tiles (null => cleared to zero without uploading data)
+        glClearBufferSubData(GL_SHADER_STORAGE_BUFFER, GL_R32UI, 0, 4, GL_RED_INTEGER, GL_UNSIGNED_INT, (IntBuffer) null);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+
+        sleepControlProgram.bind();
+        sleepControlProgram.setUniform("tileCountX", tileCountX);
+        sleepControlProgram.setUniform("tileCountY", tileCountY);
+        sleepControlProgram.setUniform("stepParity", stepParity);
+        sleepControlProgram.setUniform("sleepSteps", sleepSteps);
+        sleepControlProgram.setUniform("wakeAll", wakeRequested && !renderTiles ? 1 : 0);
+        sleepControlProgram.setUniform("renderTiles", renderTiles ? 1 : 0);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 12, tileBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 13, activeTileBufferId);
+
+        sleepControlProgram.dispatchWorkGroups((tileCountX * tileCountY + 63) / 64, 1);
+        // the next dispatches read the workgroup count and the tiles, the convergent relaxation copies the workgroup count
+        glMemoryBarrier(GL_COMMAND_BARRIER_BIT | GL_SHADER_STORAGE_BARRIER_BIT | GL_BUFFER_UPDATE_BARRIER_BIT);
+
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 12, 0);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 13, 0);
+        sleepControlProgram.unbind();
+        if (!renderTiles) {
+            wakeRequested = false;
+        }
+    }
+
+    /**
+     * Copies the render data of the CPU solver into the back slot of the triple buffer and publishes it. Called on the simulation thread.
+     */
+    private void publishRenderState() {
+        renderStates.getBack().set(cpuSolver);
+        renderStates.publish();
+    }
+
+    /**
+     * Uploads the latest published render data of the CPU solver if there is a new one. Called on the OpenGL thread.
+     * The positions are interpolated over the time between the publication of the last two states, i.e. the rendered cloth
+     * is one simulation step behind, but moves smoothly even if the simulation runs at a lower rate than the rendering.
+     *
+     * @return interpolation factor between the previous and the current positions
+     */
+    private float uploadPublishedRenderState() {
+        ClothRenderState state = renderStates.acquire();
+        long now = System.nanoTime();
+        if (state != null) {
+            savePreviousPositions();
+            uploadRenderData(state.position, state.normal, state.tangent);
+            if (renderStateTime != 0) {
+                renderStateDuration = state.time - renderStateTime;
+            }
+            renderStateTime = state.time;
+            renderStateUploadTime = now;
+        }
+        if (renderStateDuration <= 0) {
+            return 1;
+        }
+        return Math.min(1, (now - renderStateUploadTime) / (float) renderStateDuration);
+    }
+
+    /**
+     * Uploads render data that was calculated on the CPU (e.g. by the {@link CpuClothSolver}) into the vbos.
+     * Only available for {@link EStorageMode#FULL}.
+     *
+     * @param position positions, four floats per point
+     * @param normal   normals, four floats per point
+     * @param tangent  tangents, four floats per point
+     */
+    public void uploadRenderData(float[] position, float[] normal, float[] tangent) {
+        if (storageMode != EStorageMode.FULL) {
+            throw new IllegalStateException("Render data can only be uploaded in the full storage mode");
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, position);
+        glBindBuffer(GL_ARRAY_BUFFER, normalsVboId);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, normal);
+        glBindBuffer(GL_ARRAY_BUFFER, tangentsVboId);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, tangent);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Copies the rendered positions (position vbo or, for {@link EStorageMode#COMPACT}, the input buffer) to the previous position vbo.
+     */
+    private void savePreviousPositions() {
+        glMemoryBarrier(GL_BUFFER_UPDATE_BARRIER_BIT); // the positions were written by the compute shader
+        glBindBuffer(GL_COPY_READ_BUFFER, storageMode == EStorageMode.COMPACT ? positionInBufferId : vertexVboId);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, previousPositionVboId);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, previousPositionBufferLength);
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+    }
+
+    /**
+     * Executes rounds of in-place Gauss-Seidel relaxation passes (one indirect dispatch per color) until the control shader
+     * has set the workgroup count to zero or {@link #maxRelaxationRounds} rounds were submitted.
+     *
+     * @param time simulation time step
+     */
+    private void useConvergentRelaxation(float time) {
+        ComputeShaderProgram program = executionMode == EExecutionMode.TILED ? tiledComputeProgram : computeProgram;
 
-            useComputeShaderProgram(timeStep, 1); // relaxation, adjust too long joints, make the model more stable
-            // switch input and output buffer for next iteration
-            store = outputBufferId;
-            outputBufferId = inputBufferId;
-            inputBufferId = store;
+        // every iteration starts with all workgroups (sleeping tiles: all active tiles)
+        if (sleepingEnabled) {
+            glBindBuffer(GL_COPY_READ_BUFFER, activeTileBufferId);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, dispatchIndirectBufferId);
+            glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, 12);
+            glBindBuffer(GL_COPY_READ_BUFFER, 0);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        } else {
+            int[] numGroups = getListedPoints(program) > 0 ? new int[]{program.getNumGroupsLinear(activePointCount), 1, 1} : new int[]{program.getNumGroupsX(width), program.getNumGroupsY(height), 1};
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, dispatchIndirectBufferId);
+            glBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, numGroups);
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
         }
+
+        bindComputeBuffers();
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 8, relaxationControlBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 9, dispatchIndirectBufferId);
+        glBindBuffer(GL_DISPATCH_INDIRECT_BUFFER, dispatchIndirectBufferId);
+        glMemoryBarrier(GL_COMMAND_BARRIER_BIT);
+
+        for (int round = 0; round < maxRelaxationRounds; round++) {
+            program.bind();
+            setComputeUniforms(program, time);
+            setSleepUniforms(program);
+            program.setUniform("state", 1);
+            program.setUniform("recordExcess", 1);
+            for (int color = 0; color < RELAXATION_COLORS; color++) {
+                program.setUniform("relaxationColor", color);
+                program.dispatchIndirect(0);
+                glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT); // the next color reads the corrected positions
+            }
+            program.unbind();
+
+            relaxationControlProgram.bind();
+            relaxationControlProgram.setUniform("tolerance", relaxationTolerance);
+            relaxationControlProgram.dispatchWorkGroups(1, 1);
+            glMemoryBarrier(GL_COMMAND_BARRIER_BIT | GL_SHADER_STORAGE_BARRIER_BIT); // the next dispatch reads the new workgroup count
+            relaxationControlProgram.unbind();
+        }
+
+        glBindBuffer(GL_DISPATCH_INDIRECT_BUFFER, 0);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 8, 0);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 9, 0);
+        unbindComputeBuffers();
     }
 
     /**
      * Executes the compute shader.
      *
      * @param time  simulation time step
-     * @param state 0 => apply forces, 1 => relaxation of the joints, any other number => only write output buffers (and calculate normals, tangents etc.)
+     * @param state 0 => apply forces, 1 => relaxation of the joints, 2 => only write the vbos (positions, normals, tangents) from the input buffer
      */
     private void useComputeShaderProgram(float time, int state) {
-        computeProgram.bind();
-
-        // set uniforms, see compute shader src for uniform documentation
-        computeProgram.setUniform("time", time);
-        computeProgram.setUniform("normalSign", normalSign);
-        computeProgram.setUniform("sphereEnabled", sphereEnabled ? 1 : 0);
-        computeProgram.setUniform("width", width);
-        computeProgram.setUniform("height", height);
-        computeProgram.setUniform("mass", mass);
-        computeProgram.setUniform("viscousDamping", viscousDamping);
-        computeProgram.setUniform("velocityFluid", velocityFluid);
-        computeProgram.setUniform("springConstant", springConstant);
-        computeProgram.setUniform("state", state);
-
-        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, inputBufferId);
-        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, outputBufferId);
+        useComputeShaderProgram(time, state, -1);
+    }
+
+    /**
+     * Executes the compute shader.
+     *
+     * @param time            simulation time step
+     * @param state           0 => apply forces, 1 => relaxation of the joints, 2 => only write the vbos (positions, normals, tangents) from the input buffer
+     * @param relaxationColor -1 => relax all points, otherwise only the points of this color (see {@link #RELAXATION_COLORS})
+     */
+    private void useComputeShaderProgram(float time, int state, int relaxationColor) {
+        ComputeShaderProgram program = computeProgram;
+        if (executionMode == EExecutionMode.TILED) {
+            program = tiledComputeProgram;
+        }
+        program.bind();
+        setComputeUniforms(program, time);
+        setSleepUniforms(program);
+        program.setUniform("state", state);
+        program.setUniform("relaxationColor", relaxationColor);
+        if (integrator == EIntegrator.XPBD) {
+            program.setUniform("constraintIteration", constraintIteration);
+        } else {
+            program.setUniform("recordExcess", 0);
+        }
+        bindComputeBuffers();
+
+        if (sleepingEnabled) {
+            glBindBuffer(GL_DISPATCH_INDIRECT_BUFFER, activeTileBufferId);
+            program.dispatchIndirect(0);
+            glBindBuffer(GL_DISPATCH_INDIRECT_BUFFER, 0);
+        } else if (getListedPoints(program) > 0) {
+            program.dispatchLinear(activePointCount);
+        } else {
+            program.dispatch(width, height);
+        }
+
+        if (state == 2) {
+            glMemoryBarrier(GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT); // wait until data is written to the vbos
+        } else {
+            glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT); // wait until data is written to the output buffer
+        }
+
+        unbindComputeBuffers();
+        program.unbind();
+    }
+
+    /**
+     * Executes the fused compute shader. Forces and relaxation of all iterations and the vbo update are executed in one dispatch
+     * of a single workgroup that synchronizes between the stages. The input and output buffer are swapped in the shader
+     * after every stage that is not executed in place and copied back if necessary, thus the result is in the input buffer afterwards.
+     *
+     * @param time       simulation time step
+     * @param iterations how often the simulation is executed
+     */
+    private void useFusedComputeShaderProgram(float time, int iterations) {
+        fusedComputeProgram.bind();
+        setComputeUniforms(fusedComputeProgram, time);
+        fusedComputeProgram.setUniform("iterations", iterations);
+        if (integrator == EIntegrator.XPBD) {
+            fusedComputeProgram.setUniform("constraintIterations", xpbdIterations);
+        } else {
+            fusedComputeProgram.setUniform("relaxationColors", getRelaxationPasses());
+        }
+        bindComputeBuffers();
+
+        fusedComputeProgram.dispatchWorkGroups(1, 1);
+
+        glMemoryBarrier(GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT | GL_SHADER_STORAGE_BARRIER_BIT); // wait until data is written to the vbos and the buffers
+
+        unbindComputeBuffers();
+        fusedComputeProgram.unbind();
+    }
+
+    /**
+     * Sets the uniforms that all variants of the compute shader have in common, see compute shader src for uniform documentation.
+     *
+     * @param program bound compute shader program
+     * @param time    simulation time step
+     */
+    private void setComputeUniforms(ComputeShaderProgram program, float time) {
+        program.setUniform("time", time);
+        program.setUniform("normalSign", normalSign);
+        program.setUniform("sphereEnabled", sphereEnabled ? 1 : 0);
+        program.setUniform("width", width);
+        program.setUniform("height", height);
+        program.setUniform("mass", mass);
+        program.setUniform("viscousDamping", viscousDamping);
+        program.setUniform("velocityFluid", velocityFluid);
+        program.setUniform("springConstant", springConstant);
+        program.setUniform("attachmentsEnabled", attachmentsEnabled ? 1 : 0);
+        program.setUniform("masked", activePointCount > 0 ? 1 : 0);
+        if (program != tiledComputeProgram) {
+            program.setUniform("activePointCount", getListedPoints(program));
+        }
+        if (storageMode == EStorageMode.COMPACT) {
+            program.setUniform("positionOrigin", positionOrigin);
+            program.setUniform("positionQuantum", positionQuantum);
+        }
+    }
+
+    /**
+     * A masked cloth is dispatched as the list of its active points, except for {@link EExecutionMode#TILED} (the tiles need the neighbors
+     * in shared memory) and sleeping tiles (a workgroup is a tile). Then the grid is dispatched, the removed points are locked and only copied.
+     *
+     * @param program compute shader program
+     * @return amount of points of the list the program executes, 0 => the program executes the grid
+     */
+    private int getListedPoints(ComputeShaderProgram program) {
+        if (program == tiledComputeProgram || (program == computeProgram && sleepingEnabled)) {
+            return 0;
+        }
+        return activePointCount;
+    }
+
+    /**
+     * Sets the uniforms of the sleeping tiles, only for the variants of the compute shader that execute one stage per dispatch.
+     *
+     * @param program bound compute shader program
+     */
+    private void setSleepUniforms(ComputeShaderProgram program) {
+        program.setUniform("sleepingEnabled", sleepingEnabled ? 1 : 0);
+        program.setUniform("tileCountX", program.getNumGroupsX(width));
+        program.setUniform("sleepDistance", sleepDistance);
+        program.setUniform("stepParity", stepParity);
+    }
+
+    /**
+     * Switches the input and output buffers of the positions and velocities. The output of the last stage becomes the input of the next stage.
+     */
+    private void swapComputeBuffers() {
+        int store = positionOutBufferId;
+        positionOutBufferId = positionInBufferId;
+        positionInBufferId = store;
+
+        if (storageMode == EStorageMode.COMPACT) {
+            return; // velocities are updated in place
+        }
+        store = velocityOutBufferId;
+        velocityOutBufferId = velocityInBufferId;
+        velocityInBufferId = store;
+    }
+
+    private void bindComputeBuffers() {
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, positionInBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, positionOutBufferId);
         glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 2, vertexVboId);
         glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 3, normalsVboId);
         glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 4, tangentsVboId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 5, velocityInBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 6, velocityOutBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 7, pointDataBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 10, attachmentBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 11, restLengthBufferId);
+        if (sleepingEnabled) {
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 12, tileBufferId);
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 13, activeTileBufferId);
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 14, restPositionBufferId);
+        }
+        if (activePointCount > 0) {
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 15, activePointBufferId);
+        }
+        if (integrator == EIntegrator.XPBD) {
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 16, springCountBufferId);
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 17, lambdaBufferId);
+        }
+    }
 
-        computeProgram.dispatch(width, height);
+    private void unbindComputeBuffers() {
+        for (int binding = 0; binding <= 7; binding++) {
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, binding, 0);
+        }
+        for (int binding = 10; binding <= 17; binding++) {
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, binding, 0);
+        }
+    }
 
-        glMemoryBarrier(GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT); // wait until data is written to the vbos
-        glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT); // wait until data is written to the output buffer
+    /**
+     * Reads the current positions back from the GPU, e.g. to compare {@link EStorageMode#COMPACT} with {@link EStorageMode#FULL}.
+     *
+     * @param positions target array with at least width * height * 4 floats
+     */
+    public void readPositions(float[] positions) {
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, backend == ESimulationBackend.CPU ? vertexVboId : positionInBufferId); // CPU: last uploaded positions
+        if (storageMode == EStorageMode.COMPACT) {
+            IntBuffer encoded = BufferUtils.createIntBuffer(width * height * 2);
+            glGetBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, encoded);
+            for (int i = 0; i < width * height; i++) {
+                int first = encoded.get(i * 2);
+                int second = encoded.get(i * 2 + 1);
+                int y = (first >>> 21) | ((second & 0x3FF) << 11);
+                positions[i * 4] = positionOrigin.x + ((first << 11) >> 11) * positionQuantum;
+                positions[i * 4 + 1] = positionOrigin.y + ((y << 11) >> 11) * positionQuantum;
+                positions[i * 4 + 2] = positionOrigin.z + ((second << 1) >> 11) * positionQuantum;
+                positions[i * 4 + 3] = 1;
+            }
+        } else {
+            FloatBuffer buffer = BufferUtils.createFloatBuffer(width * height * 4);
+            glGetBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, buffer);
+            buffer.get(positions, 0, width * height * 4);
+        }
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    /**
+     * Accuracy of {@link EStorageMode#COMPACT}: every stored position component differs by at most half of the quantum
+     * from the value computed in full precision, as long as it is within {@link #getPositionOrigin()} +- 2^20 * quantum (otherwise it is clamped).
+     * Velocities are stored as half floats (relative error at most 2^-11), normals and tangents as 10 bit snorm (error at most 1/1022 per component).
+     * Motions smaller than half of the quantum per stage are lost.
+     *
+     * @return distance between two representable positions per component, 0 for {@link EStorageMode#FULL}
+     */
+    public float getPositionQuantum() {
+        return positionQuantum;
+    }
+
+    /**
+     * @return cloth-local origin of the fixed point positions of {@link EStorageMode#COMPACT}
+     */
+    public Vector3f getPositionOrigin() {
+        return positionOrigin;
+    }
+
+    public EStorageMode getStorageMode() {
+        return storageMode;
+    }
 
-        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, 0);
-        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, 0);
-        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 2, 0);
-        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 3, 0);
-        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 4, 0);
+    public EIntegrator getIntegrator() {
+        return integrator;
+    }
 
-        computeProgram.unbind();
+    public ESimulationBackend getBackend() {
+        return backend;
     }
 
     /**
      * Frees all memory allocated for the buffers.
      */
     public void cleanUp() {
-        glDeleteBuffers(inputBufferId);
-        glDeleteBuffers(outputBufferId);
+        glDeleteBuffers(positionInBufferId);
+        glDeleteBuffers(positionOutBufferId);
+        glDeleteBuffers(velocityInBufferId);
+        glDeleteBuffers(velocityOutBufferId);
+        glDeleteBuffers(pointDataBufferId);
+        glDeleteBuffers(attachmentBufferId);
+        glDeleteBuffers(restLengthBufferId);
         glDeleteBuffers(vertexVboId);
         glDeleteBuffers(textureVboId);
         glDeleteBuffers(normalsVboId);
+        glDeleteBuffers(tangentsVboId);
+        glDeleteBuffers(previousPositionVboId);
         glDeleteBuffers(indicesVboId);
         glDeleteVertexArrays(vaoId);
         texture.cleanUp();
         shaderProgram.cleanUp();
-        computeProgram.cleanUp();
+        if (computeProgram != null) {
+            computeProgram.cleanUp();
+        }
+        if (fusedComputeProgram != null) {
+            fusedComputeProgram.cleanUp();
+        }
+        if (tiledComputeProgram != null) {
+            tiledComputeProgram.cleanUp();
+        }
+        if (relaxationControlProgram != null) {
+            relaxationControlProgram.cleanUp();
+            glDeleteBuffers(relaxationControlBufferId);
+            glDeleteBuffers(dispatchIndirectBufferId);
+        }
+        if (sleepControlProgram != null) {
+            sleepControlProgram.cleanUp();
+            glDeleteBuffers(tileBufferId);
+            glDeleteBuffers(activeTileBufferId);
+            glDeleteBuffers(restPositionBufferId);
+        }
+        if (activePointCount > 0) {
+            glDeleteBuffers(activePointBufferId);
+        }
+        if (integrator == EIntegrator.XPBD && backend == ESimulationBackend.GPU) {
+            glDeleteBuffers(springCountBufferId);
+            glDeleteBuffers(lambdaBufferId);
+        }
     }
 }
@@ -1,17 +1,42 @@
 package massspringcloth.cloth;
 
+import java.util.Arrays;
+
 /**
  * Creates the arrays with the initial positions, velocities etc. for the buffer creation (input and output buffer of the compute shader, vbos of the vertex shader).
  *
  * @author Mirco Werner
  */
 public class MassSpringModel {
+    /**
+     * Springs starting at each point (dx, dy): right, top, two right, two top, top right, top left. Every spring of the cloth is
+     * one of these springs of exactly one point, the springs in the opposite directions belong to the neighbor.
+     */
+    public static final int SPRINGS = 6;
+    public static final int[] SPRING_X = {1, 0, 2, 0, 1, -1};
+    public static final int[] SPRING_Y = {0, 1, 0, 2, 1, 1};
+    /**
+     * Rest length of a spring that does not exist, i.e. that leaves the cloth or ends at a removed point. Every rest length of an
+     * existing spring is at least 0, a spring of rest length 0 between two points at the same position exists.
+     */
+    public static final float NO_SPRING = -1;
+    /**
+     * The relaxation shortens springs that are longer than MAX_STRETCH times their rest length. Both compute shaders receive it as
+     * the macro MAX_STRETCH (see {@link #getMaxStretchDefine()}).
+     */
+    public static final float MAX_STRETCH = 1.1f;
+
     private final int width;
     private final int height;
 
-    private float[] points;
+    private float[] positions;
+    private float[] velocities;
+    private float[] pointData;
+    private float[] restLengths;
     private float[] tex;
     private int[] indices;
+    private boolean[] active;
+    private int[] activePoints;
 
     /**
      * Creates the arrays.
@@ -21,46 +46,113 @@ public class MassSpringModel {
      * @param points initial values
      */
     public MassSpringModel(int width, int height, Point[][] points) {
+        this(width, height, points, null);
+    }
+
+    /**
+     * Creates the arrays of a cloth whose shape is cut out of the grid by a mask. The removed points have no springs, are not part
+     * of any triangle and are locked, i.e. a stage that is executed for all points of the grid only copies them. Points that are not
+     * part of a complete cell of 2x2 kept points are removed as well, they would have no surface to render and no normal.
+     *
+     * @param width  amount of horizontal points of the cloth
+     * @param height amount of vertical points of the cloth
+     * @param points initial values
+     * @param mask   points that are kept, null to keep all points
+     */
+    public MassSpringModel(int width, int height, Point[][] points, ClothMask mask) {
         this.width = width;
         this.height = height;
+        createMask(mask);
         create(points);
     }
 
+    /**
+     * Determines the active points, i.e. the points of the mask that are part of a complete cell of 2x2 points of the mask.
+     *
+     * @param mask points that are kept, null to keep all points
+     */
+    private void createMask(ClothMask mask) {
+        active = new boolean[width * height];
+        int activeCount = 0;
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                active[h * width + w] = mask == null || isCellOfMask(mask, w, h);
+                if (active[h * width + w]) {
+                    activeCount++;
+                }
+            }
+        }
+        activePoints = new int[activeCount];
+        activeCount = 0;
+        for (int i = 0; i < width * height; i++) {
+            if (active[i]) {
+                activePoints[activeCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return true if point (w, h) and the other points of one of its 4 cells are kept by the mask
+     */
+    private boolean isCellOfMask(ClothMask mask, int w, int h) {
+        if (!mask.isActive(w, h)) {
+            return false;
+        }
+        for (int cellW = Math.max(0, w - 1); cellW <= Math.min(width - 2, w); cellW++) {
+            for (int cellH = Math.max(0, h - 1); cellH <= Math.min(height - 2, h); cellH++) {
+                if (mask.isActive(cellW, cellH) && mask.isActive(cellW + 1, cellH) && mask.isActive(cellW, cellH + 1) && mask.isActive(cellW + 1, cellH + 1)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Creates the float arrays for the buffer creation.
      *
      * @param pointInitialization initial values
      */
     private void create(Point[][] pointInitialization) {
-        points = new float[width * height * 12];
+        positions = new float[width * height * 4];
+        velocities = new float[width * height * 4];
+        pointData = new float[width * height * 4];
         tex = new float[width * height * 2];
-        indices = new int[6 * (width - 1) * (height - 1)];
+        int cells = 0;
+        for (int h = 0; h < height - 1; h++) {
+            for (int w = 0; w < width - 1; w++) {
+                if (isCellActive(w, h)) {
+                    cells++;
+                }
+            }
+        }
+        indices = new int[6 * cells];
         int vertexPointer = 0;
         for (int h = 0; h < height; h++) {
             for (int w = 0; w < width; w++) {
                 Point point = pointInitialization[w][h];
 
                 // positions
-                points[vertexPointer * 12] = point.x;
-                points[vertexPointer * 12 + 1] = point.y;
-                points[vertexPointer * 12 + 2] = point.z;
-                points[vertexPointer * 12 + 3] = 1;
+                positions[vertexPointer * 4] = point.x;
+                positions[vertexPointer * 4 + 1] = point.y;
+                positions[vertexPointer * 4 + 2] = point.z;
+                positions[vertexPointer * 4 + 3] = 1;
 
                 // velocities
-                points[vertexPointer * 12 + 4] = point.v_x;
-                points[vertexPointer * 12 + 5] = point.v_y;
-                points[vertexPointer * 12 + 6] = point.v_z;
-                points[vertexPointer * 12 + 7] = 0;
+                velocities[vertexPointer * 4] = point.v_x;
+                velocities[vertexPointer * 4 + 1] = point.v_y;
+                velocities[vertexPointer * 4 + 2] = point.v_z;
+                velocities[vertexPointer * 4 + 3] = 0;
 
                 // locked
-                points[vertexPointer * 12 + 8] = point.locked;
+                pointData[vertexPointer * 4] = active[vertexPointer] ? point.locked : 1;
 
                 // textureUV
-                points[vertexPointer * 12 + 9] = w / 4f;
-                points[vertexPointer * 12 + 10] = h / 4f;
+                pointData[vertexPointer * 4 + 1] = w / 4f;
+                pointData[vertexPointer * 4 + 2] = h / 4f;
 
                 // padding
-                points[vertexPointer * 12 + 11] = 0;
+                pointData[vertexPointer * 4 + 3] = 0;
 
                 // texture
                 tex[vertexPointer * 2] = w / 4f;
@@ -69,9 +161,32 @@ public class MassSpringModel {
                 vertexPointer++;
             }
         }
+        restLengths = new float[SPRINGS * width * height];
+        Arrays.fill(restLengths, NO_SPRING);
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                for (int s = 0; s < SPRINGS; s++) {
+                    int targetW = w + SPRING_X[s];
+                    int targetH = h + SPRING_Y[s];
+                    if (targetW < 0 || targetW >= width || targetH >= height || !active[h * width + w] || !active[targetH * width + targetW]) {
+                        continue; // no spring
+                    }
+                    Point point = pointInitialization[w][h];
+                    Point target = pointInitialization[targetW][targetH];
+                    float dx = target.x - point.x;
+                    float dy = target.y - point.y;
+                    float dz = target.z - point.z;
+                    restLengths[s * width * height + h * width + w] = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+                }
+            }
+        }
+
         vertexPointer = 0;
         for (int h = 0; h < height - 1; h++) {
             for (int w = 0; w < width - 1; w++) {
+                if (!isCellActive(w, h)) {
+                    continue;
+                }
                 int bottomLeft = h * width + w;
                 int bottomRight = (h + 1) * width + w;
                 int topLeft = bottomLeft + 1;
@@ -90,16 +205,136 @@ public class MassSpringModel {
         }
     }
 
-    public float[] getPoints() {
-        return points;
+    /**
+     * @return true if the 4 points of the cell (w, h) to (w + 1, h + 1) are active
+     */
+    private boolean isCellActive(int w, int h) {
+        int i = h * width + w;
+        return active[i] && active[i + 1] && active[i + width] && active[i + width + 1];
+    }
+
+    /**
+     * @return initial positions, 4 floats per point (x, y, z, 1)
+     */
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return initial velocities, 4 floats per point (x, y, z, 0)
+     */
+    public float[] getVelocities() {
+        return velocities;
+    }
+
+    /**
+     * @return static data that never changes during the simulation, 4 floats per point (locked, u, v, padding)
+     */
+    public float[] getPointData() {
+        return pointData;
+    }
+
+    /**
+     * Rest lengths of the springs, i.e. the distances between the points in the initial configuration.
+     * The rest length of spring s (see {@link #SPRING_X}, {@link #SPRING_Y}) of point i is stored at s * width * height + i
+     * (structure of arrays, neighboring points are next to each other), {@link #NO_SPRING} if the spring leaves the cloth or ends at a removed point (see {@link ClothMask}).
+     *
+     * @return {@link #SPRINGS} * width * height rest lengths
+     */
+    public float[] getRestLengths() {
+        return restLengths;
+    }
+
+    /**
+     * Counts the springs of each point in both directions, the XPBD constraint iterations average the corrections of a point by it (mass splitting).
+     *
+     * @return amount of springs of each point (at most 12)
+     */
+    public int[] getSpringCounts() {
+        int count = width * height;
+        int[] springCounts = new int[count];
+        for (int s = 0; s < SPRINGS; s++) {
+            for (int i = 0; i < count; i++) {
+                if (hasSpring(restLengths[s * count + i])) {
+                    springCounts[i]++;
+                    springCounts[i + SPRING_Y[s] * width + SPRING_X[s]]++;
+                }
+            }
+        }
+        return springCounts;
+    }
+
+    /**
+     * @return macro of {@link #MAX_STRETCH} for the compute shaders
+     */
+    public static String getMaxStretchDefine() {
+        return "MAX_STRETCH " + MAX_STRETCH;
+    }
+
+    /**
+     * @param restLength rest length of a spring (see {@link #getRestLengths()})
+     * @return true if the spring exists, false if it is {@link #NO_SPRING}
+     */
+    public static boolean hasSpring(float restLength) {
+        return restLength >= 0;
+    }
+
+    /**
+     * Returns the index of the spring (dx, dy) in the rest lengths (see {@link #getRestLengths()}).
+     * Springs in the opposite direction of {@link #SPRING_X}, {@link #SPRING_Y} belong to the point at the other end, i.e. to (x + dx, y + dy).
+     * The spring is determined in closed form, thus the index is constant for constant offsets, e.g. in the unrolled loops of the solvers.
+     *
+     * @param width amount of horizontal points of the cloth
+     * @param count amount of points of the cloth
+     * @param i     point (x, y)
+     * @param dx    horizontal offset of one of the 12 neighbors
+     * @param dy    vertical offset of one of the 12 neighbors
+     * @return index in the rest lengths
+     */
+    public static int getRestLengthIndex(int width, int count, int i, int dx, int dy) {
+        if (dy < 0 || (dy == 0 && dx < 0)) {
+            return getSpring(-dx, -dy) * count + i + dy * width + dx; // spring of the neighbor
+        }
+        return getSpring(dx, dy) * count + i;
+    }
+
+    /**
+     * @param dx horizontal offset of the spring, one of {@link #SPRING_X}
+     * @param dy vertical offset of the spring, the matching one of {@link #SPRING_Y}
+     * @return spring s with SPRING_X[s] == dx and SPRING_Y[s] == dy
+     */
+    private static int getSpring(int dx, int dy) {
+        return dy == 0 ? 2 * dx - 2 : dx == 0 ? 2 * dy - 1 : dx > 0 ? 4 : 5;
     }
 
     public long getVertexBufferLengthInBytes() {
         return width * height * 16L; // 4 vertices times 4 bytes long float
     }
 
-    public long getPointsBufferLengthInBytes() {
-        return points.length * 4L; // float is 4 bytes long
+    public long getPointBufferLengthInBytes() {
+        return width * height * 16L; // length of one stream (positions, velocities or point data), 4 floats times 4 bytes per point
+    }
+
+    /**
+     * @param i point
+     * @return true if the point is simulated, false if it has been removed by the mask
+     */
+    public boolean isActive(int i) {
+        return active[i];
+    }
+
+    /**
+     * @return indices of the active points in ascending order, the dense list of points that are simulated
+     */
+    public int[] getActivePoints() {
+        return activePoints;
+    }
+
+    /**
+     * @return true if points have been removed by a mask
+     */
+    public boolean isMasked() {
+        return activePoints.length < width * height;
     }
 
     public float[] getTex() {
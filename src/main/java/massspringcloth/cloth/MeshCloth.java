@@ -0,0 +1,635 @@
+package massspringcloth.cloth;
+
+import massspringcloth.solver.ClothRenderState;
+import massspringcloth.solver.MeshClothSolver;
+import massspringcloth.solver.TripleBuffer;
+import org.joml.Vector3f;
+import org.lwjgl.BufferUtils;
+import renderengine.camera.ACamera;
+import renderengine.engine.Window;
+import renderengine.entities.Entity;
+import renderengine.entities.Light;
+import renderengine.mesh.Texture;
+import renderengine.shader.ComputeShaderProgram;
+import renderengine.shader.ShaderProgram;
+import renderengine.utils.Transformation;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.opengl.GL32.glGetInteger64;
+import static org.lwjgl.opengl.GL42.GL_BUFFER_UPDATE_BARRIER_BIT;
+import static org.lwjgl.opengl.GL42.GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT;
+import static org.lwjgl.opengl.GL42.glMemoryBarrier;
+import static org.lwjgl.opengl.GL43.GL_MAX_SHADER_STORAGE_BLOCK_SIZE;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BARRIER_BIT;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER;
+
+/**
+ * Executes the simulation of a cloth with a triangle mesh as topology (see {@link MeshClothModel}) and renders it.
+ * The GPU backend executes resources/shaders/cloth_mesh_compute.glsl, the CPU backend the {@link MeshClothSolver}.
+ * The cloth is rendered with the shaders of the {@link MassSpringCloth}, the compute shader writes the same vbos
+ * ({@link EStorageMode#FULL}).
+ * <p>
+ * Only {@link EIntegrator#EXPLICIT_EULER} and {@link EIntegrator#XPBD} are available. {@link ERelaxationMode#GAUSS_SEIDEL} and the XPBD
+ * constraints are solved in place with one dispatch per color of the model, {@link ERelaxationMode#CONVERGENT} only with the CPU backend.
+ *
+ * @author Mirco Werner
+ */
+public class MeshCloth {
+    // uniforms of the compute shader, read by both variants (with and without XPBD)
+    static final String[] COMPUTE_UNIFORMS = {"time", "normalSign", "sphereEnabled", "pointCount", "colorStart", "mass", "viscousDamping",
+            "velocityFluid", "springConstant", "state"};
+
+    private ShaderProgram shaderProgram;
+    private ComputeShaderProgram computeProgram;
+    private ERelaxationMode relaxationMode = ERelaxationMode.JACOBI;
+    private int minIterations;
+
+    private final ESimulationBackend backend;
+    private final EIntegrator integrator;
+    private final int xpbdIterations;
+
+    // CPU backend
+    private MeshClothSolver cpuSolver;
+    private TripleBuffer<ClothRenderState> renderStates;
+    private long renderStateTime;
+    private long renderStateDuration;
+    private long renderStateUploadTime;
+
+    private int vaoId;
+    private int vertexVboId;
+    private int textureVboId;
+    private int normalsVboId;
+    private int tangentsVboId;
+    private int previousPositionVboId;
+    private int indicesVboId;
+    private Texture texture;
+    private Texture textureNormalMap;
+
+    private int positionInBufferId;
+    private int positionOutBufferId;
+    private int velocityInBufferId;
+    private int velocityOutBufferId;
+    private int pointDataBufferId;
+    private int pointRowBufferId;
+    private int springBufferId;
+    private int pointTriangleBufferId;
+    private int colorPointBufferId;
+
+    private final boolean sphereEnabled;
+    private final int normalSign;
+    private final float mass;
+    private final float viscousDamping;
+    private final Vector3f velocityFluid;
+    private final float springConstant;
+    private final int pointCount;
+    private final int maxSprings;
+    private final int[] colorOffsets;
+
+    private int count;
+
+    private final Entity entity = new Entity();
+
+    /**
+     * Creates the shaders and the buffers.
+     *
+     * @param model          model containing the initial positions, the springs etc.
+     * @param normalSign     normal orientation \in {-1,1}
+     * @param sphereEnabled  true if sphere collisions are enabled, false otherwise
+     * @param mass           mass of one point
+     * @param viscousDamping damping constant >= 0, higher damping constant causes more friction
+     * @param velocityFluid  velocity of a viscous fluid like wind or water (used for viscous interaction force)
+     * @param springConstant spring constant >= 0, higher spring constant makes cloth more stiff
+     * @param backend        where the simulation is executed
+     * @param integrator     {@link EIntegrator#EXPLICIT_EULER} or {@link EIntegrator#XPBD}
+     * @param xpbdIterations amount of XPBD iterations (sub-steps) per {@link #simulateAdaptive(float)} call >= 1, only used with {@link EIntegrator#XPBD}
+     * @throws Exception if the creation of the object fails or the integrator is not supported
+     */
+    public MeshCloth(MeshClothModel model, int normalSign, boolean sphereEnabled, float mass, float viscousDamping, Vector3f velocityFluid, float springConstant, ESimulationBackend backend, EIntegrator integrator, int xpbdIterations) throws Exception {
+        if (integrator != EIntegrator.EXPLICIT_EULER && integrator != EIntegrator.XPBD) {
+            throw new Exception("Integrator " + integrator + " is only available for the grid");
+        }
+        if (xpbdIterations < 1) {
+            throw new Exception("At least one XPBD iteration is required: " + xpbdIterations);
+        }
+        this.backend = backend;
+        this.integrator = integrator;
+        this.xpbdIterations = xpbdIterations;
+        this.normalSign = normalSign;
+        this.sphereEnabled = sphereEnabled;
+        this.mass = mass;
+        this.viscousDamping = viscousDamping;
+        this.velocityFluid = velocityFluid;
+        this.springConstant = springConstant;
+        this.pointCount = model.getPointCount();
+        this.maxSprings = model.getMaxSprings();
+        this.colorOffsets = model.getColorOffsets();
+        init(model);
+    }
+
+    /**
+     * Creates the compute, vertex and fragment shader and the vbos.
+     *
+     * @param model model containing the initial positions etc.
+     * @throws Exception if the creation of the object fails
+     */
+    private void init(MeshClothModel model) throws Exception {
+        shaderProgram = new ShaderProgram();
+        shaderProgram.createVertexShader("shaders/cloth_vert.glsl");
+        shaderProgram.createFragmentShader("shaders/cloth_frag.glsl");
+        shaderProgram.link();
+        shaderProgram.createUniform("texture_sampler");
+        shaderProgram.createUniform("texture_sampler_normal");
+        shaderProgram.createUniform("transformationMatrix");
+        shaderProgram.createUniform("projectionMatrix");
+        shaderProgram.createUniform("viewMatrix");
+        shaderProgram.createUniform("skyColor");
+        shaderProgram.createUniform("lightPosition");
+        shaderProgram.createUniform("lightColor");
+        shaderProgram.createUniform("interpolation");
+        shaderProgram.unbind();
+
+        if (backend == ESimulationBackend.CPU) {
+            cpuSolver = new MeshClothSolver(model, normalSign, sphereEnabled, mass, viscousDamping, velocityFluid, springConstant);
+            cpuSolver.setIntegrator(integrator);
+            cpuSolver.setXpbdIterations(xpbdIterations);
+            renderStates = new TripleBuffer<>(new ClothRenderState(pointCount), new ClothRenderState(pointCount), new ClothRenderState(pointCount));
+        } else {
+            createComputeShaderBuffers(model);
+        }
+
+        // VAO
+        vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        // vertex position vbo
+        vertexVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
+        glBufferData(GL_ARRAY_BUFFER, model.getVertexBufferLengthInBytes(), GL_STATIC_DRAW);
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 4, GL_FLOAT, false, 0, 0);
+
+        // texture vbo
+        textureVboId = glGenBuffers();
+        FloatBuffer textureBuffer = BufferUtils.createFloatBuffer(model.getTex().length);
+        textureBuffer.put(model.getTex()).flip();
+        glBindBuffer(GL_ARRAY_BUFFER, textureVboId);
+        glBufferData(GL_ARRAY_BUFFER, textureBuffer, GL_STATIC_DRAW);
+        glEnableVertexAttribArray(1);
+        glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
+
+        // normal vbo
+        normalsVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, normalsVboId);
+        glBufferData(GL_ARRAY_BUFFER, model.getVertexBufferLengthInBytes(), GL_STATIC_DRAW);
+        glEnableVertexAttribArray(2);
+        glVertexAttribPointer(2, 4, GL_FLOAT, false, 0, 0);
+
+        // tangent vbo
+        tangentsVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, tangentsVboId);
+        glBufferData(GL_ARRAY_BUFFER, model.getVertexBufferLengthInBytes(), GL_STATIC_DRAW);
+        glEnableVertexAttribArray(3);
+        glVertexAttribPointer(3, 4, GL_FLOAT, false, 0, 0);
+
+        // previous position vbo, copy of the positions before the last simulation step (for interpolation between two steps)
+        previousPositionVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, previousPositionVboId);
+        glBufferData(GL_ARRAY_BUFFER, model.getVertexBufferLengthInBytes(), GL_DYNAMIC_COPY);
+        glEnableVertexAttribArray(4);
+        glVertexAttribPointer(4, 4, GL_FLOAT, false, 0, 0);
+
+        // index vbo
+        indicesVboId = glGenBuffers();
+        IntBuffer indicesBuffer = BufferUtils.createIntBuffer(model.getIndices().length);
+        indicesBuffer.put(model.getIndices()).flip();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indicesVboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
+
+        // unbind
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+
+        count = model.getIndices().length;
+
+        texture = Texture.loadTexture("textures/cloth.png");
+        textureNormalMap = Texture.loadTexture("textures/cloth_normal.png");
+
+        if (backend == ESimulationBackend.CPU) {
+            uploadRenderData(cpuSolver.getRenderDataPosition(), cpuSolver.getRenderDataNormal(), cpuSolver.getRenderDataTangent());
+            savePreviousPositions();
+            return;
+        }
+
+        computeProgram = new ComputeShaderProgram();
+        computeProgram.createComputeShader("shaders/cloth_mesh_compute.glsl", getComputeDefines(integrator));
+        computeProgram.link();
+        computeProgram.initProgram();
+        for (String uniform : COMPUTE_UNIFORMS) {
+            computeProgram.createUniform(uniform);
+        }
+
+        useComputeShaderProgram(0, 2, -1); // execute one time that the vbos contain valid data that can be rendered
+        savePreviousPositions();
+    }
+
+    /**
+     * @param integrator integrator of the cloth
+     * @return macros of the variant of the compute shader
+     */
+    static String[] getComputeDefines(EIntegrator integrator) {
+        if (integrator == EIntegrator.XPBD) {
+            return new String[]{MassSpringModel.getMaxStretchDefine(), "XPBD"};
+        }
+        return new String[]{MassSpringModel.getMaxStretchDefine()};
+    }
+
+    /**
+     * Creates the buffers of the compute shader. The positions and velocities are ping-ponged like the ones of the grid,
+     * the CSR rows, the springs (target and rest length interleaved), the triangles of the points and the points of the colors are uploaded once.
+     *
+     * @param model model containing the initial positions etc.
+     * @throws Exception if the cloth is too large for the shader storage buffers of the GPU
+     */
+    private void createComputeShaderBuffers(MeshClothModel model) throws Exception {
+        int[] springOffsets = model.getSpringOffsets();
+        int[] bendOffsets = model.getBendOffsets();
+        int[] triangleOffsets = model.getTriangleOffsets();
+        int[] pointRows = new int[(pointCount + 1) * 4];
+        for (int i = 0; i <= pointCount; i++) {
+            pointRows[i * 4] = springOffsets[i];
+            pointRows[i * 4 + 1] = i < pointCount ? bendOffsets[i] : springOffsets[i];
+            pointRows[i * 4 + 2] = triangleOffsets[i];
+        }
+        int[] springTargets = model.getSpringTargets();
+        float[] restLengths = model.getRestLengths();
+        int[] springs = new int[springTargets.length * 2];
+        for (int s = 0; s < springTargets.length; s++) {
+            springs[s * 2] = springTargets[s];
+            springs[s * 2 + 1] = Float.floatToIntBits(restLengths[s]);
+        }
+        int[] indices = model.getIndices();
+        int[] pointTriangles = model.getPointTriangles();
+        int[] triangles = new int[pointTriangles.length * 4];
+        for (int k = 0; k < pointTriangles.length; k++) {
+            System.arraycopy(indices, pointTriangles[k] * 3, triangles, k * 4, 3);
+        }
+
+        long maxBlockSize = glGetInteger64(GL_MAX_SHADER_STORAGE_BLOCK_SIZE);
+        long bufferLength = Math.max(triangles.length, Math.max(springs.length, pointRows.length)) * 4L;
+        if (bufferLength > maxBlockSize) {
+            throw new Exception("Cloth is too large: " + bufferLength + " bytes per buffer, but the GPU supports at most " + maxBlockSize + " bytes per shader storage block");
+        }
+        positionInBufferId = MassSpringCloth.createComputeShaderBuffer(model.getPositions(), GL_DYNAMIC_COPY); // put initial data in the input buffers
+        velocityInBufferId = MassSpringCloth.createComputeShaderBuffer(model.getVelocities(), GL_DYNAMIC_COPY);
+        positionOutBufferId = MassSpringCloth.createComputeShaderBuffer(model.getVertexBufferLengthInBytes());
+        velocityOutBufferId = MassSpringCloth.createComputeShaderBuffer(model.getVertexBufferLengthInBytes());
+        pointDataBufferId = MassSpringCloth.createComputeShaderBuffer(model.getPointData(), GL_STATIC_DRAW);
+        pointRowBufferId = MassSpringCloth.createComputeShaderBuffer(pointRows);
+        springBufferId = MassSpringCloth.createComputeShaderBuffer(springs);
+        pointTriangleBufferId = MassSpringCloth.createComputeShaderBuffer(triangles);
+        colorPointBufferId = MassSpringCloth.createComputeShaderBuffer(model.getColorPoints());
+    }
+
+    /**
+     * Sets how the relaxation stage updates the points (see {@link ERelaxationMode}), Gauss-Seidel with one pass per color of the model.
+     *
+     * @param relaxationMode relaxation mode
+     * @throws Exception if {@link ERelaxationMode#CONVERGENT} is requested for the GPU backend
+     */
+    public void setRelaxationMode(ERelaxationMode relaxationMode) throws Exception {
+        if (relaxationMode == ERelaxationMode.CONVERGENT && backend == ESimulationBackend.GPU) {
+            throw new Exception("The convergent relaxation of meshes is only available for the CPU backend");
+        }
+        this.relaxationMode = relaxationMode;
+        if (cpuSolver != null) {
+            cpuSolver.setRelaxationMode(relaxationMode);
+        }
+    }
+
+    /**
+     * Sets the amount of iterations {@link #simulateAdaptive(float)} executes at least. Additional iterations use shorter time steps.
+     *
+     * @param minIterations amount of iterations (0 => as few as the stable time step allows)
+     */
+    public void setMinIterations(int minIterations) {
+        this.minIterations = minIterations;
+        if (cpuSolver != null) {
+            cpuSolver.setMinIterations(minIterations);
+        }
+    }
+
+    private static final float FOV = (float) Math.toRadians(60.0f);
+    private static final float Z_NEAR = 0.01f;
+    private static final float Z_FAR = 1000.0f;
+
+    /**
+     * Renders the cloth with the positions after the last simulation step.
+     *
+     * @param window window of the application
+     * @param camera camera of the scene
+     * @param light  light in the scene
+     */
+    public void render(Window window, ACamera camera, Light light) {
+        render(window, camera, light, 1);
+    }
+
+    /**
+     * Renders the cloth, see {@link MassSpringCloth#render(Window, ACamera, Light, float)}.
+     *
+     * @param window        window of the application
+     * @param camera        camera of the scene
+     * @param light         light in the scene
+     * @param interpolation 0 => positions before the last simulation step, 1 => positions after the last simulation step
+     */
+    public void render(Window window, ACamera camera, Light light, float interpolation) {
+        if (backend == ESimulationBackend.CPU) {
+            interpolation = uploadPublishedRenderState(); // the simulation thread runs at its own rate
+        }
+        shaderProgram.bind();
+
+        shaderProgram.setUniform("texture_sampler", 0);
+        shaderProgram.setUniform("texture_sampler_normal", 1);
+        shaderProgram.setUniform("viewMatrix", Transformation.getViewMatrix(camera));
+        shaderProgram.setUniform("projectionMatrix", Transformation.getProjectionMatrix(FOV, window.getWidth(), window.getHeight(), Z_NEAR, Z_FAR));
+        shaderProgram.setUniform("transformationMatrix", Transformation.getTransformationMatrix(entity));
+        shaderProgram.setUniform("skyColor", new Vector3f(Window.RED, Window.GREEN, Window.BLUE));
+        shaderProgram.setUniform("lightPosition", light.getPosition());
+        shaderProgram.setUniform("lightColor", light.getColor());
+        shaderProgram.setUniform("interpolation", interpolation);
+
+        glActiveTexture(GL_TEXTURE0); // cloth texture
+        texture.bind();
+        glActiveTexture(GL_TEXTURE1); // normal map
+        textureNormalMap.bind();
+
+        glBindVertexArray(vaoId);
+        for (int attribute = 0; attribute <= 4; attribute++) {
+            glEnableVertexAttribArray(attribute);
+        }
+
+        glDrawElements(GL_TRIANGLES, count, GL_UNSIGNED_INT, 0);
+
+        for (int attribute = 0; attribute <= 4; attribute++) {
+            glDisableVertexAttribArray(attribute);
+        }
+        glBindVertexArray(0);
+        texture.unbind();
+        textureNormalMap.unbind();
+
+        shaderProgram.unbind();
+    }
+
+    /**
+     * Executes the simulation with a time step of 0.01.
+     *
+     * @param iterations how often the simulation is executed
+     */
+    public void simulate(int iterations) {
+        simulate(iterations, 0.01f);
+    }
+
+    /**
+     * Executes the simulation for the given (simulated) time with as few iterations as possible, see {@link MassSpringCloth#simulateAdaptive(float)}.
+     * The stable time step is calculated from the largest amount of springs of a point of the mesh.
+     *
+     * @param elapsedTime time that should be simulated
+     * @return amount of executed iterations
+     */
+    public int simulateAdaptive(float elapsedTime) {
+        if (backend == ESimulationBackend.CPU) {
+            int iterations = cpuSolver.simulateAdaptive(elapsedTime);
+            if (iterations > 0) {
+                publishRenderState();
+            }
+            return iterations;
+        }
+        if (integrator == EIntegrator.XPBD) {
+            if (elapsedTime <= 0) {
+                return 0;
+            }
+            int iterations = Math.max(xpbdIterations, minIterations);
+            simulate(iterations, elapsedTime / iterations);
+            return iterations;
+        }
+        float stableTimeStep = TimeStepEstimator.getStableTimeStep(mass, springConstant, viscousDamping, maxSprings);
+        int iterations = TimeStepEstimator.getSubSteps(elapsedTime, stableTimeStep, minIterations);
+        if (iterations > 0) {
+            simulate(iterations, Math.min(elapsedTime / iterations, stableTimeStep));
+        }
+        return iterations;
+    }
+
+    /**
+     * Executes the simulation.
+     *
+     * @param iterations how often the simulation is executed
+     * @param timeStep   simulation time step of one iteration
+     */
+    public void simulate(int iterations, float timeStep) {
+        if (backend == ESimulationBackend.CPU) {
+            if (iterations > 0) {
+                cpuSolver.simulate(iterations, timeStep);
+                publishRenderState();
+            }
+            return;
+        }
+        if (iterations > 0) {
+            savePreviousPositions();
+        }
+        for (int i = 0; i < iterations; i++) {
+            useComputeShaderProgram(timeStep, 0, -1); // apply forces
+            swapComputeBuffers();
+            if (integrator == EIntegrator.XPBD || relaxationMode == ERelaxationMode.GAUSS_SEIDEL) {
+                for (int color = 0; color < colorOffsets.length - 1; color++) {
+                    useComputeShaderProgram(timeStep, 1, color); // in place, no swap
+                }
+            } else {
+                useComputeShaderProgram(timeStep, 1, -1); // relaxation, adjust too long springs
+                swapComputeBuffers();
+            }
+        }
+        if (iterations > 0) {
+            useComputeShaderProgram(0, 2, -1); // write the vbos only once after the last relaxation
+        }
+    }
+
+    /**
+     * Executes the compute shader for all points or for the points of one color (in place).
+     *
+     * @param time  simulation time step
+     * @param state 0 => apply forces, 1 => relaxation (XPBD: constraints), 2 => only write the vbos from the input buffer
+     * @param color -1 => all points, otherwise the points of this color
+     */
+    private void useComputeShaderProgram(float time, int state, int color) {
+        int invocations = color < 0 ? pointCount : colorOffsets[color + 1] - colorOffsets[color];
+        computeProgram.bind();
+        computeProgram.setUniform("time", time);
+        computeProgram.setUniform("normalSign", normalSign);
+        computeProgram.setUniform("sphereEnabled", sphereEnabled ? 1 : 0);
+        computeProgram.setUniform("pointCount", invocations);
+        computeProgram.setUniform("colorStart", color < 0 ? -1 : colorOffsets[color]);
+        computeProgram.setUniform("mass", mass);
+        computeProgram.setUniform("viscousDamping", viscousDamping);
+        computeProgram.setUniform("velocityFluid", velocityFluid);
+        computeProgram.setUniform("springConstant", springConstant);
+        computeProgram.setUniform("state", state);
+        bindComputeBuffers();
+
+        computeProgram.dispatchLinear(invocations);
+
+        if (state == 2) {
+            glMemoryBarrier(GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT); // wait until data is written to the vbos
+        } else {
+            glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT); // wait until data is written, the next color reads the corrected positions
+        }
+
+        unbindComputeBuffers();
+        computeProgram.unbind();
+    }
+
+    /**
+     * Switches the input and output buffers of the positions and velocities. The output of the last stage becomes the input of the next stage.
+     */
+    private void swapComputeBuffers() {
+        int store = positionOutBufferId;
+        positionOutBufferId = positionInBufferId;
+        positionInBufferId = store;
+
+        store = velocityOutBufferId;
+        velocityOutBufferId = velocityInBufferId;
+        velocityInBufferId = store;
+    }
+
+    private void bindComputeBuffers() {
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, positionInBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, positionOutBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 2, vertexVboId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 3, normalsVboId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 4, tangentsVboId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 5, velocityInBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 6, velocityOutBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 7, pointDataBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 16, pointRowBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 17, springBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 18, pointTriangleBufferId);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 19, colorPointBufferId);
+    }
+
+    private void unbindComputeBuffers() {
+        for (int binding = 0; binding <= 7; binding++) {
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, binding, 0);
+        }
+        for (int binding = 16; binding <= 19; binding++) {
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, binding, 0);
+        }
+    }
+
+    /**
+     * Copies the render data of the CPU solver into the back slot of the triple buffer and publishes it. Called on the simulation thread.
+     */
+    private void publishRenderState() {
+        renderStates.getBack().set(cpuSolver);
+        renderStates.publish();
+    }
+
+    /**
+     * Uploads the latest published render data of the CPU solver if there is a new one, see {@link MassSpringCloth}. Called on the OpenGL thread.
+     *
+     * @return interpolation factor between the previous and the current positions
+     */
+    private float uploadPublishedRenderState() {
+        ClothRenderState state = renderStates.acquire();
+        long now = System.nanoTime();
+        if (state != null) {
+            savePreviousPositions();
+            uploadRenderData(state.position, state.normal, state.tangent);
+            if (renderStateTime != 0) {
+                renderStateDuration = state.time - renderStateTime;
+            }
+            renderStateTime = state.time;
+            renderStateUploadTime = now;
+        }
+        if (renderStateDuration <= 0) {
+            return 1;
+        }
+        return Math.min(1, (now - renderStateUploadTime) / (float) renderStateDuration);
+    }
+
+    private void uploadRenderData(float[] position, float[] normal, float[] tangent) {
+        glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, position);
+        glBindBuffer(GL_ARRAY_BUFFER, normalsVboId);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, normal);
+        glBindBuffer(GL_ARRAY_BUFFER, tangentsVboId);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, tangent);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Copies the rendered positions to the previous position vbo.
+     */
+    private void savePreviousPositions() {
+        glMemoryBarrier(GL_BUFFER_UPDATE_BARRIER_BIT); // the positions were written by the compute shader
+        glBindBuffer(GL_COPY_READ_BUFFER, vertexVboId);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, previousPositionVboId);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, pointCount * 16L);
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+    }
+
+    /**
+     * Reads the current positions back from the GPU (CPU backend: the last uploaded positions).
+     * The points are in the order of the model, see {@link MeshClothModel#toOriginalOrder(float[], int)}.
+     *
+     * @param positions target array with at least pointCount * 4 floats
+     */
+    public void readPositions(float[] positions) {
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, backend == ESimulationBackend.CPU ? vertexVboId : positionInBufferId);
+        FloatBuffer buffer = BufferUtils.createFloatBuffer(pointCount * 4);
+        glGetBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, buffer);
+        buffer.get(positions, 0, pointCount * 4);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    public EIntegrator getIntegrator() {
+        return integrator;
+    }
+
+    public ESimulationBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Frees all memory allocated for the buffers.
+     */
+    public void cleanUp() {
+        glDeleteBuffers(positionInBufferId);
+        glDeleteBuffers(positionOutBufferId);
+        glDeleteBuffers(velocityInBufferId);
+        glDeleteBuffers(velocityOutBufferId);
+        glDeleteBuffers(pointDataBufferId);
+        glDeleteBuffers(pointRowBufferId);
+        glDeleteBuffers(springBufferId);
+        glDeleteBuffers(pointTriangleBufferId);
+        glDeleteBuffers(colorPointBufferId);
+        glDeleteBuffers(vertexVboId);
+        glDeleteBuffers(textureVboId);
+        glDeleteBuffers(normalsVboId);
+        glDeleteBuffers(tangentsVboId);
+        glDeleteBuffers(previousPositionVboId);
+        glDeleteBuffers(indicesVboId);
+        glDeleteVertexArrays(vaoId);
+        texture.cleanUp();
+        shaderProgram.cleanUp();
+        if (computeProgram != null) {
+            computeProgram.cleanUp();
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package massspringcloth.cloth;
+
+import org.joml.Vector3f;
+import renderengine.mesh.OBJLoader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Creates the arrays of a cloth with an arbitrary triangle mesh as topology, e.g. a garment panel loaded from an OBJ file.
+ * Unlike {@link MassSpringModel}, the neighbors of a point are not implied by a grid but stored explicitly.
+ * <p>
+ * The springs of each point are stored in compressed sparse row (CSR) format: the springs of point i are the entries
+ * [springOffsets[i], springOffsets[i + 1]) of the spring targets and rest lengths. The first entries of a row are the structural springs
+ * (the edges of the triangles), the entries from bendOffsets[i] on are the bend springs (between the opposite points of two triangles that
+ * share an edge). Every spring is stored in the rows of both points, i.e. each point gathers its forces without writing to its neighbors.
+ * <p>
+ * The points are colored such that no spring connects two points of the same color (greedy coloring, points with many springs first).
+ * All points of one color can be solved in parallel and in place (Gauss-Seidel), because none of them reads the position of another one.
+ * <p>
+ * The points of an OBJ file are in the order of the exporter, thus the neighbors of a point are scattered over the buffers. Optionally the points
+ * are sorted along a Morton curve (Z-order) of their initial positions, i.e. points that are close in space are close in memory as well.
+ * The simulated data is in the sorted order, {@link #toOriginalOrder(float[], int)} restores the order of the input.
+ *
+ * @author Mirco Werner
+ */
+public class MeshClothModel {
+    private static final int MORTON_BITS = 10; // per axis, 30 bit code
+
+    private final int pointCount;
+    private int[] originalIndices; // model point -> input point, null if the points are not reordered
+
+    private float[] positions;
+    private float[] velocities;
+    private float[] pointData;
+    private float[] tex;
+    private int[] indices;
+
+    private int[] springOffsets;
+    private int[] bendOffsets;
+    private int[] springTargets;
+    private float[] restLengths;
+    private int maxSprings;
+
+    private int[] triangleOffsets;
+    private int[] pointTriangles;
+
+    private int[] colors;
+    private int[] colorOffsets;
+    private int[] colorPoints;
+
+    /**
+     * Creates the arrays.
+     *
+     * @param points             initial values of the points
+     * @param textureCoordinates uv tex coord of each point, 2 floats per point
+     * @param triangles          indices of the points of the triangles, 3 per triangle (counter-clockwise for normalSign 1)
+     */
+    public MeshClothModel(Point[] points, float[] textureCoordinates, int[] triangles) {
+        this(points, textureCoordinates, triangles, false);
+    }
+
+    /**
+     * Creates the arrays.
+     *
+     * @param points             initial values of the points
+     * @param textureCoordinates uv tex coord of each point, 2 floats per point
+     * @param triangles          indices of the points of the triangles, 3 per triangle (counter-clockwise for normalSign 1)
+     * @param mortonOrder        true if the points are sorted along a Morton curve of their positions (see {@link #getOriginalIndices()})
+     */
+    public MeshClothModel(Point[] points, float[] textureCoordinates, int[] triangles, boolean mortonOrder) {
+        this.pointCount = points.length;
+        this.indices = triangles;
+        if (mortonOrder) {
+            originalIndices = createMortonOrder(points);
+            Point[] sortedPoints = new Point[pointCount];
+            float[] sortedTextureCoordinates = new float[pointCount * 2];
+            for (int i = 0; i < pointCount; i++) {
+                sortedPoints[i] = points[originalIndices[i]];
+                sortedTextureCoordinates[i * 2] = textureCoordinates[originalIndices[i] * 2];
+                sortedTextureCoordinates[i * 2 + 1] = textureCoordinates[originalIndices[i] * 2 + 1];
+            }
+            points = sortedPoints;
+            textureCoordinates = sortedTextureCoordinates;
+            remapTriangles(triangles);
+        }
+        create(points, textureCoordinates);
+        createSprings(points);
+        createPointTriangles();
+        createColors();
+    }
+
+    /**
+     * Creates the model of the triangle mesh of an OBJ file. The positions are scaled and translated, the points that fulfill
+     * the predicate (evaluated with the transformed positions) are locked. Points that belong to several texture coordinates
+     * (seams) must be welded in the file, otherwise the cloth is cut along the seam.
+     *
+     * @param resourceName resource name of the OBJ file
+     * @param scale        scale of the positions
+     * @param translation  translation of the scaled positions
+     * @param locked       true if the point is locked
+     * @return model
+     * @throws Exception if the file cannot be loaded
+     */
+    public static MeshClothModel fromObj(String resourceName, float scale, Vector3f translation, Predicate<Point> locked) throws Exception {
+        return fromObj(resourceName, scale, translation, locked, false);
+    }
+
+    /**
+     * Creates the model of the triangle mesh of an OBJ file, see {@link #fromObj(String, float, Vector3f, Predicate)}.
+     *
+     * @param resourceName resource name of the OBJ file
+     * @param scale        scale of the positions
+     * @param translation  translation of the scaled positions
+     * @param locked       true if the point is locked
+     * @param mortonOrder  true if the points are sorted along a Morton curve of their positions
+     * @return model
+     * @throws Exception if the file cannot be loaded
+     */
+    public static MeshClothModel fromObj(String resourceName, float scale, Vector3f translation, Predicate<Point> locked, boolean mortonOrder) throws Exception {
+        OBJLoader.MeshData meshData = OBJLoader.loadMeshData(resourceName);
+        Point[] points = new Point[meshData.positions.length / 3];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Point(meshData.positions[i * 3] * scale + translation.x, meshData.positions[i * 3 + 1] * scale + translation.y, meshData.positions[i * 3 + 2] * scale + translation.z, 0, 0, 0, 0);
+            points[i].locked = locked.test(points[i]) ? 1 : 0;
+        }
+        return new MeshClothModel(points, meshData.textureCoordinates, meshData.indices, mortonOrder);
+    }
+
+    /**
+     * Sorts the points by the Morton code of their position quantized in the bounding box of the cloth (ties by their index).
+     *
+     * @return input point of each model point
+     */
+    private static int[] createMortonOrder(Point[] points) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (Point point : points) {
+            minX = Math.min(minX, point.x);
+            minY = Math.min(minY, point.y);
+            minZ = Math.min(minZ, point.z);
+            maxX = Math.max(maxX, point.x);
+            maxY = Math.max(maxY, point.y);
+            maxZ = Math.max(maxZ, point.z);
+        }
+        // same scale on all axes, a flat cloth does not waste bits on its thin axis but keeps its proportions
+        float extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+        float scale = extent > 0 ? ((1 << MORTON_BITS) - 1) / extent : 0;
+
+        long[] keys = new long[points.length]; // Morton code in the upper, index in the lower 32 bits
+        for (int i = 0; i < points.length; i++) {
+            long code = spreadBits((int) ((points[i].x - minX) * scale))
+                    | spreadBits((int) ((points[i].y - minY) * scale)) << 1
+                    | spreadBits((int) ((points[i].z - minZ) * scale)) << 2;
+            keys[i] = code << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Inserts two zero bits after each of the lower {@link #MORTON_BITS} bits of the value.
+     */
+    private static long spreadBits(int value) {
+        long x = value & ((1 << MORTON_BITS) - 1);
+        x = (x | x << 16) & 0x030000FFL;
+        x = (x | x << 8) & 0x0300F00FL;
+        x = (x | x << 4) & 0x030C30C3L;
+        x = (x | x << 2) & 0x09249249L;
+        return x;
+    }
+
+    /**
+     * Replaces the input points of the triangles by the model points and sorts the triangles by their smallest point,
+     * the triangles of neighboring points are neighbors in the index buffer as well.
+     *
+     * @param triangles indices of the input points, 3 per triangle
+     */
+    private void remapTriangles(int[] triangles) {
+        int[] modelIndices = new int[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            modelIndices[originalIndices[i]] = i;
+        }
+        int triangleCount = triangles.length / 3;
+        long[] keys = new long[triangleCount]; // smallest point in the upper, triangle in the lower 32 bits
+        for (int t = 0; t < triangleCount; t++) {
+            int smallest = Math.min(modelIndices[triangles[t * 3]], Math.min(modelIndices[triangles[t * 3 + 1]], modelIndices[triangles[t * 3 + 2]]));
+            keys[t] = (long) smallest << 32 | t;
+        }
+        Arrays.sort(keys);
+        indices = new int[triangles.length];
+        for (int t = 0; t < triangleCount; t++) {
+            int triangle = (int) keys[t];
+            for (int e = 0; e < 3; e++) {
+                indices[t * 3 + e] = modelIndices[triangles[triangle * 3 + e]]; // keeps the winding
+            }
+        }
+    }
+
+    /**
+     * Creates the float arrays for the buffer creation, same layout as {@link MassSpringModel}.
+     */
+    private void create(Point[] points, float[] textureCoordinates) {
+        positions = new float[pointCount * 4];
+        velocities = new float[pointCount * 4];
+        pointData = new float[pointCount * 4];
+        tex = Arrays.copyOf(textureCoordinates, pointCount * 2);
+        for (int i = 0; i < pointCount; i++) {
+            Point point = points[i];
+
+            positions[i * 4] = point.x;
+            positions[i * 4 + 1] = point.y;
+            positions[i * 4 + 2] = point.z;
+            positions[i * 4 + 3] = 1;
+
+            velocities[i * 4] = point.v_x;
+            velocities[i * 4 + 1] = point.v_y;
+            velocities[i * 4 + 2] = point.v_z;
+            velocities[i * 4 + 3] = 0;
+
+            pointData[i * 4] = point.locked;
+            pointData[i * 4 + 1] = tex[i * 2];
+            pointData[i * 4 + 2] = tex[i * 2 + 1];
+            pointData[i * 4 + 3] = 0;
+        }
+    }
+
+    /**
+     * Creates the structural springs from the edges of the triangles and the bend springs from the pairs of triangles that share an edge.
+     * The springs of a row are sorted by their target. Springs between points at the same position
+     * are kept with rest length 0, they hold the points together.
+     */
+    private void createSprings(Point[] points) {
+        List<TreeSet<Integer>> structural = new ArrayList<>(pointCount);
+        List<TreeSet<Integer>> bend = new ArrayList<>(pointCount);
+        for (int i = 0; i < pointCount; i++) {
+            structural.add(new TreeSet<>());
+            bend.add(new TreeSet<>());
+        }
+
+        // opposite point of the first triangle of each edge, the key contains the smaller point in the upper 32 bits
+        Map<Long, Integer> edges = new HashMap<>();
+        for (int t = 0; t < indices.length; t += 3) {
+            for (int e = 0; e < 3; e++) {
+                int a = indices[t + e];
+                int b = indices[t + (e + 1) % 3];
+                int opposite = indices[t + (e + 2) % 3];
+                structural.get(a).add(b);
+                structural.get(b).add(a);
+                long key = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+                Integer first = edges.putIfAbsent(key, opposite);
+                if (first != null && first != opposite) {
+                    bend.get(first).add(opposite);
+                    bend.get(opposite).add(first);
+                }
+            }
+        }
+
+        springOffsets = new int[pointCount + 1];
+        bendOffsets = new int[pointCount];
+        int springCount = 0;
+        for (int i = 0; i < pointCount; i++) {
+            structural.get(i).remove(i);
+            bend.get(i).remove(i);
+            bend.get(i).removeAll(structural.get(i)); // e.g. the diagonal of a quad that is also an edge of another triangle
+            springCount += structural.get(i).size() + bend.get(i).size();
+        }
+        springTargets = new int[springCount];
+        restLengths = new float[springCount];
+        int s = 0;
+        for (int i = 0; i < pointCount; i++) {
+            springOffsets[i] = s;
+            s = addSprings(points, i, structural.get(i), s);
+            bendOffsets[i] = s;
+            s = addSprings(points, i, bend.get(i), s);
+            maxSprings = Math.max(maxSprings, s - springOffsets[i]);
+        }
+        springOffsets[pointCount] = s;
+    }
+
+    /**
+     * Appends the springs from point i to the targets at index s.
+     *
+     * @return index after the last appended spring
+     */
+    private int addSprings(Point[] points, int i, TreeSet<Integer> targets, int s) {
+        for (int j : targets) {
+            float dx = points[j].x - points[i].x;
+            float dy = points[j].y - points[i].y;
+            float dz = points[j].z - points[i].z;
+            springTargets[s] = j;
+            restLengths[s] = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            s++;
+        }
+        return s;
+    }
+
+    /**
+     * Creates the triangles of each point (CSR like the springs), the normal and the tangent of a point are summed up over its triangles.
+     */
+    private void createPointTriangles() {
+        triangleOffsets = new int[pointCount + 1];
+        for (int index : indices) {
+            triangleOffsets[index + 1]++;
+        }
+        for (int i = 0; i < pointCount; i++) {
+            triangleOffsets[i + 1] += triangleOffsets[i];
+        }
+        pointTriangles = new int[indices.length];
+        int[] next = Arrays.copyOf(triangleOffsets, pointCount);
+        for (int k = 0; k < indices.length; k++) {
+            pointTriangles[next[indices[k]]++] = k / 3;
+        }
+    }
+
+    /**
+     * Colors the points greedily (Welsh-Powell): the points are visited in descending order of their amount of springs and get the smallest
+     * color that none of their neighbors has. The amount of colors is at most the largest amount of springs of a point plus one.
+     */
+    private void createColors() {
+        Integer[] order = new Integer[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(springOffsets[b + 1] - springOffsets[b], springOffsets[a + 1] - springOffsets[a]));
+
+        colors = new int[pointCount];
+        Arrays.fill(colors, -1);
+        boolean[] used = new boolean[maxSprings + 1];
+        int colorCount = 0;
+        for (int i : order) {
+            for (int s = springOffsets[i]; s < springOffsets[i + 1]; s++) {
+                if (colors[springTargets[s]] >= 0) {
+                    used[colors[springTargets[s]]] = true;
+                }
+            }
+            int color = 0;
+            while (used[color]) {
+                color++;
+            }
+            colors[i] = color;
+            colorCount = Math.max(colorCount, color + 1);
+            for (int s = springOffsets[i]; s < springOffsets[i + 1]; s++) {
+                if (colors[springTargets[s]] >= 0) {
+                    used[colors[springTargets[s]]] = false;
+                }
+            }
+        }
+
+        // points of each color in ascending order
+        colorOffsets = new int[colorCount + 1];
+        for (int color : colors) {
+            colorOffsets[color + 1]++;
+        }
+        for (int c = 0; c < colorCount; c++) {
+            colorOffsets[c + 1] += colorOffsets[c];
+        }
+        colorPoints = new int[pointCount];
+        int[] next = Arrays.copyOf(colorOffsets, colorCount);
+        for (int i = 0; i < pointCount; i++) {
+            colorPoints[next[colors[i]]++] = i;
+        }
+    }
+
+    /**
+     * @return initial positions, 4 floats per point (x, y, z, 1)
+     */
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return initial velocities, 4 floats per point (x, y, z, 0)
+     */
+    public float[] getVelocities() {
+        return velocities;
+    }
+
+    /**
+     * @return static data that never changes during the simulation, 4 floats per point (locked, u, v, padding)
+     */
+    public float[] getPointData() {
+        return pointData;
+    }
+
+    /**
+     * @return first spring of each point and the amount of springs at index pointCount, the springs of point i are [springOffsets[i], springOffsets[i + 1])
+     */
+    public int[] getSpringOffsets() {
+        return springOffsets;
+    }
+
+    /**
+     * @return first bend spring of each point, the springs [springOffsets[i], bendOffsets[i]) are structural springs
+     */
+    public int[] getBendOffsets() {
+        return bendOffsets;
+    }
+
+    /**
+     * @return point at the other end of each spring
+     */
+    public int[] getSpringTargets() {
+        return springTargets;
+    }
+
+    /**
+     * @return rest length of each spring, the distance between the points in the initial configuration
+     */
+    public float[] getRestLengths() {
+        return restLengths;
+    }
+
+    /**
+     * @return largest amount of springs of a point (see {@link TimeStepEstimator#getStableTimeStep(float, float, float, int)})
+     */
+    public int getMaxSprings() {
+        return maxSprings;
+    }
+
+    /**
+     * @return first triangle of each point and the amount of entries at index pointCount, the triangles of point i are
+     * pointTriangles[triangleOffsets[i]] to pointTriangles[triangleOffsets[i + 1] - 1]
+     */
+    public int[] getTriangleOffsets() {
+        return triangleOffsets;
+    }
+
+    /**
+     * @return triangles (index of the first index / 3) of the points, see {@link #getTriangleOffsets()}
+     */
+    public int[] getPointTriangles() {
+        return pointTriangles;
+    }
+
+    /**
+     * @return color of each point, no spring connects two points of the same color
+     */
+    public int[] getColors() {
+        return colors;
+    }
+
+    /**
+     * @return first entry of each color in the color points and the amount of points at index colorCount
+     */
+    public int[] getColorOffsets() {
+        return colorOffsets;
+    }
+
+    /**
+     * @return points sorted by color, the points of color c are colorPoints[colorOffsets[c]] to colorPoints[colorOffsets[c + 1] - 1]
+     */
+    public int[] getColorPoints() {
+        return colorPoints;
+    }
+
+    /**
+     * @return input point (index in the points of the constructor or the OBJ file) of each model point, null if the points are not reordered
+     */
+    public int[] getOriginalIndices() {
+        return originalIndices;
+    }
+
+    /**
+     * Copies per-point data of the simulation (e.g. positions read back from the cloth) into the order of the input points.
+     *
+     * @param values     data in the order of the model, components floats per point
+     * @param components amount of floats per point
+     * @return data in the order of the input points (a copy if the points are not reordered)
+     */
+    public float[] toOriginalOrder(float[] values, int components) {
+        if (originalIndices == null) {
+            return Arrays.copyOf(values, pointCount * components);
+        }
+        float[] result = new float[pointCount * components];
+        for (int i = 0; i < pointCount; i++) {
+            System.arraycopy(values, i * components, result, originalIndices[i] * components, components);
+        }
+        return result;
+    }
+
+    public int getColorCount() {
+        return colorOffsets.length - 1;
+    }
+
+    public float[] getTex() {
+        return tex;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public long getVertexBufferLengthInBytes() {
+        return pointCount * 16L; // 4 vertices times 4 bytes long float
+    }
+}
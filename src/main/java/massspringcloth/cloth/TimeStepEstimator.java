@@ -0,0 +1,133 @@
+package massspringcloth.cloth;
+
+/**
+ * Estimates stable time steps for the explicit integration of the mass-spring model and splits elapsed time into as few sub-steps as possible.
+ * <p>
+ * The compute shader integrates with (semi-implicit) Euler, which is stable for time steps below 2 / omega, where omega is the highest
+ * angular frequency of the system. A point is connected by at most {@link #MAX_SPRINGS} springs with the same spring constant k,
+ * therefore the highest eigenvalue of the stiffness matrix is at most 2 * 12 * k (Gershgorin) and omega <= sqrt(24 * k / mass).
+ * The viscous damping c is stable for time steps below 2 * mass / c.
+ *
+ * @author Mirco Werner
+ */
+public final class TimeStepEstimator {
+    /**
+     * Amount of springs per point (horizontal, vertical, diagonal and two horizontal/vertical).
+     */
+    public static final int MAX_SPRINGS = 12;
+    /**
+     * Factor applied to the stability limit to stay clear of it.
+     */
+    public static final float SAFETY_FACTOR = 0.9f;
+    /**
+     * Maximum distance a point may move in one step relative to the resting length (half of the 10% the relaxation allows).
+     */
+    public static final float MAX_DISPLACEMENT = 0.05f;
+    /**
+     * Maximum amount of sub-steps for one call, more would stall the frame. The simulation falls behind the elapsed time instead.
+     */
+    public static final int MAX_SUB_STEPS = 100;
+    /**
+     * Factor by which the time step of the implicit integration exceeds the explicit stability limit.
+     * Backward Euler is stable for any time step, larger steps only add numerical damping.
+     */
+    public static final float IMPLICIT_STEP_FACTOR = 10;
+    /**
+     * Time step of projective dynamics ({@link EIntegrator#PROJECTIVE_DYNAMICS}). It is stable for any stiffness,
+     * thus the time step is constant and the factorized system matrix can be reused.
+     */
+    public static final float PROJECTIVE_DYNAMICS_TIME_STEP = 0.05f;
+
+    private TimeStepEstimator() {
+    }
+
+    /**
+     * Calculates the largest stable time step from the stiffness/mass ratio and the damping.
+     *
+     * @param mass           mass of one point
+     * @param springConstant spring constant >= 0
+     * @param viscousDamping damping constant >= 0
+     * @return stable time step
+     */
+    public static float getStableTimeStep(float mass, float springConstant, float viscousDamping) {
+        return getStableTimeStep(mass, springConstant, viscousDamping, MAX_SPRINGS);
+    }
+
+    /**
+     * Calculates the largest stable time step of a cloth whose points have at most the given amount of springs, e.g. a triangle mesh
+     * (see {@link MeshClothModel#getMaxSprings()}). The highest eigenvalue of the stiffness matrix is at most 2 * maxSprings * k.
+     *
+     * @param mass           mass of one point
+     * @param springConstant spring constant >= 0
+     * @param viscousDamping damping constant >= 0
+     * @param maxSprings     largest amount of springs of a point
+     * @return stable time step
+     */
+    public static float getStableTimeStep(float mass, float springConstant, float viscousDamping, int maxSprings) {
+        float timeStep = Float.MAX_VALUE;
+        if (springConstant > 0 && maxSprings > 0) {
+            timeStep = 2 / (float) Math.sqrt(2 * maxSprings * springConstant / mass);
+        }
+        if (viscousDamping > 0) {
+            timeStep = Math.min(timeStep, 2 * mass / viscousDamping);
+        }
+        return SAFETY_FACTOR * timeStep;
+    }
+
+    /**
+     * Calculates the time step for the implicit integration ({@link EIntegrator#IMPLICIT_EULER}).
+     *
+     * @param mass           mass of one point
+     * @param springConstant spring constant >= 0
+     * @param viscousDamping damping constant >= 0
+     * @return {@link #IMPLICIT_STEP_FACTOR} times the stable time step of the explicit integration
+     */
+    public static float getImplicitTimeStep(float mass, float springConstant, float viscousDamping) {
+        return IMPLICIT_STEP_FACTOR * getStableTimeStep(mass, springConstant, viscousDamping);
+    }
+
+    /**
+     * Refines the time step such that the fastest point moves at most {@link #MAX_DISPLACEMENT} times the resting length.
+     *
+     * @param timeStep stable time step
+     * @param maxSpeed highest speed of all points
+     * @return refined time step
+     */
+    public static float limitByVelocity(float timeStep, float maxSpeed) {
+        if (maxSpeed <= 0) {
+            return timeStep;
+        }
+        return Math.min(timeStep, MAX_DISPLACEMENT / maxSpeed);
+    }
+
+    /**
+     * Calculates how many sub-steps are needed to cover the elapsed time without exceeding the given time step.
+     * The elapsed time is split into equally long sub-steps, i.e. elapsedTime / subSteps <= timeStep. At most {@link #MAX_SUB_STEPS}.
+     *
+     * @param elapsedTime time that should be simulated
+     * @param timeStep    largest allowed time step
+     * @return amount of sub-steps
+     */
+    public static int getSubSteps(float elapsedTime, float timeStep) {
+        if (elapsedTime <= 0) {
+            return 0;
+        }
+        return (int) Math.min(MAX_SUB_STEPS, Math.ceil(elapsedTime / timeStep));
+    }
+
+    /**
+     * Calculates how many sub-steps are needed to cover the elapsed time, but at least the given amount.
+     * More sub-steps than needed shorten the time step, i.e. improve the accuracy without affecting the stability. At most {@link #MAX_SUB_STEPS}.
+     *
+     * @param elapsedTime time that should be simulated
+     * @param timeStep    largest allowed time step
+     * @param minSubSteps requested amount of sub-steps (0 => as few as possible)
+     * @return amount of sub-steps
+     */
+    public static int getSubSteps(float elapsedTime, float timeStep, int minSubSteps) {
+        if (elapsedTime <= 0) {
+            return 0;
+        }
+        return Math.min(MAX_SUB_STEPS, Math.max(getSubSteps(elapsedTime, timeStep), minSubSteps));
+    }
+}
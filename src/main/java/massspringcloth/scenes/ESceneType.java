@@ -1,5 +1,6 @@
 package massspringcloth.scenes;
 
+import massspringcloth.cloth.ESimulationBackend;
 import renderengine.camera.ThirdPersonCamera;
 
 /**
@@ -11,22 +12,25 @@ public enum ESceneType {
     HANGING,
     HANGING_PLANE,
     SPHERE,
-    FLAG;
+    FLAG,
+    MESH;
 
     /**
      * Creates the scene (object).
      *
-     * @param scene  scene type to construct
-     * @param camera camera of the scene
+     * @param scene   scene type to construct
+     * @param camera  camera of the scene
+     * @param backend where the simulation of the cloth is executed
      * @return created scene (object)
      * @throws Exception if the creation fails
      */
-    public static IScene createScene(ESceneType scene, ThirdPersonCamera camera) throws Exception {
+    public static IScene createScene(ESceneType scene, ThirdPersonCamera camera, ESimulationBackend backend) throws Exception {
         return switch (scene) {
-            case HANGING -> new HangingScene(camera);
-            case HANGING_PLANE -> new HangingPlaneScene(camera);
-            case SPHERE -> new SphereScene(camera);
-            case FLAG -> new FlagScene(camera);
+            case HANGING -> new HangingScene(camera, backend);
+            case HANGING_PLANE -> new HangingPlaneScene(camera, backend);
+            case SPHERE -> new SphereScene(camera, backend);
+            case FLAG -> new FlagScene(camera, backend);
+            case MESH -> new MeshScene(camera, backend);
         };
     }
 }
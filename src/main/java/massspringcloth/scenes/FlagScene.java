@@ -1,5 +1,7 @@
 package massspringcloth.scenes;
 
+import massspringcloth.cloth.ESimulationBackend;
+import massspringcloth.cloth.EStorageMode;
 import massspringcloth.cloth.MassSpringCloth;
 import massspringcloth.cloth.MassSpringModel;
 import massspringcloth.cloth.Point;
@@ -16,6 +18,8 @@ import renderengine.entities.Light;
  * @author Mirco Werner
  */
 public class FlagScene implements IScene {
+    private static final int ITERATIONS = 2; // iterations per step the scene is tuned for
+
     private final MassSpringCloth massSpringCloth;
     private final Vector3f velocityFluid = new Vector3f(-70f, 0f, 0f); // wind
     private float counter = 0;
@@ -23,10 +27,11 @@ public class FlagScene implements IScene {
     /**
      * Creates the initial state of the cloth.
      *
-     * @param camera camera of the scene
+     * @param camera  camera of the scene
+     * @param backend where the simulation of the cloth is executed
      * @throws Exception if the scene creation fails
      */
-    public FlagScene(ThirdPersonCamera camera) throws Exception {
+    public FlagScene(ThirdPersonCamera camera, ESimulationBackend backend) throws Exception {
         int width = 30;
         int height = 20;
         Point[][] points = new Point[width][height];
@@ -37,7 +42,9 @@ public class FlagScene implements IScene {
             }
         }
 
-        massSpringCloth = new MassSpringCloth(new MassSpringModel(width, height, points), 1, false, 1, 1.5f, velocityFluid, 500);
+        massSpringCloth = new MassSpringCloth(new MassSpringModel(width, height, points), 1, false, 1, 1.5f, velocityFluid, 500, EStorageMode.FULL, backend);
+        massSpringCloth.setMinIterations(ITERATIONS);
+        massSpringCloth.setLongRangeAttachmentsEnabled(Boolean.getBoolean("longRangeAttachments")); // opt-in, the pinned points hold the whole cloth
 
         camera.setCenter(0, 50, 0);
         camera.setPhi((float) Math.PI / 8f);
@@ -51,14 +58,24 @@ public class FlagScene implements IScene {
     }
 
     @Override
-    public void simulate() {
+    public int simulate() {
         counter += 0.005f;
         velocityFluid.z = 50 * Math.abs((float) Math.sin(counter)); // change wind in z direction by time
-        massSpringCloth.simulate(2);
+        return massSpringCloth.simulateAdaptive(0.02f);
+    }
+
+    @Override
+    public void setMinIterations(int minIterations) {
+        massSpringCloth.setMinIterations(minIterations);
+    }
+
+    @Override
+    public int getIterations() {
+        return ITERATIONS;
     }
 
     @Override
-    public void render(Window window, ACamera camera, Light light) {
-        massSpringCloth.render(window, camera, light);
+    public void render(Window window, ACamera camera, Light light, float interpolation) {
+        massSpringCloth.render(window, camera, light, interpolation);
     }
 }
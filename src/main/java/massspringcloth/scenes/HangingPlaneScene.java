@@ -1,5 +1,7 @@
 package massspringcloth.scenes;
 
+import massspringcloth.cloth.ESimulationBackend;
+import massspringcloth.cloth.EStorageMode;
 import massspringcloth.cloth.MassSpringCloth;
 import massspringcloth.cloth.MassSpringModel;
 import massspringcloth.cloth.Point;
@@ -16,15 +18,18 @@ import renderengine.entities.Light;
  * @author Mirco Werner
  */
 public class HangingPlaneScene implements IScene {
+    private static final int ITERATIONS = 10; // iterations per step the scene is tuned for
+
     private final MassSpringCloth massSpringCloth;
 
     /**
      * Creates the initial state of the cloth.
      *
-     * @param camera camera of the scene
+     * @param camera  camera of the scene
+     * @param backend where the simulation of the cloth is executed
      * @throws Exception if the scene creation fails
      */
-    public HangingPlaneScene(ThirdPersonCamera camera) throws Exception {
+    public HangingPlaneScene(ThirdPersonCamera camera, ESimulationBackend backend) throws Exception {
         int width = 40;
         int height = 40;
         Point[][] points = new Point[width][height];
@@ -41,7 +46,10 @@ public class HangingPlaneScene implements IScene {
         points[width - 1][0].locked = 1;
         points[width - 1][0].y = 55;
 
-        massSpringCloth = new MassSpringCloth(new MassSpringModel(width, height, points), -1, false, 1, 1.5f, new Vector3f(0), 500);
+        massSpringCloth = new MassSpringCloth(new MassSpringModel(width, height, points), -1, false, 1, 1.5f, new Vector3f(0), 500, EStorageMode.FULL, backend);
+        massSpringCloth.setMinIterations(ITERATIONS);
+        massSpringCloth.setLongRangeAttachmentsEnabled(Boolean.getBoolean("longRangeAttachments")); // opt-in, the pinned points hold the whole cloth
+        massSpringCloth.setSleepingEnabled(Boolean.getBoolean("sleeping")); // opt-in, the cloth stops consuming compute once it has come to rest
 
         camera.setCenter(-10, 35, -10);
         camera.setPhi((float) Math.PI / 8f);
@@ -55,12 +63,22 @@ public class HangingPlaneScene implements IScene {
     }
 
     @Override
-    public void simulate() {
-        massSpringCloth.simulate(10);
+    public int simulate() {
+        return massSpringCloth.simulateAdaptive(0.1f);
+    }
+
+    @Override
+    public void setMinIterations(int minIterations) {
+        massSpringCloth.setMinIterations(minIterations);
+    }
+
+    @Override
+    public int getIterations() {
+        return ITERATIONS;
     }
 
     @Override
-    public void render(Window window, ACamera camera, Light light) {
-        massSpringCloth.render(window, camera, light);
+    public void render(Window window, ACamera camera, Light light, float interpolation) {
+        massSpringCloth.render(window, camera, light, interpolation);
     }
 }
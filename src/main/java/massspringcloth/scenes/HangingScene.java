@@ -5,6 +5,8 @@ import renderengine.camera.ACamera;
 import renderengine.camera.ThirdPersonCamera;
 import renderengine.engine.Window;
 import renderengine.entities.Light;
+import massspringcloth.cloth.ESimulationBackend;
+import massspringcloth.cloth.EStorageMode;
 import massspringcloth.cloth.MassSpringCloth;
 import massspringcloth.cloth.MassSpringModel;
 import massspringcloth.cloth.Point;
@@ -16,6 +18,8 @@ import org.joml.SimplexNoise;
  * @author Mirco Werner
  */
 public class HangingScene implements IScene {
+    private static final int ITERATIONS = 10; // iterations per step the scene is tuned for
+
     private final MassSpringCloth massSpringCloth;
     private final Vector3f velocityFluid = new Vector3f(0f, 0f, 0f); // wind (if enabled)
     private boolean windEnabled = false;
@@ -24,10 +28,11 @@ public class HangingScene implements IScene {
     /**
      * Creates the initial state of the cloth.
      *
-     * @param camera camera of the scene
+     * @param camera  camera of the scene
+     * @param backend where the simulation of the cloth is executed
      * @throws Exception if the scene creation fails
      */
-    public HangingScene(ThirdPersonCamera camera) throws Exception {
+    public HangingScene(ThirdPersonCamera camera, ESimulationBackend backend) throws Exception {
         int width = 20;
         int height = 20;
         Point[][] points = new Point[width][height];
@@ -38,7 +43,9 @@ public class HangingScene implements IScene {
             }
         }
 
-        massSpringCloth = new MassSpringCloth(new MassSpringModel(width, height, points), 1, false, 1, 1.5f, velocityFluid, 500);
+        massSpringCloth = new MassSpringCloth(new MassSpringModel(width, height, points), 1, false, 1, 1.5f, velocityFluid, 500, EStorageMode.FULL, backend);
+        massSpringCloth.setMinIterations(ITERATIONS);
+        massSpringCloth.setLongRangeAttachmentsEnabled(Boolean.getBoolean("longRangeAttachments")); // opt-in, the pinned points hold the whole cloth
 
         camera.setCenter(0, 50, 0);
         camera.setPhi((float) Math.PI / 8f);
@@ -52,17 +59,27 @@ public class HangingScene implements IScene {
     }
 
     @Override
-    public void simulate() {
+    public int simulate() {
         if (windEnabled) {
             counter += 0.005f * Math.random();
             velocityFluid.z = 20 * Math.abs((float) Math.sin(counter)); // change wind in z direction by time
         }
-        massSpringCloth.simulate(10);
+        return massSpringCloth.simulateAdaptive(0.1f);
+    }
+
+    @Override
+    public void setMinIterations(int minIterations) {
+        massSpringCloth.setMinIterations(minIterations);
+    }
+
+    @Override
+    public int getIterations() {
+        return ITERATIONS;
     }
 
     @Override
-    public void render(Window window, ACamera camera, Light light) {
-        massSpringCloth.render(window, camera, light);
+    public void render(Window window, ACamera camera, Light light, float interpolation) {
+        massSpringCloth.render(window, camera, light, interpolation);
     }
 
     /**
@@ -16,16 +16,35 @@ public interface IScene {
     void destruct();
 
     /**
-     * Executes a simulation of the scene, i.e. execution of the compute shader multiple times.
+     * Executes one simulation step of the scene, i.e. execution of the compute shader multiple times.
+     * It is called {@link massspringcloth.simulation.SimulationController#STEPS_PER_SECOND} times per second.
+     *
+     * @return amount of executed iterations
+     */
+    int simulate();
+
+    /**
+     * Sets the amount of iterations one simulation step executes at least (see {@link massspringcloth.cloth.MassSpringCloth#setMinIterations(int)}).
+     * Used by the {@link massspringcloth.simulation.SimulationController} to keep the iterations the scene is tuned for and by the
+     * {@link massspringcloth.simulation.IterationGovernor} to fill the frame budget.
+     *
+     * @param minIterations amount of iterations (0 => as few as the stable time step allows)
+     */
+    void setMinIterations(int minIterations);
+
+    /**
+     * @return amount of iterations per simulation step the scene is tuned for, executed at least unless the adaptive mode is enabled
+     * (see {@link massspringcloth.simulation.SimulationController#setAdaptive(boolean)})
      */
-    void simulate();
+    int getIterations();
 
     /**
      * Renders the cloth (and probably other entities defined in the scene).
      *
-     * @param window window of the application
-     * @param camera camera of the scene
-     * @param light  light in the scene
+     * @param window        window of the application
+     * @param camera        camera of the scene
+     * @param light         light in the scene
+     * @param interpolation 0 => state before the last simulation step, 1 => state after the last simulation step
      */
-    void render(Window window, ACamera camera, Light light);
+    void render(Window window, ACamera camera, Light light, float interpolation);
 }
@@ -0,0 +1,94 @@
+package massspringcloth.scenes;
+
+import massspringcloth.cloth.EIntegrator;
+import massspringcloth.cloth.ESimulationBackend;
+import massspringcloth.cloth.MeshCloth;
+import massspringcloth.cloth.MeshClothModel;
+import org.joml.Vector3f;
+import renderengine.camera.ACamera;
+import renderengine.camera.ThirdPersonCamera;
+import renderengine.engine.Window;
+import renderengine.entities.Entity;
+import renderengine.entities.Light;
+import renderengine.mesh.OBJLoader;
+import renderengine.mesh.Texture;
+import renderengine.mesh.TexturedModel;
+import renderengine.renderer.ModelRenderer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Defines a scene where a cloth with a triangle mesh as topology (the bundled sphere model, see {@link MeshClothModel}) is falling on a sphere.
+ *
+ * @author Mirco Werner
+ */
+public class MeshScene implements IScene {
+    private static final int ITERATIONS = 20; // iterations (XPBD sub-steps) per step the scene is tuned for
+
+    private final MeshCloth meshCloth;
+
+    private final ModelRenderer modelRenderer;
+    private final Map<TexturedModel, List<Entity>> modeledEntities = new HashMap<>();
+
+    /**
+     * Creates the initial state of the cloth and the sphere entity.
+     *
+     * @param camera  camera of the scene
+     * @param backend where the simulation of the cloth is executed
+     * @throws Exception if the scene creation fails
+     */
+    public MeshScene(ThirdPersonCamera camera, ESimulationBackend backend) throws Exception {
+        // closed cloth in the shape of a sphere with radius 15 above the sphere, the points are sorted along a Morton curve
+        MeshClothModel model = MeshClothModel.fromObj("models/sphere.obj", 30, new Vector3f(0, 60, 0), point -> false, true);
+
+        meshCloth = new MeshCloth(model, 1, true, 1, 0.8f, new Vector3f(0), 100, backend, EIntegrator.XPBD, ITERATIONS);
+        meshCloth.setMinIterations(ITERATIONS);
+
+        modelRenderer = new ModelRenderer();
+
+        TexturedModel sphere = new TexturedModel(OBJLoader.loadMesh("models/sphere.obj"),
+                Texture.loadTexture("textures/white.png"));
+        Entity entity = new Entity();
+        entity.setPosition(0, 30f, 0);
+        entity.setScale(19.5f);
+        modeledEntities.put(sphere, new ArrayList<>() {{
+            add(entity);
+        }});
+
+        camera.setCenter(0, 40, 0);
+        camera.setPhi((float) Math.PI / 8f);
+        camera.setTheta((float) Math.PI / 8f);
+        camera.setR(60);
+    }
+
+    @Override
+    public void destruct() {
+        meshCloth.cleanUp();
+        modelRenderer.cleanUp();
+        modeledEntities.keySet().forEach(TexturedModel::cleanUp);
+    }
+
+    @Override
+    public int simulate() {
+        return meshCloth.simulateAdaptive(0.1f);
+    }
+
+    @Override
+    public void setMinIterations(int minIterations) {
+        meshCloth.setMinIterations(minIterations);
+    }
+
+    @Override
+    public int getIterations() {
+        return ITERATIONS;
+    }
+
+    @Override
+    public void render(Window window, ACamera camera, Light light, float interpolation) {
+        meshCloth.render(window, camera, light, interpolation);
+        modelRenderer.render(window, camera, light, modeledEntities);
+    }
+}
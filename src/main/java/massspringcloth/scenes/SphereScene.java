@@ -1,5 +1,8 @@
 package massspringcloth.scenes;
 
+import massspringcloth.cloth.ClothMask;
+import massspringcloth.cloth.ESimulationBackend;
+import massspringcloth.cloth.EStorageMode;
 import massspringcloth.cloth.MassSpringCloth;
 import massspringcloth.cloth.MassSpringModel;
 import massspringcloth.cloth.Point;
@@ -25,6 +28,8 @@ import java.util.Map;
  * @author Mirco Werner
  */
 public class SphereScene implements IScene {
+    private static final int ITERATIONS = 10; // iterations per step the scene is tuned for
+
     private final MassSpringCloth massSpringCloth;
 
     private final ModelRenderer modelRenderer;
@@ -33,10 +38,11 @@ public class SphereScene implements IScene {
     /**
      * Creates the initial state of the cloth and the sphere entity.
      *
-     * @param camera camera of the scene
+     * @param camera  camera of the scene
+     * @param backend where the simulation of the cloth is executed
      * @throws Exception if the scene creation fails
      */
-    public SphereScene(ThirdPersonCamera camera) throws Exception {
+    public SphereScene(ThirdPersonCamera camera, ESimulationBackend backend) throws Exception {
         int width = 30;
         int height = 30;
         Point[][] points = new Point[width][height];
@@ -47,7 +53,12 @@ public class SphereScene implements IScene {
             }
         }
 
-        massSpringCloth = new MassSpringCloth(new MassSpringModel(width, height, points), -1, true, 1, 0.8f, new Vector3f(0), 100);
+        // opt-in, a round tablecloth: the points outside of the circle inscribed in the grid are removed
+        ClothMask mask = Boolean.getBoolean("mask") ? ClothMask.fromPredicate(width, height, points, point -> point.x * point.x + point.z * point.z <= width * width / 4f) : null;
+
+        massSpringCloth = new MassSpringCloth(new MassSpringModel(width, height, points, mask), -1, true, 1, 0.8f, new Vector3f(0), 100, EStorageMode.FULL, backend);
+        massSpringCloth.setMinIterations(ITERATIONS);
+        massSpringCloth.setSleepingEnabled(Boolean.getBoolean("sleeping")); // opt-in, the cloth stops consuming compute once it has come to rest
 
         modelRenderer = new ModelRenderer();
 
@@ -74,13 +85,23 @@ public class SphereScene implements IScene {
     }
 
     @Override
-    public void simulate() {
-        massSpringCloth.simulate(10);
+    public int simulate() {
+        return massSpringCloth.simulateAdaptive(0.1f);
+    }
+
+    @Override
+    public void setMinIterations(int minIterations) {
+        massSpringCloth.setMinIterations(minIterations);
+    }
+
+    @Override
+    public int getIterations() {
+        return ITERATIONS;
     }
 
     @Override
-    public void render(Window window, ACamera camera, Light light) {
-        massSpringCloth.render(window, camera, light);
+    public void render(Window window, ACamera camera, Light light, float interpolation) {
+        massSpringCloth.render(window, camera, light, interpolation);
         modelRenderer.render(window, camera, light, modeledEntities);
     }
 }
@@ -0,0 +1,117 @@
+package massspringcloth.simulation;
+
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT_AVAILABLE;
+import static org.lwjgl.opengl.GL15.glBeginQuery;
+import static org.lwjgl.opengl.GL15.glDeleteQueries;
+import static org.lwjgl.opengl.GL15.glEndQuery;
+import static org.lwjgl.opengl.GL15.glGenQueries;
+import static org.lwjgl.opengl.GL15.glGetQueryObjecti;
+import static org.lwjgl.opengl.GL33.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33.glGetQueryObjectui64;
+
+/**
+ * Measures the GPU time of the simulation steps of a frame with timer queries (GL_TIME_ELAPSED).
+ * The results are read without stalling: a ring of queries is in flight and only queries whose result is available are read,
+ * usually a few frames after they were issued. If all queries are in flight, the frame is not measured.
+ *
+ * @author Mirco Werner
+ */
+class GpuStepTimer {
+    private final int[] queries;
+    private final int[] steps;
+    private final int[] iterations;
+    private int first; // oldest query in flight
+    private int pending; // amount of queries in flight
+    private int discarded; // amount of the oldest queries in flight whose results are ignored
+
+    private long elapsedNanos;
+    private int elapsedSteps;
+    private int elapsedIterations;
+
+    /**
+     * Creates the queries.
+     *
+     * @param capacity maximum amount of queries in flight
+     */
+    GpuStepTimer(int capacity) {
+        queries = new int[capacity];
+        steps = new int[capacity];
+        iterations = new int[capacity];
+        glGenQueries(queries);
+    }
+
+    /**
+     * Starts the measurement of a frame.
+     *
+     * @return false if no query is free, {@link #end(int, int)} must not be called then
+     */
+    boolean begin() {
+        if (pending == queries.length) {
+            return false;
+        }
+        glBeginQuery(GL_TIME_ELAPSED, queries[(first + pending) % queries.length]);
+        return true;
+    }
+
+    /**
+     * Ends the measurement of a frame.
+     *
+     * @param steps      amount of simulation steps of the frame
+     * @param iterations amount of iterations of these steps
+     */
+    void end(int steps, int iterations) {
+        glEndQuery(GL_TIME_ELAPSED);
+        int index = (first + pending) % queries.length;
+        this.steps[index] = steps;
+        this.iterations[index] = iterations;
+        pending++;
+    }
+
+    /**
+     * Reads the oldest measurement if its result is available.
+     *
+     * @return true if a measurement has been read, see {@link #getElapsedNanos()}, {@link #getElapsedSteps()} and {@link #getElapsedIterations()}
+     */
+    boolean poll() {
+        while (pending > 0 && glGetQueryObjecti(queries[first], GL_QUERY_RESULT_AVAILABLE) != 0) {
+            elapsedNanos = glGetQueryObjectui64(queries[first], GL_QUERY_RESULT);
+            elapsedSteps = steps[first];
+            elapsedIterations = iterations[first];
+            first = (first + 1) % queries.length;
+            pending--;
+            if (discarded > 0) {
+                discarded--;
+                continue;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ignores the results of all queries in flight, e.g. if they belong to a scene that has been replaced.
+     */
+    void discardPending() {
+        discarded = pending;
+    }
+
+    long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    int getElapsedSteps() {
+        return elapsedSteps;
+    }
+
+    int getElapsedIterations() {
+        return elapsedIterations;
+    }
+
+    /**
+     * Deletes the queries.
+     */
+    void cleanUp() {
+        glDeleteQueries(queries);
+    }
+}
@@ -0,0 +1,64 @@
+package massspringcloth.simulation;
+
+import massspringcloth.cloth.TimeStepEstimator;
+
+/**
+ * Chooses the amount of iterations per simulation step such that the simulation of one frame fits into a time budget.
+ * <p>
+ * The measured durations are converted to a cost per iteration, which is smoothed over the last frames. The next amount of iterations
+ * is the budget divided by that cost. It grows by at most {@link #MAX_GROWTH} per measurement, because the measurements lag behind
+ * (GPU timer queries are read a few frames later). The result is only a lower bound: the cloth never uses fewer iterations than its
+ * stable time step requires and never more than {@link TimeStepEstimator#MAX_SUB_STEPS}, thus the governor cannot make the simulation unstable.
+ *
+ * @author Mirco Werner
+ */
+public class IterationGovernor {
+    private static final float COST_SMOOTHING = 0.25f; // weight of the latest measurement
+    private static final float MAX_GROWTH = 1.5f;
+
+    private final float budget;
+    private float costPerIteration; // seconds, 0 => nothing measured yet
+    private int minIterations = 1;
+
+    /**
+     * Creates the governor with one iteration per step until the first measurement arrives.
+     *
+     * @param budget simulation time per frame in seconds
+     */
+    public IterationGovernor(float budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Updates the amount of iterations with a measurement.
+     *
+     * @param duration   time the simulation steps took in seconds
+     * @param steps      amount of simulation steps that were measured
+     * @param iterations amount of iterations of these steps
+     */
+    public void report(float duration, int steps, int iterations) {
+        if (steps <= 0 || iterations <= 0) {
+            return;
+        }
+        float cost = duration / iterations;
+        costPerIteration = costPerIteration == 0 ? cost : costPerIteration + COST_SMOOTHING * (cost - costPerIteration);
+        int target = (int) (budget / (costPerIteration * steps));
+        int limit = (int) Math.ceil(MAX_GROWTH * minIterations);
+        minIterations = Math.max(1, Math.min(Math.min(target, limit), TimeStepEstimator.MAX_SUB_STEPS));
+    }
+
+    /**
+     * Forgets all measurements, e.g. if the scene has been switched.
+     */
+    public void reset() {
+        costPerIteration = 0;
+        minIterations = 1;
+    }
+
+    /**
+     * @return amount of iterations one simulation step should execute at least
+     */
+    public int getMinIterations() {
+        return minIterations;
+    }
+}
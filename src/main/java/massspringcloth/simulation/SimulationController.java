@@ -1,5 +1,6 @@
 package massspringcloth.simulation;
 
+import massspringcloth.cloth.ESimulationBackend;
 import massspringcloth.scenes.ESceneType;
 import massspringcloth.scenes.HangingScene;
 import massspringcloth.scenes.IScene;
@@ -14,22 +15,50 @@ import renderengine.entities.Light;
  * @author Mirco Werner
  */
 public class SimulationController {
+    /**
+     * Amount of simulation steps ({@link IScene#simulate()} calls) per second of real time, independent of the frame rate.
+     * The scenes are tuned for one step per frame at 60 frames per second.
+     */
+    public static final int STEPS_PER_SECOND = 60;
+    private static final float STEP_DURATION = 1f / STEPS_PER_SECOND;
+    /**
+     * Maximum amount of simulation steps per frame. If the frames take longer, the simulation slows down
+     * instead of requiring more and more steps per frame (spiral of death).
+     */
+    private static final int MAX_STEPS_PER_FRAME = 5;
+    private static final int TIMER_QUERIES = 4; // frames whose GPU time can be measured at the same time
+
+    private float accumulator; // real time that has not been simulated yet
+    private float interpolation = 1; // interpolation between the state before and after the last simulation step for rendering
+
     private ESimulationMode simulationMode;
     private IScene scene;
     private ESceneType sceneType;
+    private boolean windEnabled; // wind of the HANGING scene, the scene itself is only updated by the simulation thread
 
     private final ThirdPersonCamera camera;
+    private final ESimulationBackend backend;
+    private final SimulationThread simulationThread; // only for the CPU backend
+
+    private IterationGovernor governor; // GPU backend, null => the scenes choose their iterations (CPU backend: owned by the simulation thread)
+    private boolean adaptive; // true => the scenes may execute fewer iterations than they are tuned for
+    private GpuStepTimer gpuStepTimer; // created with the first GPU governor
 
     /**
      * Creates the simulation controller and loads the HANGING scene.
+     * With {@link ESimulationBackend#CPU}, the scenes are simulated on a {@link SimulationThread}.
+     * Pause, scene switch and wind toggle are passed to that thread as commands, thus a slow simulation does not lower the frame rate.
      *
-     * @param camera camera of the renderer, used to set the camera position when a new scene is loaded
+     * @param camera  camera of the renderer, used to set the camera position when a new scene is loaded
+     * @param backend where the simulation of the cloth is executed
      * @throws Exception if the scene creation fails
      */
-    public SimulationController(ThirdPersonCamera camera) throws Exception {
+    public SimulationController(ThirdPersonCamera camera, ESimulationBackend backend) throws Exception {
         this.camera = camera;
-        scene = new HangingScene(camera);
+        this.backend = backend;
+        scene = new HangingScene(camera, backend);
         sceneType = ESceneType.HANGING;
+        simulationThread = backend == ESimulationBackend.CPU ? new SimulationThread(scene) : null;
     }
 
     /**
@@ -41,30 +70,78 @@ public class SimulationController {
      * @throws Exception if the scene creation fails
      */
     public void switchScene(ESceneType sceneType) throws Exception {
-        if (scene != null) {
-            scene.destruct();
+        if (simulationThread != null) {
+            scene = ESceneType.createScene(sceneType, camera, backend);
+            simulationThread.setScene(scene); // the old scene is destructed when the simulation thread has retired it
+        } else {
+            if (scene != null) {
+                scene.destruct();
+            }
+            scene = ESceneType.createScene(sceneType, camera, backend);
+            if (governor != null) {
+                gpuStepTimer.discardPending(); // measured with the old scene
+                governor.reset();
+            }
+            scene.setMinIterations(getMinIterations(scene, adaptive, governor));
         }
-        scene = ESceneType.createScene(sceneType, camera);
         this.sceneType = sceneType;
+        windEnabled = false;
+        accumulator = 0;
+        interpolation = 1;
     }
 
     /**
      * Executes the simulation if the simulation is running.
+     * The elapsed real time is accumulated and as many fixed simulation steps are executed as fit into the accumulated time
+     * (at most {@link #MAX_STEPS_PER_FRAME}), thus the simulation results do not depend on the frame rate.
+     * The remaining time determines the interpolation factor for rendering.
+     * With a frame budget (see {@link #setFrameBudget(float)}), the GPU time of the steps is measured and the governor
+     * chooses the iterations of the following steps.
+     *
+     * @param elapsedTime real time since the last call in seconds
      */
-    public void simulate() {
-        if (simulationMode == ESimulationMode.SIMULATION) {
-            scene.simulate();
+    public void simulate(float elapsedTime) {
+        if (simulationThread != null) {
+            destructRetiredScenes();
+            return; // the simulation thread executes the steps
+        }
+        if (simulationMode != ESimulationMode.SIMULATION) {
+            accumulator = 0;
+            interpolation = 1;
+            return;
         }
+        accumulator += elapsedTime;
+        boolean timed = governor != null && gpuStepTimer.begin();
+        int steps = 0;
+        int iterations = 0;
+        while (accumulator >= STEP_DURATION && steps < MAX_STEPS_PER_FRAME) {
+            iterations += scene.simulate();
+            accumulator -= STEP_DURATION;
+            steps++;
+        }
+        if (timed) {
+            gpuStepTimer.end(steps, iterations);
+        }
+        if (governor != null) {
+            while (gpuStepTimer.poll()) {
+                governor.report(gpuStepTimer.getElapsedNanos() / 1e9f, gpuStepTimer.getElapsedSteps(), gpuStepTimer.getElapsedIterations());
+            }
+            scene.setMinIterations(getMinIterations(scene, adaptive, governor));
+        }
+        if (accumulator >= STEP_DURATION) {
+            accumulator %= STEP_DURATION; // drop the time that could not be simulated
+        }
+        interpolation = accumulator / STEP_DURATION;
     }
 
     /**
-     * Renders the cloth.
+     * Renders the cloth. The state is interpolated between the last two simulation steps.
      *
      * @param window window of the application
      * @param light  light in the scene
      */
     public void render(Window window, Light light) {
-        scene.render(window, camera, light);
+        scene.render(window, camera, light, interpolation);
     }
 
     public ESimulationMode getSimulationMode() {
@@ -73,22 +150,89 @@ public class SimulationController {
 
     public void setSimulationMode(ESimulationMode simulationMode) {
         this.simulationMode = simulationMode;
+        if (simulationThread != null) {
+            simulationThread.setPaused(simulationMode != ESimulationMode.SIMULATION);
+        }
     }
 
     /**
      * Starts or pauses the simulation mode.
      */
     public void switchSimulationMode() {
-        simulationMode = simulationMode == ESimulationMode.SIMULATION ? ESimulationMode.NONE : ESimulationMode.SIMULATION;
+        setSimulationMode(simulationMode == ESimulationMode.SIMULATION ? ESimulationMode.NONE : ESimulationMode.SIMULATION);
+    }
+
+    /**
+     * Sets the time the simulation of one frame may take. A governor measures the simulation steps (GPU timer queries for
+     * {@link ESimulationBackend#GPU}, the duration of each step on the simulation thread for {@link ESimulationBackend#CPU}) and adjusts
+     * the amount of iterations per step to fill the budget (see {@link IterationGovernor}). Without a budget, each scene executes
+     * the iterations it is tuned for (adaptive mode: as few iterations as its stable time step allows).
+     *
+     * @param budget time per frame in seconds, <= 0 to disable the governor
+     */
+    public void setFrameBudget(float budget) {
+        IterationGovernor governor = budget > 0 ? new IterationGovernor(budget) : null;
+        if (simulationThread != null) {
+            simulationThread.setGovernor(governor);
+            return;
+        }
+        if (governor != null && gpuStepTimer == null) {
+            gpuStepTimer = new GpuStepTimer(TIMER_QUERIES);
+        }
+        this.governor = governor;
+        scene.setMinIterations(getMinIterations(scene, adaptive, governor));
+    }
+
+    /**
+     * Enables or disables the adaptive mode. By default, every step of a scene executes at least the iterations the scene is tuned for
+     * ({@link IScene#getIterations()}), more if its stable time step or the governor requires them. In the adaptive mode, the steps execute
+     * as few iterations as the stable time step allows, i.e. stiff scenes may become stretchier with fewer relaxation passes.
+     *
+     * @param adaptive true to enable the adaptive mode
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+        if (simulationThread != null) {
+            simulationThread.setAdaptive(adaptive);
+            return;
+        }
+        scene.setMinIterations(getMinIterations(scene, adaptive, governor));
+    }
+
+    /**
+     * @param scene    simulated scene
+     * @param adaptive true if the scene may execute fewer iterations than it is tuned for
+     * @param governor governor that chooses the iterations, null if there is no frame budget
+     * @return amount of iterations a step of the scene executes at least
+     */
+    static int getMinIterations(IScene scene, boolean adaptive, IterationGovernor governor) {
+        int minIterations = governor == null ? 0 : governor.getMinIterations();
+        return adaptive ? minIterations : Math.max(scene.getIterations(), minIterations);
+    }
+
+    /**
+     * Frees the OpenGL resources of the scenes the simulation thread does not simulate anymore.
+     */
+    private void destructRetiredScenes() {
+        IScene retiredScene;
+        while ((retiredScene = simulationThread.pollRetiredScene()) != null) {
+            retiredScene.destruct();
+        }
     }
 
     /**
      * The loaded scene will be cleaned up.
      */
     public void cleanUp() {
-        if (scene != null) {
+        if (simulationThread != null) {
+            simulationThread.stop(); // retires the current scene
+            destructRetiredScenes();
+        } else if (scene != null) {
             scene.destruct();
         }
+        if (gpuStepTimer != null) {
+            gpuStepTimer.cleanUp();
+        }
     }
 
     /**
@@ -96,7 +240,13 @@ public class SimulationController {
      */
     public void toggleWindEnabled() {
         if (sceneType == ESceneType.HANGING) {
-            ((HangingScene) scene).toggleWindEnabled();
+            HangingScene hangingScene = (HangingScene) scene;
+            if (simulationThread != null) {
+                simulationThread.execute(hangingScene::toggleWindEnabled);
+            } else {
+                hangingScene.toggleWindEnabled();
+            }
+            windEnabled = !windEnabled;
         }
     }
 
@@ -106,9 +256,6 @@ public class SimulationController {
      * @return true if the wind is enabled AND the HANGING scene is loaded, false otherwise
      */
     public boolean isWindEnabled() {
-        if (sceneType == ESceneType.HANGING) {
-            return ((HangingScene) scene).isWindEnabled();
-        }
-        return false;
+        return sceneType == ESceneType.HANGING && windEnabled;
     }
 }
@@ -0,0 +1,163 @@
+package massspringcloth.simulation;
+
+import massspringcloth.scenes.IScene;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executes the simulation steps of a scene with a CPU backed cloth (see {@link massspringcloth.cloth.ESimulationBackend#CPU}) on its own thread,
+ * {@link SimulationController#STEPS_PER_SECOND} times per second. The cloth publishes every completed state to the OpenGL thread.
+ * <p>
+ * Actions of the OpenGL thread (pause, scene switch, wind toggle) are passed as commands that are executed between two steps.
+ * A replaced scene is handed back to the OpenGL thread, because its OpenGL resources have to be freed there.
+ *
+ * @author Mirco Werner
+ */
+public class SimulationThread {
+    private static final long STEP_NANOS = TimeUnit.SECONDS.toNanos(1) / SimulationController.STEPS_PER_SECOND;
+    private static final int MAX_STEPS_BEHIND = 5; // if the simulation falls further behind, the missed steps are dropped
+
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final Queue<IScene> retiredScenes = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // only accessed by the simulation thread
+    private IScene scene;
+    private boolean paused = true;
+    private IterationGovernor governor; // null => the scenes choose their iterations
+    private boolean adaptive; // see SimulationController#setAdaptive
+
+    /**
+     * Creates and starts the thread. The simulation is paused initially.
+     *
+     * @param scene scene that is simulated
+     */
+    public SimulationThread(IScene scene) {
+        this.scene = scene;
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        long nextStep = System.nanoTime();
+        while (running) {
+            Runnable command;
+            while ((command = commands.poll()) != null) {
+                command.run();
+            }
+            if (!paused) {
+                simulateStep();
+            }
+
+            nextStep += STEP_NANOS;
+            long now = System.nanoTime();
+            if (now - nextStep > MAX_STEPS_BEHIND * STEP_NANOS) {
+                nextStep = now; // drop the steps that could not be simulated
+            }
+            while (running && (now = System.nanoTime()) < nextStep) {
+                LockSupport.parkNanos(nextStep - now);
+            }
+        }
+    }
+
+    /**
+     * Executes one step of the scene. With a governor, the step is timed and the next step uses the amount of iterations the governor chose.
+     */
+    private void simulateStep() {
+        if (governor == null) {
+            scene.simulate();
+            return;
+        }
+        long start = System.nanoTime();
+        int iterations = scene.simulate();
+        governor.report((System.nanoTime() - start) / 1e9f, 1, iterations);
+        scene.setMinIterations(SimulationController.getMinIterations(scene, adaptive, governor));
+    }
+
+    /**
+     * Executes the command on the simulation thread before the next step.
+     *
+     * @param command command
+     */
+    public void execute(Runnable command) {
+        commands.add(command);
+    }
+
+    /**
+     * Pauses or continues the simulation.
+     *
+     * @param paused true to pause the simulation
+     */
+    public void setPaused(boolean paused) {
+        execute(() -> this.paused = paused);
+    }
+
+    /**
+     * Replaces the simulated scene. The old scene is retired, see {@link #pollRetiredScene()}.
+     *
+     * @param scene new scene
+     */
+    public void setScene(IScene scene) {
+        execute(() -> {
+            retiredScenes.add(this.scene);
+            this.scene = scene;
+            if (governor != null) {
+                governor.reset();
+            }
+            scene.setMinIterations(SimulationController.getMinIterations(scene, adaptive, governor));
+        });
+    }
+
+    /**
+     * Sets the governor that chooses the amount of iterations per step from the measured duration of the steps.
+     * The governor is only accessed by the simulation thread afterwards.
+     *
+     * @param governor governor, null to let the scene choose the iterations again
+     */
+    public void setGovernor(IterationGovernor governor) {
+        execute(() -> {
+            this.governor = governor;
+            scene.setMinIterations(SimulationController.getMinIterations(scene, adaptive, governor));
+        });
+    }
+
+    /**
+     * Enables or disables the adaptive mode, see {@link SimulationController#setAdaptive(boolean)}.
+     *
+     * @param adaptive true to enable the adaptive mode
+     */
+    public void setAdaptive(boolean adaptive) {
+        execute(() -> {
+            this.adaptive = adaptive;
+            scene.setMinIterations(SimulationController.getMinIterations(scene, adaptive, governor));
+        });
+    }
+
+    /**
+     * Returns a scene that is not simulated anymore and can be destructed on the OpenGL thread.
+     *
+     * @return retired scene or null
+     */
+    public IScene pollRetiredScene() {
+        return retiredScenes.poll();
+    }
+
+    /**
+     * Stops the thread and waits until the current step is finished. The current scene is retired.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        retiredScenes.add(scene);
+    }
+}
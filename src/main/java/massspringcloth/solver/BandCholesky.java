@@ -0,0 +1,106 @@
+package massspringcloth.solver;
+
+/**
+ * Cholesky factorization A = L * L^T of a symmetric positive definite band matrix.
+ * The points of a cloth are only connected to points at most two rows/columns away, i.e. with a row (or column) major order
+ * all entries of the system matrices lie within a band of 2 * width + 1 diagonals. The factor does not fill in outside of the band,
+ * thus factorization and solving only touch the band (n * bandwidth^2 and n * bandwidth operations).
+ *
+ * @author Mirco Werner
+ */
+class BandCholesky {
+    private final int size;
+    private final int bandwidth;
+    private final double[] band; // row i, column i - bandwidth + k is stored at i * (bandwidth + 1) + k, k = bandwidth is the diagonal
+
+    /**
+     * Creates an empty (zero) matrix.
+     *
+     * @param size      amount of rows and columns
+     * @param bandwidth amount of sub-diagonals that can be non-zero
+     */
+    BandCholesky(int size, int bandwidth) {
+        this.size = size;
+        this.bandwidth = bandwidth;
+        band = new double[size * (bandwidth + 1)];
+    }
+
+    /**
+     * Adds a value to the entry (row, column) of the lower triangle (row >= column, row - column <= bandwidth).
+     * Must not be called after {@link #factorize()}.
+     *
+     * @param row    row
+     * @param column column
+     * @param value  value
+     */
+    void add(int row, int column, double value) {
+        band[index(row, column)] += value;
+    }
+
+    /**
+     * Replaces the matrix by its Cholesky factor.
+     *
+     * @throws ArithmeticException if the matrix is not positive definite
+     */
+    void factorize() {
+        for (int j = 0; j < size; j++) {
+            int start = Math.max(0, j - bandwidth);
+            double diagonal = band[index(j, j)];
+            for (int k = start; k < j; k++) {
+                double value = band[index(j, k)];
+                diagonal -= value * value;
+            }
+            if (diagonal <= 0) {
+                throw new ArithmeticException("Matrix is not positive definite at row " + j);
+            }
+            diagonal = Math.sqrt(diagonal);
+            band[index(j, j)] = diagonal;
+            int end = Math.min(size - 1, j + bandwidth);
+            for (int i = j + 1; i <= end; i++) {
+                double value = band[index(i, j)];
+                for (int k = Math.max(start, i - bandwidth); k < j; k++) {
+                    value -= band[index(i, k)] * band[index(j, k)];
+                }
+                band[index(i, j)] = value / diagonal;
+            }
+        }
+    }
+
+    /**
+     * Solves A * x = b for multiple right hand sides with the factor by forward and back substitution.
+     *
+     * @param b          right hand sides, the components of each row are stored next to each other, overwritten with the solution
+     * @param components amount of right hand sides
+     */
+    void solve(double[] b, int components) {
+        for (int i = 0; i < size; i++) {
+            for (int k = Math.max(0, i - bandwidth); k < i; k++) {
+                double factor = band[index(i, k)];
+                for (int c = 0; c < components; c++) {
+                    b[i * components + c] -= factor * b[k * components + c];
+                }
+            }
+            double diagonal = band[index(i, i)];
+            for (int c = 0; c < components; c++) {
+                b[i * components + c] /= diagonal;
+            }
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            int end = Math.min(size - 1, i + bandwidth);
+            for (int k = i + 1; k <= end; k++) {
+                double factor = band[index(k, i)];
+                for (int c = 0; c < components; c++) {
+                    b[i * components + c] -= factor * b[k * components + c];
+                }
+            }
+            double diagonal = band[index(i, i)];
+            for (int c = 0; c < components; c++) {
+                b[i * components + c] /= diagonal;
+            }
+        }
+    }
+
+    private int index(int row, int column) {
+        return row * (bandwidth + 1) + column - row + bandwidth;
+    }
+}
@@ -0,0 +1,49 @@
+package massspringcloth.solver;
+
+/**
+ * Render data of one simulation state that is passed from the simulation thread to the OpenGL thread.
+ * Four floats per point, i.e. the same layout as the vbos.
+ *
+ * @author Mirco Werner
+ */
+public class ClothRenderState {
+    public final float[] position;
+    public final float[] normal;
+    public final float[] tangent;
+    public long time; // System.nanoTime() when the state was published
+
+    /**
+     * Creates the arrays.
+     *
+     * @param count amount of points
+     */
+    public ClothRenderState(int count) {
+        position = new float[count * 4];
+        normal = new float[count * 4];
+        tangent = new float[count * 4];
+    }
+
+    /**
+     * Copies the render data of the solver into this state.
+     *
+     * @param solver solver with valid render data
+     */
+    public void set(CpuClothSolver solver) {
+        System.arraycopy(solver.getRenderDataPosition(), 0, position, 0, position.length);
+        System.arraycopy(solver.getRenderDataNormal(), 0, normal, 0, normal.length);
+        System.arraycopy(solver.getRenderDataTangent(), 0, tangent, 0, tangent.length);
+        time = System.nanoTime();
+    }
+
+    /**
+     * Copies the render data of the mesh solver into this state.
+     *
+     * @param solver solver with valid render data
+     */
+    public void set(MeshClothSolver solver) {
+        System.arraycopy(solver.getRenderDataPosition(), 0, position, 0, position.length);
+        System.arraycopy(solver.getRenderDataNormal(), 0, normal, 0, normal.length);
+        System.arraycopy(solver.getRenderDataTangent(), 0, tangent, 0, tangent.length);
+        time = System.nanoTime();
+    }
+}
@@ -0,0 +1,1417 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.EIntegrator;
+import massspringcloth.cloth.ERelaxationMode;
+import massspringcloth.cloth.LongRangeAttachments;
+import massspringcloth.cloth.MassSpringModel;
+import massspringcloth.cloth.TimeStepEstimator;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pure Java implementation of the cloth simulation that mirrors the compute shader (resources/shaders/cloth_compute.glsl).
+ * It does not need an OpenGL context and can therefore be used for headless simulations and as a reference implementation for the GPU path.
+ * <p>
+ * The data is stored in flat primitive arrays. Positions and velocities are stored as structure of arrays and are swapped
+ * after every execution (input and output buffer like in the compute shader), the Gauss-Seidel relaxation of one color updates the input buffer in place. The render data (positions, normals, tangents)
+ * is stored with four floats per point, i.e. exactly like the vbos of the vertex shader.
+ *
+ * @author Mirco Werner
+ */
+public class CpuClothSolver {
+    private static final float RESTING_LENGTH_EPSILON = 0.01f;
+    private static final float GRAVITY = 9.81f;
+
+    private static final float SPHERE_X = 0.0f;
+    private static final float SPHERE_Y = 30.0f;
+    private static final float SPHERE_Z = 0.0f;
+    private static final float SPHERE_RADIUS = 10.0f;
+
+    private static final int RELAXATION_COLORS = 4; // see MassSpringCloth.RELAXATION_COLORS
+    private static final int BANDS_PER_THREAD = 4; // more bands than threads for load balancing
+    private static final int[] CELL_X = {-1, -1, 1, 1};
+    private static final int[] CELL_Y = {-1, 1, -1, 1};
+
+    // what a band does with the points of a segment of a row
+    private static final int EXECUTE = 0; // execute the stage
+    private static final int FREEZE = 1; // copy the points of a freezing tile
+    private static final int RENDER = 2; // write the render data
+
+    private final int width;
+    private final int height;
+    private final int normalSign;
+    private final boolean sphereEnabled;
+    private final float mass;
+    private final float viscousDamping;
+    private final Vector3f velocityFluid;
+    private final float springConstant;
+
+    // point data from the last iteration (do not write) and updated points that will become the input in the next iteration
+    private PointBuffer pointIn;
+    private PointBuffer pointOut;
+    private PointBuffer pointTarget; // buffer the relaxation writes, the input buffer for the relaxation of one color (in place)
+
+    // static point data
+    private final float[] locked;
+    private final float[] restLengths; // see MassSpringModel#getRestLengths
+    private final int[] springCounts; // see MassSpringModel#getSpringCounts
+    private final float[] textureU;
+    private final float[] textureV;
+    private final int[][] activeRuns; // runs [start, end) of the points of each row that are not removed by a mask (two ints per run), null if not masked
+    private final boolean[] inner; // the point has all 12 springs, null if not masked
+    private final byte[] cells; // bit c: diagonal cell c (see CELL_X, CELL_Y) of the point has not been removed by the mask, null if not masked
+
+    // data used for rendering, four floats per point (same layout as the vbos)
+    private final float[] renderDataPosition;
+    private final float[] renderDataNormal;
+    private final float[] renderDataTangent;
+
+    private ISpringForceKernel springForceKernel = ISpringForceKernel.create();
+    private boolean velocityLimited;
+    private EIntegrator integrator = EIntegrator.EXPLICIT_EULER;
+    private ERelaxationMode relaxationMode = ERelaxationMode.JACOBI;
+    private ImplicitSpringSystem implicitSystem; // created with the first implicit step
+    private ProjectiveDynamicsSystem projectiveDynamicsSystem; // created with the first projective dynamics step
+    private float[] implicitForce; // force of the implicit and projective dynamics steps
+    private int solverIterations;
+    private int xpbdSubSteps = 20;
+    private int xpbdIterations = 1;
+    private float[] lambdas; // XPBD: Lagrange multiplier of each spring, two halves with the layout of the rest lengths (see addConstraintCorrection)
+    private int minIterations;
+    private LongRangeAttachments attachments; // null => disabled
+    private float relaxationTolerance = 0.01f;
+    private int maxRelaxationRounds = 8;
+    private int relaxationRounds;
+    private TileActivity tileActivity; // null => sleeping disabled
+    private float sleepDistance = 0.02f;
+    private int sleepSteps = 100;
+    private final Vector3f lastVelocityFluid = new Vector3f();
+
+    private ForkJoinPool pool;
+    private RowBand[] bands;
+    private final BandsTask bandsTask = new BandsTask();
+    private float stageTime;
+    private int stageState;
+    private int stageColor; // -1 => all points, otherwise only the points of this color are relaxed in place
+    private int stageConstraintIteration; // XPBD: constraint iteration within the sub-step, the first one starts with the multipliers at zero
+    private TileActivity stageActivity; // null => all points are executed
+    private boolean renderPass;
+
+    /**
+     * Creates and initializes the solver with the given parameters.
+     *
+     * @param massSpringModel model containing the initial positions etc.
+     * @param normalSign      normal orientation \in {-1,1}
+     * @param sphereEnabled   true if sphere collisions are enabled, false otherwise
+     * @param mass            mass of one point
+     * @param viscousDamping  damping constant >= 0, higher damping constant causes more friction
+     * @param velocityFluid   velocity of a viscous fluid like wind or water (used for viscous interaction force)
+     * @param springConstant  spring constant >= 0, higher spring constant makes cloth more stiff
+     */
+    public CpuClothSolver(MassSpringModel massSpringModel, int normalSign, boolean sphereEnabled, float mass, float viscousDamping, Vector3f velocityFluid, float springConstant) {
+        this.normalSign = normalSign;
+        this.sphereEnabled = sphereEnabled;
+        this.mass = mass;
+        this.viscousDamping = viscousDamping;
+        this.velocityFluid = velocityFluid;
+        this.springConstant = springConstant;
+        this.width = massSpringModel.getWidth();
+        this.height = massSpringModel.getHeight();
+
+        int count = width * height;
+        pointIn = new PointBuffer(count);
+        pointOut = new PointBuffer(count);
+        locked = new float[count];
+        textureU = new float[count];
+        textureV = new float[count];
+        renderDataPosition = new float[count * 4];
+        renderDataNormal = new float[count * 4];
+        renderDataTangent = new float[count * 4];
+
+        float[] positions = massSpringModel.getPositions();
+        float[] velocities = massSpringModel.getVelocities();
+        float[] pointData = massSpringModel.getPointData();
+        restLengths = massSpringModel.getRestLengths();
+        springCounts = massSpringModel.getSpringCounts();
+        for (int i = 0; i < count; i++) {
+            pointIn.positionX[i] = positions[i * 4];
+            pointIn.positionY[i] = positions[i * 4 + 1];
+            pointIn.positionZ[i] = positions[i * 4 + 2];
+            pointIn.velocityX[i] = velocities[i * 4];
+            pointIn.velocityY[i] = velocities[i * 4 + 1];
+            pointIn.velocityZ[i] = velocities[i * 4 + 2];
+            locked[i] = pointData[i * 4];
+            textureU[i] = pointData[i * 4 + 1];
+            textureV[i] = pointData[i * 4 + 2];
+        }
+
+        if (massSpringModel.isMasked()) {
+            activeRuns = createActiveRuns(massSpringModel);
+            inner = createInnerPoints(massSpringModel);
+            cells = createCells();
+            pointOut.copyFrom(pointIn); // the removed points are never written, both buffers keep their initial values
+        } else {
+            activeRuns = null;
+            inner = null;
+            cells = null;
+        }
+
+        setForkJoinPool(null);
+        writeRenderData(); // execute one time that the render data is valid
+    }
+
+    /**
+     * Determines the runs of adjacent active points of each row, the rows of a masked cloth are only executed within these runs.
+     *
+     * @param massSpringModel masked model
+     * @return runs per row, two ints (start, end) per run
+     */
+    private int[][] createActiveRuns(MassSpringModel massSpringModel) {
+        int[][] runs = new int[height][];
+        int[] row = new int[width + 1];
+        for (int y = 0; y < height; y++) {
+            int length = 0;
+            for (int x = 0; x < width; x++) {
+                boolean active = massSpringModel.isActive(y * width + x);
+                boolean previous = x > 0 && massSpringModel.isActive(y * width + x - 1);
+                if (active != previous) {
+                    row[length++] = x; // start of a run or end of the previous run
+                }
+            }
+            if (length % 2 == 1) {
+                row[length++] = width; // the last run ends at the border
+            }
+            runs[y] = Arrays.copyOf(row, length);
+        }
+        return runs;
+    }
+
+    /**
+     * Determines the points whose 12 springs all exist, the spring force kernel calculates their forces without checking the neighbors.
+     *
+     * @param massSpringModel masked model
+     * @return inner flag of each point
+     */
+    private boolean[] createInnerPoints(MassSpringModel massSpringModel) {
+        boolean[] innerPoints = new boolean[width * height];
+        for (int y = 2; y < height - 2; y++) {
+            for (int x = 2; x < width - 2; x++) {
+                int i = y * width + x;
+                innerPoints[i] = massSpringModel.isActive(i);
+                for (int s = 0; s < MassSpringModel.SPRINGS && innerPoints[i]; s++) {
+                    innerPoints[i] = MassSpringModel.hasSpring(restLength(i, MassSpringModel.SPRING_X[s], MassSpringModel.SPRING_Y[s]))
+                            && MassSpringModel.hasSpring(restLength(i, -MassSpringModel.SPRING_X[s], -MassSpringModel.SPRING_Y[s]));
+                }
+            }
+        }
+        return innerPoints;
+    }
+
+    /**
+     * Determines the cells of each point that are rendered and contribute to its normal, i.e. the cells whose 3 springs
+     * from the point to the other points of the cell exist.
+     *
+     * @return bit c is set if cell c (see {@link #CELL_X}, {@link #CELL_Y}) exists
+     */
+    private byte[] createCells() {
+        byte[] pointCells = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                for (int c = 0; c < CELL_X.length; c++) {
+                    int dx = CELL_X[c];
+                    int dy = CELL_Y[c];
+                    boolean inside = x + dx >= 0 && x + dx < width && y + dy >= 0 && y + dy < height;
+                    if (inside && MassSpringModel.hasSpring(restLength(i, dx, 0)) && MassSpringModel.hasSpring(restLength(i, dx, dy))
+                            && MassSpringModel.hasSpring(restLength(i, 0, dy))) {
+                        pointCells[i] |= 1 << c;
+                    }
+                }
+            }
+        }
+        return pointCells;
+    }
+
+    /**
+     * Executes the simulation with a time step of 0.01.
+     *
+     * @param iterations how often the simulation is executed
+     */
+    public void simulate(int iterations) {
+        simulate(iterations, 0.01f);
+    }
+
+    /**
+     * Executes the simulation for the given (simulated) time with as few iterations as possible.
+     * The time is split into equally long time steps that do not exceed the stable time step (see {@link TimeStepEstimator}, a larger one for the implicit integration),
+     * which is additionally limited by the highest speed of the points if enabled with {@link #setVelocityLimited(boolean)}.
+     * With {@link EIntegrator#XPBD}, the time is always split into {@link #setXpbdSubSteps(int)} time steps.
+     *
+     * @param elapsedTime time that should be simulated
+     * @return amount of executed iterations
+     */
+    public int simulateAdaptive(float elapsedTime) {
+        if (integrator == EIntegrator.XPBD) {
+            if (elapsedTime <= 0) {
+                return 0;
+            }
+            int iterations = Math.max(xpbdSubSteps, minIterations);
+            simulate(iterations, elapsedTime / iterations);
+            return iterations;
+        }
+        float stableTimeStep;
+        if (integrator == EIntegrator.PROJECTIVE_DYNAMICS) {
+            stableTimeStep = TimeStepEstimator.PROJECTIVE_DYNAMICS_TIME_STEP;
+        } else if (integrator == EIntegrator.IMPLICIT_EULER) {
+            stableTimeStep = TimeStepEstimator.getImplicitTimeStep(mass, springConstant, viscousDamping);
+        } else {
+            stableTimeStep = TimeStepEstimator.getStableTimeStep(mass, springConstant, viscousDamping);
+        }
+        if (velocityLimited) {
+            stableTimeStep = TimeStepEstimator.limitByVelocity(stableTimeStep, getMaxSpeed());
+        }
+        int iterations = TimeStepEstimator.getSubSteps(elapsedTime, stableTimeStep, minIterations);
+        if (iterations > 0) {
+            simulate(iterations, Math.min(elapsedTime / iterations, stableTimeStep));
+        }
+        return iterations;
+    }
+
+    /**
+     * Executes the simulation.
+     *
+     * @param iterations how often the simulation is executed
+     * @param timeStep   simulation time step of one iteration
+     */
+    public void simulate(int iterations, float timeStep) {
+        // the implicit integrators solve the whole cloth at once, the tiles only sleep with the explicit stages
+        stageActivity = integrator == EIntegrator.EXPLICIT_EULER || integrator == EIntegrator.XPBD ? tileActivity : null;
+        if (tileActivity != null) {
+            if (stageActivity == null || !velocityFluid.equals(lastVelocityFluid)) {
+                tileActivity.wakeAll();
+            }
+            lastVelocityFluid.set(velocityFluid);
+        }
+        for (int i = 0; i < iterations; i++) {
+            if (integrator == EIntegrator.PROJECTIVE_DYNAMICS) {
+                executeProjectiveDynamics(timeStep);
+                continue; // the springs are solved as constraints, no relaxation
+            }
+            if (stageActivity != null) {
+                stageActivity.update(pointIn, sleepDistance, sleepSteps);
+                if (stageActivity.getActiveTiles() == 0) {
+                    continue; // all tiles sleep, input and output buffer are equal
+                }
+            }
+            if (integrator == EIntegrator.IMPLICIT_EULER) {
+                executeImplicit(timeStep);
+            } else {
+                execute(timeStep, 0); // apply forces
+            }
+            if (relaxationMode == ERelaxationMode.CONVERGENT && integrator != EIntegrator.XPBD) {
+                relaxConvergent(timeStep);
+            } else if (relaxationMode == ERelaxationMode.GAUSS_SEIDEL && integrator != EIntegrator.XPBD) {
+                for (int color = 0; color < RELAXATION_COLORS; color++) {
+                    execute(timeStep, 1, color); // relaxation of one color, uses the corrections of the previous colors
+                }
+            } else if (integrator == EIntegrator.XPBD) {
+                solveConstraints(timeStep);
+            } else {
+                execute(timeStep, 1); // relaxation, adjust too long joints, make the model more stable
+            }
+        }
+        if (iterations > 0) {
+            writeRenderData(); // only once after the last relaxation
+        }
+    }
+
+    /**
+     * Executes the XPBD constraint iterations of one sub-step. Every iteration is one Jacobi pass over all points.
+     *
+     * @param time simulation time step
+     */
+    private void solveConstraints(float time) {
+        if (lambdas == null) {
+            lambdas = new float[2 * restLengths.length];
+        }
+        for (int k = 0; k < xpbdIterations; k++) {
+            stageConstraintIteration = k;
+            execute(time, 1);
+        }
+    }
+
+    /**
+     * Executes rounds of Gauss-Seidel passes until the largest over-extension of a round is within {@link #relaxationTolerance}
+     * or {@link #maxRelaxationRounds} rounds were executed.
+     *
+     * @param time simulation time step
+     */
+    private void relaxConvergent(float time) {
+        relaxationRounds = 0;
+        float maxExcess;
+        do {
+            maxExcess = 0;
+            for (int color = 0; color < RELAXATION_COLORS; color++) {
+                execute(time, 1, color);
+                for (RowBand band : bands) {
+                    maxExcess = Math.max(maxExcess, band.scratch[3]);
+                }
+            }
+            relaxationRounds++;
+        } while (maxExcess > relaxationTolerance && relaxationRounds < maxRelaxationRounds);
+    }
+
+    /**
+     * Distributes the rows of the cloth among the threads of the given pool. Each band of rows is executed as one task.
+     * The bands are created once and reused for every execution. The results are identical to the single threaded execution,
+     * because every point only reads the input buffer and writes its own entry of the output buffer
+     * (XPBD: both points of a spring write the same Lagrange multiplier, relaxation of one color: its own entry of the input buffer,
+     * the neighbors it reads have other colors).
+     *
+     * @param pool pool that executes the bands, null to execute all rows on the calling thread
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        this.pool = pool;
+        int bandCount = pool == null ? 1 : Math.min(height, pool.getParallelism() * BANDS_PER_THREAD);
+        bands = new RowBand[bandCount];
+        for (int b = 0; b < bandCount; b++) {
+            bands[b] = new RowBand(b * height / bandCount, (b + 1) * height / bandCount);
+        }
+    }
+
+    /**
+     * Sets the integration of the forces. With {@link EIntegrator#IMPLICIT_EULER}, {@link #simulateAdaptive(float)} uses
+     * {@link TimeStepEstimator#IMPLICIT_STEP_FACTOR} times larger time steps. The relaxation is executed after each step with both integrators.
+     * With {@link EIntegrator#XPBD}, only the external forces are integrated and the springs are solved as constraints instead of the relaxation.
+     * {@link EIntegrator#PROJECTIVE_DYNAMICS} replaces both stages and uses time steps of at most {@link TimeStepEstimator#PROJECTIVE_DYNAMICS_TIME_STEP}.
+     *
+     * @param integrator integrator
+     */
+    public void setIntegrator(EIntegrator integrator) {
+        this.integrator = integrator;
+    }
+
+    /**
+     * Sets how the relaxation stage updates the points (see {@link ERelaxationMode}). {@link ERelaxationMode#GAUSS_SEIDEL} relaxes
+     * the points of one color per pass, the color of a point is (x % 2) + 2 * (y % 2).
+     *
+     * @param relaxationMode relaxation mode
+     */
+    public void setRelaxationMode(ERelaxationMode relaxationMode) {
+        this.relaxationMode = relaxationMode;
+    }
+
+    /**
+     * Sets when the {@link ERelaxationMode#CONVERGENT} relaxation stops.
+     *
+     * @param tolerance largest over-extension relative to the maximum resting length that is accepted
+     * @param maxRounds maximum amount of rounds (one pass per color) per iteration >= 1
+     */
+    public void setRelaxationTolerance(float tolerance, int maxRounds) {
+        this.relaxationTolerance = tolerance;
+        this.maxRelaxationRounds = maxRounds;
+    }
+
+    /**
+     * Sets the amount of XPBD sub-steps of one {@link #simulateAdaptive(float)} call (the Lagrange multipliers start at zero in every sub-step).
+     *
+     * @param xpbdSubSteps amount of sub-steps >= 1
+     */
+    public void setXpbdSubSteps(int xpbdSubSteps) {
+        this.xpbdSubSteps = xpbdSubSteps;
+    }
+
+    /**
+     * Sets the amount of XPBD constraint iterations per sub-step. The Lagrange multiplier of each spring is kept across the iterations,
+     * so the stiffness does not depend on the amount, more iterations only reduce the error.
+     *
+     * @param xpbdIterations amount of iterations >= 1
+     */
+    public void setXpbdIterations(int xpbdIterations) {
+        this.xpbdIterations = xpbdIterations;
+    }
+
+    /**
+     * Enables the long-range attachments. They are applied after the integration of the forces (all integrators except
+     * {@link EIntegrator#PROJECTIVE_DYNAMICS}, which solves the springs globally).
+     *
+     * @param attachments attachments of the points, null to disable them
+     */
+    public void setLongRangeAttachments(LongRangeAttachments attachments) {
+        this.attachments = attachments;
+    }
+
+    /**
+     * Enables sleeping tiles (see {@link TileActivity}). Tiles of the cloth that have come to rest are not executed anymore
+     * until a neighbor tile moves, the wind changes or {@link #wake()} is called. Only with {@link EIntegrator#EXPLICIT_EULER}
+     * and {@link EIntegrator#XPBD}, the other integrators solve the whole cloth at once.
+     *
+     * @param sleepingEnabled true to let tiles at rest sleep
+     */
+    public void setSleepingEnabled(boolean sleepingEnabled) {
+        tileActivity = sleepingEnabled ? new TileActivity(width, height) : null;
+    }
+
+    /**
+     * Sets when a tile falls asleep.
+     *
+     * @param distance distance a point may move away from its rest position without counting as movement
+     * @param steps    amount of steps a tile must not move until it falls asleep >= 1
+     */
+    public void setSleepThresholds(float distance, int steps) {
+        this.sleepDistance = distance;
+        this.sleepSteps = steps;
+    }
+
+    /**
+     * Wakes up all sleeping tiles, e.g. if the cloth has been disturbed from outside.
+     */
+    public void wake() {
+        if (tileActivity != null) {
+            tileActivity.wakeAll();
+        }
+    }
+
+    /**
+     * @return amount of tiles that were executed in the last step and amount of tiles of the cloth, null if sleeping is disabled
+     */
+    public int[] getActiveTiles() {
+        return tileActivity == null ? null : new int[]{tileActivity.getActiveTiles(), tileActivity.getTileCount()};
+    }
+
+    /**
+     * Sets the amount of iterations {@link #simulateAdaptive(float)} executes at least. Additional iterations use shorter time steps.
+     *
+     * @param minIterations amount of iterations (0 => as few as the stable time step allows)
+     */
+    public void setMinIterations(int minIterations) {
+        this.minIterations = minIterations;
+    }
+
+    /**
+     * @return amount of conjugate gradient iterations of the last implicit step
+     */
+    public int getSolverIterations() {
+        return solverIterations;
+    }
+
+    /**
+     * @return amount of rounds of the last {@link ERelaxationMode#CONVERGENT} relaxation
+     */
+    public int getRelaxationRounds() {
+        return relaxationRounds;
+    }
+
+    /**
+     * Enables the refinement of the adaptive time step by the highest speed of the points (see {@link TimeStepEstimator#limitByVelocity(float, float)}).
+     * The highest speed is determined by one pass over the velocities before each {@link #simulateAdaptive(float)} call.
+     *
+     * @param velocityLimited true to limit the time step by the highest speed
+     */
+    public void setVelocityLimited(boolean velocityLimited) {
+        this.velocityLimited = velocityLimited;
+    }
+
+    /**
+     * @return highest speed of all points in the input buffer
+     */
+    private float getMaxSpeed() {
+        float maxSpeedSquared = 0;
+        for (int i = 0; i < width * height; i++) {
+            float vx = pointIn.velocityX[i];
+            float vy = pointIn.velocityY[i];
+            float vz = pointIn.velocityZ[i];
+            maxSpeedSquared = Math.max(maxSpeedSquared, vx * vx + vy * vy + vz * vz);
+        }
+        return (float) Math.sqrt(maxSpeedSquared);
+    }
+
+    /**
+     * Sets the kernel that calculates the spring forces of the inner points of the cloth.
+     * By default, the vectorized kernel is used if the Vector API is available and the scalar kernel otherwise.
+     *
+     * @param springForceKernel kernel for the inner points
+     */
+    public void setSpringForceKernel(ISpringForceKernel springForceKernel) {
+        this.springForceKernel = springForceKernel;
+    }
+
+    /**
+     * Executes one stage for all points (the equivalent of one compute shader dispatch) and swaps input and output buffer afterwards.
+     *
+     * @param time  simulation time step
+     * @param state 0 => apply forces, 1 => relaxation of the joints
+     */
+    private void execute(float time, int state) {
+        execute(time, state, -1);
+    }
+
+    /**
+     * Executes one stage for all points and swaps input and output buffer afterwards. The relaxation of one color is executed
+     * in place instead, only the points of the color are written and the buffers are not swapped.
+     *
+     * @param time  simulation time step
+     * @param state 0 => apply forces, 1 => relaxation of the joints
+     * @param color -1 => all points, otherwise the relaxation only moves the points of this color in the input buffer
+     */
+    private void execute(float time, int state, int color) {
+        stageTime = time;
+        stageState = state;
+        stageColor = color;
+        pointTarget = color >= 0 ? pointIn : pointOut;
+        renderPass = false;
+        if (pool == null) {
+            bands[0].executeRows();
+        } else {
+            pool.invoke(bandsTask.reset());
+        }
+        if (color >= 0) {
+            return; // in place, the input buffer contains the result
+        }
+        // switch input and output buffer for next iteration
+        PointBuffer store = pointOut;
+        pointOut = pointIn;
+        pointIn = store;
+    }
+
+    /**
+     * Executes one backward Euler step for all points (replaces the "apply forces" stage, see {@link ImplicitSpringSystem})
+     * and swaps input and output buffer afterwards. The step is executed on the calling thread.
+     *
+     * @param time simulation time step
+     */
+    private void executeImplicit(float time) {
+        int count = width * height;
+        if (implicitSystem == null) {
+            implicitSystem = new ImplicitSpringSystem(width, height, springConstant, restLengths);
+            if (implicitForce == null) {
+                implicitForce = new float[count * 3];
+            }
+        }
+        float[] scratch = new float[3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                calcForce(x, y, i, scratch);
+                implicitForce[i * 3] = scratch[0];
+                implicitForce[i * 3 + 1] = scratch[1];
+                implicitForce[i * 3 + 2] = scratch[2];
+            }
+        }
+        implicitSystem.assemble(pointIn);
+        solverIterations = implicitSystem.solve(pointIn, implicitForce, locked, mass, viscousDamping, time);
+
+        float[] velocityChange = implicitSystem.getVelocityChange();
+        for (int i = 0; i < count; i++) {
+            copyPoint(i);
+            if (locked[i] == 0) {
+                store(i, pointIn.velocityX[i] + velocityChange[i * 3], pointIn.velocityY[i] + velocityChange[i * 3 + 1], pointIn.velocityZ[i] + velocityChange[i * 3 + 2], time);
+            }
+        }
+        PointBuffer swap = pointOut;
+        pointOut = pointIn;
+        pointIn = swap;
+    }
+
+    /**
+     * Executes one projective dynamics step for all points (replaces both stages, see {@link ProjectiveDynamicsSystem})
+     * and swaps input and output buffer afterwards. The step is executed on the calling thread.
+     *
+     * @param time simulation time step
+     */
+    private void executeProjectiveDynamics(float time) {
+        int count = width * height;
+        if (projectiveDynamicsSystem == null) {
+            projectiveDynamicsSystem = new ProjectiveDynamicsSystem(width, height, springConstant, mass, locked, restLengths);
+            if (implicitForce == null) {
+                implicitForce = new float[count * 3];
+            }
+        }
+        float[] scratch = new float[3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                calcExternalForce(x, y, i, scratch);
+                implicitForce[i * 3] = scratch[0];
+                implicitForce[i * 3 + 1] = scratch[1];
+                implicitForce[i * 3 + 2] = scratch[2];
+            }
+        }
+        projectiveDynamicsSystem.step(pointIn, implicitForce, time, pointOut);
+
+        for (int i = 0; i < count; i++) {
+            if (locked[i] != 0) {
+                copyPoint(i);
+                continue;
+            }
+            scratch[0] = pointOut.positionX[i];
+            scratch[1] = pointOut.positionY[i];
+            scratch[2] = pointOut.positionZ[i];
+            projectCollision(scratch);
+            pointOut.velocityX[i] = (scratch[0] - pointIn.positionX[i]) / time;
+            pointOut.velocityY[i] = (scratch[1] - pointIn.positionY[i]) / time;
+            pointOut.velocityZ[i] = (scratch[2] - pointIn.positionZ[i]) / time;
+            pointOut.positionX[i] = scratch[0];
+            pointOut.positionY[i] = scratch[1];
+            pointOut.positionZ[i] = scratch[2];
+        }
+        PointBuffer swap = pointOut;
+        pointOut = pointIn;
+        pointIn = swap;
+    }
+
+    /**
+     * Calculates the render data (positions, normals, tangents) from the input buffer.
+     */
+    private void writeRenderData() {
+        renderPass = true;
+        if (stageActivity != null) {
+            stageActivity.selectRenderedTiles();
+        }
+        if (pool == null) {
+            bands[0].writeRenderDataRows();
+        } else {
+            pool.invoke(bandsTask.reset());
+        }
+    }
+
+    /**
+     * Band of rows [rowStart, rowEnd) that is executed by one thread.
+     */
+    private class RowBand extends RecursiveAction {
+        private final int rowStart;
+        private final int rowEnd;
+        private final float[] scratch = new float[4]; // [3]: largest over-extension of the relaxed points
+        private final float[] forceX = new float[width];
+        private final float[] forceY = new float[width];
+        private final float[] forceZ = new float[width];
+
+        private RowBand(int rowStart, int rowEnd) {
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+
+        private void executeRows() {
+            scratch[3] = 0;
+            for (int y = rowStart; y < rowEnd; y++) {
+                if (stageActivity == null) {
+                    executeRow(y, 0, width, EXECUTE);
+                    continue;
+                }
+                for (int run = 0; run < stageActivity.getRunCount(y); run++) {
+                    executeRow(y, stageActivity.getRunStart(y, run), stageActivity.getRunEnd(y, run), stageActivity.isRunFrozen(y, run) ? FREEZE : EXECUTE);
+                }
+            }
+        }
+
+        /**
+         * Executes the points [xStart, xEnd) of a row, the points that are removed by a mask are skipped.
+         *
+         * @param y      row
+         * @param xStart first point
+         * @param xEnd   point after the last point
+         * @param mode   {@link #EXECUTE}, {@link #FREEZE} or {@link #RENDER}
+         */
+        private void executeRow(int y, int xStart, int xEnd, int mode) {
+            if (activeRuns == null) {
+                executeSegment(y, xStart, xEnd, mode);
+                return;
+            }
+            for (int r = 0; r < activeRuns[y].length; r += 2) {
+                int start = Math.max(xStart, activeRuns[y][r]);
+                int end = Math.min(xEnd, activeRuns[y][r + 1]);
+                if (start < end) {
+                    executeSegment(y, start, end, mode);
+                }
+            }
+        }
+
+        private void executeSegment(int y, int xStart, int xEnd, int mode) {
+            if (mode == RENDER) {
+                for (int x = xStart; x < xEnd; x++) {
+                    writeRenderData(x, y, scratch);
+                }
+            } else if (stageColor >= 0) {
+                if (mode == EXECUTE && (y & 1) == stageColor >> 1) {
+                    // in place: only the points of the color are relaxed, the points of a freezing tile are already equal in both buffers
+                    for (int x = xStart + ((xStart ^ stageColor) & 1); x < xEnd; x += 2) {
+                        int i = y * width + x;
+                        if (locked[i] == 0) {
+                            applyRelaxation(x, y, i, scratch);
+                        }
+                    }
+                }
+            } else if (mode == FREEZE) {
+                freezeSegment(y, xStart, xEnd);
+            } else if (stageState == 0 && integrator != EIntegrator.XPBD && y > 1 && y < height - 2 && width > 4) {
+                applyForceRow(y, xStart, xEnd);
+            } else {
+                for (int x = xStart; x < xEnd; x++) {
+                    executePoint(x, y, stageTime, stageState, scratch);
+                }
+            }
+        }
+
+        /**
+         * Copies the points [xStart, xEnd) of a row of a freezing tile, the forces stage clears their velocities.
+         */
+        private void freezeSegment(int y, int xStart, int xEnd) {
+            for (int i = y * width + xStart; i < y * width + xEnd; i++) {
+                copyPoint(i);
+                if (stageState == 0) {
+                    pointOut.velocityX[i] = 0;
+                    pointOut.velocityY[i] = 0;
+                    pointOut.velocityZ[i] = 0;
+                }
+            }
+        }
+
+        /**
+         * Applies the forces to the points [xStart, xEnd) of a row where the inner points have all 12 neighbors.
+         * The spring forces of the inner points are calculated at once by the spring force kernel, for each run of adjacent inner points
+         * of a masked cloth. The forces are summed up in the same order as in {@link #applyForce(int, int, int, float, float[])}.
+         *
+         * @param y      row
+         * @param xStart first point of the segment
+         * @param xEnd   point after the last point of the segment
+         */
+        private void applyForceRow(int y, int xStart, int xEnd) {
+            int innerStart = Math.max(2, xStart);
+            int innerEnd = Math.min(width - 2, xEnd);
+            for (int x = xStart; x < xEnd; x++) {
+                int i = y * width + x;
+                if (x < innerStart || x >= innerEnd || (inner != null && !inner[i])) {
+                    executePoint(x, y, stageTime, 0, scratch);
+                    continue;
+                }
+                copyPoint(i);
+                calcExternalForce(x, y, i, scratch);
+                forceX[x] = scratch[0];
+                forceY[x] = scratch[1];
+                forceZ[x] = scratch[2];
+            }
+            int runStart = innerStart;
+            while (runStart < innerEnd) {
+                int runEnd = runStart;
+                while (runEnd < innerEnd && (inner == null || inner[y * width + runEnd])) {
+                    runEnd++;
+                }
+                if (runEnd > runStart) {
+                    springForceKernel.addSpringForces(pointIn, restLengths, width, y, runStart, runEnd, springConstant, forceX, forceY, forceZ);
+                    for (int x = runStart; x < runEnd; x++) {
+                        int i = y * width + x;
+                        if (locked[i] == 0) {
+                            integrate(i, forceX[x], forceY[x], forceZ[x], stageTime);
+                        }
+                    }
+                }
+                runStart = runEnd + 1; // skip the point that is not inner, it has been executed above
+            }
+        }
+
+        private void writeRenderDataRows() {
+            for (int y = rowStart; y < rowEnd; y++) {
+                if (stageActivity == null) {
+                    executeRow(y, 0, width, RENDER);
+                    continue;
+                }
+                // tiles that have been asleep since the last render pass keep their render data
+                for (int run = 0; run < stageActivity.getRunCount(y); run++) {
+                    executeRow(y, stageActivity.getRunStart(y, run), stageActivity.getRunEnd(y, run), RENDER);
+                }
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (renderPass) {
+                writeRenderDataRows();
+            } else {
+                executeRows();
+            }
+        }
+    }
+
+    /**
+     * Executes all bands in parallel and waits until all of them are finished.
+     */
+    private class BandsTask extends RecursiveAction {
+        private BandsTask reset() {
+            reinitialize();
+            for (RowBand band : bands) {
+                band.reinitialize();
+            }
+            return this;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(bands);
+        }
+    }
+
+    private void executePoint(int x, int y, float time, int state, float[] scratch) {
+        int i = y * width + x;
+
+        copyPoint(i);
+
+        if (locked[i] == 0) {
+            if (state == 0) {
+                applyForce(x, y, i, time, scratch);
+            } else if (state == 1) {
+                if (integrator == EIntegrator.XPBD) {
+                    applyConstraints(x, y, i, time, scratch);
+                } else {
+                    applyRelaxation(x, y, i, scratch);
+                }
+            }
+        }
+    }
+
+    private void copyPoint(int i) {
+        pointOut.positionX[i] = pointIn.positionX[i];
+        pointOut.positionY[i] = pointIn.positionY[i];
+        pointOut.positionZ[i] = pointIn.positionZ[i];
+        pointOut.velocityX[i] = pointIn.velocityX[i];
+        pointOut.velocityY[i] = pointIn.velocityY[i];
+        pointOut.velocityZ[i] = pointIn.velocityZ[i];
+    }
+
+    /**
+     * @return rest length of the spring from point i to its neighbor (x + dx, y + dy)
+     */
+    private float restLength(int i, int dx, int dy) {
+        return restLengths[springIndex(i, dx, dy)];
+    }
+
+    /**
+     * @return index of the spring from point i to its neighbor (x + dx, y + dy) in the rest lengths
+     */
+    private int springIndex(int i, int dx, int dy) {
+        return MassSpringModel.getRestLengthIndex(width, width * height, i, dx, dy);
+    }
+
+    /**
+     * Adds the spring force between point i and point j to the scratch array.
+     */
+    private void addSpringForce(float[] scratch, int i, int j, float restingLength) {
+        if (!MassSpringModel.hasSpring(restingLength)) {
+            return; // no spring, point j has been removed by the mask
+        }
+        float dirX = pointIn.positionX[j] - pointIn.positionX[i];
+        float dirY = pointIn.positionY[j] - pointIn.positionY[i];
+        float dirZ = pointIn.positionZ[j] - pointIn.positionZ[i];
+        float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+        if (length == 0) {
+            return; // the points are at the same position, the spring has no direction and pulls in none
+        }
+        scratch[0] += springConstant * (dirX - dirX / length * restingLength);
+        scratch[1] += springConstant * (dirY - dirY / length * restingLength);
+        scratch[2] += springConstant * (dirZ - dirZ / length * restingLength);
+    }
+
+    /**
+     * Writes the external force (gravity, viscous damping, viscous interaction) of point i to the scratch array.
+     */
+    private void calcExternalForce(int x, int y, int i, float[] scratch) {
+        // the render data is only written after the last relaxation, calculate the normal from the input buffer
+        calcNormal(x, y, i, scratch);
+        float length = (float) Math.sqrt(scratch[0] * scratch[0] + scratch[1] * scratch[1] + scratch[2] * scratch[2]);
+        float normalScale = length == 0 ? 0 : normalSign / length; // collapsed neighborhood, no viscous interaction
+        float oldNormalX = scratch[0] * normalScale;
+        float oldNormalY = scratch[1] * normalScale;
+        float oldNormalZ = scratch[2] * normalScale;
+        float oldVelocityX = pointIn.velocityX[i];
+        float oldVelocityY = pointIn.velocityY[i];
+        float oldVelocityZ = pointIn.velocityZ[i];
+        float viscousInteraction = -(oldNormalX * (velocityFluid.x - oldVelocityX) + oldNormalY * (velocityFluid.y - oldVelocityY) + oldNormalZ * (velocityFluid.z - oldVelocityZ));
+        scratch[0] = oldVelocityX * -viscousDamping + viscousInteraction * oldNormalX;
+        scratch[1] = -mass * GRAVITY + oldVelocityY * -viscousDamping + viscousInteraction * oldNormalY;
+        scratch[2] = oldVelocityZ * -viscousDamping + viscousInteraction * oldNormalZ;
+    }
+
+    private void applyForce(int x, int y, int i, float time, float[] scratch) {
+        if (integrator == EIntegrator.XPBD) {
+            calcExternalForce(x, y, i, scratch); // the springs are constraints
+        } else {
+            calcForce(x, y, i, scratch);
+        }
+        integrate(i, scratch[0], scratch[1], scratch[2], time);
+    }
+
+    /**
+     * Writes the sum of the external and internal forces of point i to the scratch array.
+     */
+    private void calcForce(int x, int y, int i, float[] scratch) {
+        // external force
+        calcExternalForce(x, y, i, scratch);
+
+        // internal force
+        // HORIZONTAL/VERTICAL
+        if (x > 0) { // left
+            addSpringForce(scratch, i, i - 1, restLength(i, -1, 0));
+        }
+        if (x < width - 1) { // right
+            addSpringForce(scratch, i, i + 1, restLength(i, 1, 0));
+        }
+        if (y < height - 1) { // top
+            addSpringForce(scratch, i, i + width, restLength(i, 0, 1));
+        }
+        if (y > 0) { // bottom
+            addSpringForce(scratch, i, i - width, restLength(i, 0, -1));
+        }
+        // TWO HORIZONTAL/VERTICAL
+        if (x > 1) { // two left
+            addSpringForce(scratch, i, i - 2, restLength(i, -2, 0));
+        }
+        if (x < width - 2) { // two right
+            addSpringForce(scratch, i, i + 2, restLength(i, 2, 0));
+        }
+        if (y < height - 2) { // two top
+            addSpringForce(scratch, i, i + width + width, restLength(i, 0, 2));
+        }
+        if (y > 1) { // two bottom
+            addSpringForce(scratch, i, i - width - width, restLength(i, 0, -2));
+        }
+        // DIAGONAL
+        if (x > 0 && y < height - 1) { // top left
+            addSpringForce(scratch, i, i + width - 1, restLength(i, -1, 1));
+        }
+        if (x > 0 && y > 0) { // bottom left
+            addSpringForce(scratch, i, i - width - 1, restLength(i, -1, -1));
+        }
+        if (x < width - 1 && y < height - 1) { // top right
+            addSpringForce(scratch, i, i + width + 1, restLength(i, 1, 1));
+        }
+        if (x < width - 1 && y > 0) { // bottom right
+            addSpringForce(scratch, i, i - width + 1, restLength(i, 1, -1));
+        }
+    }
+
+    /**
+     * Euler integration of point i with the given force and collision handling.
+     */
+    private void integrate(int i, float forceX, float forceY, float forceZ, float time) {
+        // euler integration
+        float velocityX = pointIn.velocityX[i] + forceX / mass * time;
+        float velocityY = pointIn.velocityY[i] + forceY / mass * time;
+        float velocityZ = pointIn.velocityZ[i] + forceZ / mass * time;
+        store(i, velocityX, velocityY, velocityZ, time);
+    }
+
+    /**
+     * Moves point i with the given (new) velocity and handles the collisions.
+     */
+    private void store(int i, float velocityX, float velocityY, float velocityZ, float time) {
+        float positionX = pointIn.positionX[i] + velocityX * time;
+        float positionY = pointIn.positionY[i] + velocityY * time;
+        float positionZ = pointIn.positionZ[i] + velocityZ * time;
+
+        // long-range attachment, stay within the distance the springs allow to the nearest locked point
+        int anchor = attachments == null ? LongRangeAttachments.NO_ANCHOR : attachments.getAnchor(i);
+        if (anchor != LongRangeAttachments.NO_ANCHOR) {
+            float toPointX = positionX - pointIn.positionX[anchor];
+            float toPointY = positionY - pointIn.positionY[anchor];
+            float toPointZ = positionZ - pointIn.positionZ[anchor];
+            float length = (float) Math.sqrt(toPointX * toPointX + toPointY * toPointY + toPointZ * toPointZ);
+            float maxLength = attachments.getDistance(i);
+            if (length > maxLength) {
+                float directionX = toPointX / length;
+                float directionY = toPointY / length;
+                float directionZ = toPointZ / length;
+                positionX -= (length - maxLength) * directionX;
+                positionY -= (length - maxLength) * directionY;
+                positionZ -= (length - maxLength) * directionZ;
+                float outward = Math.max(0, velocityX * directionX + velocityY * directionY + velocityZ * directionZ);
+                velocityX -= outward * directionX;
+                velocityY -= outward * directionY;
+                velocityZ -= outward * directionZ;
+            }
+        }
+
+        // collision
+        if (sphereEnabled) {
+            float toSphereX = positionX - SPHERE_X;
+            float toSphereY = positionY - SPHERE_Y;
+            float toSphereZ = positionZ - SPHERE_Z;
+            float length = (float) Math.sqrt(toSphereX * toSphereX + toSphereY * toSphereY + toSphereZ * toSphereZ);
+            if (length < SPHERE_RADIUS + 0.05f) {
+                positionX = SPHERE_X + toSphereX / length * (SPHERE_RADIUS + 0.05f);
+                positionY = SPHERE_Y + toSphereY / length * (SPHERE_RADIUS + 0.05f);
+                positionZ = SPHERE_Z + toSphereZ / length * (SPHERE_RADIUS + 0.05f);
+                velocityX *= 0.9f;
+                velocityY *= 0.9f;
+                velocityZ *= 0.9f;
+            }
+        }
+        if (positionY < 0.05f) {
+            positionY = 0.05f;
+            velocityX *= 0.9f;
+            velocityY = 0;
+            velocityZ *= 0.9f;
+        }
+
+        pointOut.velocityX[i] = velocityX;
+        pointOut.velocityY[i] = velocityY;
+        pointOut.velocityZ[i] = velocityZ;
+        pointOut.positionX[i] = positionX;
+        pointOut.positionY[i] = positionY;
+        pointOut.positionZ[i] = positionZ;
+    }
+
+    /**
+     * Adds the relaxation direction of point i towards point j to the scratch array.
+     */
+    private void addRelaxationDirection(float[] scratch, int i, int j, float restingLength) {
+        if (!MassSpringModel.hasSpring(restingLength)) {
+            return; // no spring, point j has been removed by the mask
+        }
+        float maxRestingLength = MassSpringModel.MAX_STRETCH * restingLength;
+        float relaxDirX = pointIn.positionX[j] - pointIn.positionX[i];
+        float relaxDirY = pointIn.positionY[j] - pointIn.positionY[i];
+        float relaxDirZ = pointIn.positionZ[j] - pointIn.positionZ[i];
+        float length = (float) Math.sqrt(relaxDirX * relaxDirX + relaxDirY * relaxDirY + relaxDirZ * relaxDirZ);
+        if (length < maxRestingLength + RESTING_LENGTH_EPSILON) { // only relax if it is too long (plus some epsilon)
+            return;
+        }
+        // over-extension relative to the maximum resting length, relative to the epsilon for springs of rest length 0
+        scratch[3] = Math.max(scratch[3], (length - maxRestingLength) / Math.max(maxRestingLength, RESTING_LENGTH_EPSILON));
+        float factor = (length - maxRestingLength) / length; // ensure direction vector to have the correct length
+        if (locked[j] == 0) {
+            factor /= 2; // only move half the way because the other unlocked point will also be moved half the way
+        }
+        pointTarget.velocityX[i] = 0;
+        pointTarget.velocityY[i] = 0;
+        pointTarget.velocityZ[i] = 0;
+        scratch[0] += relaxDirX * factor;
+        scratch[1] += relaxDirY * factor;
+        scratch[2] += relaxDirZ * factor;
+    }
+
+    private void applyRelaxation(int x, int y, int i, float[] scratch) {
+        scratch[0] = 0;
+        scratch[1] = 0;
+        scratch[2] = 0;
+
+        // HORIZONTAL/VERTICAL
+        if (x > 0) { // left
+            addRelaxationDirection(scratch, i, i - 1, restLength(i, -1, 0));
+        }
+        if (x < width - 1) { // right
+            addRelaxationDirection(scratch, i, i + 1, restLength(i, 1, 0));
+        }
+        if (y < height - 1) { // top
+            addRelaxationDirection(scratch, i, i + width, restLength(i, 0, 1));
+        }
+        if (y > 0) { // bottom
+            addRelaxationDirection(scratch, i, i - width, restLength(i, 0, -1));
+        }
+        // DIAGONAL
+        if (x > 0 && y < height - 1) { // top left
+            addRelaxationDirection(scratch, i, i + width - 1, restLength(i, -1, 1));
+        }
+        if (x > 0 && y > 0) { // bottom left
+            addRelaxationDirection(scratch, i, i - width - 1, restLength(i, -1, -1));
+        }
+        if (x < width - 1 && y < height - 1) { // top right
+            addRelaxationDirection(scratch, i, i + width + 1, restLength(i, 1, 1));
+        }
+        if (x < width - 1 && y > 0) { // bottom right
+            addRelaxationDirection(scratch, i, i - width + 1, restLength(i, 1, -1));
+        }
+
+        pointTarget.positionX[i] = pointIn.positionX[i] + scratch[0];
+        pointTarget.positionY[i] = pointIn.positionY[i] + scratch[1];
+        pointTarget.positionZ[i] = pointIn.positionZ[i] + scratch[2];
+    }
+
+    /**
+     * Adds the XPBD position correction of point i for the distance constraint towards point j to the scratch array.
+     * The compliance is the inverse spring constant, scaled by the squared time step. The inverse masses are multiplied by the amount
+     * of springs of the points (mass splitting), i.e. the sum of the corrections of a point is their average.
+     * Both points of the spring calculate the same updated Lagrange multiplier and write it to the other half of {@link #lambdas}.
+     */
+    private void addConstraintCorrection(float[] scratch, int i, int j, int s, float compliance) {
+        float restingLength = restLengths[s];
+        if (!MassSpringModel.hasSpring(restingLength)) {
+            return; // no spring, point j has been removed by the mask
+        }
+        int readHalf = (stageConstraintIteration & 1) * restLengths.length;
+        int writeHalf = restLengths.length - readHalf;
+        float lambda = stageConstraintIteration == 0 ? 0 : lambdas[readHalf + s];
+
+        float dirX = pointIn.positionX[j] - pointIn.positionX[i];
+        float dirY = pointIn.positionY[j] - pointIn.positionY[i];
+        float dirZ = pointIn.positionZ[j] - pointIn.positionZ[i];
+        float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+        if (length == 0) {
+            lambdas[writeHalf + s] = lambda;
+            return; // no direction, the spring keeps its multiplier
+        }
+        float inverseMass = 1 / mass;
+        float weight = springCounts[i] * inverseMass;
+        float weightSum = locked[j] == 0 ? weight + springCounts[j] * inverseMass : weight;
+        float deltaLambda = (restingLength - length - compliance * lambda) / (weightSum + compliance);
+        lambdas[writeHalf + s] = lambda + deltaLambda;
+        float factor = -inverseMass * deltaLambda / length;
+        scratch[0] += dirX * factor;
+        scratch[1] += dirY * factor;
+        scratch[2] += dirZ * factor;
+    }
+
+    /**
+     * Solves the distance constraints of all springs of point i (one Jacobi iteration) and updates its velocity by the position correction.
+     */
+    private void applyConstraints(int x, int y, int i, float time, float[] scratch) {
+        if (springConstant <= 0) {
+            return;
+        }
+        float compliance = 1 / (springConstant * time * time);
+        scratch[0] = 0;
+        scratch[1] = 0;
+        scratch[2] = 0;
+
+        // HORIZONTAL/VERTICAL
+        if (x > 0) { // left
+            addConstraintCorrection(scratch, i, i - 1, springIndex(i, -1, 0), compliance);
+        }
+        if (x < width - 1) { // right
+            addConstraintCorrection(scratch, i, i + 1, springIndex(i, 1, 0), compliance);
+        }
+        if (y < height - 1) { // top
+            addConstraintCorrection(scratch, i, i + width, springIndex(i, 0, 1), compliance);
+        }
+        if (y > 0) { // bottom
+            addConstraintCorrection(scratch, i, i - width, springIndex(i, 0, -1), compliance);
+        }
+        // TWO HORIZONTAL/VERTICAL
+        if (x > 1) { // two left
+            addConstraintCorrection(scratch, i, i - 2, springIndex(i, -2, 0), compliance);
+        }
+        if (x < width - 2) { // two right
+            addConstraintCorrection(scratch, i, i + 2, springIndex(i, 2, 0), compliance);
+        }
+        if (y < height - 2) { // two top
+            addConstraintCorrection(scratch, i, i + width + width, springIndex(i, 0, 2), compliance);
+        }
+        if (y > 1) { // two bottom
+            addConstraintCorrection(scratch, i, i - width - width, springIndex(i, 0, -2), compliance);
+        }
+        // DIAGONAL
+        if (x > 0 && y < height - 1) { // top left
+            addConstraintCorrection(scratch, i, i + width - 1, springIndex(i, -1, 1), compliance);
+        }
+        if (x > 0 && y > 0) { // bottom left
+            addConstraintCorrection(scratch, i, i - width - 1, springIndex(i, -1, -1), compliance);
+        }
+        if (x < width - 1 && y < height - 1) { // top right
+            addConstraintCorrection(scratch, i, i + width + 1, springIndex(i, 1, 1), compliance);
+        }
+        if (x < width - 1 && y > 0) { // bottom right
+            addConstraintCorrection(scratch, i, i - width + 1, springIndex(i, 1, -1), compliance);
+        }
+
+        scratch[0] += pointIn.positionX[i];
+        scratch[1] += pointIn.positionY[i];
+        scratch[2] += pointIn.positionZ[i];
+        projectCollision(scratch); // the velocity follows the projected position
+
+        pointOut.velocityX[i] = pointIn.velocityX[i] + (scratch[0] - pointIn.positionX[i]) / time;
+        pointOut.velocityY[i] = pointIn.velocityY[i] + (scratch[1] - pointIn.positionY[i]) / time;
+        pointOut.velocityZ[i] = pointIn.velocityZ[i] + (scratch[2] - pointIn.positionZ[i]) / time;
+        pointOut.positionX[i] = scratch[0];
+        pointOut.positionY[i] = scratch[1];
+        pointOut.positionZ[i] = scratch[2];
+    }
+
+    /**
+     * Moves the position in the scratch array out of the sphere and above the ground.
+     */
+    private void projectCollision(float[] scratch) {
+        if (sphereEnabled) {
+            float toSphereX = scratch[0] - SPHERE_X;
+            float toSphereY = scratch[1] - SPHERE_Y;
+            float toSphereZ = scratch[2] - SPHERE_Z;
+            float length = (float) Math.sqrt(toSphereX * toSphereX + toSphereY * toSphereY + toSphereZ * toSphereZ);
+            if (length < SPHERE_RADIUS + 0.05f) {
+                scratch[0] = SPHERE_X + toSphereX / length * (SPHERE_RADIUS + 0.05f);
+                scratch[1] = SPHERE_Y + toSphereY / length * (SPHERE_RADIUS + 0.05f);
+                scratch[2] = SPHERE_Z + toSphereZ / length * (SPHERE_RADIUS + 0.05f);
+            }
+        }
+        if (scratch[1] < 0.05f) {
+            scratch[1] = 0.05f;
+        }
+    }
+
+    /**
+     * Adds the (not normalized) normal of the two triangles spanned by the points 1, 2, 3 and the position of point i to the scratch array.
+     */
+    private void addNormal(float[] scratch, int j1, int j2, int j3, int i) {
+        float p1X = pointIn.positionX[j1] - pointIn.positionX[i];
+        float p1Y = pointIn.positionY[j1] - pointIn.positionY[i];
+        float p1Z = pointIn.positionZ[j1] - pointIn.positionZ[i];
+        float p2X = pointIn.positionX[j2] - pointIn.positionX[i];
+        float p2Y = pointIn.positionY[j2] - pointIn.positionY[i];
+        float p2Z = pointIn.positionZ[j2] - pointIn.positionZ[i];
+        float p3X = pointIn.positionX[j3] - pointIn.positionX[i];
+        float p3Y = pointIn.positionY[j3] - pointIn.positionY[i];
+        float p3Z = pointIn.positionZ[j3] - pointIn.positionZ[i];
+        scratch[0] += (p1Y * p2Z - p1Z * p2Y) + (p2Y * p3Z - p2Z * p3Y);
+        scratch[1] += (p1Z * p2X - p1X * p2Z) + (p2Z * p3X - p2X * p3Z);
+        scratch[2] += (p1X * p2Y - p1Y * p2X) + (p2X * p3Y - p2Y * p3X);
+    }
+
+    /**
+     * Adds the tangent of the triangle spanned by the points 1, 2 and 3 to the scratch array.
+     */
+    private void addTangent(float[] scratch, int j1, int j2, int j3) {
+        float edge1X = pointIn.positionX[j2] - pointIn.positionX[j1];
+        float edge1Y = pointIn.positionY[j2] - pointIn.positionY[j1];
+        float edge1Z = pointIn.positionZ[j2] - pointIn.positionZ[j1];
+        float edge2X = pointIn.positionX[j3] - pointIn.positionX[j1];
+        float edge2Y = pointIn.positionY[j3] - pointIn.positionY[j1];
+        float edge2Z = pointIn.positionZ[j3] - pointIn.positionZ[j1];
+        float deltaUV1X = textureU[j2] - textureU[j1];
+        float deltaUV1Y = textureV[j2] - textureV[j1];
+        float deltaUV2X = textureU[j3] - textureU[j1];
+        float deltaUV2Y = textureV[j3] - textureV[j1];
+
+        float f = 1.0f / (deltaUV1X * deltaUV2Y - deltaUV2X * deltaUV1Y);
+
+        scratch[0] += f * (deltaUV2Y * edge1X - deltaUV1Y * edge2X);
+        scratch[1] += f * (deltaUV2Y * edge1Y - deltaUV1Y * edge2Y);
+        scratch[2] += f * (deltaUV2Y * edge1Z - deltaUV1Y * edge2Z);
+    }
+
+    /**
+     * Writes the (not normalized) normal of point i calculated from the positions of the input buffer to the scratch array.
+     */
+    private void calcNormal(int x, int y, int i, float[] scratch) {
+        scratch[0] = 0;
+        scratch[1] = 0;
+        scratch[2] = 0;
+        if (x > 0) {
+            if (y > 0 && isCellActive(i, 0)) {
+                addNormal(scratch, i - 1, i - width - 1, i - width, i);
+            }
+            if (y < height - 1 && isCellActive(i, 1)) {
+                addNormal(scratch, i + width, i + width - 1, i - 1, i);
+            }
+        }
+        if (x < width - 1) {
+            if (y > 0 && isCellActive(i, 2)) {
+                addNormal(scratch, i - width, i - width + 1, i + 1, i);
+            }
+            if (y < height - 1 && isCellActive(i, 3)) {
+                addNormal(scratch, i + 1, i + width + 1, i + width, i);
+            }
+        }
+    }
+
+    /**
+     * @param i    point
+     * @param cell cell of the point within the cloth (see {@link #CELL_X}, {@link #CELL_Y})
+     * @return true if the cell has not been removed by the mask
+     */
+    private boolean isCellActive(int i, int cell) {
+        return cells == null || (cells[i] & (1 << cell)) != 0;
+    }
+
+    private void writeRenderData(int x, int y, float[] scratch) {
+        int i = y * width + x;
+
+        renderDataPosition[i * 4] = pointIn.positionX[i];
+        renderDataPosition[i * 4 + 1] = pointIn.positionY[i];
+        renderDataPosition[i * 4 + 2] = pointIn.positionZ[i];
+        renderDataPosition[i * 4 + 3] = 1;
+
+        // normal
+        calcNormal(x, y, i, scratch);
+        writeNormalized(renderDataNormal, i, normalSign * scratch[0], normalSign * scratch[1], normalSign * scratch[2]);
+
+        // tangent
+        scratch[0] = 0;
+        scratch[1] = 0;
+        scratch[2] = 0;
+        if (x > 0 && y > 0 && isCellActive(i, 0)) {
+            addTangent(scratch, i, i - width - 1, i - 1);
+            addTangent(scratch, i, i - width - 1, i - width);
+        }
+        if (x < width - 1 && y < height - 1 && isCellActive(i, 3)) {
+            addTangent(scratch, i, i + width + 1, i + 1);
+            addTangent(scratch, i, i + width + 1, i + width);
+        }
+        if (scratch[0] == 0 && scratch[1] == 0 && scratch[2] == 0) {
+            // no diagonal cell, e.g. top left corner or bottom right corner
+            scratch[0] = 1;
+            scratch[1] = 0;
+            scratch[2] = 0;
+        }
+        writeNormalized(renderDataTangent, i, scratch[0], scratch[1], scratch[2]);
+    }
+
+    private static void writeNormalized(float[] target, int i, float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length == 0) {
+            length = 1; // collapsed neighborhood, writes the zero vector like the compute shader
+        }
+        target[i * 4] = x / length;
+        target[i * 4 + 1] = y / length;
+        target[i * 4 + 2] = z / length;
+        target[i * 4 + 3] = 0;
+    }
+
+    /**
+     * Writes the current positions into the given array using the same layout as {@link MassSpringModel#getPositions()},
+     * i.e. 4 floats per point. Can be compared with the position input buffer of the compute shader.
+     *
+     * @param positions target array with at least width * height * 4 floats
+     */
+    public void readPositions(float[] positions) {
+        for (int i = 0; i < width * height; i++) {
+            positions[i * 4] = pointIn.positionX[i];
+            positions[i * 4 + 1] = pointIn.positionY[i];
+            positions[i * 4 + 2] = pointIn.positionZ[i];
+            positions[i * 4 + 3] = 1;
+        }
+    }
+
+    /**
+     * Writes the current velocities into the given array using the same layout as {@link MassSpringModel#getVelocities()},
+     * i.e. 4 floats per point. Can be compared with the velocity input buffer of the compute shader.
+     *
+     * @param velocities target array with at least width * height * 4 floats
+     */
+    public void readVelocities(float[] velocities) {
+        for (int i = 0; i < width * height; i++) {
+            velocities[i * 4] = pointIn.velocityX[i];
+            velocities[i * 4 + 1] = pointIn.velocityY[i];
+            velocities[i * 4 + 2] = pointIn.velocityZ[i];
+            velocities[i * 4 + 3] = 0;
+        }
+    }
+
+    public float[] getRenderDataPosition() {
+        return renderDataPosition;
+    }
+
+    public float[] getRenderDataNormal() {
+        return renderDataNormal;
+    }
+
+    public float[] getRenderDataTangent() {
+        return renderDataTangent;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
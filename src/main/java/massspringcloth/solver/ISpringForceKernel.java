@@ -0,0 +1,43 @@
+package massspringcloth.solver;
+
+/**
+ * Interface for the calculation of the spring forces of a row of inner points.
+ * Inner points have all 12 neighbors: 4 structural springs, 4 bend springs (two left/right/top/bottom) and 4 diagonal springs.
+ *
+ * @author Mirco Werner
+ */
+public interface ISpringForceKernel {
+    /**
+     * Adds the forces of the 12 springs to the forces of the points [xStart, xEnd) in row y.
+     * All points in the range must be inner points, i.e. 2 <= x < width - 2 and 2 <= y < height - 2.
+     * The springs are added in the same order as in the compute shader.
+     *
+     * @param pointIn        positions of the last iteration
+     * @param restLengths    rest lengths of the springs (see {@link massspringcloth.cloth.MassSpringModel#getRestLengths()})
+     * @param width          amount of horizontal points of the cloth
+     * @param y              row
+     * @param xStart         first point of the row (inclusive)
+     * @param xEnd           last point of the row (exclusive)
+     * @param springConstant spring constant >= 0
+     * @param forceX         x components of the forces of the row, indexed by x
+     * @param forceY         y components of the forces of the row, indexed by x
+     * @param forceZ         z components of the forces of the row, indexed by x
+     */
+    void addSpringForces(PointBuffer pointIn, float[] restLengths, int width, int y, int xStart, int xEnd, float springConstant, float[] forceX, float[] forceY, float[] forceZ);
+
+    /**
+     * Creates the vectorized kernel if the Vector API (module jdk.incubator.vector) is available, the scalar kernel otherwise.
+     *
+     * @return fastest available kernel
+     */
+    static ISpringForceKernel create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (ISpringForceKernel) Class.forName("massspringcloth.solver.VectorSpringForceKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // not compiled (JDK < 17) or not accessible, use the scalar fallback
+            }
+        }
+        return new ScalarSpringForceKernel();
+    }
+}
@@ -0,0 +1,292 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.MassSpringModel;
+
+/**
+ * Linear system of one backward Euler step of the mass-spring model (Baraff and Witkin, "Large steps in cloth simulation", 1998).
+ * <p>
+ * The spring forces are linearized around the current positions. The velocity change dv of all points solves
+ * (M - h * df/dv - h^2 * df/dx) * dv = h * (f + h * df/dx * v)
+ * with the time step h, the diagonal mass matrix M, df/dv = -viscousDamping * I and the sparse stiffness matrix df/dx of the springs.
+ * Every spring (i, j) contributes the symmetric 3x3 block J = k * (u * u^T + max(0, 1 - restingLength / length) * (I - u * u^T))
+ * with the spring direction u. Compressed springs only keep the stiffness along the spring, which keeps the matrix positive definite.
+ * Two points at the same position have no spring direction, their block is the isotropic k * I.
+ * The blocks are stored once per spring, the matrix itself is never assembled, i.e. (A * v)_i = (m + h * c) * v_i + h^2 * sum_j J_ij * (v_i - v_j).
+ * <p>
+ * The system is solved with the conjugate gradient method and a Jacobi preconditioner. The velocity of locked points does not change,
+ * their rows and columns are filtered out of the system. Vectors are stored with three interleaved floats per point.
+ *
+ * @author Mirco Werner
+ */
+class ImplicitSpringSystem {
+    static final int MAX_ITERATIONS = 100;
+    static final float TOLERANCE = 1e-4f; // relative to the norm of the right hand side
+
+    // springs starting at each point (dx, dy), every spring of the cloth is stored exactly once
+    static final int SPRINGS = MassSpringModel.SPRINGS;
+    static final int[] SPRING_X = MassSpringModel.SPRING_X;
+    static final int[] SPRING_Y = MassSpringModel.SPRING_Y;
+
+    private final int width;
+    private final int height;
+    private final float springConstant;
+    private final float[] restLengths;
+
+    private final int[] springTarget; // index of the second point of the spring, -1 if it is outside of the cloth
+    private final float[] jacobian; // xx, xy, xz, yy, yz, zz of each spring
+
+    private final float[] diagonal;
+    private final float[] rhs;
+    private final float[] velocityChange;
+    private final float[] residual;
+    private final float[] preconditioned;
+    private final float[] direction;
+    private final float[] product;
+
+    private float diagonalMass;
+    private float stiffnessScale;
+    private float[] locked;
+
+    /**
+     * Creates the spring topology of the cloth and the vectors of the solver.
+     *
+     * @param width          amount of points in x direction
+     * @param height         amount of points in y direction
+     * @param springConstant spring constant >= 0
+     * @param restLengths    rest lengths of the springs (see {@link MassSpringModel#getRestLengths()})
+     */
+    ImplicitSpringSystem(int width, int height, float springConstant, float[] restLengths) {
+        this.width = width;
+        this.height = height;
+        this.springConstant = springConstant;
+        this.restLengths = restLengths;
+
+        int count = width * height;
+        springTarget = createSpringTargets(width, height, restLengths);
+        jacobian = new float[count * SPRINGS * 6];
+
+        diagonal = new float[count * 3];
+        rhs = new float[count * 3];
+        velocityChange = new float[count * 3];
+        residual = new float[count * 3];
+        preconditioned = new float[count * 3];
+        direction = new float[count * 3];
+        product = new float[count * 3];
+    }
+
+    /**
+     * Creates the index of the second point of each spring of each point, -1 if it is outside of the cloth or has been removed by a mask.
+     *
+     * @param width       amount of points in x direction
+     * @param height      amount of points in y direction
+     * @param restLengths rest lengths of the springs, {@link MassSpringModel#NO_SPRING} => no spring
+     * @return {@link #SPRINGS} targets per point
+     */
+    static int[] createSpringTargets(int width, int height, float[] restLengths) {
+        int[] springTarget = new int[width * height * SPRINGS];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int s = 0; s < SPRINGS; s++) {
+                    int targetX = x + SPRING_X[s];
+                    int targetY = y + SPRING_Y[s];
+                    boolean inside = targetX >= 0 && targetX < width && targetY < height;
+                    boolean exists = inside && MassSpringModel.hasSpring(restLengths[s * width * height + y * width + x]);
+                    springTarget[(y * width + x) * SPRINGS + s] = exists ? targetY * width + targetX : -1;
+                }
+            }
+        }
+        return springTarget;
+    }
+
+    /**
+     * Calculates the spring blocks of the stiffness matrix from the given positions.
+     *
+     * @param point positions of the points
+     */
+    void assemble(PointBuffer point) {
+        for (int i = 0; i < width * height; i++) {
+            for (int s = 0; s < SPRINGS; s++) {
+                int j = springTarget[i * SPRINGS + s];
+                if (j < 0) {
+                    continue;
+                }
+                float dirX = point.positionX[j] - point.positionX[i];
+                float dirY = point.positionY[j] - point.positionY[i];
+                float dirZ = point.positionZ[j] - point.positionZ[i];
+                float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+                int b = (i * SPRINGS + s) * 6;
+                if (length == 0) {
+                    // no direction, the spring resists the relative motion in every direction
+                    jacobian[b] = springConstant;
+                    jacobian[b + 1] = 0;
+                    jacobian[b + 2] = 0;
+                    jacobian[b + 3] = springConstant;
+                    jacobian[b + 4] = 0;
+                    jacobian[b + 5] = springConstant;
+                    continue;
+                }
+                float ux = dirX / length;
+                float uy = dirY / length;
+                float uz = dirZ / length;
+                float lateral = Math.max(0, 1 - restLengths[s * width * height + i] / length);
+                float axial = springConstant * (1 - lateral);
+                lateral *= springConstant;
+                jacobian[b] = lateral + axial * ux * ux;
+                jacobian[b + 1] = axial * ux * uy;
+                jacobian[b + 2] = axial * ux * uz;
+                jacobian[b + 3] = lateral + axial * uy * uy;
+                jacobian[b + 4] = axial * uy * uz;
+                jacobian[b + 5] = lateral + axial * uz * uz;
+            }
+        }
+    }
+
+    /**
+     * Solves the system for the velocity change of all points. {@link #assemble(PointBuffer)} has to be called before.
+     *
+     * @param point          velocities of the points at the beginning of the step
+     * @param force          force acting on each point (three floats per point)
+     * @param locked         locked flag of each point (locked if != 0)
+     * @param mass           mass of one point
+     * @param viscousDamping damping constant >= 0
+     * @param time           time step
+     * @return amount of conjugate gradient iterations
+     */
+    int solve(PointBuffer point, float[] force, float[] locked, float mass, float viscousDamping, float time) {
+        this.locked = locked;
+        diagonalMass = mass + time * viscousDamping;
+        stiffnessScale = time * time;
+        int count = width * height;
+
+        // right hand side h * (f + h * df/dx * v) and the Jacobi preconditioner
+        for (int i = 0; i < count * 3; i++) {
+            rhs[i] = time * force[i];
+            diagonal[i] = diagonalMass;
+        }
+        for (int i = 0; i < count; i++) {
+            for (int s = 0; s < SPRINGS; s++) {
+                int j = springTarget[i * SPRINGS + s];
+                if (j < 0) {
+                    continue;
+                }
+                int b = (i * SPRINGS + s) * 6;
+                float dvX = point.velocityX[j] - point.velocityX[i];
+                float dvY = point.velocityY[j] - point.velocityY[i];
+                float dvZ = point.velocityZ[j] - point.velocityZ[i];
+                float fx = stiffnessScale * (jacobian[b] * dvX + jacobian[b + 1] * dvY + jacobian[b + 2] * dvZ);
+                float fy = stiffnessScale * (jacobian[b + 1] * dvX + jacobian[b + 3] * dvY + jacobian[b + 4] * dvZ);
+                float fz = stiffnessScale * (jacobian[b + 2] * dvX + jacobian[b + 4] * dvY + jacobian[b + 5] * dvZ);
+                rhs[i * 3] += fx;
+                rhs[i * 3 + 1] += fy;
+                rhs[i * 3 + 2] += fz;
+                rhs[j * 3] -= fx;
+                rhs[j * 3 + 1] -= fy;
+                rhs[j * 3 + 2] -= fz;
+                addDiagonal(i, b);
+                addDiagonal(j, b);
+            }
+        }
+        filter(rhs);
+
+        // preconditioned conjugate gradient, starting with the velocity change of the last step (0 in the first step)
+        filter(velocityChange);
+        multiply(velocityChange, product);
+        for (int k = 0; k < count * 3; k++) {
+            residual[k] = rhs[k] - product[k];
+        }
+        precondition();
+        System.arraycopy(preconditioned, 0, direction, 0, count * 3);
+        double residualDotPreconditioned = dot(residual, preconditioned);
+        double threshold = TOLERANCE * TOLERANCE * dot(rhs, rhs);
+        int iteration = 0;
+        while (iteration < MAX_ITERATIONS && dot(residual, residual) > threshold) {
+            multiply(direction, product);
+            float alpha = (float) (residualDotPreconditioned / dot(direction, product));
+            for (int k = 0; k < count * 3; k++) {
+                velocityChange[k] += alpha * direction[k];
+                residual[k] -= alpha * product[k];
+            }
+            precondition();
+            double next = dot(residual, preconditioned);
+            float beta = (float) (next / residualDotPreconditioned);
+            residualDotPreconditioned = next;
+            for (int k = 0; k < count * 3; k++) {
+                direction[k] = preconditioned[k] + beta * direction[k];
+            }
+            iteration++;
+        }
+        return iteration;
+    }
+
+    /**
+     * @return velocity change of the last {@link #solve} call, three floats per point (initial guess of the next call)
+     */
+    float[] getVelocityChange() {
+        return velocityChange;
+    }
+
+    private void addDiagonal(int i, int b) {
+        diagonal[i * 3] += stiffnessScale * jacobian[b];
+        diagonal[i * 3 + 1] += stiffnessScale * jacobian[b + 3];
+        diagonal[i * 3 + 2] += stiffnessScale * jacobian[b + 5];
+    }
+
+    /**
+     * Writes A * v to the target vector.
+     */
+    private void multiply(float[] v, float[] target) {
+        int count = width * height;
+        for (int k = 0; k < count * 3; k++) {
+            target[k] = diagonalMass * v[k];
+        }
+        for (int i = 0; i < count; i++) {
+            for (int s = 0; s < SPRINGS; s++) {
+                int j = springTarget[i * SPRINGS + s];
+                if (j < 0) {
+                    continue;
+                }
+                int b = (i * SPRINGS + s) * 6;
+                float dX = v[i * 3] - v[j * 3];
+                float dY = v[i * 3 + 1] - v[j * 3 + 1];
+                float dZ = v[i * 3 + 2] - v[j * 3 + 2];
+                float fx = stiffnessScale * (jacobian[b] * dX + jacobian[b + 1] * dY + jacobian[b + 2] * dZ);
+                float fy = stiffnessScale * (jacobian[b + 1] * dX + jacobian[b + 3] * dY + jacobian[b + 4] * dZ);
+                float fz = stiffnessScale * (jacobian[b + 2] * dX + jacobian[b + 4] * dY + jacobian[b + 5] * dZ);
+                target[i * 3] += fx;
+                target[i * 3 + 1] += fy;
+                target[i * 3 + 2] += fz;
+                target[j * 3] -= fx;
+                target[j * 3 + 1] -= fy;
+                target[j * 3 + 2] -= fz;
+            }
+        }
+        filter(target);
+    }
+
+    private void precondition() {
+        for (int k = 0; k < width * height * 3; k++) {
+            preconditioned[k] = residual[k] / diagonal[k];
+        }
+    }
+
+    /**
+     * Sets the entries of locked points to zero.
+     */
+    private void filter(float[] v) {
+        for (int i = 0; i < width * height; i++) {
+            if (locked[i] != 0) {
+                v[i * 3] = 0;
+                v[i * 3 + 1] = 0;
+                v[i * 3 + 2] = 0;
+            }
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int k = 0; k < a.length; k++) {
+            sum += (double) a[k] * b[k];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,740 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.EIntegrator;
+import massspringcloth.cloth.ERelaxationMode;
+import massspringcloth.cloth.MassSpringModel;
+import massspringcloth.cloth.MeshClothModel;
+import massspringcloth.cloth.TimeStepEstimator;
+import org.joml.Vector3f;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pure Java implementation of the simulation of a cloth with a triangle mesh as topology (see {@link MeshClothModel}),
+ * the equivalent of resources/shaders/cloth_mesh_compute.glsl. The stages are the same as in the {@link CpuClothSolver},
+ * but the springs of a point are read from its CSR row instead of the fixed offsets of the grid.
+ * <p>
+ * The forces and the {@link ERelaxationMode#JACOBI} relaxation read the input buffer and write the output buffer like the grid.
+ * The {@link ERelaxationMode#GAUSS_SEIDEL} and {@link ERelaxationMode#CONVERGENT} relaxation and the XPBD constraints are solved
+ * in place, one color of the model after the other. The points of one color are not connected by any spring,
+ * thus they are executed in parallel without reading the positions that another thread writes.
+ * <p>
+ * Long-range attachments, sleeping tiles and the implicit integrators are only available for the grid.
+ *
+ * @author Mirco Werner
+ */
+public class MeshClothSolver {
+    private static final float RESTING_LENGTH_EPSILON = 0.01f;
+    private static final float GRAVITY = 9.81f;
+
+    private static final float SPHERE_X = 0.0f;
+    private static final float SPHERE_Y = 30.0f;
+    private static final float SPHERE_Z = 0.0f;
+    private static final float SPHERE_RADIUS = 10.0f;
+
+    private static final int CHUNKS_PER_THREAD = 4; // more chunks than threads for load balancing
+
+    private final int pointCount;
+    private final int normalSign;
+    private final boolean sphereEnabled;
+    private final float mass;
+    private final float viscousDamping;
+    private final Vector3f velocityFluid;
+    private final float springConstant;
+    private final int maxSprings;
+
+    // point data from the last iteration (do not write) and updated points that will become the input in the next iteration
+    private PointBuffer pointIn;
+    private PointBuffer pointOut;
+    private PointBuffer pointTarget; // buffer the stage writes, the input buffer for the stages that are solved in place
+
+    // static point data
+    private final float[] locked;
+    private final float[] textureU;
+    private final float[] textureV;
+    private final int[] springOffsets; // see MeshClothModel
+    private final int[] bendOffsets;
+    private final int[] springTargets;
+    private final float[] restLengths;
+    private final int[] triangles;
+    private final int[] triangleOffsets;
+    private final int[] pointTriangles;
+    private final int[] colorOffsets;
+    private final int[] colorPoints;
+
+    // data used for rendering, four floats per point (same layout as the vbos)
+    private final float[] renderDataPosition;
+    private final float[] renderDataNormal;
+    private final float[] renderDataTangent;
+
+    private boolean velocityLimited;
+    private EIntegrator integrator = EIntegrator.EXPLICIT_EULER;
+    private ERelaxationMode relaxationMode = ERelaxationMode.JACOBI;
+    private int xpbdIterations = 20;
+    private int minIterations;
+    private float relaxationTolerance = 0.01f;
+    private int maxRelaxationRounds = 8;
+    private int relaxationRounds;
+
+    private ForkJoinPool pool;
+    private Chunk[] chunks;
+    private final ChunksTask chunksTask = new ChunksTask();
+    private float stageTime;
+    private int stageState;
+    private int stageColor; // -1 => all points, otherwise only the points of this color are executed in place
+
+    /**
+     * Creates and initializes the solver with the given parameters.
+     *
+     * @param model          model containing the initial positions, the springs etc.
+     * @param normalSign     normal orientation \in {-1,1}
+     * @param sphereEnabled  true if sphere collisions are enabled, false otherwise
+     * @param mass           mass of one point
+     * @param viscousDamping damping constant >= 0, higher damping constant causes more friction
+     * @param velocityFluid  velocity of a viscous fluid like wind or water (used for viscous interaction force)
+     * @param springConstant spring constant >= 0, higher spring constant makes cloth more stiff
+     */
+    public MeshClothSolver(MeshClothModel model, int normalSign, boolean sphereEnabled, float mass, float viscousDamping, Vector3f velocityFluid, float springConstant) {
+        this.normalSign = normalSign;
+        this.sphereEnabled = sphereEnabled;
+        this.mass = mass;
+        this.viscousDamping = viscousDamping;
+        this.velocityFluid = velocityFluid;
+        this.springConstant = springConstant;
+        this.pointCount = model.getPointCount();
+        this.maxSprings = model.getMaxSprings();
+
+        pointIn = new PointBuffer(pointCount);
+        pointOut = new PointBuffer(pointCount);
+        locked = new float[pointCount];
+        textureU = new float[pointCount];
+        textureV = new float[pointCount];
+        renderDataPosition = new float[pointCount * 4];
+        renderDataNormal = new float[pointCount * 4];
+        renderDataTangent = new float[pointCount * 4];
+
+        float[] positions = model.getPositions();
+        float[] velocities = model.getVelocities();
+        float[] pointData = model.getPointData();
+        for (int i = 0; i < pointCount; i++) {
+            pointIn.positionX[i] = positions[i * 4];
+            pointIn.positionY[i] = positions[i * 4 + 1];
+            pointIn.positionZ[i] = positions[i * 4 + 2];
+            pointIn.velocityX[i] = velocities[i * 4];
+            pointIn.velocityY[i] = velocities[i * 4 + 1];
+            pointIn.velocityZ[i] = velocities[i * 4 + 2];
+            locked[i] = pointData[i * 4];
+            textureU[i] = pointData[i * 4 + 1];
+            textureV[i] = pointData[i * 4 + 2];
+        }
+        springOffsets = model.getSpringOffsets();
+        bendOffsets = model.getBendOffsets();
+        springTargets = model.getSpringTargets();
+        restLengths = model.getRestLengths();
+        triangles = model.getIndices();
+        triangleOffsets = model.getTriangleOffsets();
+        pointTriangles = model.getPointTriangles();
+        colorOffsets = model.getColorOffsets();
+        colorPoints = model.getColorPoints();
+
+        setForkJoinPool(null);
+        execute(0, 2, -1); // execute one time that the render data is valid
+    }
+
+    /**
+     * Executes the simulation with a time step of 0.01.
+     *
+     * @param iterations how often the simulation is executed
+     */
+    public void simulate(int iterations) {
+        simulate(iterations, 0.01f);
+    }
+
+    /**
+     * Executes the simulation for the given (simulated) time with as few iterations as possible, like {@link CpuClothSolver#simulateAdaptive(float)}.
+     * The stable time step is calculated from the largest amount of springs of a point of the mesh (see {@link MeshClothModel#getMaxSprings()}).
+     *
+     * @param elapsedTime time that should be simulated
+     * @return amount of executed iterations
+     */
+    public int simulateAdaptive(float elapsedTime) {
+        if (integrator == EIntegrator.XPBD) {
+            if (elapsedTime <= 0) {
+                return 0;
+            }
+            int iterations = Math.max(xpbdIterations, minIterations);
+            simulate(iterations, elapsedTime / iterations);
+            return iterations;
+        }
+        float stableTimeStep = TimeStepEstimator.getStableTimeStep(mass, springConstant, viscousDamping, maxSprings);
+        if (velocityLimited) {
+            stableTimeStep = TimeStepEstimator.limitByVelocity(stableTimeStep, getMaxSpeed());
+        }
+        int iterations = TimeStepEstimator.getSubSteps(elapsedTime, stableTimeStep, minIterations);
+        if (iterations > 0) {
+            simulate(iterations, Math.min(elapsedTime / iterations, stableTimeStep));
+        }
+        return iterations;
+    }
+
+    /**
+     * Executes the simulation.
+     *
+     * @param iterations how often the simulation is executed
+     * @param timeStep   simulation time step of one iteration
+     */
+    public void simulate(int iterations, float timeStep) {
+        for (int i = 0; i < iterations; i++) {
+            execute(timeStep, 0, -1); // apply forces
+            if (integrator == EIntegrator.XPBD || relaxationMode == ERelaxationMode.GAUSS_SEIDEL) {
+                for (int color = 0; color < colorOffsets.length - 1; color++) {
+                    execute(timeStep, 1, color); // solve the constraints or relax the springs of one color, uses the corrections of the previous colors
+                }
+            } else if (relaxationMode == ERelaxationMode.CONVERGENT) {
+                relaxConvergent(timeStep);
+            } else {
+                execute(timeStep, 1, -1); // relaxation, adjust too long springs
+            }
+        }
+        if (iterations > 0) {
+            execute(0, 2, -1); // only once after the last relaxation
+        }
+    }
+
+    /**
+     * Executes rounds of Gauss-Seidel passes until the largest over-extension of a round is within the relaxation tolerance
+     * or the maximum amount of rounds were executed.
+     *
+     * @param time simulation time step
+     */
+    private void relaxConvergent(float time) {
+        relaxationRounds = 0;
+        float maxExcess;
+        do {
+            maxExcess = 0;
+            for (int color = 0; color < colorOffsets.length - 1; color++) {
+                execute(time, 1, color);
+                for (Chunk chunk : chunks) {
+                    maxExcess = Math.max(maxExcess, chunk.scratch[3]);
+                }
+            }
+            relaxationRounds++;
+        } while (maxExcess > relaxationTolerance && relaxationRounds < maxRelaxationRounds);
+    }
+
+    /**
+     * Distributes the points of each stage among the threads of the given pool. Each chunk of points is executed as one task.
+     *
+     * @param pool pool that executes the chunks, null to execute all points on the calling thread
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        this.pool = pool;
+        int chunkCount = pool == null ? 1 : pool.getParallelism() * CHUNKS_PER_THREAD;
+        chunks = new Chunk[chunkCount];
+        for (int c = 0; c < chunkCount; c++) {
+            chunks[c] = new Chunk(c, chunkCount);
+        }
+    }
+
+    /**
+     * Sets the integration of the forces, only {@link EIntegrator#EXPLICIT_EULER} and {@link EIntegrator#XPBD} are available for meshes.
+     * With {@link EIntegrator#XPBD}, the springs (structural and bend springs) are solved as constraints, one color after the other.
+     *
+     * @param integrator integrator
+     */
+    public void setIntegrator(EIntegrator integrator) {
+        if (integrator != EIntegrator.EXPLICIT_EULER && integrator != EIntegrator.XPBD) {
+            throw new IllegalArgumentException("Integrator " + integrator + " is only available for the grid");
+        }
+        this.integrator = integrator;
+    }
+
+    /**
+     * Sets how the relaxation stage updates the points (see {@link ERelaxationMode}). The Gauss-Seidel passes are one pass per color of the model.
+     *
+     * @param relaxationMode relaxation mode
+     */
+    public void setRelaxationMode(ERelaxationMode relaxationMode) {
+        this.relaxationMode = relaxationMode;
+    }
+
+    /**
+     * Sets when the {@link ERelaxationMode#CONVERGENT} relaxation stops.
+     *
+     * @param tolerance largest over-extension relative to the maximum resting length that is accepted
+     * @param maxRounds maximum amount of rounds (one pass per color) per iteration >= 1
+     */
+    public void setRelaxationTolerance(float tolerance, int maxRounds) {
+        this.relaxationTolerance = tolerance;
+        this.maxRelaxationRounds = maxRounds;
+    }
+
+    /**
+     * Sets the amount of XPBD iterations of one {@link #simulateAdaptive(float)} call.
+     *
+     * @param xpbdIterations amount of iterations >= 1
+     */
+    public void setXpbdIterations(int xpbdIterations) {
+        this.xpbdIterations = xpbdIterations;
+    }
+
+    /**
+     * Sets the amount of iterations {@link #simulateAdaptive(float)} executes at least. Additional iterations use shorter time steps.
+     *
+     * @param minIterations amount of iterations (0 => as few as the stable time step allows)
+     */
+    public void setMinIterations(int minIterations) {
+        this.minIterations = minIterations;
+    }
+
+    /**
+     * Enables the refinement of the adaptive time step by the highest speed of the points (see {@link TimeStepEstimator#limitByVelocity(float, float)}).
+     *
+     * @param velocityLimited true to limit the time step by the highest speed
+     */
+    public void setVelocityLimited(boolean velocityLimited) {
+        this.velocityLimited = velocityLimited;
+    }
+
+    /**
+     * @return amount of rounds of the last {@link ERelaxationMode#CONVERGENT} relaxation
+     */
+    public int getRelaxationRounds() {
+        return relaxationRounds;
+    }
+
+    /**
+     * @return highest speed of all points in the input buffer
+     */
+    private float getMaxSpeed() {
+        float maxSpeedSquared = 0;
+        for (int i = 0; i < pointCount; i++) {
+            float vx = pointIn.velocityX[i];
+            float vy = pointIn.velocityY[i];
+            float vz = pointIn.velocityZ[i];
+            maxSpeedSquared = Math.max(maxSpeedSquared, vx * vx + vy * vy + vz * vz);
+        }
+        return (float) Math.sqrt(maxSpeedSquared);
+    }
+
+    /**
+     * Executes one stage. All points: reads the input buffer, writes the output buffer and swaps them afterwards.
+     * One color: reads and writes the input buffer, only the points of the color are executed.
+     *
+     * @param time  simulation time step
+     * @param state 0 => apply forces, 1 => relaxation of the springs (XPBD: solve the constraints), 2 => only write render data
+     * @param color -1 => all points, otherwise the points of this color
+     */
+    private void execute(float time, int state, int color) {
+        stageTime = time;
+        stageState = state;
+        stageColor = color;
+        pointTarget = color >= 0 ? pointIn : pointOut;
+        if (pool == null) {
+            chunks[0].executePoints();
+        } else {
+            pool.invoke(chunksTask.reset());
+        }
+        if (color < 0 && state != 2) {
+            // switch input and output buffer for next iteration
+            PointBuffer store = pointOut;
+            pointOut = pointIn;
+            pointIn = store;
+        }
+    }
+
+    /**
+     * Part c of n of the points of a stage that is executed by one thread.
+     */
+    private class Chunk extends RecursiveAction {
+        private final int c;
+        private final int n;
+        private final float[] scratch = new float[4]; // [3]: largest over-extension of the relaxed points
+
+        private Chunk(int c, int n) {
+            this.c = c;
+            this.n = n;
+        }
+
+        private void executePoints() {
+            scratch[3] = 0;
+            if (stageColor < 0) {
+                for (int i = (int) ((long) pointCount * c / n); i < (long) pointCount * (c + 1) / n; i++) {
+                    executePoint(i, scratch);
+                }
+                return;
+            }
+            int start = colorOffsets[stageColor];
+            int length = colorOffsets[stageColor + 1] - start;
+            for (int k = start + length * c / n; k < start + length * (c + 1) / n; k++) {
+                executePoint(colorPoints[k], scratch);
+            }
+        }
+
+        @Override
+        protected void compute() {
+            executePoints();
+        }
+    }
+
+    /**
+     * Executes all chunks in parallel and waits until all of them are finished.
+     */
+    private class ChunksTask extends RecursiveAction {
+        private ChunksTask reset() {
+            reinitialize();
+            for (Chunk chunk : chunks) {
+                chunk.reinitialize();
+            }
+            return this;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(chunks);
+        }
+    }
+
+    private void executePoint(int i, float[] scratch) {
+        if (stageState == 2) {
+            writeRenderData(i, scratch);
+            return;
+        }
+        if (stageColor < 0) {
+            copyPoint(i);
+        }
+        if (locked[i] == 0) {
+            if (stageState == 0) {
+                applyForce(i, stageTime, scratch);
+            } else if (integrator == EIntegrator.XPBD) {
+                applyConstraints(i, stageTime, scratch);
+            } else {
+                applyRelaxation(i, scratch);
+            }
+        }
+    }
+
+    private void copyPoint(int i) {
+        pointOut.positionX[i] = pointIn.positionX[i];
+        pointOut.positionY[i] = pointIn.positionY[i];
+        pointOut.positionZ[i] = pointIn.positionZ[i];
+        pointOut.velocityX[i] = pointIn.velocityX[i];
+        pointOut.velocityY[i] = pointIn.velocityY[i];
+        pointOut.velocityZ[i] = pointIn.velocityZ[i];
+    }
+
+    /**
+     * Writes the external force (gravity, viscous damping, viscous interaction) of point i to the scratch array.
+     */
+    private void calcExternalForce(int i, float[] scratch) {
+        // the render data is only written after the last relaxation, calculate the normal from the input buffer
+        calcNormal(i, scratch);
+        float length = (float) Math.sqrt(scratch[0] * scratch[0] + scratch[1] * scratch[1] + scratch[2] * scratch[2]);
+        float scale = length == 0 ? 0 : normalSign / length;
+        float oldNormalX = scratch[0] * scale;
+        float oldNormalY = scratch[1] * scale;
+        float oldNormalZ = scratch[2] * scale;
+        float oldVelocityX = pointIn.velocityX[i];
+        float oldVelocityY = pointIn.velocityY[i];
+        float oldVelocityZ = pointIn.velocityZ[i];
+        float viscousInteraction = -(oldNormalX * (velocityFluid.x - oldVelocityX) + oldNormalY * (velocityFluid.y - oldVelocityY) + oldNormalZ * (velocityFluid.z - oldVelocityZ));
+        scratch[0] = oldVelocityX * -viscousDamping + viscousInteraction * oldNormalX;
+        scratch[1] = -mass * GRAVITY + oldVelocityY * -viscousDamping + viscousInteraction * oldNormalY;
+        scratch[2] = oldVelocityZ * -viscousDamping + viscousInteraction * oldNormalZ;
+    }
+
+    /**
+     * Applies the external force and (explicit Euler) the forces of all springs of the row of point i.
+     */
+    private void applyForce(int i, float time, float[] scratch) {
+        calcExternalForce(i, scratch);
+        if (integrator != EIntegrator.XPBD) { // XPBD: the springs are constraints
+            float positionX = pointIn.positionX[i];
+            float positionY = pointIn.positionY[i];
+            float positionZ = pointIn.positionZ[i];
+            for (int s = springOffsets[i]; s < springOffsets[i + 1]; s++) {
+                int j = springTargets[s];
+                float dirX = pointIn.positionX[j] - positionX;
+                float dirY = pointIn.positionY[j] - positionY;
+                float dirZ = pointIn.positionZ[j] - positionZ;
+                float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+                if (length == 0) {
+                    continue; // no direction, e.g. the opposite points of two folded triangles meet
+                }
+                scratch[0] += springConstant * (dirX - dirX / length * restLengths[s]);
+                scratch[1] += springConstant * (dirY - dirY / length * restLengths[s]);
+                scratch[2] += springConstant * (dirZ - dirZ / length * restLengths[s]);
+            }
+        }
+
+        // euler integration
+        float velocityX = pointIn.velocityX[i] + scratch[0] / mass * time;
+        float velocityY = pointIn.velocityY[i] + scratch[1] / mass * time;
+        float velocityZ = pointIn.velocityZ[i] + scratch[2] / mass * time;
+        float positionX = pointIn.positionX[i] + velocityX * time;
+        float positionY = pointIn.positionY[i] + velocityY * time;
+        float positionZ = pointIn.positionZ[i] + velocityZ * time;
+
+        // collision
+        if (sphereEnabled) {
+            float toSphereX = positionX - SPHERE_X;
+            float toSphereY = positionY - SPHERE_Y;
+            float toSphereZ = positionZ - SPHERE_Z;
+            float length = (float) Math.sqrt(toSphereX * toSphereX + toSphereY * toSphereY + toSphereZ * toSphereZ);
+            if (length < SPHERE_RADIUS + 0.05f) {
+                positionX = SPHERE_X + toSphereX / length * (SPHERE_RADIUS + 0.05f);
+                positionY = SPHERE_Y + toSphereY / length * (SPHERE_RADIUS + 0.05f);
+                positionZ = SPHERE_Z + toSphereZ / length * (SPHERE_RADIUS + 0.05f);
+                velocityX *= 0.9f;
+                velocityY *= 0.9f;
+                velocityZ *= 0.9f;
+            }
+        }
+        if (positionY < 0.05f) {
+            positionY = 0.05f;
+            velocityX *= 0.9f;
+            velocityY = 0;
+            velocityZ *= 0.9f;
+        }
+
+        pointOut.velocityX[i] = velocityX;
+        pointOut.velocityY[i] = velocityY;
+        pointOut.velocityZ[i] = velocityZ;
+        pointOut.positionX[i] = positionX;
+        pointOut.positionY[i] = positionY;
+        pointOut.positionZ[i] = positionZ;
+    }
+
+    /**
+     * Moves point i towards the targets of its structural springs that are longer than {@link MassSpringModel#MAX_STRETCH} times their rest length.
+     * The bend springs are not relaxed, they may be compressed and stretched by folds.
+     */
+    private void applyRelaxation(int i, float[] scratch) {
+        float positionX = pointIn.positionX[i];
+        float positionY = pointIn.positionY[i];
+        float positionZ = pointIn.positionZ[i];
+        float relaxX = 0;
+        float relaxY = 0;
+        float relaxZ = 0;
+        for (int s = springOffsets[i]; s < bendOffsets[i]; s++) {
+            int j = springTargets[s];
+            float maxRestingLength = MassSpringModel.MAX_STRETCH * restLengths[s];
+            float relaxDirX = pointIn.positionX[j] - positionX;
+            float relaxDirY = pointIn.positionY[j] - positionY;
+            float relaxDirZ = pointIn.positionZ[j] - positionZ;
+            float length = (float) Math.sqrt(relaxDirX * relaxDirX + relaxDirY * relaxDirY + relaxDirZ * relaxDirZ);
+            if (length < maxRestingLength + RESTING_LENGTH_EPSILON) { // only relax if it is too long (plus some epsilon)
+                continue;
+            }
+            // over-extension relative to the maximum resting length, relative to the epsilon for springs of rest length 0
+            scratch[3] = Math.max(scratch[3], (length - maxRestingLength) / Math.max(maxRestingLength, RESTING_LENGTH_EPSILON));
+            float factor = (length - maxRestingLength) / length; // ensure direction vector to have the correct length
+            if (locked[j] == 0) {
+                factor /= 2; // only move half the way because the other unlocked point will also be moved half the way
+            }
+            pointTarget.velocityX[i] = 0;
+            pointTarget.velocityY[i] = 0;
+            pointTarget.velocityZ[i] = 0;
+            relaxX += relaxDirX * factor;
+            relaxY += relaxDirY * factor;
+            relaxZ += relaxDirZ * factor;
+        }
+        pointTarget.positionX[i] = positionX + relaxX;
+        pointTarget.positionY[i] = positionY + relaxY;
+        pointTarget.positionZ[i] = positionZ + relaxZ;
+    }
+
+    /**
+     * Solves the distance constraints of all springs of point i one after the other and updates its velocity by the position correction.
+     * Every constraint sees the corrections of the previous ones (Gauss-Seidel), the neighbors have other colors and do not move in this pass.
+     */
+    private void applyConstraints(int i, float time, float[] scratch) {
+        if (springConstant <= 0) {
+            return;
+        }
+        float compliance = 1 / (springConstant * time * time);
+        float inverseMass = 1 / mass;
+        float positionX = pointIn.positionX[i];
+        float positionY = pointIn.positionY[i];
+        float positionZ = pointIn.positionZ[i];
+        scratch[0] = positionX;
+        scratch[1] = positionY;
+        scratch[2] = positionZ;
+        for (int s = springOffsets[i]; s < springOffsets[i + 1]; s++) {
+            int j = springTargets[s];
+            float dirX = pointIn.positionX[j] - scratch[0];
+            float dirY = pointIn.positionY[j] - scratch[1];
+            float dirZ = pointIn.positionZ[j] - scratch[2];
+            float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+            if (length == 0) {
+                continue; // no direction
+            }
+            float inverseMassSum = locked[j] == 0 ? 2 * inverseMass : inverseMass;
+            float factor = inverseMass * (length - restLengths[s]) / ((inverseMassSum + compliance) * length);
+            scratch[0] += dirX * factor;
+            scratch[1] += dirY * factor;
+            scratch[2] += dirZ * factor;
+        }
+        projectCollision(scratch); // the velocity follows the projected position
+
+        pointTarget.velocityX[i] = pointIn.velocityX[i] + (scratch[0] - positionX) / time;
+        pointTarget.velocityY[i] = pointIn.velocityY[i] + (scratch[1] - positionY) / time;
+        pointTarget.velocityZ[i] = pointIn.velocityZ[i] + (scratch[2] - positionZ) / time;
+        pointTarget.positionX[i] = scratch[0];
+        pointTarget.positionY[i] = scratch[1];
+        pointTarget.positionZ[i] = scratch[2];
+    }
+
+    /**
+     * Moves the position in the scratch array out of the sphere and above the ground.
+     */
+    private void projectCollision(float[] scratch) {
+        if (sphereEnabled) {
+            float toSphereX = scratch[0] - SPHERE_X;
+            float toSphereY = scratch[1] - SPHERE_Y;
+            float toSphereZ = scratch[2] - SPHERE_Z;
+            float length = (float) Math.sqrt(toSphereX * toSphereX + toSphereY * toSphereY + toSphereZ * toSphereZ);
+            if (length < SPHERE_RADIUS + 0.05f) {
+                scratch[0] = SPHERE_X + toSphereX / length * (SPHERE_RADIUS + 0.05f);
+                scratch[1] = SPHERE_Y + toSphereY / length * (SPHERE_RADIUS + 0.05f);
+                scratch[2] = SPHERE_Z + toSphereZ / length * (SPHERE_RADIUS + 0.05f);
+            }
+        }
+        if (scratch[1] < 0.05f) {
+            scratch[1] = 0.05f;
+        }
+    }
+
+    /**
+     * Writes the (not normalized) normal of point i to the scratch array, the sum of the area weighted normals of its triangles.
+     */
+    private void calcNormal(int i, float[] scratch) {
+        scratch[0] = 0;
+        scratch[1] = 0;
+        scratch[2] = 0;
+        for (int k = triangleOffsets[i]; k < triangleOffsets[i + 1]; k++) {
+            int t = pointTriangles[k] * 3;
+            int j1 = triangles[t];
+            int j2 = triangles[t + 1];
+            int j3 = triangles[t + 2];
+            float edge1X = pointIn.positionX[j2] - pointIn.positionX[j1];
+            float edge1Y = pointIn.positionY[j2] - pointIn.positionY[j1];
+            float edge1Z = pointIn.positionZ[j2] - pointIn.positionZ[j1];
+            float edge2X = pointIn.positionX[j3] - pointIn.positionX[j1];
+            float edge2Y = pointIn.positionY[j3] - pointIn.positionY[j1];
+            float edge2Z = pointIn.positionZ[j3] - pointIn.positionZ[j1];
+            scratch[0] += edge1Y * edge2Z - edge1Z * edge2Y;
+            scratch[1] += edge1Z * edge2X - edge1X * edge2Z;
+            scratch[2] += edge1X * edge2Y - edge1Y * edge2X;
+        }
+    }
+
+    /**
+     * Adds the tangent of the triangle spanned by the points 1, 2 and 3 to the scratch array, nothing if the uv coordinates of the triangle are degenerate.
+     */
+    private void addTangent(float[] scratch, int j1, int j2, int j3) {
+        float edge1X = pointIn.positionX[j2] - pointIn.positionX[j1];
+        float edge1Y = pointIn.positionY[j2] - pointIn.positionY[j1];
+        float edge1Z = pointIn.positionZ[j2] - pointIn.positionZ[j1];
+        float edge2X = pointIn.positionX[j3] - pointIn.positionX[j1];
+        float edge2Y = pointIn.positionY[j3] - pointIn.positionY[j1];
+        float edge2Z = pointIn.positionZ[j3] - pointIn.positionZ[j1];
+        float deltaUV1X = textureU[j2] - textureU[j1];
+        float deltaUV1Y = textureV[j2] - textureV[j1];
+        float deltaUV2X = textureU[j3] - textureU[j1];
+        float deltaUV2Y = textureV[j3] - textureV[j1];
+
+        float determinant = deltaUV1X * deltaUV2Y - deltaUV2X * deltaUV1Y;
+        if (determinant == 0) {
+            return;
+        }
+        float f = 1.0f / determinant;
+
+        scratch[0] += f * (deltaUV2Y * edge1X - deltaUV1Y * edge2X);
+        scratch[1] += f * (deltaUV2Y * edge1Y - deltaUV1Y * edge2Y);
+        scratch[2] += f * (deltaUV2Y * edge1Z - deltaUV1Y * edge2Z);
+    }
+
+    private void writeRenderData(int i, float[] scratch) {
+        renderDataPosition[i * 4] = pointIn.positionX[i];
+        renderDataPosition[i * 4 + 1] = pointIn.positionY[i];
+        renderDataPosition[i * 4 + 2] = pointIn.positionZ[i];
+        renderDataPosition[i * 4 + 3] = 1;
+
+        // normal
+        calcNormal(i, scratch);
+        writeNormalized(renderDataNormal, i, normalSign * scratch[0], normalSign * scratch[1], normalSign * scratch[2]);
+
+        // tangent
+        scratch[0] = 0;
+        scratch[1] = 0;
+        scratch[2] = 0;
+        for (int k = triangleOffsets[i]; k < triangleOffsets[i + 1]; k++) {
+            int t = pointTriangles[k] * 3;
+            addTangent(scratch, triangles[t], triangles[t + 1], triangles[t + 2]);
+        }
+        if (scratch[0] == 0 && scratch[1] == 0 && scratch[2] == 0) {
+            // no triangle with valid uv coordinates
+            scratch[0] = 1;
+        }
+        writeNormalized(renderDataTangent, i, scratch[0], scratch[1], scratch[2]);
+    }
+
+    private static void writeNormalized(float[] target, int i, float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length == 0) {
+            length = 1; // isolated point without a triangle
+        }
+        target[i * 4] = x / length;
+        target[i * 4 + 1] = y / length;
+        target[i * 4 + 2] = z / length;
+        target[i * 4 + 3] = 0;
+    }
+
+    /**
+     * Writes the current positions into the given array using the same layout as {@link MeshClothModel#getPositions()}, i.e. 4 floats per point.
+     * The points are in the order of the model, see {@link MeshClothModel#toOriginalOrder(float[], int)}.
+     *
+     * @param positions target array with at least pointCount * 4 floats
+     */
+    public void readPositions(float[] positions) {
+        for (int i = 0; i < pointCount; i++) {
+            positions[i * 4] = pointIn.positionX[i];
+            positions[i * 4 + 1] = pointIn.positionY[i];
+            positions[i * 4 + 2] = pointIn.positionZ[i];
+            positions[i * 4 + 3] = 1;
+        }
+    }
+
+    /**
+     * Writes the current velocities into the given array using the same layout as {@link MeshClothModel#getVelocities()}, i.e. 4 floats per point.
+     * The points are in the order of the model, see {@link MeshClothModel#toOriginalOrder(float[], int)}.
+     *
+     * @param velocities target array with at least pointCount * 4 floats
+     */
+    public void readVelocities(float[] velocities) {
+        for (int i = 0; i < pointCount; i++) {
+            velocities[i * 4] = pointIn.velocityX[i];
+            velocities[i * 4 + 1] = pointIn.velocityY[i];
+            velocities[i * 4 + 2] = pointIn.velocityZ[i];
+            velocities[i * 4 + 3] = 0;
+        }
+    }
+
+    public float[] getRenderDataPosition() {
+        return renderDataPosition;
+    }
+
+    public float[] getRenderDataNormal() {
+        return renderDataNormal;
+    }
+
+    public float[] getRenderDataTangent() {
+        return renderDataTangent;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+}
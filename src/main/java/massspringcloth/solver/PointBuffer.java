@@ -0,0 +1,44 @@
+package massspringcloth.solver;
+
+/**
+ * Stores the positions and velocities of all points as structure of arrays.
+ * Equivalent of the input and output buffer of the compute shader.
+ *
+ * @author Mirco Werner
+ */
+public class PointBuffer {
+    public final float[] positionX;
+    public final float[] positionY;
+    public final float[] positionZ;
+    public final float[] velocityX;
+    public final float[] velocityY;
+    public final float[] velocityZ;
+
+    /**
+     * Creates the arrays.
+     *
+     * @param count amount of points
+     */
+    public PointBuffer(int count) {
+        positionX = new float[count];
+        positionY = new float[count];
+        positionZ = new float[count];
+        velocityX = new float[count];
+        velocityY = new float[count];
+        velocityZ = new float[count];
+    }
+
+    /**
+     * Copies the positions and velocities of all points of the other buffer into this buffer.
+     *
+     * @param other buffer with the same amount of points
+     */
+    void copyFrom(PointBuffer other) {
+        System.arraycopy(other.positionX, 0, positionX, 0, positionX.length);
+        System.arraycopy(other.positionY, 0, positionY, 0, positionY.length);
+        System.arraycopy(other.positionZ, 0, positionZ, 0, positionZ.length);
+        System.arraycopy(other.velocityX, 0, velocityX, 0, velocityX.length);
+        System.arraycopy(other.velocityY, 0, velocityY, 0, velocityY.length);
+        System.arraycopy(other.velocityZ, 0, velocityZ, 0, velocityZ.length);
+    }
+}
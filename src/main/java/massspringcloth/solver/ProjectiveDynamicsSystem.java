@@ -0,0 +1,274 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.MassSpringModel;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * One step of Projective Dynamics (Bouaziz et al., "Projective Dynamics: Fusing Constraint Projections for Fast Simulation", 2014)
+ * for the springs of the cloth.
+ * <p>
+ * Every spring (i, j) is a constraint with the projection p = restingLength * (x_i - x_j) / |x_i - x_j|.
+ * The step alternates between the local step (projection of all springs with the current positions) and the global step,
+ * which solves (M / h^2 + k * L) * x = M / h^2 * y + k * sum_springs S^T * p for each component with the inertial positions
+ * y = x + h * v + h^2 * M^-1 * f_ext and the graph Laplacian L of the springs. The system matrix only depends on the grid, the stiffness,
+ * the mass, the locked points and the time step. It is factorized once ({@link BandCholesky}) and cached, thus every iteration
+ * only costs the projections and one forward and back substitution per component. Locked points keep their position
+ * (identity rows, their springs are moved to the right hand side).
+ *
+ * @author Mirco Werner
+ */
+class ProjectiveDynamicsSystem {
+    static final int LOCAL_GLOBAL_ITERATIONS = 10;
+    private static final int MAX_CACHED_FACTORIZATIONS = 8;
+
+    private static final Map<Key, BandCholesky> FACTORIZATIONS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, BandCholesky> eldest) {
+            return size() > MAX_CACHED_FACTORIZATIONS;
+        }
+    };
+
+    private final int width;
+    private final int height;
+    private final float springConstant;
+    private final float mass;
+    private final float[] locked;
+    private final float[] restLengths;
+
+    private final int[] springTarget; // see ImplicitSpringSystem#createSpringTargets
+    private final int[] row; // row of each point in the system, the points are ordered along the shorter side of the grid to keep the band narrow
+    private final int bandwidth;
+
+    private final float[] projection; // three floats per spring
+    private final double[] rhs; // three components per row
+    private final float[] inertialPosition; // three floats per point
+
+    /**
+     * Creates the spring topology of the cloth.
+     *
+     * @param width          amount of points in x direction
+     * @param height         amount of points in y direction
+     * @param springConstant spring constant > 0
+     * @param mass           mass of one point
+     * @param locked         locked flag of each point (locked if != 0), must not change afterwards
+     * @param restLengths    rest lengths of the springs (see {@link MassSpringModel#getRestLengths()})
+     */
+    ProjectiveDynamicsSystem(int width, int height, float springConstant, float mass, float[] locked, float[] restLengths) {
+        this.width = width;
+        this.height = height;
+        this.springConstant = springConstant;
+        this.mass = mass;
+        this.locked = locked;
+        this.restLengths = restLengths;
+
+        int count = width * height;
+        springTarget = ImplicitSpringSystem.createSpringTargets(width, height, restLengths);
+        row = new int[count];
+        boolean rowMajor = width <= height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[y * width + x] = rowMajor ? y * width + x : x * height + y;
+            }
+        }
+        bandwidth = Math.min(count - 1, 2 * Math.min(width, height));
+
+        projection = new float[count * ImplicitSpringSystem.SPRINGS * 3];
+        rhs = new double[count * 3];
+        inertialPosition = new float[count * 3];
+    }
+
+    /**
+     * Executes {@link #LOCAL_GLOBAL_ITERATIONS} local/global iterations. The positions of the output buffer are overwritten,
+     * the velocities are not changed.
+     *
+     * @param pointIn  positions and velocities at the beginning of the step
+     * @param force    external force acting on each point (three floats per point)
+     * @param time     time step
+     * @param pointOut buffer for the new positions
+     */
+    void step(PointBuffer pointIn, float[] force, float time, PointBuffer pointOut) {
+        BandCholesky factorization = getFactorization(time);
+        int count = width * height;
+        for (int i = 0; i < count; i++) {
+            if (locked[i] != 0) {
+                inertialPosition[i * 3] = pointIn.positionX[i];
+                inertialPosition[i * 3 + 1] = pointIn.positionY[i];
+                inertialPosition[i * 3 + 2] = pointIn.positionZ[i];
+            } else {
+                float scale = time * time / mass;
+                inertialPosition[i * 3] = pointIn.positionX[i] + time * pointIn.velocityX[i] + scale * force[i * 3];
+                inertialPosition[i * 3 + 1] = pointIn.positionY[i] + time * pointIn.velocityY[i] + scale * force[i * 3 + 1];
+                inertialPosition[i * 3 + 2] = pointIn.positionZ[i] + time * pointIn.velocityZ[i] + scale * force[i * 3 + 2];
+            }
+            pointOut.positionX[i] = inertialPosition[i * 3];
+            pointOut.positionY[i] = inertialPosition[i * 3 + 1];
+            pointOut.positionZ[i] = inertialPosition[i * 3 + 2];
+        }
+
+        double inertia = mass / (time * time);
+        for (int iteration = 0; iteration < LOCAL_GLOBAL_ITERATIONS; iteration++) {
+            project(pointOut);
+            solveGlobal(factorization, inertia, pointOut);
+        }
+    }
+
+    /**
+     * Local step: projects every spring onto its resting length. A spring between two points at the same position has no direction,
+     * it keeps its previous projection (initially zero, i.e. the spring only pulls the points together).
+     */
+    private void project(PointBuffer point) {
+        for (int i = 0; i < width * height; i++) {
+            for (int s = 0; s < ImplicitSpringSystem.SPRINGS; s++) {
+                int j = springTarget[i * ImplicitSpringSystem.SPRINGS + s];
+                if (j < 0) {
+                    continue;
+                }
+                float dirX = point.positionX[i] - point.positionX[j];
+                float dirY = point.positionY[i] - point.positionY[j];
+                float dirZ = point.positionZ[i] - point.positionZ[j];
+                float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+                if (length == 0) {
+                    continue; // no direction
+                }
+                float factor = restLengths[s * width * height + i] / length;
+                int p = (i * ImplicitSpringSystem.SPRINGS + s) * 3;
+                projection[p] = dirX * factor;
+                projection[p + 1] = dirY * factor;
+                projection[p + 2] = dirZ * factor;
+            }
+        }
+    }
+
+    /**
+     * Global step: assembles the right hand side from the inertial positions and the projections and solves the system for all components.
+     */
+    private void solveGlobal(BandCholesky factorization, double inertia, PointBuffer point) {
+        int count = width * height;
+        for (int i = 0; i < count; i++) {
+            double scale = locked[i] != 0 ? 1 : inertia;
+            for (int c = 0; c < 3; c++) {
+                rhs[row[i] * 3 + c] = scale * inertialPosition[i * 3 + c];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            for (int s = 0; s < ImplicitSpringSystem.SPRINGS; s++) {
+                int j = springTarget[i * ImplicitSpringSystem.SPRINGS + s];
+                if (j < 0) {
+                    continue;
+                }
+                int p = (i * ImplicitSpringSystem.SPRINGS + s) * 3;
+                if (locked[i] == 0) {
+                    addSpringTerm(row[i], springConstant, p, locked[j] != 0 ? j : -1, point);
+                }
+                if (locked[j] == 0) {
+                    addSpringTerm(row[j], -springConstant, p, locked[i] != 0 ? i : -1, point);
+                }
+            }
+        }
+        factorization.solve(rhs, 3);
+        for (int i = 0; i < count; i++) {
+            point.positionX[i] = (float) rhs[row[i] * 3];
+            point.positionY[i] = (float) rhs[row[i] * 3 + 1];
+            point.positionZ[i] = (float) rhs[row[i] * 3 + 2];
+        }
+    }
+
+    /**
+     * Adds the projection of a spring (times the signed spring constant) and, if the other point is locked, its position to the right hand side of the row.
+     */
+    private void addSpringTerm(int r, float signedSpringConstant, int p, int lockedPoint, PointBuffer point) {
+        rhs[r * 3] += signedSpringConstant * projection[p];
+        rhs[r * 3 + 1] += signedSpringConstant * projection[p + 1];
+        rhs[r * 3 + 2] += signedSpringConstant * projection[p + 2];
+        if (lockedPoint >= 0) {
+            rhs[r * 3] += springConstant * point.positionX[lockedPoint];
+            rhs[r * 3 + 1] += springConstant * point.positionY[lockedPoint];
+            rhs[r * 3 + 2] += springConstant * point.positionZ[lockedPoint];
+        }
+    }
+
+    /**
+     * Returns the cached factorization of the system matrix for the time step or factorizes it.
+     */
+    private BandCholesky getFactorization(float time) {
+        Key key = new Key(width, height, springConstant, mass, time, locked, springTarget);
+        synchronized (FACTORIZATIONS) {
+            BandCholesky factorization = FACTORIZATIONS.get(key);
+            if (factorization == null) {
+                factorization = factorize(time);
+                FACTORIZATIONS.put(key, factorization);
+            }
+            return factorization;
+        }
+    }
+
+    private BandCholesky factorize(float time) {
+        BandCholesky matrix = new BandCholesky(width * height, bandwidth);
+        double inertia = mass / (time * time);
+        for (int i = 0; i < width * height; i++) {
+            matrix.add(row[i], row[i], locked[i] != 0 ? 1 : inertia);
+            for (int s = 0; s < ImplicitSpringSystem.SPRINGS; s++) {
+                int j = springTarget[i * ImplicitSpringSystem.SPRINGS + s];
+                if (j < 0) {
+                    continue;
+                }
+                if (locked[i] == 0) {
+                    matrix.add(row[i], row[i], springConstant);
+                }
+                if (locked[j] == 0) {
+                    matrix.add(row[j], row[j], springConstant);
+                }
+                if (locked[i] == 0 && locked[j] == 0) {
+                    matrix.add(Math.max(row[i], row[j]), Math.min(row[i], row[j]), -springConstant);
+                }
+            }
+        }
+        matrix.factorize();
+        return matrix;
+    }
+
+    /**
+     * Everything the system matrix depends on.
+     */
+    private static final class Key {
+        private final int width;
+        private final int height;
+        private final float springConstant;
+        private final float mass;
+        private final float time;
+        private final float[] locked;
+        private final int[] springTarget; // springs of a masked cloth
+
+        private Key(int width, int height, float springConstant, float mass, float time, float[] locked, int[] springTarget) {
+            this.width = width;
+            this.height = height;
+            this.springConstant = springConstant;
+            this.mass = mass;
+            this.time = time;
+            this.locked = locked;
+            this.springTarget = springTarget;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width == key.width && height == key.height && springConstant == key.springConstant && mass == key.mass
+                    && time == key.time && Arrays.equals(locked, key.locked) && Arrays.equals(springTarget, key.springTarget);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, springConstant, mass, time, Arrays.hashCode(locked), Arrays.hashCode(springTarget));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package massspringcloth.solver;
+
+/**
+ * Scalar implementation of the spring force kernel. Used if the Vector API is not available and for the remaining points of a row
+ * that do not fill a whole vector.
+ *
+ * @author Mirco Werner
+ */
+public class ScalarSpringForceKernel implements ISpringForceKernel {
+    // neighbor offsets (x, y) of the 12 springs in the order of the compute shader:
+    // left, right, top, bottom, two left, two right, two top, two bottom, top left, bottom left, top right, bottom right
+    static final int[] OFFSET_X = {-1, 1, 0, 0, -2, 2, 0, 0, -1, -1, 1, 1};
+    static final int[] OFFSET_Y = {0, 0, 1, -1, 0, 0, 2, -2, 1, -1, 1, -1};
+    // index of the spring in MassSpringModel.SPRING_X/Y and if it belongs to the neighbor (opposite direction) instead of the point itself
+    static final int[] SPRING = {0, 0, 1, 1, 2, 2, 3, 3, 5, 4, 4, 5};
+    static final boolean[] OF_NEIGHBOR = {true, false, false, true, true, false, false, true, false, true, false, true};
+
+    @Override
+    public void addSpringForces(PointBuffer pointIn, float[] restLengths, int width, int y, int xStart, int xEnd, float springConstant, float[] forceX, float[] forceY, float[] forceZ) {
+        int count = pointIn.positionX.length;
+        for (int x = xStart; x < xEnd; x++) {
+            int i = y * width + x;
+            float positionX = pointIn.positionX[i];
+            float positionY = pointIn.positionY[i];
+            float positionZ = pointIn.positionZ[i];
+            float fx = forceX[x];
+            float fy = forceY[x];
+            float fz = forceZ[x];
+            for (int s = 0; s < OFFSET_X.length; s++) {
+                int j = i + OFFSET_Y[s] * width + OFFSET_X[s];
+                float restLength = restLengths[SPRING[s] * count + (OF_NEIGHBOR[s] ? j : i)];
+                float dirX = pointIn.positionX[j] - positionX;
+                float dirY = pointIn.positionY[j] - positionY;
+                float dirZ = pointIn.positionZ[j] - positionZ;
+                float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+                if (length == 0) {
+                    continue; // the points are at the same position, the spring has no direction and pulls in none
+                }
+                fx += springConstant * (dirX - dirX / length * restLength);
+                fy += springConstant * (dirY - dirY / length * restLength);
+                fz += springConstant * (dirZ - dirZ / length * restLength);
+            }
+            forceX[x] = fx;
+            forceY[x] = fy;
+            forceZ[x] = fz;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package massspringcloth.solver;
+
+import java.util.Arrays;
+
+/**
+ * Sleeping tiles of the cloth, the CPU equivalent of resources/shaders/sleep_control.glsl.
+ * <p>
+ * The cloth is divided into tiles of {@link #TILE_SIZE} x {@link #TILE_SIZE} points. A tile has moved in a step if one of its points
+ * is further away than the sleep distance from its rest position, then the rest positions of all points of the tile are set to the current
+ * positions. A tile that has not moved for the given amount of steps, i.e. that moves slower than the sleep distance per sleep steps,
+ * falls asleep. The velocities are not suitable for this test, because the relaxation clears them for over-extended springs while gravity
+ * accelerates the points again in every step.
+ * <p>
+ * A tile that falls asleep is executed one more step that only copies the points and clears their velocities (freezing, afterwards
+ * the input and output buffers contain the same data) and is skipped from then on. Its points act like locked points for the neighbors
+ * until a neighbor tile moves and wakes it up again.
+ * <p>
+ * The tiles that are executed are stored as runs of adjacent tiles per tile row, so that the rows of the cloth can still be executed
+ * in long segments (see {@link ISpringForceKernel}). The render data is only written for the tiles that were executed since the last
+ * render pass (see {@link #selectRenderedTiles()}), a tile that freezes during the steps of a frame still gets its final render data.
+ *
+ * @author Mirco Werner
+ */
+class TileActivity {
+    static final int TILE_SIZE = 10; // see the workgroup size of cloth_compute.glsl
+
+    private static final byte AWAKE = 0;
+    private static final byte FREEZING = 1;
+    private static final byte ASLEEP = 2;
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+
+    private final float[] restX;
+    private final float[] restY;
+    private final float[] restZ;
+    private final boolean[] moved;
+    private final int[] quietSteps;
+    private final byte[] state;
+    private final boolean[] executed; // executed since the last render pass
+    private boolean wakeRequested = true; // the rest positions are not set yet
+
+    // runs of executed tiles per tile row, run k of tile row r at index r * tilesX + k
+    private final int[] runStart;
+    private final int[] runEnd;
+    private final boolean[] runFrozen;
+    private final int[] runCount;
+    private int activeTiles;
+
+    /**
+     * Creates the tiles, all of them are awake.
+     *
+     * @param width  amount of points in x direction
+     * @param height amount of points in y direction
+     */
+    TileActivity(int width, int height) {
+        this.width = width;
+        this.height = height;
+        tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        int count = width * height;
+        restX = new float[count];
+        restY = new float[count];
+        restZ = new float[count];
+        moved = new boolean[tilesX * tilesY];
+        quietSteps = new int[tilesX * tilesY];
+        state = new byte[tilesX * tilesY];
+        executed = new boolean[tilesX * tilesY];
+        Arrays.fill(executed, true);
+        runStart = new int[tilesX * tilesY];
+        runEnd = new int[tilesX * tilesY];
+        runFrozen = new boolean[tilesX * tilesY];
+        runCount = new int[tilesY];
+    }
+
+    /**
+     * Wakes up all tiles in the next {@link #update(PointBuffer, float, int)}, e.g. if the wind has changed.
+     */
+    void wakeAll() {
+        wakeRequested = true;
+    }
+
+    /**
+     * Determines which tiles have moved since the last step, updates their states and the runs of the tiles that are executed in the next step.
+     *
+     * @param point         positions at the beginning of the step
+     * @param sleepDistance distance a point may move away from its rest position without waking its tile
+     * @param sleepSteps    amount of steps a tile must not move until it falls asleep
+     */
+    void update(PointBuffer point, float sleepDistance, int sleepSteps) {
+        float sleepDistanceSquared = sleepDistance * sleepDistance;
+        for (int t = 0; t < state.length; t++) {
+            moved[t] = wakeRequested || (state[t] == AWAKE && hasMoved(t, point, sleepDistanceSquared));
+            if (moved[t] && state[t] == AWAKE) {
+                setRestPositions(t, point); // the distances of all points of the tile are measured from here on
+            }
+        }
+        wakeRequested = false;
+
+        activeTiles = 0;
+        for (int tileY = 0; tileY < tilesY; tileY++) {
+            runCount[tileY] = 0;
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+                int t = tileY * tilesX + tileX;
+                if (state[t] == AWAKE ? moved[t] : isDisturbed(tileX, tileY)) {
+                    quietSteps[t] = 0;
+                    state[t] = AWAKE;
+                } else if (state[t] == AWAKE) {
+                    quietSteps[t]++;
+                    if (quietSteps[t] >= sleepSteps) {
+                        state[t] = FREEZING;
+                    }
+                } else {
+                    state[t] = ASLEEP;
+                }
+                if (state[t] != ASLEEP) {
+                    activeTiles++;
+                    executed[t] = true;
+                    addToRun(tileY, tileX, state[t] == FREEZING);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the runs by the runs of the tiles that were executed since the last call, i.e. the tiles whose render data has to be written.
+     * The runs are determined again by the next {@link #update(PointBuffer, float, int)}.
+     */
+    void selectRenderedTiles() {
+        for (int tileY = 0; tileY < tilesY; tileY++) {
+            runCount[tileY] = 0;
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+                int t = tileY * tilesX + tileX;
+                if (executed[t]) {
+                    addToRun(tileY, tileX, false);
+                    executed[t] = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if a point of the tile is further away than the sleep distance from its rest position
+     */
+    private boolean hasMoved(int t, PointBuffer point, float sleepDistanceSquared) {
+        int xEnd = Math.min(width, (t % tilesX + 1) * TILE_SIZE);
+        int yEnd = Math.min(height, (t / tilesX + 1) * TILE_SIZE);
+        for (int y = t / tilesX * TILE_SIZE; y < yEnd; y++) {
+            for (int i = y * width + t % tilesX * TILE_SIZE; i < y * width + xEnd; i++) {
+                float dx = point.positionX[i] - restX[i];
+                float dy = point.positionY[i] - restY[i];
+                float dz = point.positionZ[i] - restZ[i];
+                if (dx * dx + dy * dy + dz * dz > sleepDistanceSquared) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void setRestPositions(int t, PointBuffer point) {
+        int xEnd = Math.min(width, (t % tilesX + 1) * TILE_SIZE);
+        int yEnd = Math.min(height, (t / tilesX + 1) * TILE_SIZE);
+        for (int y = t / tilesX * TILE_SIZE; y < yEnd; y++) {
+            int start = y * width + t % tilesX * TILE_SIZE;
+            int length = y * width + xEnd - start;
+            System.arraycopy(point.positionX, start, restX, start, length);
+            System.arraycopy(point.positionY, start, restY, start, length);
+            System.arraycopy(point.positionZ, start, restZ, start, length);
+        }
+    }
+
+    /**
+     * @return true if one of the 8 neighbor tiles of a sleeping tile has moved (or all tiles are woken up)
+     */
+    private boolean isDisturbed(int tileX, int tileY) {
+        for (int y = Math.max(0, tileY - 1); y <= Math.min(tilesY - 1, tileY + 1); y++) {
+            for (int x = Math.max(0, tileX - 1); x <= Math.min(tilesX - 1, tileX + 1); x++) {
+                if (moved[y * tilesX + x]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the tile to the last run of the tile row if it is adjacent and has the same state, otherwise starts a new run.
+     */
+    private void addToRun(int tileY, int tileX, boolean frozen) {
+        int last = tileY * tilesX + runCount[tileY] - 1;
+        if (runCount[tileY] > 0 && runEnd[last] == tileX * TILE_SIZE && runFrozen[last] == frozen) {
+            runEnd[last] = Math.min(width, (tileX + 1) * TILE_SIZE);
+            return;
+        }
+        runStart[last + 1] = tileX * TILE_SIZE;
+        runEnd[last + 1] = Math.min(width, (tileX + 1) * TILE_SIZE);
+        runFrozen[last + 1] = frozen;
+        runCount[tileY]++;
+    }
+
+    /**
+     * @param y row of the cloth
+     * @return amount of runs of tiles that are executed in the row
+     */
+    int getRunCount(int y) {
+        return runCount[y / TILE_SIZE];
+    }
+
+    /**
+     * @param y   row of the cloth
+     * @param run run of the row
+     * @return first point (x) of the run
+     */
+    int getRunStart(int y, int run) {
+        return runStart[y / TILE_SIZE * tilesX + run];
+    }
+
+    /**
+     * @param y   row of the cloth
+     * @param run run of the row
+     * @return point (x) after the last point of the run
+     */
+    int getRunEnd(int y, int run) {
+        return runEnd[y / TILE_SIZE * tilesX + run];
+    }
+
+    /**
+     * @param y   row of the cloth
+     * @param run run of the row
+     * @return true if the tiles of the run are freezing, i.e. the points are only copied and their velocities are cleared
+     */
+    boolean isRunFrozen(int y, int run) {
+        return runFrozen[y / TILE_SIZE * tilesX + run];
+    }
+
+    /**
+     * @return amount of tiles that are executed in the next step
+     */
+    int getActiveTiles() {
+        return activeTiles;
+    }
+
+    /**
+     * @return amount of tiles of the cloth
+     */
+    int getTileCount() {
+        return state.length;
+    }
+}
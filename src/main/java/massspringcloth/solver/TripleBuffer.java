@@ -0,0 +1,60 @@
+package massspringcloth.solver;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer to pass states from one producer thread to one consumer thread.
+ * The producer writes into the back slot and publishes it, the consumer acquires the latest published slot.
+ * Neither of them ever waits for the other one, states that are published faster than they are consumed are skipped.
+ *
+ * @param <T> type of the states
+ * @author Mirco Werner
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; // set if the middle slot contains a state the consumer has not acquired yet
+
+    private final T[] slots;
+    private final AtomicInteger middle = new AtomicInteger(1); // index of the slot that is exchanged between producer and consumer, plus FRESH flag
+    private int back = 2; // only accessed by the producer
+    private int front = 0; // only accessed by the consumer
+
+    /**
+     * Creates the triple buffer.
+     *
+     * @param first  first slot, initially the front slot
+     * @param second second slot
+     * @param third  third slot
+     */
+    @SuppressWarnings("unchecked")
+    public TripleBuffer(T first, T second, T third) {
+        slots = (T[]) new Object[]{first, second, third};
+    }
+
+    /**
+     * @return slot the producer writes into, only call from the producer thread
+     */
+    public T getBack() {
+        return slots[back];
+    }
+
+    /**
+     * Publishes the back slot and takes over the middle slot as new back slot. Only call from the producer thread.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Takes the latest published state if there is one. Only call from the consumer thread.
+     *
+     * @return latest published state or null if no state has been published since the last call
+     */
+    public T acquire() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return slots[front];
+    }
+}
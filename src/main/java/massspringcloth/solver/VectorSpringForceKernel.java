@@ -0,0 +1,57 @@
+package massspringcloth.solver;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static massspringcloth.solver.ScalarSpringForceKernel.*;
+
+/**
+ * Vectorized implementation of the spring force kernel using the Vector API (module jdk.incubator.vector).
+ * Each lane processes one point of the row. The lanes perform the same operations in the same order as the scalar kernel,
+ * therefore the results are identical.
+ * <p>
+ * Only compiled with JDK 17 or higher (maven profile vector-api) and only used if the JVM is started with
+ * --add-modules jdk.incubator.vector, see {@link ISpringForceKernel#create()}.
+ *
+ * @author Mirco Werner
+ */
+public class VectorSpringForceKernel implements ISpringForceKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private final ScalarSpringForceKernel scalarKernel = new ScalarSpringForceKernel();
+
+    @Override
+    public void addSpringForces(PointBuffer pointIn, float[] restLengths, int width, int y, int xStart, int xEnd, float springConstant, float[] forceX, float[] forceY, float[] forceZ) {
+        int count = pointIn.positionX.length;
+        int x = xStart;
+        for (; x + SPECIES.length() <= xEnd; x += SPECIES.length()) {
+            int i = y * width + x;
+            FloatVector positionX = FloatVector.fromArray(SPECIES, pointIn.positionX, i);
+            FloatVector positionY = FloatVector.fromArray(SPECIES, pointIn.positionY, i);
+            FloatVector positionZ = FloatVector.fromArray(SPECIES, pointIn.positionZ, i);
+            FloatVector fx = FloatVector.fromArray(SPECIES, forceX, x);
+            FloatVector fy = FloatVector.fromArray(SPECIES, forceY, x);
+            FloatVector fz = FloatVector.fromArray(SPECIES, forceZ, x);
+            for (int s = 0; s < OFFSET_X.length; s++) {
+                int j = i + OFFSET_Y[s] * width + OFFSET_X[s];
+                FloatVector restLength = FloatVector.fromArray(SPECIES, restLengths, SPRING[s] * count + (OF_NEIGHBOR[s] ? j : i));
+                FloatVector dirX = FloatVector.fromArray(SPECIES, pointIn.positionX, j).sub(positionX);
+                FloatVector dirY = FloatVector.fromArray(SPECIES, pointIn.positionY, j).sub(positionY);
+                FloatVector dirZ = FloatVector.fromArray(SPECIES, pointIn.positionZ, j).sub(positionZ);
+                FloatVector length = dirX.mul(dirX).add(dirY.mul(dirY)).add(dirZ.mul(dirZ)).sqrt();
+                VectorMask<Float> apart = length.compare(VectorOperators.NE, 0); // points at the same position have no spring direction
+                fx = fx.add(dirX.sub(dirX.div(length).mul(restLength)).mul(springConstant), apart);
+                fy = fy.add(dirY.sub(dirY.div(length).mul(restLength)).mul(springConstant), apart);
+                fz = fz.add(dirZ.sub(dirZ.div(length).mul(restLength)).mul(springConstant), apart);
+            }
+            fx.intoArray(forceX, x);
+            fy.intoArray(forceY, x);
+            fz.intoArray(forceZ, x);
+        }
+        if (x < xEnd) {
+            scalarKernel.addSpringForces(pointIn, restLengths, width, y, x, xEnd, springConstant, forceX, forceY, forceZ);
+        }
+    }
+}
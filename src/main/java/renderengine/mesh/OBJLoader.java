@@ -11,7 +11,38 @@ import java.util.List;
  * @author https://www.youtube.com/user/ThinMatrix (Tutorial series "OpenGL 3D Game Tutorial")
  */
 public class OBJLoader {
+    /**
+     * Vertex data of an OBJ file without OpenGL objects, e.g. for the topology of a cloth (see massspringcloth.cloth.MeshClothModel).
+     * Three floats per position and normal, two per texture coordinate (v flipped), three indices per triangle.
+     */
+    public static class MeshData {
+        public final float[] positions;
+        public final float[] textureCoordinates;
+        public final float[] normals;
+        public final int[] indices;
+
+        public MeshData(float[] positions, float[] textureCoordinates, float[] normals, int[] indices) {
+            this.positions = positions;
+            this.textureCoordinates = textureCoordinates;
+            this.normals = normals;
+            this.indices = indices;
+        }
+    }
+
     public static Model loadMesh(List<String> lines) {
+        MeshData meshData = loadMeshData(lines);
+        return new Model(meshData.positions, meshData.textureCoordinates, meshData.normals, meshData.indices);
+    }
+
+    public static Model loadMesh(String resourceName) throws Exception {
+        return loadMesh(IOUtils.readAllLinesAsList(resourceName));
+    }
+
+    public static MeshData loadMeshData(String resourceName) throws Exception {
+        return loadMeshData(IOUtils.readAllLinesAsList(resourceName));
+    }
+
+    public static MeshData loadMeshData(List<String> lines) {
         List<Vector3f> vertices = new ArrayList<>();
         List<Vector2f> textures = new ArrayList<>();
         List<Vector3f> normals = new ArrayList<>();
@@ -55,11 +86,7 @@ public class OBJLoader {
         return reorderLists(vertices, textures, normals, faces);
     }
 
-    public static Model loadMesh(String resourceName) throws Exception {
-        return loadMesh(IOUtils.readAllLinesAsList(resourceName));
-    }
-
-    private static Model reorderLists(List<Vector3f> posList, List<Vector2f> textCoordList, List<Vector3f> normList, List<Face> facesList) {
+    private static MeshData reorderLists(List<Vector3f> posList, List<Vector2f> textCoordList, List<Vector3f> normList, List<Face> facesList) {
         List<Integer> indices = new ArrayList<>();
         // Create position array in the order it has been declared
         float[] posArr = new float[posList.size() * 3];
@@ -82,7 +109,7 @@ public class OBJLoader {
         }
         int[] indicesArr;
         indicesArr = indices.stream().mapToInt((Integer v) -> v).toArray();
-        return new Model(posArr, textCoordArr, normArr, indicesArr);
+        return new MeshData(posArr, textCoordArr, normArr, indicesArr);
     }
 
     private static void processFaceVertex(IdxGroup indices, List<Vector2f> textCoordList,
@@ -26,6 +26,23 @@ public abstract class AShaderProgram {
         uniforms = new HashMap<>();
     }
 
+    /**
+     * Defines the given macros (#define) after the #version directive, which allows to compile variants of one shader source.
+     *
+     * @param shaderCode source code of the shader, the first line is the #version directive
+     * @param defines    names of the macros
+     * @return source code with the macros
+     */
+    protected static String insertDefines(String shaderCode, String... defines) {
+        int versionEnd = shaderCode.indexOf('\n') + 1;
+        StringBuilder builder = new StringBuilder(shaderCode.substring(0, versionEnd));
+        for (String define : defines) {
+            builder.append("#define ").append(define).append('\n');
+        }
+        builder.append(shaderCode.substring(versionEnd));
+        return builder.toString();
+    }
+
     protected int createShader(String shaderCode, int shaderType) throws Exception {
         int shaderId = glCreateShader(shaderType);
         if (shaderId == 0) {
@@ -6,6 +6,8 @@ import renderengine.utils.IOUtils;
 import java.nio.IntBuffer;
 
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.glGetIntegeri;
+import static org.lwjgl.opengl.GL30.glUniform2ui;
 import static org.lwjgl.opengl.GL43.*;
 
 /**
@@ -16,13 +18,24 @@ public class ComputeShaderProgram extends AShaderProgram {
 
     private int workGroupSizeX;
     private int workGroupSizeY;
+    private int maxWorkGroupCountX;
+    private int maxWorkGroupCountY;
+    private int workGroupOffsetLocation;
 
     public ComputeShaderProgram() throws Exception {
         super();
     }
 
-    public void createComputeShader(String fileName) throws Exception {
-        computeShaderId = createShader(IOUtils.readAllLines(fileName), GL_COMPUTE_SHADER);
+    /**
+     * Creates the compute shader. The given macros are defined (#define) after the #version directive,
+     * which allows to compile variants of one shader source.
+     *
+     * @param fileName resource name of the shader
+     * @param defines  names of the macros
+     * @throws Exception if the shader creation fails
+     */
+    public void createComputeShader(String fileName, String... defines) throws Exception {
+        computeShaderId = createShader(insertDefines(IOUtils.readAllLines(fileName), defines), GL_COMPUTE_SHADER);
     }
 
     public void link() throws Exception {
@@ -48,11 +61,108 @@ public class ComputeShaderProgram extends AShaderProgram {
         glGetProgramiv(programId, GL_COMPUTE_WORK_GROUP_SIZE, workGroupSize);
         workGroupSizeX = workGroupSize.get(0);
         workGroupSizeY = workGroupSize.get(1);
+        maxWorkGroupCountX = glGetIntegeri(GL_MAX_COMPUTE_WORK_GROUP_COUNT, 0);
+        maxWorkGroupCountY = glGetIntegeri(GL_MAX_COMPUTE_WORK_GROUP_COUNT, 1);
+        workGroupOffsetLocation = glGetUniformLocation(programId, "workGroupOffset"); // -1 if the shader does not support split dispatches
 
         unbind();
     }
 
+    /**
+     * Dispatches enough workgroups to cover workSizeX * workSizeY invocations. The last workgroups in each dimension may be
+     * only partially filled, the shader has to check the bounds.
+     * If more workgroups are needed than allowed per dispatch (GL_MAX_COMPUTE_WORK_GROUP_COUNT), the dispatch is split into multiple calls.
+     * The id of the first workgroup of each call is passed to the uniform "uvec2 workGroupOffset" which must be added to gl_WorkGroupID by the shader.
+     *
+     * @param workSizeX amount of invocations in x direction
+     * @param workSizeY amount of invocations in y direction
+     */
     public void dispatch(int workSizeX, int workSizeY) {
-        glDispatchCompute(workSizeX / workGroupSizeX, workSizeY / workGroupSizeY, 1);
+        dispatchSplit(getNumGroupsX(workSizeX), getNumGroupsY(workSizeY));
+    }
+
+    /**
+     * Dispatches enough workgroups to cover the given amount of invocations in one dimension. Each workgroup covers
+     * workGroupSizeX * workGroupSizeY consecutive invocations, the shader determines invocation
+     * (gl_WorkGroupID.x + workGroupOffset.x) * workGroupSizeX * workGroupSizeY + gl_LocalInvocationIndex and has to check the bounds.
+     * The dispatch is split like {@link #dispatch(int, int)}.
+     *
+     * @param invocations amount of invocations
+     */
+    public void dispatchLinear(int invocations) {
+        dispatchSplit(getNumGroupsLinear(invocations), 1);
+    }
+
+    private void dispatchSplit(int numGroupsX, int numGroupsY) {
+        if (workGroupOffsetLocation < 0 && (numGroupsX > maxWorkGroupCountX || numGroupsY > maxWorkGroupCountY)) {
+            throw new IllegalStateException("Dispatch of " + numGroupsX + "x" + numGroupsY + " workgroups exceeds the limit and the shader has no workGroupOffset uniform");
+        }
+        for (int offsetY = 0; offsetY < numGroupsY; offsetY += maxWorkGroupCountY) {
+            for (int offsetX = 0; offsetX < numGroupsX; offsetX += maxWorkGroupCountX) {
+                if (workGroupOffsetLocation >= 0) {
+                    glUniform2ui(workGroupOffsetLocation, offsetX, offsetY);
+                }
+                glDispatchCompute(Math.min(maxWorkGroupCountX, numGroupsX - offsetX), Math.min(maxWorkGroupCountY, numGroupsY - offsetY), 1);
+            }
+        }
+    }
+
+    /**
+     * Dispatches the workgroup counts stored in the buffer bound to GL_DISPATCH_INDIRECT_BUFFER (three uints at the given offset).
+     * The counts are not known on the CPU, thus the dispatch cannot be split (workGroupOffset is set to zero).
+     *
+     * @param offset offset of the counts in the buffer in bytes
+     */
+    public void dispatchIndirect(long offset) {
+        if (workGroupOffsetLocation >= 0) {
+            glUniform2ui(workGroupOffsetLocation, 0, 0);
+        }
+        glDispatchComputeIndirect(offset);
+    }
+
+    /**
+     * @param workSizeX amount of invocations in x direction
+     * @return amount of workgroups needed in x direction
+     */
+    public int getNumGroupsX(int workSizeX) {
+        return (workSizeX + workGroupSizeX - 1) / workGroupSizeX;
+    }
+
+    /**
+     * @param workSizeY amount of invocations in y direction
+     * @return amount of workgroups needed in y direction
+     */
+    public int getNumGroupsY(int workSizeY) {
+        return (workSizeY + workGroupSizeY - 1) / workGroupSizeY;
+    }
+
+    /**
+     * @param invocations amount of invocations of a one-dimensional dispatch (see {@link #dispatchLinear(int)})
+     * @return amount of workgroups needed
+     */
+    public int getNumGroupsLinear(int invocations) {
+        int groupSize = workGroupSizeX * workGroupSizeY;
+        return (invocations + groupSize - 1) / groupSize;
+    }
+
+    /**
+     * @param workSizeX amount of invocations in x direction
+     * @param workSizeY amount of invocations in y direction
+     * @return true if the invocations can be dispatched in one call, i.e. without splitting (see {@link #dispatch(int, int)})
+     */
+    public boolean isSingleDispatch(int workSizeX, int workSizeY) {
+        return getNumGroupsX(workSizeX) <= maxWorkGroupCountX && getNumGroupsY(workSizeY) <= maxWorkGroupCountY;
+    }
+
+    public void dispatchWorkGroups(int numGroupsX, int numGroupsY) {
+        glDispatchCompute(numGroupsX, numGroupsY, 1);
+    }
+
+    public int getWorkGroupSizeX() {
+        return workGroupSizeX;
+    }
+
+    public int getWorkGroupSizeY() {
+        return workGroupSizeY;
     }
 }
@@ -15,8 +15,16 @@ public class ShaderProgram extends AShaderProgram {
         super();
     }
 
-    public void createVertexShader(String fileName) throws Exception {
-        vertexShaderId = createShader(IOUtils.readAllLines(fileName), GL_VERTEX_SHADER);
+    /**
+     * Creates the vertex shader. The given macros are defined (#define) after the #version directive,
+     * which allows to compile variants of one shader source.
+     *
+     * @param fileName resource name of the shader
+     * @param defines  names of the macros
+     * @throws Exception if the shader creation fails
+     */
+    public void createVertexShader(String fileName, String... defines) throws Exception {
+        vertexShaderId = createShader(insertDefines(IOUtils.readAllLines(fileName), defines), GL_VERTEX_SHADER);
     }
 
     public void createFragmentShader(String fileName) throws Exception {
@@ -1,37 +1,59 @@
 #version 430 core
 
-struct Point {
-    vec4 position;
-    vec4 velocity;
-    vec4 data;// x = locked, yz = uv tex coord, w = padding
-};
-
 struct RenderDataPosition {
     vec4 position;
 };
 
+#ifdef COMPACT
+// normals and tangents are stored as 10 bit snorm per component (vertex attribute type GL_INT_2_10_10_10_REV)
+#define RENDER_DIRECTION uint
+#else
+#define RENDER_DIRECTION vec4
+#endif
+
 struct RenderDataNormal {
-    vec4 normal;
+    RENDER_DIRECTION normal;
 };
 
 struct RenderDataTangent {
-    vec4 tangent;
+    RENDER_DIRECTION tangent;
 };
 
-// point data from the last iteration, do not write to this buffer
-layout(binding = 0, std430) buffer pointInBuffer {
-    Point pointIn[];
+#ifdef FUSED
+// the fused shader reads in the next stage what other invocations have written
+#define POINT_BUFFER coherent buffer
+#else
+#define POINT_BUFFER buffer
+#endif
+
+// The points are stored as separate streams: positions and velocities change every iteration and are ping-ponged,
+// the static data is uploaded once. Neighbor accesses only read the positions.
+// COMPACT: positions are stored as 21 bit fixed point numbers per component relative to positionOrigin (see encodePosition),
+// the locked flag is stored in the highest bit. Velocities are stored as half floats and updated in place (every invocation
+// only accesses the velocity of its own point). The static data only contains the uv tex coord.
+#ifdef COMPACT
+#define POSITION uvec2
+#else
+#define POSITION vec4
+#endif
+
+// positions from the last iteration, do not write to this buffer
+layout(binding = 0, std430) POINT_BUFFER positionInBuffer {
+    POSITION positionIn[];
 };
 
-// updated points that will become the input (pointIn) in the next iteration
-layout(binding = 1, std430) buffer pointOutBuffer {
-    Point pointOut[];
+// updated positions that will become the input (positionIn) in the next iteration
+layout(binding = 1, std430) POINT_BUFFER positionOutBuffer {
+    POSITION positionOut[];
 };
 
+#ifndef COMPACT
 // buffer where the calculated information will be stored that is used for rendering in the vertex shader
+// (COMPACT: the vertex shader decodes the positions of the input buffer)
 layout(binding = 2, std430) buffer renderDataPositionBuffer {
     RenderDataPosition renderDataPosition[];
 };
+#endif
 // buffer where the calculated information will be stored that is used for rendering in the vertex/fragment shader
 layout(binding = 3, std430) buffer renderDataNormalBuffer {
     RenderDataNormal renderDataNormal[];
@@ -41,33 +63,338 @@ layout(binding = 4, std430) buffer renderDataTangentBuffer {
     RenderDataTangent renderDataTangent[];
 };
 
+#ifdef COMPACT
+// velocities as half floats, x = packed xy, y = packed z
+layout(binding = 5, std430) POINT_BUFFER velocityBuffer {
+    uvec2 velocity[];
+};
+
+// static point data that never changes, uv tex coord
+layout(binding = 7, std430) readonly buffer pointDataBuffer {
+    vec2 pointData[];
+};
+#else
+// velocities from the last iteration, do not write to this buffer
+layout(binding = 5, std430) POINT_BUFFER velocityInBuffer {
+    vec4 velocityIn[];
+};
+
+// updated velocities that will become the input (velocityIn) in the next iteration
+layout(binding = 6, std430) POINT_BUFFER velocityOutBuffer {
+    vec4 velocityOut[];
+};
+
+// static point data that never changes, x = locked, yz = uv tex coord, w = padding
+layout(binding = 7, std430) readonly buffer pointDataBuffer {
+    vec4 pointData[];
+};
+#endif
+
+// largest relative over-extension of the springs corrected by the in-place relaxation (see relaxation_control.glsl), as float bits (positive floats keep their order)
+layout(binding = 8, std430) buffer relaxationControlBuffer {
+    uint maxExcessBits;
+};
+
+// long-range attachment of each point (see LongRangeAttachments), only bound if attachmentsEnabled != 0
+struct Attachment {
+    int anchor;// nearest locked point, -1 => none
+    float distance;// largest distance to the anchor the springs allow
+};
+
+layout(binding = 10, std430) readonly buffer attachmentBuffer {
+    Attachment attachments[];
+};
+
+// rest length of the 6 springs starting at each point (see MassSpringModel.getRestLengths), spring s of point i at s * width * height + i,
+// -1 => no spring (the spring leaves the cloth or ends at a point that has been removed by a mask, see MassSpringModel.NO_SPRING)
+layout(binding = 11, std430) readonly buffer restLengthBuffer {
+    float restLengths[];
+};
+
+#ifdef XPBD
+// amount of springs of each point (see MassSpringModel.getSpringCounts), the constraint iterations average the corrections by it (mass splitting)
+layout(binding = 16, std430) readonly buffer springCountBuffer {
+    uint springCounts[];
+};
+
+// Lagrange multiplier of each spring in the current sub-step, two halves with the layout of the rest lengths: constraint iteration k reads
+// half k % 2 and writes the other half. Both points of a spring calculate the same multiplier.
+layout(binding = 17, std430) POINT_BUFFER lambdaBuffer {
+    float lambdas[];
+};
+#endif
+
+#ifndef TILED
+// points of a masked cloth that are not removed in ascending order (see MassSpringModel.getActivePoints), only bound if activePointCount > 0
+layout(binding = 15, std430) readonly buffer activePointBuffer {
+    uint activePoints[];
+};
+#endif
+
+#ifndef FUSED
+// sleeping tiles (see sleep_control.glsl), a tile is the block of points of one workgroup, only bound if sleepingEnabled != 0
+const uint TILE_FREEZING = 1u;
+
+struct Tile {
+    uint moved;// bit p: a point of the tile has moved in the force stage of an iteration with parity p (see stepParity)
+    uint quietSteps;
+    uint state;// 0 => awake, 1 => freezing (the points are only copied), 2 => asleep (not dispatched)
+    uint executed;
+};
+
+layout(binding = 12, std430) buffer tileBuffer {
+    Tile tiles[];
+};
+
+// tiles of the workgroups of the indirect dispatch
+layout(binding = 13, std430) readonly buffer activeTileBuffer {
+    uint numGroupsX;
+    uint numGroupsY;
+    uint numGroupsZ;
+    uint activeTiles[];
+};
+
+// positions from which the movement of the points is measured, w = 0 => not set yet
+layout(binding = 14, std430) buffer restPositionBuffer {
+    vec4 restPositions[];
+};
+#endif
+
 uniform float time;// time step for integration
 uniform int normalSign;// normal orientation \in {-1,1}
 uniform int sphereEnabled;// 1 if sphere collisions are enabled, 0 otherwise
 uniform int width;// amount of points
 uniform int height;// amount of points
+uniform uvec2 workGroupOffset;// id of the first workgroup if the dispatch is split into multiple calls (see ComputeShaderProgram.dispatch)
 uniform float mass;// mass of one point
 uniform float viscousDamping;// damping constant >= 0, higher damping constant causes more friction
 uniform vec3 velocityFluid; // velocity of a viscous fluid like wind or water (used for viscous interaction force)
 uniform float springConstant;// spring constant >= 0, higher spring constant makes cloth more stiff
-uniform int state;// 0 => apply forces, 1 => relaxation of the joints, any other number => only write output buffers (and calculate normals, tangents etc.)
-
-const float restingLengthHorizontal = 1;
-const float maxRestingLengthHorizontal = 1.1 * restingLengthHorizontal;
-const float restingLengthVertical = 1;
-const float maxRestingLengthVertical = 1.1 * restingLengthVertical;
-const float restingLengthDiagonal = sqrt(2);
-const float maxRestingLengthDiagonal = 1.1 * restingLengthDiagonal;
+uniform int attachmentsEnabled;// 1 if the long-range attachments are applied after the integration, 0 otherwise
+uniform int masked;// 1 if points have been removed by a mask (they are locked and have no springs), 0 otherwise
+#ifndef TILED
+uniform int activePointCount;// > 0 => invocation k executes the point activePoints[k], 0 => all points of the grid are executed
+#endif
+uniform int state;// 0 => apply forces, 1 => relaxation of the joints (XPBD: solve the constraints), 2 => only write render data (positions, normals, tangents) of the input buffer
+#ifdef FUSED
+uniform int iterations;// amount of iterations (force + relaxation) executed in one dispatch
+#ifdef XPBD
+uniform int constraintIterations;// amount of constraint iterations per sub-step (iteration)
+int constraintIteration = 0;// constraint iteration of the current stage within the sub-step
+#endif
+uniform int relaxationColors;// 1 => Jacobi relaxation, 4 => Gauss-Seidel relaxation with one pass per color (see pointColor)
+#else
+uniform int relaxationColor;// -1 => all points are relaxed (Jacobi), otherwise only the points of this color (Gauss-Seidel, see pointColor)
+uniform int recordExcess;// 1 => the in-place relaxation of one color records the over-extension (convergent relaxation)
+uniform int sleepingEnabled;// 1 => workgroup k executes the tile activeTiles[k], 0 => all tiles are dispatched
+uniform int tileCountX;// amount of tiles (workgroups) in x direction
+uniform float sleepDistance;// distance a point may move away from its rest position without waking its tile
+uniform int stepParity;// parity of the iteration, the force stage records the movement in bit stepParity of Tile.moved
+#ifdef XPBD
+uniform int constraintIteration;// constraint iteration of the stage within the sub-step, the first one starts with the multipliers at zero
+#endif
+#endif
+#ifdef COMPACT
+uniform vec3 positionOrigin;// cloth-local origin of the fixed point positions
+uniform float positionQuantum;// distance between two representable positions per component
+#endif
+
+const float maxStretch = MAX_STRETCH;// the relaxation shortens springs that are longer than maxStretch times their rest length (macro of MassSpringModel.MAX_STRETCH)
 const float restingLengthEpsilon = 0.01;
 const float gravity = 9.81;
-
 const vec3 sphere = vec3(0.0, 30.0, 0.0);
 const float sphereRadius = 10.0;
 
+// true if the stage reads and writes the input buffer, only for the relaxation of one color (the neighbors of a point never have its color)
+bool inPlace = false;
+// largest relative over-extension of the springs of this point that were corrected
+float maxExcess = 0.0;
+
+#ifdef FUSED
+// one workgroup executes all iterations, each invocation handles every 1024th point
+layout(local_size_x = 1024) in;
+
+// true if the roles of the input and output buffer are swapped (the fused shader swaps them after every stage)
+bool swapped = false;
+#elif defined(TILED)
+// each workgroup loads the positions of its tile and a halo of two points (the bend springs reach two points) into shared memory
+#define TILE_SIZE 16
+#define HALO 2
+#define TILE_EXTENT (TILE_SIZE + 2 * HALO)
+layout(local_size_x = TILE_SIZE, local_size_y = TILE_SIZE) in;
+
+shared vec4 tile[TILE_EXTENT][TILE_EXTENT];// xyz = position, w = locked
+#else
 layout(local_size_x = 10, local_size_y = 10) in;
+#endif
+
+#ifndef FUSED
+// tile of the workgroup
+uvec2 workGroupId() {
+    if (sleepingEnabled != 0) {
+        uint t = activeTiles[gl_WorkGroupID.x];
+        return uvec2(t % uint(tileCountX), t / uint(tileCountX));
+    }
+    return gl_WorkGroupID.xy + workGroupOffset;
+}
+#endif
+
+#ifdef COMPACT
+// maximum value of a 21 bit signed fixed point component
+const float positionMax = 1048575.0;
+
+// x = bits 0-20 of x, y = bits 21-31 of x and 0-9 of y, z = bits 10-30 of y, locked = bit 31 of y
+uvec2 encodePosition(vec3 position, float locked) {
+    uvec3 q = uvec3(ivec3(clamp(round((position - positionOrigin) / positionQuantum), -positionMax - 1.0, positionMax))) & 0x1FFFFFu;
+    return uvec2(q.x | (q.y << 21), (q.y >> 11) | (q.z << 10) | (locked != 0 ? 0x80000000u : 0u));
+}
+
+vec4 decodePosition(uvec2 position) {
+    uint y = (position.x >> 21) | ((position.y & 0x3FFu) << 11);
+    ivec3 q = ivec3(int(position.x << 11) >> 11, int(y << 11) >> 11, int(position.y << 1) >> 11);
+    return vec4(positionOrigin + vec3(q) * positionQuantum, 1.0);
+}
+#endif
+
+// access to the input buffer (load) and the output buffer (store)
+POSITION loadRawPosition(uint i) {
+#ifdef FUSED
+    return swapped ? positionOut[i] : positionIn[i];
+#else
+    return positionIn[i];
+#endif
+}
+
+vec4 loadPosition(uint i) {
+#ifdef COMPACT
+    return decodePosition(loadRawPosition(i));
+#else
+    return loadRawPosition(i);
+#endif
+}
+
+vec4 loadVelocity(uint i) {
+#ifdef COMPACT
+    return vec4(unpackHalf2x16(velocity[i].x), unpackHalf2x16(velocity[i].y).x, 0.0);
+#elif defined(FUSED)
+    return swapped ? velocityOut[i] : velocityIn[i];
+#else
+    return velocityIn[i];
+#endif
+}
+
+// x = locked, yz = uv tex coord
+vec4 loadData(uint i) {
+#ifdef COMPACT
+    return vec4(float(loadRawPosition(i).y >> 31), pointData[i], 0.0);
+#else
+    return pointData[i];
+#endif
+}
+
+// position of the neighbor (x + dx, y + dy) of point i = (x, y) from the input buffer
+vec4 loadNeighborPosition(uint i, int dx, int dy) {
+#ifdef TILED
+    ivec2 t = ivec2(gl_LocalInvocationID.xy) + HALO + ivec2(dx, dy);
+    return vec4(tile[t.y][t.x].xyz, 1.0);
+#else
+    return loadPosition(uint(int(i) + dy * width + dx));
+#endif
+}
+
+// locked flag of the neighbor (x + dx, y + dy) of point i = (x, y) from the input buffer
+float loadNeighborLocked(uint i, int dx, int dy) {
+#ifdef TILED
+    ivec2 t = ivec2(gl_LocalInvocationID.xy) + HALO + ivec2(dx, dy);
+    return tile[t.y][t.x].w;
+#else
+    return loadData(uint(int(i) + dy * width + dx)).x;
+#endif
+}
+
+// index of the spring between point i and its neighbor (dx, dy) in the rest lengths, springs in the opposite direction are stored at the neighbor
+uint springIndex(uint i, int dx, int dy) {
+    if (dy < 0 || (dy == 0 && dx < 0)) {
+        i = uint(int(i) + dy * width + dx);
+        dx = -dx;
+        dy = -dy;
+    }
+    int s = dy == 0 ? 2 * dx - 2 : (dx == 0 ? 2 * dy - 1 : (dx > 0 ? 4 : 5));// order of MassSpringModel.SPRING_X/Y
+    return uint(s * width * height) + i;
+}
+
+// rest length of the spring between point i and its neighbor (dx, dy)
+float loadRestLength(uint i, int dx, int dy) {
+    return restLengths[springIndex(i, dx, dy)];
+}
+
+#ifdef TILED
+// loads the positions of the tile of the workgroup and the halo into shared memory
+void loadTile() {
+    ivec2 origin = ivec2(workGroupId()) * TILE_SIZE - HALO;
+    for (uint t = gl_LocalInvocationIndex; t < TILE_EXTENT * TILE_EXTENT; t += TILE_SIZE * TILE_SIZE) {
+        ivec2 local = ivec2(t % TILE_EXTENT, t / TILE_EXTENT);
+        ivec2 global = origin + local;
+        if (global.x >= 0 && global.x < width && global.y >= 0 && global.y < height) {
+            uint j = global.y * width + global.x;
+            tile[local.y][local.x] = vec4(loadPosition(j).xyz, loadData(j).x);
+        }
+    }
+    memoryBarrierShared();
+    barrier();
+}
+#endif
+
+void storePosition(uint i, vec4 position) {
+#ifdef COMPACT
+    POSITION value = encodePosition(position.xyz, loadData(i).x);
+#else
+    POSITION value = position;
+#endif
+#ifdef FUSED
+    if (swapped != inPlace) {
+#else
+    if (inPlace) {
+#endif
+        positionIn[i] = value;
+        return;
+    }
+    positionOut[i] = value;
+}
+
+void storeVelocity(uint i, vec4 v) {
+#ifdef COMPACT
+    velocity[i] = uvec2(packHalf2x16(v.xy), packHalf2x16(vec2(v.z, 0.0)));
+#else
+#ifdef FUSED
+    if (swapped != inPlace) {
+#else
+    if (inPlace) {
+#endif
+        velocityIn[i] = v;
+        return;
+    }
+    velocityOut[i] = v;
+#endif
+}
+
+RENDER_DIRECTION encodeRenderDirection(vec3 direction) {
+#ifdef COMPACT
+    uvec3 q = uvec3(ivec3(round(clamp(direction, -1.0, 1.0) * 511.0))) & 0x3FFu;
+    return q.x | (q.y << 10) | (q.z << 20);
+#else
+    return vec4(direction, 0.0);
+#endif
+}
 
 vec4 calcSpringForce(vec4 posA, vec4 posB, float restingLength) {
+    if (restingLength < 0) {
+        return vec4(0.0);// no spring, the other point has been removed by the mask
+    }
     vec3 dir = posB.xyz - posA.xyz;
+    if (dir == vec3(0.0)) {
+        return vec4(0.0);// the points are at the same position, the spring has no direction
+    }
     return vec4(springConstant * (dir - normalize(dir) * restingLength), 0.0);
 }
 
@@ -93,75 +420,116 @@ vec3 calcTangent(vec3 pos1, vec3 pos2, vec3 pos3, vec2 uv1, vec2 uv2, vec2 uv3)
     return tangent;
 }
 
+// true if the cell of point i and its neighbors (x + dx, y), (x + dx, y + dy), (x, y + dy) within the cloth has not been removed by the mask
+bool isCellActive(uint i, int dx, int dy) {
+    return masked == 0 || (loadRestLength(i, dx, 0) >= 0 && loadRestLength(i, dx, dy) >= 0 && loadRestLength(i, 0, dy) >= 0);
+}
+
+// normal of point i calculated from the positions of the input buffer
+vec3 calcVertexNormal(uvec2 id, uint i) {
+    vec3 normal = vec3(0.0);
+    vec3 position = loadPosition(i).xyz;
+    if (id.x > 0) {
+        if (id.y > 0 && isCellActive(i, -1, -1)) {
+            normal += calcNormal(loadNeighborPosition(i, -1, 0).xyz, loadNeighborPosition(i, -1, -1).xyz, loadNeighborPosition(i, 0, -1).xyz, position);
+        }
+        if (id.y < height - 1 && isCellActive(i, -1, 1)) {
+            normal += calcNormal(loadNeighborPosition(i, 0, 1).xyz, loadNeighborPosition(i, -1, 1).xyz, loadNeighborPosition(i, -1, 0).xyz, position);
+        }
+    }
+    if (id.x < width - 1) {
+        if (id.y > 0 && isCellActive(i, 1, -1)) {
+            normal += calcNormal(loadNeighborPosition(i, 0, -1).xyz, loadNeighborPosition(i, 1, -1).xyz, loadNeighborPosition(i, 1, 0).xyz, position);
+        }
+        if (id.y < height - 1 && isCellActive(i, 1, 1)) {
+            normal += calcNormal(loadNeighborPosition(i, 1, 0).xyz, loadNeighborPosition(i, 1, 1).xyz, loadNeighborPosition(i, 0, 1).xyz, position);
+        }
+    }
+    if (normal == vec3(0.0)) {
+        return normal;// collapsed neighborhood, normalize would return NaN
+    }
+    return normalize(normalSign * normal);
+}
+
 void applyForce(uvec2 id, uint i) {
     // external force
-    // Important: Taking the old normal might be dangerous in some situations. If the GPU does not initialize
-    // the renderDataNormal buffer with zeros, old data will be read during the first invocation of the compute shader.
-    // The viscousInteractionFoce might become unlimitedly high for some points, making them disappear.
-    // Solution: Initialize renderDataNormal buffer on the CPU side before the first invocation or make sure to call
-    // applyFore in the second invocation for the first time (when the buffer has been initialized by the compute shader).
-    vec3 oldNormal = renderDataNormal[i].normal.xyz;
-    vec3 oldVelocity = pointIn[i].velocity.xyz;
+    // The normal is calculated from the input buffer, i.e. the same normal that was written to the render data after the last relaxation.
+    // The render data is not updated after every dispatch anymore (see writeRenderData), so it must not be read here.
+    vec3 oldNormal = calcVertexNormal(id, i);
+    vec3 oldVelocity = loadVelocity(i).xyz;
     vec4 viscousInteractionForce = vec4(-dot(oldNormal, velocityFluid - oldVelocity) * oldNormal, 0.0);
-    vec4 force = vec4(0, -mass * gravity, 0, 0) + pointIn[i].velocity * -viscousDamping + viscousInteractionForce;
+    vec4 force = vec4(0, -mass * gravity, 0, 0) + loadVelocity(i) * -viscousDamping + viscousInteractionForce;
 
+#ifndef XPBD
     // internal force
     // HORIZONTAL/VERTICAL
     // left
     if (id.x > 0) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i - 1].position, restingLengthHorizontal);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, -1, 0), loadRestLength(i, -1, 0));
     }
     // right
     if (id.x < width - 1) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i + 1].position, restingLengthHorizontal);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, 1, 0), loadRestLength(i, 1, 0));
     }
     // top
     if (id.y < height - 1) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i + width].position, restingLengthVertical);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, 0, 1), loadRestLength(i, 0, 1));
     }
     // bottom
     if (id.y > 0) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i - width].position, restingLengthVertical);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, 0, -1), loadRestLength(i, 0, -1));
     }
     // TWO HORIZONTAL/VERTICAL
     // two left
     if (id.x > 1) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i - 2].position, 2 * restingLengthHorizontal);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, -2, 0), loadRestLength(i, -2, 0));
     }
     // two right
     if (id.x < width - 2) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i + 2].position, 2 * restingLengthHorizontal);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, 2, 0), loadRestLength(i, 2, 0));
     }
     // two top
     if (id.y < height - 2) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i + width + width].position, 2 * restingLengthVertical);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, 0, 2), loadRestLength(i, 0, 2));
     }
     // two bottom
     if (id.y > 1) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i - width - width].position, 2 * restingLengthVertical);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, 0, -2), loadRestLength(i, 0, -2));
     }
     // DIAGONAL
     // top left
     if ((id.x > 0) && (id.y < height - 1)) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i + width - 1].position, restingLengthDiagonal);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, -1, 1), loadRestLength(i, -1, 1));
     }
     // bottom left
     if ((id.x > 0) && (id.y > 0)) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i - width - 1].position, restingLengthDiagonal);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, -1, -1), loadRestLength(i, -1, -1));
     }
     // top right
     if ((id.x < width - 1) && (id.y < height - 1)) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i + width + 1].position, restingLengthDiagonal);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, 1, 1), loadRestLength(i, 1, 1));
     }
     // bottom right
     if ((id.x < width - 1) && (id.y > 0)) {
-        force += calcSpringForce(pointIn[i].position, pointIn[i - width + 1].position, restingLengthDiagonal);
+        force += calcSpringForce(loadPosition(i), loadNeighborPosition(i, 1, -1), loadRestLength(i, 1, -1));
     }
+#endif
 
     // euler integration
     vec4 acceleration = force / mass;
-    vec4 velocity = pointIn[i].velocity + acceleration * time;
-    vec4 position = pointIn[i].position + velocity * time;
+    vec4 velocity = loadVelocity(i) + acceleration * time;
+    vec4 position = loadPosition(i) + velocity * time;
+
+    // long-range attachment, stay within the distance the springs allow to the nearest locked point
+    if (attachmentsEnabled != 0 && attachments[i].anchor >= 0) {
+        vec3 toPoint = position.xyz - loadPosition(uint(attachments[i].anchor)).xyz;
+        float length = length(toPoint);
+        if (length > attachments[i].distance) {
+            vec3 direction = toPoint / length;
+            position.xyz -= (length - attachments[i].distance) * direction;
+            velocity.xyz -= max(dot(velocity.xyz, direction), 0.0) * direction;
+        }
+    }
 
     // collision
     if (sphereEnabled != 0) {
@@ -177,22 +545,27 @@ void applyForce(uvec2 id, uint i) {
         velocity *= 0.9;
     }
 
-    pointOut[i].velocity = velocity;
-    pointOut[i].position = position;
+    storeVelocity(i, velocity);
+    storePosition(i, position);
 }
 
 vec3 calcRelaxationDirection(vec4 pos1, vec4 pos2, float locked2, float maxRestingLength, uint i) {
+    if (maxRestingLength < 0) {
+        return vec3(0.0);// no spring, the other point has been removed by the mask
+    }
     vec3 relaxDir = pos2.xyz - pos1.xyz;
     float length = length(relaxDir);
     if (length < maxRestingLength + restingLengthEpsilon) { // only relax if it is too long (plus some epsilon)
         return vec3(0.0);
     }
+    // over-extension relative to the maximum resting length, relative to the epsilon for springs of rest length 0
+    maxExcess = max(maxExcess, (length - maxRestingLength) / max(maxRestingLength, restingLengthEpsilon));
     relaxDir *= ((length - maxRestingLength) / length);// ensure direction vector to have the correct length
     if (locked2 == 0) {
-        pointOut[i].velocity = vec4(0.0);
+        storeVelocity(i, vec4(0.0));
         return relaxDir / 2;// only move half the way because the other unlocked point will also be moved half the way
     } else {
-        pointOut[i].velocity = vec4(0.0);
+        storeVelocity(i, vec4(0.0));
         return relaxDir;// move all the way because the other point is locked
     }
 }
@@ -205,105 +578,346 @@ void applyRelaxation(uvec2 id, uint i) {
     // HORIZONTAL/VERTICAL
     // left
     if (id.x > 0) {
-        relaxDir += calcRelaxationDirection(pointIn[i].position, pointIn[i - 1].position, pointIn[i - 1].data.x, maxRestingLengthHorizontal, i);
+        relaxDir += calcRelaxationDirection(loadPosition(i), loadNeighborPosition(i, -1, 0), loadNeighborLocked(i, -1, 0), maxStretch * loadRestLength(i, -1, 0), i);
     }
     // right
     if (id.x < width - 1) {
-        relaxDir += calcRelaxationDirection(pointIn[i].position, pointIn[i + 1].position, pointIn[i + 1].data.x, maxRestingLengthHorizontal, i);
+        relaxDir += calcRelaxationDirection(loadPosition(i), loadNeighborPosition(i, 1, 0), loadNeighborLocked(i, 1, 0), maxStretch * loadRestLength(i, 1, 0), i);
     }
     // top
     if (id.y < height - 1) {
-        relaxDir += calcRelaxationDirection(pointIn[i].position, pointIn[i + width].position, pointIn[i + width].data.x, maxRestingLengthVertical, i);
+        relaxDir += calcRelaxationDirection(loadPosition(i), loadNeighborPosition(i, 0, 1), loadNeighborLocked(i, 0, 1), maxStretch * loadRestLength(i, 0, 1), i);
     }
     // bottom
     if (id.y > 0) {
-        relaxDir += calcRelaxationDirection(pointIn[i].position, pointIn[i - width].position, pointIn[i - width].data.x, maxRestingLengthVertical, i);
+        relaxDir += calcRelaxationDirection(loadPosition(i), loadNeighborPosition(i, 0, -1), loadNeighborLocked(i, 0, -1), maxStretch * loadRestLength(i, 0, -1), i);
     }
     // DIAGONAL
     // top left
     if ((id.x > 0) && (id.y < height - 1)) {
-        relaxDir += calcRelaxationDirection(pointIn[i].position, pointIn[i + width - 1].position, pointIn[i + width - 1].data.x, maxRestingLengthDiagonal, i);
+        relaxDir += calcRelaxationDirection(loadPosition(i), loadNeighborPosition(i, -1, 1), loadNeighborLocked(i, -1, 1), maxStretch * loadRestLength(i, -1, 1), i);
     }
     // bottom left
     if ((id.x > 0) && (id.y > 0)) {
-        relaxDir += calcRelaxationDirection(pointIn[i].position, pointIn[i - width - 1].position, pointIn[i - width - 1].data.x, maxRestingLengthDiagonal, i);
+        relaxDir += calcRelaxationDirection(loadPosition(i), loadNeighborPosition(i, -1, -1), loadNeighborLocked(i, -1, -1), maxStretch * loadRestLength(i, -1, -1), i);
     }
     // top right
     if ((id.x < width - 1) && (id.y < height - 1)) {
-        relaxDir += calcRelaxationDirection(pointIn[i].position, pointIn[i + width + 1].position, pointIn[i + width + 1].data.x, maxRestingLengthDiagonal, i);
+        relaxDir += calcRelaxationDirection(loadPosition(i), loadNeighborPosition(i, 1, 1), loadNeighborLocked(i, 1, 1), maxStretch * loadRestLength(i, 1, 1), i);
     }
     // bottom right
     if ((id.x < width - 1) && (id.y > 0)) {
-        relaxDir += calcRelaxationDirection(pointIn[i].position, pointIn[i - width + 1].position, pointIn[i - width + 1].data.x, maxRestingLengthDiagonal, i);
+        relaxDir += calcRelaxationDirection(loadPosition(i), loadNeighborPosition(i, 1, -1), loadNeighborLocked(i, 1, -1), maxStretch * loadRestLength(i, 1, -1), i);
     }
 
-    pointOut[i].position += vec4(relaxDir, 0.0);
+    storePosition(i, loadPosition(i) + vec4(relaxDir, 0.0));
+#ifndef FUSED
+    if (inPlace && recordExcess != 0 && maxExcess > 0) {
+        atomicMax(maxExcessBits, floatBitsToUint(maxExcess));
+    }
+#endif
 }
 
-void main() {
-    uvec2 id = gl_GlobalInvocationID.xy;
-
-    uint i = id.y * width + id.x;
+#ifdef XPBD
+// XPBD position correction of point i for the distance constraint towards its neighbor (dx, dy), the compliance is the inverse spring constant
+// scaled by the squared time step. The inverse masses are multiplied by the amount of springs of the points (mass splitting), i.e. the sum of the
+// corrections of a point is their average. Writes the updated Lagrange multiplier of the spring.
+vec3 calcConstraintCorrection(uint i, vec4 position, int dx, int dy, float compliance) {
+    uint s = springIndex(i, dx, dy);
+    float restingLength = restLengths[s];
+    if (restingLength < 0) {
+        return vec3(0.0);// no spring, the other point has been removed by the mask
+    }
+    uint springCount = uint(6 * width * height);
+    uint readHalf = uint(constraintIteration & 1) * springCount;
+    uint writeHalf = springCount - readHalf;
+    float lambda = constraintIteration == 0 ? 0.0 : lambdas[readHalf + s];
+
+    uint j = uint(int(i) + dy * width + dx);
+    vec3 dir = loadNeighborPosition(i, dx, dy).xyz - position.xyz;
+    float length = length(dir);
+    if (length == 0) {
+        lambdas[writeHalf + s] = lambda;
+        return vec3(0.0);// no direction, the spring keeps its multiplier
+    }
+    float inverseMass = 1.0 / mass;
+    float weight = float(springCounts[i]) * inverseMass;
+    float weightSum = loadNeighborLocked(i, dx, dy) == 0 ? weight + float(springCounts[j]) * inverseMass : weight;
+    float deltaLambda = (restingLength - length - compliance * lambda) / (weightSum + compliance);
+    lambdas[writeHalf + s] = lambda + deltaLambda;
+    return dir * (-inverseMass * deltaLambda / length);
+}
 
-    if (i >= width * height) {
+// solves the distance constraints of all springs of point i (one Jacobi iteration) and updates its velocity by the position correction
+void applyConstraints(uvec2 id, uint i) {
+    if (springConstant <= 0) {
         return;
     }
+    float compliance = 1.0 / (springConstant * time * time);
+    vec4 position = loadPosition(i);
+    vec3 correction = vec3(0.0);
+
+    // HORIZONTAL/VERTICAL
+    // left
+    if (id.x > 0) {
+        correction += calcConstraintCorrection(i, position, -1, 0, compliance);
+    }
+    // right
+    if (id.x < width - 1) {
+        correction += calcConstraintCorrection(i, position, 1, 0, compliance);
+    }
+    // top
+    if (id.y < height - 1) {
+        correction += calcConstraintCorrection(i, position, 0, 1, compliance);
+    }
+    // bottom
+    if (id.y > 0) {
+        correction += calcConstraintCorrection(i, position, 0, -1, compliance);
+    }
+    // TWO HORIZONTAL/VERTICAL
+    // two left
+    if (id.x > 1) {
+        correction += calcConstraintCorrection(i, position, -2, 0, compliance);
+    }
+    // two right
+    if (id.x < width - 2) {
+        correction += calcConstraintCorrection(i, position, 2, 0, compliance);
+    }
+    // two top
+    if (id.y < height - 2) {
+        correction += calcConstraintCorrection(i, position, 0, 2, compliance);
+    }
+    // two bottom
+    if (id.y > 1) {
+        correction += calcConstraintCorrection(i, position, 0, -2, compliance);
+    }
+    // DIAGONAL
+    // top left
+    if ((id.x > 0) && (id.y < height - 1)) {
+        correction += calcConstraintCorrection(i, position, -1, 1, compliance);
+    }
+    // bottom left
+    if ((id.x > 0) && (id.y > 0)) {
+        correction += calcConstraintCorrection(i, position, -1, -1, compliance);
+    }
+    // top right
+    if ((id.x < width - 1) && (id.y < height - 1)) {
+        correction += calcConstraintCorrection(i, position, 1, 1, compliance);
+    }
+    // bottom right
+    if ((id.x < width - 1) && (id.y > 0)) {
+        correction += calcConstraintCorrection(i, position, 1, -1, compliance);
+    }
 
-    pointOut[i].position = pointIn[i].position;
-    pointOut[i].velocity = pointIn[i].velocity;
-    pointOut[i].data = pointIn[i].data;
+    vec4 newPosition = position + vec4(correction, 0.0);
 
-    if (pointIn[i].data.x == 0) {
-        if (state == 0) {
-            applyForce(id, i);
-        } else if (state == 1) {
-            applyRelaxation(id, i);
+    // collision, the velocity follows the projected position
+    if (sphereEnabled != 0) {
+        vec3 toSphere = newPosition.xyz - sphere;
+        if (length(toSphere) < sphereRadius + 0.05) {
+            newPosition.xyz = sphere + normalize(toSphere) * (sphereRadius + 0.05);
         }
     }
+    if (newPosition.y < 0.05) {
+        newPosition.y = 0.05;
+    }
 
-    renderDataPosition[i].position = pointOut[i].position;
+    storeVelocity(i, loadVelocity(i) + (newPosition - position) / time);
+    storePosition(i, newPosition);
+}
+#endif
+
+// writes the position, normal and tangent of point i of the input buffer to the render data
+void writeRenderData(uvec2 id, uint i) {
+#ifndef COMPACT
+    renderDataPosition[i].position = loadPosition(i);
+#endif
 
     // normal
-    vec3 normal = vec3(0.0);
-    vec3 position = renderDataPosition[i].position.xyz;
+    renderDataNormal[i].normal = encodeRenderDirection(calcVertexNormal(id, i));
+
+    // tangent
+    vec3 tangent = vec3(0.0);
+    vec3 position = loadPosition(i).xyz;
     if (id.x > 0) {
-        if (id.y > 0) {
-            normal += calcNormal(pointOut[i - 1].position.xyz, pointOut[i - width - 1].position.xyz, pointOut[i - width].position.xyz, position);
-        }
-        if (id.y < height - 1) {
-            normal += calcNormal(pointOut[i + width].position.xyz, pointOut[i + width - 1].position.xyz, pointOut[i - 1].position.xyz, position);
+        if (id.y > 0 && isCellActive(i, -1, -1)) {
+            tangent += calcTangent(position, loadPosition(i - width - 1).xyz, loadPosition(i - 1).xyz, loadData(i).yz, loadData(i - width - 1).yz, loadData(i - 1).yz);
+            tangent += calcTangent(position, loadPosition(i - width - 1).xyz, loadPosition(i - width).xyz, loadData(i).yz, loadData(i - width - 1).yz, loadData(i - width).yz);
         }
     }
     if (id.x < width - 1) {
-        if (id.y > 0) {
-            normal += calcNormal(pointOut[i - width].position.xyz, pointOut[i - width + 1].position.xyz, pointOut[i + 1].position.xyz, position);
+        if (id.y < height - 1 && isCellActive(i, 1, 1)) {
+            tangent += calcTangent(position, loadPosition(i + width + 1).xyz, loadPosition(i + 1).xyz, loadData(i).yz, loadData(i + width + 1).yz, loadData(i + 1).yz);
+            tangent += calcTangent(position, loadPosition(i + width + 1).xyz, loadPosition(i + width).xyz, loadData(i).yz, loadData(i + width + 1).yz, loadData(i + width).yz);
+        }
+    }
+    if (tangent == vec3(0.0)) {
+        // no diagonal cell, e.g. top left corner or bottom right corner
+        tangent = vec3(1.0, 0.0, 0.0);// or maybe take average of the two adjacent points
+    }
+    renderDataTangent[i].tangent = encodeRenderDirection(normalize(tangent));
+}
+
+#ifndef FUSED
+// records in the tile t if point i has moved further than the sleep distance from its rest position. The rest positions of all points
+// of a tile are reset in the iteration after it has moved (the movement of the last iteration is in the other bit of Tile.moved).
+void trackMovement(uint t, uint i) {
+    vec3 position = loadPosition(i).xyz;
+    bool moved = restPositions[i].w == 0.0 || distance(position, restPositions[i].xyz) > sleepDistance;
+    if (moved || (tiles[t].moved & (1u << uint(1 - stepParity))) != 0u) {
+        restPositions[i] = vec4(position, 1.0);
+    }
+    if (moved) {
+        atomicOr(tiles[t].moved, 1u << uint(stepParity));
+    }
+}
+#endif
+
+// 4-coloring of the grid: the relaxation of a point only reads its direct (horizontal, vertical, diagonal) neighbors, which always have another color.
+// Relaxing one color per pass (Gauss-Seidel) lets the corrections of one pass already be used by the next one.
+int pointColor(uvec2 id) {
+    return int((id.x & 1u) | ((id.y & 1u) << 1));
+}
+
+// color: -1 => all points, otherwise the relaxation only moves the points of this color in place (the other points are not written)
+void executePoint(uvec2 id, uint i, int state, int color) {
+    inPlace = state == 1 && color >= 0;
+    if (!inPlace) {
+        storePosition(i, loadPosition(i));
+#ifndef COMPACT
+        storeVelocity(i, loadVelocity(i)); // COMPACT: velocities are updated in place
+#endif
+    }
+
+#ifndef FUSED
+    if (sleepingEnabled != 0) {
+        uvec2 tile = id / gl_WorkGroupSize.xy;
+        uint t = tile.y * uint(tileCountX) + tile.x;
+        if (tiles[t].state == TILE_FREEZING) {
+            // the tile falls asleep, its points are only copied (afterwards the input and output buffer are equal)
+            if (state == 0) {
+                storeVelocity(i, vec4(0.0));
+            }
+            return;
         }
-        if (id.y < height - 1) {
-            normal += calcNormal(pointOut[i + 1].position.xyz, pointOut[i + width + 1].position.xyz, pointOut[i + width].position.xyz, position);
+        if (state == 0) {
+            trackMovement(t, i);
         }
     }
-    renderDataNormal[i].normal = vec4(normalize(normalSign * normal), 0.0);
+#endif
 
-    // tangent
-    vec3 tangent = vec3(0.0);
-    if (id.x > 0) {
-        if (id.y > 0) {
-            tangent += calcTangent(position, pointOut[i - width - 1].position.xyz, pointOut[i - 1].position.xyz, pointOut[i].data.yz, pointOut[i - width - 1].data.yz, pointOut[i - 1].data.yz);
-            tangent += calcTangent(position, pointOut[i - width - 1].position.xyz, pointOut[i - width].position.xyz, pointOut[i].data.yz, pointOut[i - width - 1].data.yz, pointOut[i - width].data.yz);
+    if (state == 1 && color >= 0 && pointColor(id) != color) {
+        return;
+    }
+    if (loadData(i).x == 0) {
+        if (state == 0) {
+            applyForce(id, i);
+        } else if (state == 1) {
+#ifdef XPBD
+            applyConstraints(id, i);
+#else
+            applyRelaxation(id, i);
+#endif
         }
     }
-    if (id.x < width - 1) {
-        if (id.y < height - 1) {
-            tangent += calcTangent(position, pointOut[i + width + 1].position.xyz, pointOut[i + 1].position.xyz, pointOut[i].data.yz, pointOut[i + width + 1].data.yz, pointOut[i + 1].data.yz);
-            tangent += calcTangent(position, pointOut[i + width + 1].position.xyz, pointOut[i + width].position.xyz, pointOut[i].data.yz, pointOut[i + width + 1].data.yz, pointOut[i + width].data.yz);
+}
+
+#ifdef FUSED
+// k-th point that is executed, all points of the grid or the active points of a masked cloth
+uint pointIndex(uint k) {
+    return activePointCount > 0 ? activePoints[k] : k;
+}
+
+void main() {
+    uint count = activePointCount > 0 ? uint(activePointCount) : width * height;
+#ifdef XPBD
+    int passes = constraintIterations;
+#else
+    int passes = relaxationColors;
+#endif
+    for (int iteration = 0; iteration < iterations; iteration++) {
+        // pass 0 applies the forces, the following passes relax all points or one color each (XPBD: solve the constraints)
+        for (int pass = 0; pass <= passes; pass++) {
+#ifdef XPBD
+            constraintIteration = pass - 1;
+            int color = -1;
+#else
+            int color = pass == 0 || relaxationColors == 1 ? -1 : pass - 1;
+#endif
+            for (uint k = gl_LocalInvocationIndex; k < count; k += gl_WorkGroupSize.x) {
+                uint i = pointIndex(k);
+                executePoint(uvec2(i % width, i / width), i, min(pass, 1), color);
+            }
+            // wait until all points are written, then the output buffer becomes the input buffer (the colors are relaxed in place)
+            memoryBarrierBuffer();
+            barrier();
+            if (color < 0) {
+                swapped = !swapped;
+            }
         }
     }
-    if (id.x == 0 && id.y == height - 1) {
-        // top left corner
-        tangent = vec3(1.0, 0.0, 0.0);// or maybe take average of the two adjacent points
-    } else if (id.x == width - 1 && id.y == 0) {
-        // bottom right corner
-        tangent = vec3(1.0, 0.0, 0.0);// or maybe take average of the two adjacent points
+    if (swapped) {
+        // odd number of swaps, copy the result back into the input buffer
+        for (uint k = gl_LocalInvocationIndex; k < count; k += gl_WorkGroupSize.x) {
+            uint i = pointIndex(k);
+            executePoint(uvec2(i % width, i / width), i, -1, -1);
+        }
+        memoryBarrierBuffer();
+        barrier();
+        swapped = false;
     }
-    renderDataTangent[i].tangent = vec4(normalize(tangent), 0.0);
+    for (uint k = gl_LocalInvocationIndex; k < count; k += gl_WorkGroupSize.x) {
+        uint i = pointIndex(k);
+        writeRenderData(uvec2(i % width, i / width), i);
+    }
+}
+#elif defined(TILED)
+void main() {
+    uvec2 id = workGroupId() * gl_WorkGroupSize.xy + gl_LocalInvocationID.xy;
+
+    loadTile(); // all invocations of the workgroup take part, return afterwards
+
+    // the last workgroups in each dimension are only partially filled
+    if (id.x >= width || id.y >= height) {
+        return;
+    }
+
+    uint i = id.y * width + id.x;
+
+    if (state == 2) {
+        writeRenderData(id, i);
+        return;
+    }
+
+    executePoint(id, i, state, relaxationColor);
+}
+#else
+void main() {
+    uvec2 id;
+    if (activePointCount > 0) {
+        // one-dimensional dispatch over the active points (see ComputeShaderProgram.dispatchLinear), no invocation is spent on removed points
+        uint k = (gl_WorkGroupID.x + workGroupOffset.x) * (gl_WorkGroupSize.x * gl_WorkGroupSize.y) + gl_LocalInvocationIndex;
+        if (k >= uint(activePointCount)) {
+            return;// the last workgroup is only partially filled
+        }
+        id = uvec2(activePoints[k] % width, activePoints[k] / width);
+    } else {
+        id = workGroupId() * gl_WorkGroupSize.xy + gl_LocalInvocationID.xy;
+
+        // the last workgroups in each dimension are only partially filled
+        if (id.x >= width || id.y >= height) {
+            return;
+        }
+    }
+
+    uint i = id.y * width + id.x;
+
+    if (state == 2) {
+        // render data is only needed once after the last relaxation, it does not influence the simulation
+        writeRenderData(id, i);
+        return;
+    }
+
+    executePoint(id, i, state, relaxationColor);
 }
+#endif
@@ -0,0 +1,292 @@
+#version 430 core
+
+// Simulation of a cloth with a triangle mesh as topology (see MeshClothModel), the mesh equivalent of cloth_compute.glsl with the
+// same stages and the same buffers of the points and the render data. The neighbors are not implied by a grid but read from the
+// CSR rows of the points. The dispatch is one-dimensional (see ComputeShaderProgram.dispatchLinear): invocation k executes point k,
+// or the k-th point of one color (colorStart >= 0). The points of a color are not connected by any spring, thus they are solved
+// in place without reading a position that another invocation writes.
+
+struct RenderDataPosition {
+    vec4 position;
+};
+
+struct RenderDataNormal {
+    vec4 normal;
+};
+
+struct RenderDataTangent {
+    vec4 tangent;
+};
+
+// positions from the last iteration, do not write to this buffer (except in place)
+layout(binding = 0, std430) buffer positionInBuffer {
+    vec4 positionIn[];
+};
+
+// updated positions that will become the input (positionIn) in the next iteration
+layout(binding = 1, std430) buffer positionOutBuffer {
+    vec4 positionOut[];
+};
+
+// buffers where the calculated information will be stored that is used for rendering in the vertex/fragment shader
+layout(binding = 2, std430) buffer renderDataPositionBuffer {
+    RenderDataPosition renderDataPosition[];
+};
+layout(binding = 3, std430) buffer renderDataNormalBuffer {
+    RenderDataNormal renderDataNormal[];
+};
+layout(binding = 4, std430) buffer renderDataTangentBuffer {
+    RenderDataTangent renderDataTangent[];
+};
+
+// velocities from the last iteration, do not write to this buffer (except in place)
+layout(binding = 5, std430) buffer velocityInBuffer {
+    vec4 velocityIn[];
+};
+
+// updated velocities that will become the input (velocityIn) in the next iteration
+layout(binding = 6, std430) buffer velocityOutBuffer {
+    vec4 velocityOut[];
+};
+
+// static point data that never changes, x = locked, yz = uv tex coord, w = padding
+layout(binding = 7, std430) readonly buffer pointDataBuffer {
+    vec4 pointData[];
+};
+
+// row of each point and one more entry with the totals: x = first spring, y = first bend spring, z = first triangle, w = padding
+layout(binding = 16, std430) readonly buffer pointRowBuffer {
+    uvec4 pointRows[];
+};
+
+struct Spring {
+    uint target;// point at the other end
+    float restLength;
+};
+
+// springs of the points, structural springs [pointRows[i].x, pointRows[i].y), bend springs [pointRows[i].y, pointRows[i + 1].x)
+layout(binding = 17, std430) readonly buffer springBuffer {
+    Spring springs[];
+};
+
+// points of the triangles of each point [pointRows[i].z, pointRows[i + 1].z), xyz = points of the triangle, w = padding
+layout(binding = 18, std430) readonly buffer pointTriangleBuffer {
+    uvec4 pointTriangles[];
+};
+
+// points sorted by color (see MeshClothModel.getColorPoints)
+layout(binding = 19, std430) readonly buffer colorPointBuffer {
+    uint colorPoints[];
+};
+
+uniform float time;// time step for integration
+uniform int normalSign;// normal orientation \in {-1,1}
+uniform int sphereEnabled;// 1 if sphere collisions are enabled, 0 otherwise
+uniform int pointCount;// amount of invocations of the dispatch, all points or the points of one color
+uniform int colorStart;// -1 => invocation k executes point k, otherwise colorPoints[colorStart + k] in place
+uniform uvec2 workGroupOffset;// id of the first workgroup if the dispatch is split into multiple calls (see ComputeShaderProgram.dispatch)
+uniform float mass;// mass of one point
+uniform float viscousDamping;// damping constant >= 0, higher damping constant causes more friction
+uniform vec3 velocityFluid; // velocity of a viscous fluid like wind or water (used for viscous interaction force)
+uniform float springConstant;// spring constant >= 0, higher spring constant makes cloth more stiff
+uniform int state;// 0 => apply forces, 1 => relaxation of the structural springs (XPBD: solve the constraints of all springs), 2 => only write render data
+
+const float maxStretch = MAX_STRETCH;// the relaxation shortens springs that are longer than maxStretch times their rest length (macro of MassSpringModel.MAX_STRETCH)
+const float restingLengthEpsilon = 0.01;
+const float gravity = 9.81;
+
+const vec3 sphere = vec3(0.0, 30.0, 0.0);
+const float sphereRadius = 10.0;
+
+layout(local_size_x = 64) in;
+
+// true if the stage reads and writes the input buffer (one color)
+bool inPlace = false;
+
+void storePosition(uint i, vec4 position) {
+    if (inPlace) {
+        positionIn[i] = position;
+    } else {
+        positionOut[i] = position;
+    }
+}
+
+void storeVelocity(uint i, vec4 velocity) {
+    if (inPlace) {
+        velocityIn[i] = velocity;
+    } else {
+        velocityOut[i] = velocity;
+    }
+}
+
+// normal of point i calculated from the positions of the input buffer, the sum of the area weighted normals of its triangles
+vec3 calcVertexNormal(uint i) {
+    vec3 normal = vec3(0.0);
+    for (uint k = pointRows[i].z; k < pointRows[i + 1u].z; k++) {
+        uvec4 triangle = pointTriangles[k];
+        vec3 position1 = positionIn[triangle.x].xyz;
+        normal += cross(positionIn[triangle.y].xyz - position1, positionIn[triangle.z].xyz - position1);
+    }
+    if (normal == vec3(0.0)) {
+        return normal;// only degenerate triangles
+    }
+    return normalize(normalSign * normal);
+}
+
+vec3 calcTangent(uvec4 triangle) {
+    vec3 edge1 = positionIn[triangle.y].xyz - positionIn[triangle.x].xyz;
+    vec3 edge2 = positionIn[triangle.z].xyz - positionIn[triangle.x].xyz;
+    vec2 deltaUV1 = pointData[triangle.y].yz - pointData[triangle.x].yz;
+    vec2 deltaUV2 = pointData[triangle.z].yz - pointData[triangle.x].yz;
+
+    float determinant = deltaUV1.x * deltaUV2.y - deltaUV2.x * deltaUV1.y;
+    if (determinant == 0.0) {
+        return vec3(0.0);// degenerate uv coordinates
+    }
+    return (deltaUV2.y * edge1 - deltaUV1.y * edge2) / determinant;
+}
+
+void applyForce(uint i) {
+    // external force
+    vec3 oldNormal = calcVertexNormal(i);
+    vec4 oldVelocity = velocityIn[i];
+    vec4 viscousInteractionForce = vec4(-dot(oldNormal, velocityFluid - oldVelocity.xyz) * oldNormal, 0.0);
+    vec4 force = vec4(0, -mass * gravity, 0, 0) + oldVelocity * -viscousDamping + viscousInteractionForce;
+
+#ifndef XPBD
+    // internal force of all springs of the row
+    vec3 position = positionIn[i].xyz;
+    for (uint s = pointRows[i].x; s < pointRows[i + 1u].x; s++) {
+        vec3 dir = positionIn[springs[s].target].xyz - position;
+        if (dir != vec3(0.0)) {
+            force.xyz += springConstant * (dir - normalize(dir) * springs[s].restLength);
+        }
+    }
+#endif
+
+    // euler integration
+    vec4 velocity = oldVelocity + force / mass * time;
+    vec4 newPosition = positionIn[i] + velocity * time;
+
+    // collision
+    if (sphereEnabled != 0) {
+        vec3 toSphere = newPosition.xyz - sphere;
+        if (length(toSphere) < sphereRadius + 0.05) {
+            newPosition.xyz = sphere + normalize(toSphere) * (sphereRadius + 0.05);
+            velocity *= 0.9;
+        }
+    }
+    if (newPosition.y < 0.05) {
+        newPosition.y = 0.05;
+        velocity.y = 0;
+        velocity *= 0.9;
+    }
+
+    storeVelocity(i, velocity);
+    storePosition(i, newPosition);
+}
+
+// moves point i towards the targets of its structural springs that are too long, the bend springs are not relaxed
+void applyRelaxation(uint i) {
+    vec4 position = positionIn[i];
+    vec3 relaxDir = vec3(0.0);
+    for (uint s = pointRows[i].x; s < pointRows[i].y; s++) {
+        uint j = springs[s].target;
+        float maxRestingLength = maxStretch * springs[s].restLength;
+        vec3 dir = positionIn[j].xyz - position.xyz;
+        float length = length(dir);
+        if (length < maxRestingLength + restingLengthEpsilon) { // only relax if it is too long (plus some epsilon)
+            continue;
+        }
+        dir *= (length - maxRestingLength) / length;// ensure direction vector to have the correct length
+        storeVelocity(i, vec4(0.0));
+        relaxDir += pointData[j].x == 0 ? dir / 2 : dir;// half the way if the other point is moved as well
+    }
+    storePosition(i, position + vec4(relaxDir, 0.0));
+}
+
+#ifdef XPBD
+// solves the distance constraints of all springs of point i one after the other (Gauss-Seidel, every constraint sees the corrections
+// of the previous ones, the neighbors have other colors and do not move) and updates its velocity by the position correction
+void applyConstraints(uint i) {
+    if (springConstant <= 0) {
+        return;
+    }
+    float compliance = 1.0 / (springConstant * time * time);
+    float inverseMass = 1.0 / mass;
+    vec4 position = positionIn[i];
+    vec4 newPosition = position;
+    for (uint s = pointRows[i].x; s < pointRows[i + 1u].x; s++) {
+        uint j = springs[s].target;
+        vec3 dir = positionIn[j].xyz - newPosition.xyz;
+        float length = length(dir);
+        if (length == 0.0) {
+            continue;// no direction
+        }
+        float inverseMassSum = pointData[j].x == 0 ? 2.0 * inverseMass : inverseMass;
+        newPosition.xyz += dir * (inverseMass * (length - springs[s].restLength) / ((inverseMassSum + compliance) * length));
+    }
+
+    // collision, the velocity follows the projected position
+    if (sphereEnabled != 0) {
+        vec3 toSphere = newPosition.xyz - sphere;
+        if (length(toSphere) < sphereRadius + 0.05) {
+            newPosition.xyz = sphere + normalize(toSphere) * (sphereRadius + 0.05);
+        }
+    }
+    if (newPosition.y < 0.05) {
+        newPosition.y = 0.05;
+    }
+
+    storeVelocity(i, velocityIn[i] + (newPosition - position) / time);
+    storePosition(i, newPosition);
+}
+#endif
+
+// writes the position, normal and tangent of point i of the input buffer to the render data
+void writeRenderData(uint i) {
+    renderDataPosition[i].position = positionIn[i];
+
+    renderDataNormal[i].normal = vec4(calcVertexNormal(i), 0.0);
+
+    vec3 tangent = vec3(0.0);
+    for (uint k = pointRows[i].z; k < pointRows[i + 1u].z; k++) {
+        tangent += calcTangent(pointTriangles[k]);
+    }
+    if (tangent == vec3(0.0)) {
+        tangent = vec3(1.0, 0.0, 0.0);// no triangle with valid uv coordinates
+    }
+    renderDataTangent[i].tangent = vec4(normalize(tangent), 0.0);
+}
+
+void main() {
+    uint k = (gl_WorkGroupID.x + workGroupOffset.x) * gl_WorkGroupSize.x + gl_LocalInvocationIndex;
+    if (k >= uint(pointCount)) {
+        return;// the last workgroup is only partially filled
+    }
+
+    if (state == 2) {
+        // render data is only needed once after the last relaxation, it does not influence the simulation
+        writeRenderData(k);
+        return;
+    }
+
+    inPlace = colorStart >= 0;
+    uint i = inPlace ? colorPoints[uint(colorStart) + k] : k;
+    if (!inPlace) {
+        positionOut[i] = positionIn[i];
+        velocityOut[i] = velocityIn[i];
+    }
+    if (pointData[i].x != 0) {
+        return;// locked
+    }
+    if (state == 0) {
+        applyForce(i);
+    } else {
+#ifdef XPBD
+        applyConstraints(i);
+#else
+        applyRelaxation(i);
+#endif
+    }
+}
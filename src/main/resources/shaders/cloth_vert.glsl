@@ -1,6 +1,12 @@
 #version 330 core
 
+#ifdef COMPACT
+layout(location = 0) in uvec2 packedPosition;// fixed point position of the compute shader (see encodePosition in cloth_compute.glsl)
+layout(location = 4) in uvec2 previousPackedPosition;// position before the last simulation step
+#else
 layout(location = 0) in vec4 position;
+layout(location = 4) in vec4 previousPosition;// position before the last simulation step
+#endif
 layout(location = 1) in vec2 texCoord;
 layout(location = 2) in vec4 normal;
 layout(location = 3) in vec4 tangent;
@@ -14,12 +20,30 @@ uniform mat4 transformationMatrix;
 uniform mat4 projectionMatrix;
 uniform mat4 viewMatrix;
 uniform vec3 lightPosition;
+uniform float interpolation;// 0 => previous position, 1 => position after the last simulation step
+#ifdef COMPACT
+uniform vec3 positionOrigin;// cloth-local origin of the fixed point positions
+uniform float positionQuantum;// distance between two representable positions per component
+#endif
 
 const float density = 0.005;
 const float gradient = 5.0;
 
+#ifdef COMPACT
+vec4 decodePosition(uvec2 value) {
+    uint y = (value.x >> 21) | ((value.y & 0x3FFu) << 11);
+    ivec3 q = ivec3(int(value.x << 11) >> 11, int(y << 11) >> 11, int(value.y << 1) >> 11);
+    return vec4(positionOrigin + vec3(q) * positionQuantum, 1.0);
+}
+#endif
+
 void main() {
-    vec4 worldPosition = transformationMatrix * position;
+#ifdef COMPACT
+    vec4 interpolatedPosition = mix(decodePosition(previousPackedPosition), decodePosition(packedPosition), interpolation);
+#else
+    vec4 interpolatedPosition = mix(previousPosition, position, interpolation);
+#endif
+    vec4 worldPosition = transformationMatrix * interpolatedPosition;
     vec4 positionRelativeToCam = viewMatrix * worldPosition;
     gl_Position = projectionMatrix * positionRelativeToCam;
     passTexCoord = texCoord;
@@ -0,0 +1,28 @@
+#version 430 core
+
+// Executed after every round (one pass per color) of the convergent relaxation. If the largest over-extension of the round is
+// within the tolerance, the workgroup count of the indirect dispatch of the relaxation is set to zero, i.e. the remaining rounds
+// of the iteration are skipped on the GPU without reading the result back. The counts are reset by the CPU before each iteration.
+
+layout(local_size_x = 1) in;
+
+// largest relative over-extension of the last round as float bits (written by cloth_compute.glsl)
+layout(binding = 8, std430) buffer relaxationControlBuffer {
+    uint maxExcessBits;
+};
+
+// arguments of glDispatchComputeIndirect for the relaxation passes
+layout(binding = 9, std430) buffer dispatchIndirectBuffer {
+    uint numGroupsX;
+    uint numGroupsY;
+    uint numGroupsZ;
+};
+
+uniform float tolerance;// largest over-extension (relative to the maximum resting length) that does not need another round
+
+void main() {
+    if (uintBitsToFloat(maxExcessBits) <= tolerance) {
+        numGroupsX = 0u;
+    }
+    maxExcessBits = 0u;
+}
@@ -0,0 +1,94 @@
+#version 430 core
+
+// Sleeping tiles, the GPU equivalent of TileActivity. A tile is the block of points of one workgroup of cloth_compute.glsl.
+// Executed before every iteration with one invocation per tile: decides from the movement that the last force stage has recorded
+// whether the tile is awake, freezing or asleep and appends the tiles that are not asleep to the active tile list, which holds the
+// arguments of the indirect dispatches of the iteration. Before the render pass, the list is replaced by the tiles that were executed
+// since the last render pass (renderTiles != 0). numGroupsX is cleared to zero before each execution,
+// numGroupsY and numGroupsZ are always 1.
+
+layout(local_size_x = 64) in;
+
+const uint AWAKE = 0u;
+const uint FREEZING = 1u;// executed one more step that only copies the points and clears their velocities
+const uint ASLEEP = 2u;// not dispatched, the input and output buffer contain the same data
+
+struct Tile {
+    uint moved;// bit p: a point of the tile has moved in the force stage of an iteration with parity p (see stepParity)
+    uint quietSteps;// amount of steps the awake tile has not moved
+    uint state;
+    uint executed;// 1 if the tile has been executed since the last render pass
+};
+
+layout(binding = 12, std430) buffer tileBuffer {
+    Tile tiles[];
+};
+
+// arguments of glDispatchComputeIndirect followed by the tiles of the workgroups
+layout(binding = 13, std430) buffer activeTileBuffer {
+    uint numGroupsX;
+    uint numGroupsY;
+    uint numGroupsZ;
+    uint activeTiles[];
+};
+
+uniform int tileCountX;// amount of tiles in x direction
+uniform int tileCountY;// amount of tiles in y direction
+uniform int stepParity;// parity of the upcoming iteration, the last iteration has recorded its movement in bit 1 - stepParity
+uniform int sleepSteps;// amount of steps a tile must not move until it falls asleep
+uniform int wakeAll;// 1 => all tiles are woken up (e.g. the wind has changed)
+uniform int renderTiles;// 1 => list the tiles that were executed since the last render pass instead of updating the states
+
+bool hasMoved(int x, int y) {
+    return (tiles[y * tileCountX + x].moved & (1u << uint(1 - stepParity))) != 0u;
+}
+
+// true if one of the 8 neighbor tiles has moved
+bool isDisturbed(int x, int y) {
+    for (int neighborY = max(0, y - 1); neighborY <= min(tileCountY - 1, y + 1); neighborY++) {
+        for (int neighborX = max(0, x - 1); neighborX <= min(tileCountX - 1, x + 1); neighborX++) {
+            if (hasMoved(neighborX, neighborY)) {
+                return true;
+            }
+        }
+    }
+    return false;
+}
+
+void main() {
+    int t = int(gl_GlobalInvocationID.x);
+    if (t >= tileCountX * tileCountY) {
+        return;
+    }
+
+    if (renderTiles != 0) {
+        if (tiles[t].executed != 0u) {
+            tiles[t].executed = 0u;
+            activeTiles[atomicAdd(numGroupsX, 1u)] = uint(t);
+        }
+        return;
+    }
+
+    int x = t % tileCountX;
+    int y = t / tileCountX;
+    // an awake tile only stays awake by its own movement, a sleeping tile is woken up by its neighbors
+    bool disturbed = wakeAll != 0 || (tiles[t].state == AWAKE ? hasMoved(x, y) : isDisturbed(x, y));
+    if (disturbed) {
+        tiles[t].quietSteps = 0u;
+        tiles[t].state = AWAKE;
+    } else if (tiles[t].state == AWAKE) {
+        tiles[t].quietSteps++;
+        if (tiles[t].quietSteps >= uint(sleepSteps)) {
+            tiles[t].state = FREEZING;
+        }
+    } else {
+        tiles[t].state = ASLEEP;
+    }
+    // the upcoming force stage records its movement in this bit, the other tiles only read the other bit
+    tiles[t].moved &= ~(1u << uint(stepParity));
+
+    if (tiles[t].state != ASLEEP) {
+        tiles[t].executed = 1u;
+        activeTiles[atomicAdd(numGroupsX, 1u)] = uint(t);
+    }
+}
@@ -0,0 +1,134 @@
+package massspringcloth.cloth;
+
+import massspringcloth.solver.CpuClothSolver;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the geodesic distances of the {@link LongRangeAttachments} and that they keep a tall hanging cloth from stretching
+ * (the attachments are applied by CpuClothSolver.store after the integration of the forces).
+ *
+ * @author Mirco Werner
+ */
+class LongRangeAttachmentsTest {
+    private static final float SQRT_2 = (float) Math.sqrt(2);
+
+    /**
+     * @return grid of points with a distance of 1 in the xy-plane, the given points (x, y) are locked
+     */
+    private static Point[][] createPoints(int width, int height, int... locked) {
+        Point[][] points = new Point[width][height];
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                points[w][h] = new Point(w, 100 + h, 0, 0, 0, 0, 0);
+            }
+        }
+        for (int k = 0; k < locked.length; k += 2) {
+            points[locked[k]][locked[k + 1]].locked = 1;
+        }
+        return points;
+    }
+
+    /**
+     * @return length of the shortest path along horizontal, vertical and diagonal springs that are stretched by {@link MassSpringModel#MAX_STRETCH}
+     */
+    private static float getGridDistance(int dx, int dy) {
+        int diagonal = Math.min(Math.abs(dx), Math.abs(dy));
+        int straight = Math.max(Math.abs(dx), Math.abs(dy)) - diagonal;
+        return MassSpringModel.MAX_STRETCH * (straight + diagonal * SQRT_2);
+    }
+
+    @Test
+    void distancesFollowTheSprings() {
+        int width = 7;
+        int height = 5;
+        LongRangeAttachments attachments = new LongRangeAttachments(new MassSpringModel(width, height, createPoints(width, height, 0, 0)));
+        assertEquals(LongRangeAttachments.NO_ANCHOR, attachments.getAnchor(0), "locked points have no anchor");
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                if (i != 0) {
+                    assertEquals(0, attachments.getAnchor(i));
+                    assertEquals(getGridDistance(x, y), attachments.getDistance(i), 1e-5f, "point " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pointsAreAttachedToTheNearestLockedPoint() {
+        int width = 9;
+        int height = 3;
+        LongRangeAttachments attachments = new LongRangeAttachments(new MassSpringModel(width, height, createPoints(width, height, 0, 2, 8, 2)));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                if (x == 4 || attachments.getAnchor(i) == LongRangeAttachments.NO_ANCHOR) {
+                    continue; // equally far from both locked points, or locked
+                }
+                int anchorX = x < 4 ? 0 : 8;
+                assertEquals(2 * width + anchorX, attachments.getAnchor(i), "point " + x + ", " + y);
+                assertEquals(getGridDistance(x - anchorX, y - 2), attachments.getDistance(i), 1e-5f, "point " + x + ", " + y);
+            }
+        }
+    }
+
+    @Test
+    void distancesGoAroundRemovedPoints() {
+        int width = 11;
+        int height = 11;
+        Point[][] points = createPoints(width, height, 0, 0);
+        ClothMask mask = new ClothMask(width, height);
+        for (int y = 0; y < 8; y++) {
+            mask.setActive(5, y, false); // wall between the locked point and (8, 0), open above
+        }
+        LongRangeAttachments attachments = new LongRangeAttachments(new MassSpringModel(width, height, points, mask));
+        // around the top end of the wall at (5, 8)
+        float detour = getGridDistance(5, 8) + getGridDistance(3, -8);
+        assertEquals(detour, attachments.getDistance(8), 1e-4f);
+    }
+
+    /**
+     * Simulates a tall cloth that hangs from its top corners with a single Jacobi relaxation pass per step and determines how far
+     * the points move away from their anchors.
+     *
+     * @return largest distance of a point to its anchor relative to the distance the springs allow
+     */
+    private static float getMaxStrain(boolean attachmentsEnabled) {
+        int width = 20;
+        int height = 60;
+        MassSpringModel model = new MassSpringModel(width, height, createPoints(width, height, 0, height - 1, width - 1, height - 1));
+        LongRangeAttachments attachments = new LongRangeAttachments(model);
+        CpuClothSolver solver = new CpuClothSolver(model, 1, false, 1, 1.5f, new Vector3f(0), 500);
+        if (attachmentsEnabled) {
+            solver.setLongRangeAttachments(attachments);
+        }
+        float[] positions = new float[width * height * 4];
+        float maxStrain = 0;
+        for (int step = 0; step < 400; step++) {
+            solver.simulate(1, 0.01f);
+            solver.readPositions(positions);
+            for (int i = 0; i < width * height; i++) {
+                int anchor = attachments.getAnchor(i);
+                if (anchor != LongRangeAttachments.NO_ANCHOR) {
+                    float length = new Vector3f(positions[i * 4], positions[i * 4 + 1], positions[i * 4 + 2])
+                            .distance(positions[anchor * 4], positions[anchor * 4 + 1], positions[anchor * 4 + 2]);
+                    maxStrain = Math.max(maxStrain, length / attachments.getDistance(i));
+                }
+            }
+        }
+        return maxStrain;
+    }
+
+    @Test
+    void attachmentsLimitTheStrainOfAHangingCloth() {
+        float strain = getMaxStrain(true);
+        // the relaxation pass after the attachments may move a point slightly further away
+        assertTrue(strain <= 1.02f, "strain with attachments: " + strain);
+        float strainWithoutAttachments = getMaxStrain(false);
+        assertTrue(strainWithoutAttachments > 1.2f, "strain without attachments: " + strainWithoutAttachments);
+    }
+}
@@ -0,0 +1,29 @@
+package massspringcloth.cloth;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the closed form of {@link MassSpringModel#getRestLengthIndex(int, int, int, int, int)} finds the spring of
+ * {@link MassSpringModel#SPRING_X}, {@link MassSpringModel#SPRING_Y} in both directions.
+ *
+ * @author Mirco Werner
+ */
+class MassSpringModelTest {
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 5;
+
+    @Test
+    void restLengthIndexMatchesTheSpringOffsets() {
+        int count = WIDTH * HEIGHT;
+        int i = 2 * WIDTH + 3; // inner point, all 12 neighbors exist
+        for (int s = 0; s < MassSpringModel.SPRINGS; s++) {
+            int dx = MassSpringModel.SPRING_X[s];
+            int dy = MassSpringModel.SPRING_Y[s];
+            int j = i + dy * WIDTH + dx;
+            assertEquals(s * count + i, MassSpringModel.getRestLengthIndex(WIDTH, count, i, dx, dy), "spring " + s);
+            assertEquals(s * count + i, MassSpringModel.getRestLengthIndex(WIDTH, count, j, -dx, -dy), "reversed spring " + s);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package massspringcloth.cloth;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the springs and the coloring of the {@link MeshClothModel}, the in-place solvers of the mesh rely on both,
+ * and that the Morton order keeps the input order recoverable and the winding of the triangles.
+ *
+ * @author Mirco Werner
+ */
+class MeshClothModelTest {
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 5;
+
+    /**
+     * @return grid of WIDTH x HEIGHT points in the xy-plane, two counter-clockwise triangles per cell
+     */
+    static MeshClothModel createGridModel(boolean mortonOrder) {
+        Point[] points = new Point[WIDTH * HEIGHT];
+        float[] textureCoordinates = new float[WIDTH * HEIGHT * 2];
+        for (int h = 0; h < HEIGHT; h++) {
+            for (int w = 0; w < WIDTH; w++) {
+                points[h * WIDTH + w] = new Point(w, h, 0, 0, 0, 0, 0);
+                textureCoordinates[(h * WIDTH + w) * 2] = w / 4f;
+                textureCoordinates[(h * WIDTH + w) * 2 + 1] = h / 4f;
+            }
+        }
+        int[] triangles = new int[(WIDTH - 1) * (HEIGHT - 1) * 6];
+        int t = 0;
+        for (int h = 0; h < HEIGHT - 1; h++) {
+            for (int w = 0; w < WIDTH - 1; w++) {
+                int bottomLeft = h * WIDTH + w;
+                triangles[t++] = bottomLeft;
+                triangles[t++] = bottomLeft + 1;
+                triangles[t++] = bottomLeft + WIDTH + 1;
+                triangles[t++] = bottomLeft;
+                triangles[t++] = bottomLeft + WIDTH + 1;
+                triangles[t++] = bottomLeft + WIDTH;
+            }
+        }
+        return new MeshClothModel(points, textureCoordinates, triangles, mortonOrder);
+    }
+
+    private static void assertSpringsSymmetricAndColored(MeshClothModel model) {
+        int[] springOffsets = model.getSpringOffsets();
+        int[] bendOffsets = model.getBendOffsets();
+        int[] springTargets = model.getSpringTargets();
+        float[] restLengths = model.getRestLengths();
+        int[] colors = model.getColors();
+        for (int i = 0; i < model.getPointCount(); i++) {
+            assertTrue(springOffsets[i] <= bendOffsets[i] && bendOffsets[i] <= springOffsets[i + 1], "bend springs outside of row " + i);
+            for (int s = springOffsets[i]; s < springOffsets[i + 1]; s++) {
+                int j = springTargets[s];
+                assertNotEquals(i, j, "spring of point " + i + " to itself");
+                assertNotEquals(colors[i], colors[j], "spring between points " + i + " and " + j + " of the same color");
+
+                // the row of the target contains the spring as well, with the same rest length and kind (structural or bend)
+                int opposite = -1;
+                for (int r = springOffsets[j]; r < springOffsets[j + 1]; r++) {
+                    if (springTargets[r] == i) {
+                        assertEquals(-1, opposite, "spring between points " + i + " and " + j + " is stored twice");
+                        opposite = r;
+                    }
+                }
+                assertNotEquals(-1, opposite, "spring from point " + i + " to " + j + " is missing in the row of " + j);
+                assertEquals(restLengths[s], restLengths[opposite], "rest lengths of the spring between points " + i + " and " + j);
+                assertEquals(s < bendOffsets[i], opposite < bendOffsets[j], "kind of the spring between points " + i + " and " + j);
+            }
+        }
+
+        // every point belongs to the list of its color exactly once
+        int[] colorOffsets = model.getColorOffsets();
+        int[] colorPoints = model.getColorPoints();
+        assertEquals(model.getPointCount(), colorOffsets[model.getColorCount()]);
+        boolean[] listed = new boolean[model.getPointCount()];
+        for (int c = 0; c < model.getColorCount(); c++) {
+            for (int k = colorOffsets[c]; k < colorOffsets[c + 1]; k++) {
+                assertEquals(c, colors[colorPoints[k]]);
+                assertTrue(!listed[colorPoints[k]], "point " + colorPoints[k] + " is listed twice");
+                listed[colorPoints[k]] = true;
+            }
+        }
+    }
+
+    @Test
+    void gridSpringsAreSymmetricAndColored() {
+        assertSpringsSymmetricAndColored(createGridModel(false));
+        assertSpringsSymmetricAndColored(createGridModel(true));
+    }
+
+    @Test
+    void sphereSpringsAreSymmetricAndColored() throws Exception {
+        assertSpringsSymmetricAndColored(MeshClothModel.fromObj("models/sphere.obj", 30, new Vector3f(0, 60, 0), point -> false, true));
+    }
+
+    @Test
+    void springBetweenPointsAtTheSamePositionIsKept() {
+        Point[] points = {new Point(0, 0, 0, 0, 0, 0, 0), new Point(0, 0, 0, 0, 0, 0, 0), new Point(1, 0, 0, 0, 0, 0, 0)};
+        MeshClothModel model = new MeshClothModel(points, new float[6], new int[]{0, 1, 2}, false);
+        int[] springOffsets = model.getSpringOffsets();
+        assertEquals(1, model.getSpringTargets()[springOffsets[0]], "spring from point 0 to the point at the same position");
+        assertEquals(0, model.getRestLengths()[springOffsets[0]]);
+        assertSpringsSymmetricAndColored(model);
+    }
+
+    @Test
+    void mortonOrderRestoresInputOrderAndKeepsWinding() {
+        // the points of the grid in random order, the triangles refer to the shuffled points
+        MeshClothModel grid = createGridModel(false);
+        int pointCount = grid.getPointCount();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < pointCount; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(7));
+        int[] shuffledIndex = new int[pointCount]; // grid point -> shuffled point
+        Point[] points = new Point[pointCount];
+        float[] textureCoordinates = new float[pointCount * 2];
+        float[] inputPositions = new float[pointCount * 4];
+        float[] positions = grid.getPositions();
+        for (int k = 0; k < pointCount; k++) {
+            int i = order.get(k);
+            shuffledIndex[i] = k;
+            points[k] = new Point(positions[i * 4], positions[i * 4 + 1], positions[i * 4 + 2], 0, 0, 0, 0);
+            System.arraycopy(positions, i * 4, inputPositions, k * 4, 4);
+            System.arraycopy(grid.getTex(), i * 2, textureCoordinates, k * 2, 2);
+        }
+        int[] triangles = new int[grid.getIndices().length];
+        for (int t = 0; t < triangles.length; t++) {
+            triangles[t] = shuffledIndex[grid.getIndices()[t]];
+        }
+
+        MeshClothModel model = new MeshClothModel(points, textureCoordinates, triangles, true);
+
+        assertArrayEquals(inputPositions, model.toOriginalOrder(model.getPositions(), 4), 0f);
+        int[] originalIndices = model.getOriginalIndices();
+        for (int i = 0; i < pointCount; i++) {
+            assertArrayEquals(Arrays.copyOfRange(inputPositions, originalIndices[i] * 4, originalIndices[i] * 4 + 4),
+                    Arrays.copyOfRange(model.getPositions(), i * 4, i * 4 + 4), 0f, "position of model point " + i);
+        }
+
+        // every triangle of the model is a triangle of the input with the same winding, i.e. the same normal
+        Map<String, Integer> inputTriangles = new HashMap<>();
+        for (int t = 0; t < triangles.length; t += 3) {
+            inputTriangles.put(triangleKey(triangles[t], triangles[t + 1], triangles[t + 2]), t);
+        }
+        int[] indices = model.getIndices();
+        assertEquals(triangles.length, indices.length);
+        for (int t = 0; t < indices.length; t += 3) {
+            int a = originalIndices[indices[t]];
+            int b = originalIndices[indices[t + 1]];
+            int c = originalIndices[indices[t + 2]];
+            Integer input = inputTriangles.remove(triangleKey(a, b, c));
+            assertNotNull(input, "triangle " + t / 3 + " of the model is not a triangle of the input or appears twice");
+            Vector3f normal = triangleNormal(model.getPositions(), indices[t], indices[t + 1], indices[t + 2]);
+            Vector3f inputNormal = triangleNormal(inputPositions, triangles[input], triangles[input + 1], triangles[input + 2]);
+            assertTrue(normal.equals(inputNormal, 1e-6f), "winding of triangle " + t / 3 + ": " + normal + " instead of " + inputNormal);
+        }
+    }
+
+    /**
+     * @return the points of a triangle, independent of the winding and the first point
+     */
+    private static String triangleKey(int a, int b, int c) {
+        int[] sorted = {a, b, c};
+        Arrays.sort(sorted);
+        return Arrays.toString(sorted);
+    }
+
+    private static Vector3f triangleNormal(float[] positions, int a, int b, int c) {
+        Vector3f pointA = new Vector3f(positions[a * 4], positions[a * 4 + 1], positions[a * 4 + 2]);
+        Vector3f edge1 = new Vector3f(positions[b * 4], positions[b * 4 + 1], positions[b * 4 + 2]).sub(pointA);
+        Vector3f edge2 = new Vector3f(positions[c * 4], positions[c * 4 + 1], positions[c * 4 + 2]).sub(pointA);
+        return edge1.cross(edge2);
+    }
+}
@@ -0,0 +1,148 @@
+package massspringcloth.cloth;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import renderengine.utils.IOUtils;
+
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.lwjgl.util.shaderc.Shaderc.*;
+
+/**
+ * Compiles every variant of the compute shaders without an OpenGL context and checks that the active uniforms of each
+ * variant are exactly the uniforms the cloths create. The GLSL compiler removes unused uniforms, creating one of them
+ * fails at runtime, and an active uniform that is never created is never set.
+ *
+ * @author Mirco Werner
+ */
+class ShaderUniformsTest {
+    private static final String[][] EXECUTION_MODE_DEFINES = {{}, {"FUSED"}, {"TILED"}};
+    // optional uniform, looked up by the ComputeShaderProgram itself
+    private static final String WORK_GROUP_OFFSET = "workGroupOffset";
+    private static final int OP_NAME = 5;
+    private static final int OP_VARIABLE = 59;
+    private static final int STORAGE_CLASS_UNIFORM_CONSTANT = 0;
+
+    private static long compiler;
+    private static long options;
+
+    @BeforeAll
+    static void initCompiler() {
+        compiler = shaderc_compiler_initialize();
+        options = shaderc_compile_options_initialize();
+        shaderc_compile_options_set_target_env(options, shaderc_target_env_opengl, shaderc_env_version_opengl_4_5);
+        shaderc_compile_options_set_auto_bind_uniforms(options, true);
+        shaderc_compile_options_set_auto_map_locations(options, true);
+        // remove unused uniforms like the driver does, the debug info keeps the names of the remaining ones
+        shaderc_compile_options_set_optimization_level(options, shaderc_optimization_level_performance);
+        shaderc_compile_options_set_generate_debug_info(options);
+    }
+
+    @AfterAll
+    static void releaseCompiler() {
+        shaderc_compile_options_release(options);
+        shaderc_compiler_release(compiler);
+    }
+
+    @Test
+    void everyClothComputeVariantReadsItsUniforms() throws Exception {
+        for (String[] executionModeDefines : EXECUTION_MODE_DEFINES) {
+            for (EStorageMode storageMode : EStorageMode.values()) {
+                for (EIntegrator integrator : EIntegrator.values()) {
+                    String[] defines = MassSpringCloth.getComputeDefines(storageMode, integrator, executionModeDefines);
+                    List<String> uniforms = MassSpringCloth.getComputeUniforms(storageMode, integrator, executionModeDefines);
+                    assertActiveUniforms("shaders/cloth_compute.glsl", defines, uniforms);
+                }
+            }
+        }
+    }
+
+    @Test
+    void everyMeshComputeVariantReadsItsUniforms() throws Exception {
+        List<String> uniforms = Arrays.asList(MeshCloth.COMPUTE_UNIFORMS);
+        for (EIntegrator integrator : EIntegrator.values()) {
+            assertActiveUniforms("shaders/cloth_mesh_compute.glsl", MeshCloth.getComputeDefines(integrator), uniforms);
+        }
+    }
+
+    @Test
+    void controlShadersReadTheirUniforms() throws Exception {
+        assertActiveUniforms("shaders/relaxation_control.glsl", new String[0], Arrays.asList(MassSpringCloth.RELAXATION_CONTROL_UNIFORMS));
+        assertActiveUniforms("shaders/sleep_control.glsl", new String[0], Arrays.asList(MassSpringCloth.SLEEP_CONTROL_UNIFORMS));
+    }
+
+    private static void assertActiveUniforms(String fileName, String[] defines, List<String> uniforms) throws Exception {
+        Set<String> activeUniforms = getActiveUniforms(fileName, defines);
+        activeUniforms.remove(WORK_GROUP_OFFSET);
+        assertEquals(new TreeSet<>(uniforms), activeUniforms, fileName + " " + Arrays.toString(defines));
+    }
+
+    /**
+     * @return names of the uniforms that remain in the optimized SPIR-V of the shader variant
+     */
+    private static Set<String> getActiveUniforms(String fileName, String[] defines) throws Exception {
+        String shaderCode = insertDefines(IOUtils.readAllLines(fileName), defines);
+        long result = shaderc_compile_into_spv(compiler, shaderCode, shaderc_glsl_compute_shader, fileName, "main", options);
+        try {
+            if (shaderc_result_get_compilation_status(result) != shaderc_compilation_status_success) {
+                fail("Error compiling " + fileName + " " + Arrays.toString(defines) + ": " + shaderc_result_get_error_message(result));
+            }
+            IntBuffer words = shaderc_result_get_bytes(result).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            Map<Integer, String> names = new HashMap<>();
+            Set<Integer> uniformIds = new HashSet<>();
+            for (int p = 5; p < words.limit(); ) { // skip the header
+                int opcode = words.get(p) & 0xFFFF;
+                int wordCount = words.get(p) >>> 16;
+                if (opcode == OP_NAME) {
+                    names.put(words.get(p + 1), readString(words, p + 2, p + wordCount));
+                } else if (opcode == OP_VARIABLE && words.get(p + 3) == STORAGE_CLASS_UNIFORM_CONSTANT) {
+                    uniformIds.add(words.get(p + 2));
+                }
+                p += wordCount;
+            }
+            Set<String> activeUniforms = new TreeSet<>();
+            for (int id : uniformIds) {
+                activeUniforms.add(names.get(id));
+            }
+            return activeUniforms;
+        } finally {
+            shaderc_result_release(result);
+        }
+    }
+
+    private static String readString(IntBuffer words, int start, int end) {
+        StringBuilder builder = new StringBuilder();
+        for (int p = start; p < end; p++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                char c = (char) ((words.get(p) >>> shift) & 0xFF);
+                if (c == 0) {
+                    return builder.toString();
+                }
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    // same as AShaderProgram.insertDefines
+    private static String insertDefines(String shaderCode, String... defines) {
+        int versionEnd = shaderCode.indexOf('\n') + 1;
+        StringBuilder builder = new StringBuilder(shaderCode.substring(0, versionEnd));
+        for (String define : defines) {
+            builder.append("#define ").append(define).append('\n');
+        }
+        builder.append(shaderCode.substring(versionEnd));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.ERelaxationMode;
+import massspringcloth.cloth.MassSpringModel;
+import massspringcloth.cloth.Point;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The {@link ERelaxationMode#CONVERGENT} relaxation of a tall cloth that hangs from its top corners must reach its tolerance
+ * long before the maximum amount of rounds, and a tighter tolerance must take more rounds and stretch the cloth less
+ * (starting from a single {@link ERelaxationMode#GAUSS_SEIDEL} round per step).
+ *
+ * @author Mirco Werner
+ */
+class ConvergentRelaxationTest {
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 60;
+    private static final int WARM_UP_STEPS = 150;
+    private static final int MEASURED_STEPS = 250;
+    private static final float TIME_STEP = 0.01f;
+    private static final int MAX_ROUNDS = 200;
+    private static final float[] TOLERANCES = {0.03f, 0.015f, 0.011f}; // descending
+
+    /**
+     * Result of the simulation of the hanging cloth.
+     */
+    private static final class Result {
+        private final float averageRounds; // average amount of relaxation rounds per step after the cloth has settled
+        private final int maxRounds; // largest amount of relaxation rounds of a step after the cloth has settled
+        private final float maxExcess; // largest over-extension of a spring relative to its maximum resting length after the last step
+        private final float bottomHeight; // height of the center of the bottom row after the last step
+
+        private Result(float averageRounds, int maxRounds, float maxExcess, float bottomHeight) {
+            this.averageRounds = averageRounds;
+            this.maxRounds = maxRounds;
+            this.maxExcess = maxExcess;
+            this.bottomHeight = bottomHeight;
+        }
+
+        @Override
+        public String toString() {
+            return "rounds " + averageRounds + " (at most " + maxRounds + "), excess " + maxExcess + ", bottom height " + bottomHeight;
+        }
+    }
+
+    private static Result simulate(ERelaxationMode relaxationMode, float tolerance) {
+        Point[][] points = new Point[WIDTH][HEIGHT];
+        for (int h = 0; h < HEIGHT; h++) {
+            for (int w = 0; w < WIDTH; w++) {
+                points[w][h] = new Point(w, 100 + h, 0, 0, 0, 0, h == HEIGHT - 1 && (w == 0 || w == WIDTH - 1) ? 1 : 0);
+            }
+        }
+        MassSpringModel model = new MassSpringModel(WIDTH, HEIGHT, points);
+        CpuClothSolver solver = new CpuClothSolver(model, 1, false, 1, 1.5f, new Vector3f(0), 500);
+        solver.setRelaxationMode(relaxationMode);
+        solver.setRelaxationTolerance(tolerance, MAX_ROUNDS);
+
+        long rounds = 0;
+        int maxRounds = 0;
+        for (int step = 0; step < WARM_UP_STEPS + MEASURED_STEPS; step++) {
+            solver.simulate(1, TIME_STEP);
+            if (step >= WARM_UP_STEPS) {
+                rounds += solver.getRelaxationRounds();
+                maxRounds = Math.max(maxRounds, solver.getRelaxationRounds());
+            }
+        }
+        float[] positions = new float[WIDTH * HEIGHT * 4];
+        solver.readPositions(positions);
+        return new Result(rounds / (float) MEASURED_STEPS, maxRounds, getMaxExcess(model, positions), positions[WIDTH / 2 * 4 + 1]);
+    }
+
+    /**
+     * @return largest over-extension of a spring relative to its maximum resting length, 0 if no spring is over-extended
+     */
+    private static float getMaxExcess(MassSpringModel model, float[] positions) {
+        int count = WIDTH * HEIGHT;
+        float maxExcess = 0;
+        for (int s = 0; s < MassSpringModel.SPRINGS; s++) {
+            for (int i = 0; i < count; i++) {
+                float restLength = model.getRestLengths()[s * count + i];
+                if (!MassSpringModel.hasSpring(restLength)) {
+                    continue;
+                }
+                int j = i + MassSpringModel.SPRING_Y[s] * WIDTH + MassSpringModel.SPRING_X[s];
+                float length = (float) Math.sqrt(square(positions[j * 4] - positions[i * 4]) + square(positions[j * 4 + 1] - positions[i * 4 + 1])
+                        + square(positions[j * 4 + 2] - positions[i * 4 + 2]));
+                float maxRestingLength = MassSpringModel.MAX_STRETCH * restLength;
+                maxExcess = Math.max(maxExcess, (length - maxRestingLength) / maxRestingLength);
+            }
+        }
+        return maxExcess;
+    }
+
+    private static float square(float value) {
+        return value * value;
+    }
+
+    @Test
+    void convergentRelaxationReachesItsTolerance() {
+        Result previous = simulate(ERelaxationMode.GAUSS_SEIDEL, 0);
+        for (float tolerance : TOLERANCES) {
+            Result result = simulate(ERelaxationMode.CONVERGENT, tolerance);
+            String message = "tolerance " + tolerance + ": " + result;
+            assertTrue(result.maxRounds < MAX_ROUNDS, "the relaxation does not converge, " + message);
+            // the last round measures each spring before the passes of the later colors move its other end, this may stretch it slightly again
+            assertTrue(result.maxExcess <= 2 * tolerance, "a spring exceeds the tolerance, " + message);
+            assertTrue(result.averageRounds > previous.averageRounds, "a tighter tolerance does not take more rounds, " + message);
+            assertTrue(result.bottomHeight > previous.bottomHeight, "a tighter tolerance does not stretch the cloth less, " + message);
+            previous = result;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.EIntegrator;
+import massspringcloth.cloth.ERelaxationMode;
+import massspringcloth.cloth.MassSpringModel;
+import massspringcloth.cloth.Point;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Degenerate configurations of the CPU solver, e.g. points at the same position, must not produce NaN.
+ *
+ * @author Mirco Werner
+ */
+class CpuClothSolverTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 8;
+
+    /**
+     * @return cloth whose points are all on one line (all triangles are degenerate, no normal), only the top left point is locked
+     */
+    private static MassSpringModel createCollinearModel() {
+        Point[][] points = new Point[WIDTH][HEIGHT];
+        for (int h = 0; h < HEIGHT; h++) {
+            for (int w = 0; w < WIDTH; w++) {
+                points[w][h] = new Point(w + h * WIDTH, 20, 0, 0, 0, 0, h == HEIGHT - 1 && w == 0 ? 1 : 0);
+            }
+        }
+        return new MassSpringModel(WIDTH, HEIGHT, points);
+    }
+
+    /**
+     * @return cloth whose points are all at the same position, every spring exists with rest length 0, only the top left point is locked
+     */
+    private static MassSpringModel createCollapsedModel() {
+        Point[][] points = new Point[WIDTH][HEIGHT];
+        for (int h = 0; h < HEIGHT; h++) {
+            for (int w = 0; w < WIDTH; w++) {
+                points[w][h] = new Point(0, 20, 0, 0, 0, 0, h == HEIGHT - 1 && w == 0 ? 1 : 0);
+            }
+        }
+        return new MassSpringModel(WIDTH, HEIGHT, points);
+    }
+
+    private static void assertFinite(CpuClothSolver solver) {
+        float[] positions = new float[WIDTH * HEIGHT * 4];
+        solver.readPositions(positions);
+        for (float value : positions) {
+            assertTrue(Float.isFinite(value), "position is not finite");
+        }
+        for (float value : solver.getRenderDataNormal()) {
+            assertTrue(Float.isFinite(value), "normal is not finite");
+        }
+    }
+
+    private static void assertStaysFinite(MassSpringModel model, EIntegrator integrator) {
+        CpuClothSolver solver = new CpuClothSolver(model, 1, false, 1, 0.5f, new Vector3f(0, 0, 5), 100);
+        solver.setIntegrator(integrator);
+        solver.simulate(10, 0.01f);
+        assertFinite(solver);
+    }
+
+    @Test
+    void collinearClothStaysFiniteWithExplicitEuler() {
+        assertStaysFinite(createCollinearModel(), EIntegrator.EXPLICIT_EULER);
+    }
+
+    @Test
+    void collapsedClothKeepsItsSprings() {
+        MassSpringModel model = createCollapsedModel();
+        int count = WIDTH * HEIGHT;
+        for (int s = 0; s < MassSpringModel.SPRINGS; s++) {
+            for (int i = 0; i < count; i++) {
+                int targetX = i % WIDTH + MassSpringModel.SPRING_X[s];
+                int targetY = i / WIDTH + MassSpringModel.SPRING_Y[s];
+                boolean inside = targetX >= 0 && targetX < WIDTH && targetY < HEIGHT;
+                assertEquals(inside, MassSpringModel.hasSpring(model.getRestLengths()[s * count + i]), "spring " + s + " of point " + i);
+            }
+        }
+    }
+
+    @Test
+    void collapsedClothStaysFiniteWithExplicitEuler() {
+        CpuClothSolver solver = new CpuClothSolver(createCollapsedModel(), 1, false, 1, 0.5f, new Vector3f(0, 0, 5), 100);
+        for (int frame = 0; frame < 10; frame++) {
+            solver.simulateAdaptive(0.05f);
+        }
+        assertFinite(solver);
+    }
+
+    @Test
+    void collapsedClothStaysFiniteWithXpbd() {
+        assertStaysFinite(createCollapsedModel(), EIntegrator.XPBD);
+    }
+
+    @Test
+    void inPlaceGaussSeidelRelaxationDoesNotDependOnThreads() {
+        Point[][] points = new Point[WIDTH][HEIGHT];
+        for (int h = 0; h < HEIGHT; h++) {
+            for (int w = 0; w < WIDTH; w++) {
+                points[w][h] = new Point(w, 20 + h, 0, 0, 0, 0, h == HEIGHT - 1 ? 1 : 0);
+            }
+        }
+        float[][] positions = new float[2][WIDTH * HEIGHT * 4];
+        for (int run = 0; run < 2; run++) {
+            CpuClothSolver solver = new CpuClothSolver(new MassSpringModel(WIDTH, HEIGHT, points), 1, false, 1, 0.5f, new Vector3f(0, 0, 5), 100);
+            solver.setRelaxationMode(ERelaxationMode.GAUSS_SEIDEL);
+            solver.setForkJoinPool(run == 0 ? null : new ForkJoinPool(4));
+            for (int frame = 0; frame < 20; frame++) {
+                solver.simulateAdaptive(0.05f);
+            }
+            solver.readPositions(positions[run]);
+        }
+        assertArrayEquals(positions[0], positions[1], 0f);
+        assertTrue(positions[0][WIDTH / 2 * 4 + 1] < 20, "the cloth does not stretch under gravity");
+    }
+}
@@ -0,0 +1,56 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.EIntegrator;
+import massspringcloth.cloth.MassSpringModel;
+import massspringcloth.cloth.Point;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The stiffness of the XPBD constraints must not depend on the amount of sub-steps and constraint iterations once they have converged.
+ *
+ * @author Mirco Werner
+ */
+class CpuClothSolverXpbdTest {
+    private static final int WIDTH = 10;
+    private static final int HEIGHT = 10;
+
+    /**
+     * Lets a cloth that is locked at its top row hang until it is at rest.
+     *
+     * @return height of the center of the bottom row
+     */
+    private static float hang(int subSteps, int iterations) {
+        Point[][] points = new Point[WIDTH][HEIGHT];
+        for (int h = 0; h < HEIGHT; h++) {
+            for (int w = 0; w < WIDTH; w++) {
+                points[w][h] = new Point(w, 20 + h, 0, 0, 0, 0, h == HEIGHT - 1 ? 1 : 0);
+            }
+        }
+        CpuClothSolver solver = new CpuClothSolver(new MassSpringModel(WIDTH, HEIGHT, points), 1, false, 1, 1.5f, new Vector3f(0), 500);
+        solver.setIntegrator(EIntegrator.XPBD);
+        solver.setXpbdSubSteps(subSteps);
+        solver.setXpbdIterations(iterations);
+        for (int frame = 0; frame < 200; frame++) {
+            solver.simulateAdaptive(0.05f);
+        }
+        float[] positions = new float[WIDTH * HEIGHT * 4];
+        solver.readPositions(positions);
+        for (float value : positions) {
+            assertTrue(Float.isFinite(value), "position is not finite");
+        }
+        return positions[WIDTH / 2 * 4 + 1];
+    }
+
+    @Test
+    void sagDoesNotDependOnSubStepsAndIterations() {
+        float reference = hang(20, 16);
+        assertTrue(reference < 20, "the cloth does not stretch under gravity");
+        assertEquals(reference, hang(20, 32), 1e-3f);
+        assertEquals(reference, hang(5, 16), 1e-2f);
+        assertEquals(reference, hang(20, 4), 1e-2f);
+    }
+}
@@ -0,0 +1,47 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.MassSpringModel;
+import massspringcloth.cloth.Point;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Backward Euler step of a cloth with two points at the same position.
+ *
+ * @author Mirco Werner
+ */
+class ImplicitSpringSystemTest {
+    @Test
+    void coincidentPointsGiveFiniteVelocityChange() {
+        int width = 4;
+        int height = 4;
+        Point[][] points = new Point[width][height];
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                points[w][h] = new Point(w, h, 0, 0, 0, 0, 0);
+            }
+        }
+        MassSpringModel model = new MassSpringModel(width, height, points);
+        ImplicitSpringSystem system = new ImplicitSpringSystem(width, height, 100, model.getRestLengths());
+
+        PointBuffer point = new PointBuffer(width * height);
+        for (int i = 0; i < width * height; i++) {
+            point.positionX[i] = i % width;
+            point.positionY[i] = i / width;
+            point.velocityY[i] = -1;
+        }
+        point.positionX[5] = point.positionX[6]; // the spring between point 5 and 6 collapsed during the simulation
+        point.velocityX[5] = 1;
+
+        float[] force = new float[width * height * 3];
+        system.assemble(point);
+        int iterations = system.solve(point, force, new float[width * height], 1, 0.5f, 0.1f);
+
+        assertTrue(iterations > 0, "the system was not solved");
+        for (float value : system.getVelocityChange()) {
+            assertTrue(Float.isFinite(value), "velocity change is not finite");
+        }
+        assertTrue(system.getVelocityChange()[5 * 3] < 0, "the collapsed spring does not resist the relative motion");
+    }
+}
@@ -0,0 +1,102 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.ClothMask;
+import massspringcloth.cloth.EIntegrator;
+import massspringcloth.cloth.ERelaxationMode;
+import massspringcloth.cloth.MassSpringModel;
+import massspringcloth.cloth.Point;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A cloth that is cut out of a larger grid by a {@link ClothMask} must behave exactly like the same cloth without a mask,
+ * the removed points neither exert forces nor change the order in which the forces are summed up.
+ *
+ * @author Mirco Werner
+ */
+class MaskedClothTest {
+    private static final int SIZE = 40; // points per side of the plane
+    private static final int GRID_SIZE = 60; // points per side of the grid the plane is cut out of
+    private static final int OFFSET = 10; // even, the plane keeps the colors of the Gauss-Seidel relaxation
+    private static final int FRAMES = 10;
+
+    /**
+     * @param offset offset of the plane in the grid
+     * @param size   points per side of the grid
+     * @return hanging plane whose top row is locked, the points outside of the plane continue the grid
+     */
+    private static Point[][] createPoints(int offset, int size) {
+        Point[][] points = new Point[size][size];
+        for (int h = 0; h < size; h++) {
+            for (int w = 0; w < size; w++) {
+                int x = w - offset;
+                int y = h - offset;
+                points[w][h] = new Point(x * 0.5f, 20 + y * 0.5f, 0, 0, 0, 0, y == SIZE - 1 ? 1 : 0);
+            }
+        }
+        return points;
+    }
+
+    private static CpuClothSolver createSolver(MassSpringModel model, EIntegrator integrator, ERelaxationMode relaxationMode) {
+        CpuClothSolver solver = new CpuClothSolver(model, 1, false, 1, 0.5f, new Vector3f(0, 0, 5), 100);
+        solver.setIntegrator(integrator);
+        solver.setRelaxationMode(relaxationMode);
+        return solver;
+    }
+
+    private static void assertSameSimulation(EIntegrator integrator, ERelaxationMode relaxationMode) {
+        CpuClothSolver plane = createSolver(new MassSpringModel(SIZE, SIZE, createPoints(0, SIZE)), integrator, relaxationMode);
+        Point[][] gridPoints = createPoints(OFFSET, GRID_SIZE);
+        ClothMask mask = new ClothMask(GRID_SIZE, GRID_SIZE);
+        for (int h = 0; h < GRID_SIZE; h++) {
+            for (int w = 0; w < GRID_SIZE; w++) {
+                mask.setActive(w, h, w >= OFFSET && w < OFFSET + SIZE && h >= OFFSET && h < OFFSET + SIZE);
+            }
+        }
+        MassSpringModel maskedModel = new MassSpringModel(GRID_SIZE, GRID_SIZE, gridPoints, mask);
+        assertEquals(SIZE * SIZE, maskedModel.getActivePoints().length);
+        CpuClothSolver masked = createSolver(maskedModel, integrator, relaxationMode);
+
+        for (int frame = 0; frame < FRAMES; frame++) {
+            assertEquals(plane.simulateAdaptive(0.05f), masked.simulateAdaptive(0.05f));
+        }
+
+        float[] planePositions = new float[SIZE * SIZE * 4];
+        float[] planeVelocities = new float[SIZE * SIZE * 4];
+        plane.readPositions(planePositions);
+        plane.readVelocities(planeVelocities);
+        float[] maskedPositions = new float[GRID_SIZE * GRID_SIZE * 4];
+        float[] maskedVelocities = new float[GRID_SIZE * GRID_SIZE * 4];
+        masked.readPositions(maskedPositions);
+        masked.readVelocities(maskedVelocities);
+        String message = integrator + " " + relaxationMode;
+        assertArrayEquals(planePositions, cutOut(maskedPositions), 0f, message);
+        assertArrayEquals(planeVelocities, cutOut(maskedVelocities), 0f, message);
+        assertTrue(planePositions[1] < 20, "the plane does not fall: " + message);
+    }
+
+    /**
+     * @param gridValues 4 floats per point of the grid
+     * @return 4 floats per point of the plane
+     */
+    private static float[] cutOut(float[] gridValues) {
+        float[] values = new float[SIZE * SIZE * 4];
+        for (int h = 0; h < SIZE; h++) {
+            System.arraycopy(gridValues, ((h + OFFSET) * GRID_SIZE + OFFSET) * 4, values, h * SIZE * 4, SIZE * 4);
+        }
+        return values;
+    }
+
+    @Test
+    void maskedClothMatchesThePlane() {
+        for (EIntegrator integrator : EIntegrator.values()) {
+            for (ERelaxationMode relaxationMode : ERelaxationMode.values()) {
+                assertSameSimulation(integrator, relaxationMode);
+            }
+        }
+    }
+}
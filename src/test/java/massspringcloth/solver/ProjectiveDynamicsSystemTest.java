@@ -0,0 +1,51 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.MassSpringModel;
+import massspringcloth.cloth.Point;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Projective dynamics step of a cloth with two points at the same position.
+ *
+ * @author Mirco Werner
+ */
+class ProjectiveDynamicsSystemTest {
+    @Test
+    void coincidentPointsGiveFinitePositions() {
+        int width = 4;
+        int height = 4;
+        int count = width * height;
+        Point[][] points = new Point[width][height];
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                points[w][h] = new Point(w, h, 0, 0, 0, 0, h == height - 1 ? 1 : 0);
+            }
+        }
+        MassSpringModel model = new MassSpringModel(width, height, points);
+        float[] locked = new float[count];
+        for (int i = 0; i < count; i++) {
+            locked[i] = model.getPointData()[i * 4];
+        }
+        ProjectiveDynamicsSystem system = new ProjectiveDynamicsSystem(width, height, 100, 1, locked, model.getRestLengths());
+
+        PointBuffer pointIn = new PointBuffer(count);
+        for (int i = 0; i < count; i++) {
+            pointIn.positionX[i] = i % width;
+            pointIn.positionY[i] = i / width;
+        }
+        pointIn.positionX[5] = pointIn.positionX[6]; // the spring between point 5 and 6 collapsed during the simulation
+        float[] force = new float[count * 3];
+        for (int i = 0; i < count; i++) {
+            force[i * 3 + 1] = -9.81f;
+        }
+        PointBuffer pointOut = new PointBuffer(count);
+        system.step(pointIn, force, 0.01f, pointOut);
+
+        for (int i = 0; i < count; i++) {
+            assertTrue(Float.isFinite(pointOut.positionX[i]) && Float.isFinite(pointOut.positionY[i]) && Float.isFinite(pointOut.positionZ[i]), "position is not finite");
+        }
+        assertTrue(pointOut.positionX[6] - pointOut.positionX[5] > 0, "the points of the collapsed spring are not separated");
+    }
+}
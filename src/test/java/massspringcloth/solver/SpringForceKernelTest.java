@@ -0,0 +1,66 @@
+package massspringcloth.solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Compares the vectorized spring force kernel with the scalar kernel. Only executed if the Vector API is available
+ * (JDK 17 or higher, maven profile vector-api adds the module to the test JVM).
+ *
+ * @author Mirco Werner
+ */
+class SpringForceKernelTest {
+    private static final int WIDTH = 53; // not a multiple of the vector length, the rows end with a scalar remainder
+    private static final int HEIGHT = 9;
+
+    @Test
+    void vectorKernelMatchesScalarKernelBitForBit() {
+        ISpringForceKernel vectorKernel = ISpringForceKernel.create();
+        assumeFalse(vectorKernel instanceof ScalarSpringForceKernel, "Vector API not available");
+        ScalarSpringForceKernel scalarKernel = new ScalarSpringForceKernel();
+
+        Random random = new Random(42);
+        for (int run = 0; run < 20; run++) {
+            int count = WIDTH * HEIGHT;
+            PointBuffer pointIn = new PointBuffer(count);
+            for (int i = 0; i < count; i++) {
+                pointIn.positionX[i] = i % WIDTH + random.nextFloat() - 0.5f;
+                pointIn.positionY[i] = random.nextFloat() - 0.5f;
+                pointIn.positionZ[i] = i / WIDTH + random.nextFloat() - 0.5f;
+            }
+            float[] restLengths = new float[6 * count];
+            for (int i = 0; i < restLengths.length; i++) {
+                restLengths[i] = 0.5f + 2 * random.nextFloat();
+            }
+            float springConstant = 1 + 1000 * random.nextFloat();
+
+            for (int y = 2; y < HEIGHT - 2; y++) {
+                int xStart = 2 + random.nextInt(5);
+                int xEnd = WIDTH - 2 - random.nextInt(5);
+                float[][] scalarForces = randomForces(random);
+                float[][] vectorForces = {scalarForces[0].clone(), scalarForces[1].clone(), scalarForces[2].clone()};
+
+                scalarKernel.addSpringForces(pointIn, restLengths, WIDTH, y, xStart, xEnd, springConstant, scalarForces[0], scalarForces[1], scalarForces[2]);
+                vectorKernel.addSpringForces(pointIn, restLengths, WIDTH, y, xStart, xEnd, springConstant, vectorForces[0], vectorForces[1], vectorForces[2]);
+
+                for (int axis = 0; axis < 3; axis++) {
+                    assertArrayEquals(scalarForces[axis], vectorForces[axis], 0f, "run " + run + ", row " + y + ", axis " + axis);
+                }
+            }
+        }
+    }
+
+    private static float[][] randomForces(Random random) {
+        float[][] forces = new float[3][WIDTH];
+        for (float[] axis : forces) {
+            for (int x = 0; x < WIDTH; x++) {
+                axis[x] = random.nextFloat() * 10 - 5;
+            }
+        }
+        return forces;
+    }
+}
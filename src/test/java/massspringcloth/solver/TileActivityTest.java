@@ -0,0 +1,84 @@
+package massspringcloth.solver;
+
+import massspringcloth.cloth.MassSpringModel;
+import massspringcloth.cloth.Point;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A hanging cloth that is not disturbed must fall asleep tile by tile (see {@link TileActivity}), wake up completely when
+ * {@link CpuClothSolver#wake()} is called and come to rest where the same cloth without sleeping tiles does.
+ *
+ * @author Mirco Werner
+ */
+class TileActivityTest {
+    private static final int WIDTH = 30;
+    private static final int HEIGHT = 30;
+    private static final int TILE_COUNT = 9; // 3 x 3 tiles of TileActivity.TILE_SIZE points
+    private static final float SLEEP_DISTANCE = 0.02f;
+    private static final int SLEEP_STEPS = 100;
+    private static final int MAX_FRAMES = 200;
+    private static final float FRAME_TIME = 0.1f;
+
+    /**
+     * @return cloth in the xy-plane that hangs from its top row
+     */
+    private static CpuClothSolver createSolver(boolean sleepingEnabled) {
+        Point[][] points = new Point[WIDTH][HEIGHT];
+        for (int h = 0; h < HEIGHT; h++) {
+            for (int w = 0; w < WIDTH; w++) {
+                points[w][h] = new Point(w, 20 + h, 0, 0, 0, 0, h == HEIGHT - 1 ? 1 : 0);
+            }
+        }
+        CpuClothSolver solver = new CpuClothSolver(new MassSpringModel(WIDTH, HEIGHT, points), 1, false, 1, 1.5f, new Vector3f(0), 500);
+        solver.setSleepingEnabled(sleepingEnabled);
+        solver.setSleepThresholds(SLEEP_DISTANCE, SLEEP_STEPS);
+        return solver;
+    }
+
+    private static float[] readPositions(CpuClothSolver solver) {
+        float[] positions = new float[WIDTH * HEIGHT * 4];
+        solver.readPositions(positions);
+        return positions;
+    }
+
+    @Test
+    void undisturbedClothFallsAsleepAndWakesUp() {
+        CpuClothSolver sleeping = createSolver(true);
+        CpuClothSolver awake = createSolver(false);
+        int frame = 0;
+        boolean allTilesAwake = true; // all tiles were executed in the previous frames
+        do {
+            assertTrue(frame < MAX_FRAMES, "the cloth does not fall asleep");
+            sleeping.simulateAdaptive(FRAME_TIME);
+            awake.simulateAdaptive(FRAME_TIME);
+            allTilesAwake &= sleeping.getActiveTiles()[0] == TILE_COUNT;
+            if (allTilesAwake) {
+                // as long as no tile sleeps, all points are executed like without sleeping tiles
+                assertArrayEquals(readPositions(awake), readPositions(sleeping), 0f, "frame " + frame);
+            }
+            frame++;
+        } while (sleeping.getActiveTiles()[0] > 0);
+        assertEquals(TILE_COUNT, sleeping.getActiveTiles()[1]);
+
+        // a sleeping cloth stays where it is
+        float[] asleepPositions = readPositions(sleeping);
+        sleeping.simulateAdaptive(FRAME_TIME);
+        assertEquals(0, sleeping.getActiveTiles()[0]);
+        assertArrayEquals(asleepPositions, readPositions(sleeping), 0f);
+
+        // the motion that has been stopped by the sleeping tiles is slower than the sleep distance per sleep steps
+        for (int i = 0; i < SLEEP_STEPS; i++) {
+            awake.simulateAdaptive(FRAME_TIME);
+        }
+        assertArrayEquals(readPositions(awake), asleepPositions, SLEEP_DISTANCE);
+
+        sleeping.wake();
+        sleeping.simulateAdaptive(FRAME_TIME);
+        assertEquals(TILE_COUNT, sleeping.getActiveTiles()[0]);
+    }
+}